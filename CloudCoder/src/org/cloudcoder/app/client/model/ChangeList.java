@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCoalescer;
 import org.cloudcoder.app.shared.util.Publisher;
 
 /**
@@ -49,6 +50,8 @@ public class ChangeList extends Publisher {
 	private boolean transmitSuccess;     // last transmit succeeded
 	private List<Change> unsent;         // changes waiting to be sent
 	private List<Change> inTransmission; // changes currently in-transit
+	private ChangeCoalescer coalescer;   // if non-null, used to coalesce unsent changes
+	private int numFrozen;               // number of unsent changes that must not be modified
 	
 	/**
 	 * Constructor.
@@ -60,6 +63,16 @@ public class ChangeList extends Publisher {
 		this.inTransmission = new ArrayList<Change>();
 	}
 	
+	/**
+	 * Set the {@link ChangeCoalescer} to use to coalesce unsent changes.
+	 * By default, changes are not coalesced.
+	 * 
+	 * @param coalescer the {@link ChangeCoalescer}, or null if changes should not be coalesced
+	 */
+	public void setCoalescer(ChangeCoalescer coalescer) {
+		this.coalescer = coalescer;
+	}
+	
 	/**
 	 * @return number of unsent changes
 	 */
@@ -87,6 +100,11 @@ public class ChangeList extends Publisher {
 	 * @param change a change
 	 */
 	public void addChange(Change change) {
+		if (coalescer != null && unsent.size() > numFrozen
+				&& coalescer.coalesce(unsent.get(unsent.size() - 1), change)) {
+			// Merged into the most recent unsent change
+			return;
+		}
 		unsent.add(change);
 		if (state == State.CLEAN) {
 			state = State.UNSENT;
@@ -106,6 +124,7 @@ public class ChangeList extends Publisher {
 		
 		inTransmission.addAll(unsent);
 		unsent.clear();
+		numFrozen = 0;
 		
 		state = State.TRANSMISSION;
 		notifySubscribers(getState(), null);
@@ -136,6 +155,9 @@ public class ChangeList extends Publisher {
 			List<Change> tmp = inTransmission;
 			inTransmission = unsent;
 			unsent = tmp;
+			// The changes that failed to transmit might have been received
+			// anyway, so don't coalesce anything into them
+			numFrozen = unsent.size();
 			state = State.UNSENT;
 		}
 		transmitSuccess = success;
@@ -43,6 +43,7 @@ import org.cloudcoder.app.client.view.TestOutcomeSummaryView;
 import org.cloudcoder.app.client.view.TestResultListView;
 import org.cloudcoder.app.client.view.ViewUtil;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCoalescer;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.CompilationOutcome;
@@ -69,6 +70,11 @@ import com.google.gwt.event.dom.client.ClickEvent;
 import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.event.logical.shared.SelectionEvent;
 import com.google.gwt.event.logical.shared.SelectionHandler;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.http.client.RequestCallback;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
 import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.rpc.AsyncCallback;
@@ -156,6 +162,7 @@ public class DevelopmentPage extends CloudCoderPage {
 		private Timer flushPendingChangeEventsTimer;
 		private Mode mode;
 		private Timer checkPendingSubmissionTimer;
+		private boolean longPollUnavailable;
 		private Runnable onCleanCallback;
 		private String[] testCaseNames;
 
@@ -576,12 +583,59 @@ public class DevelopmentPage extends CloudCoderPage {
 
 				@Override
 				public void onSuccess(Void result) {
-					// Start polling for the SubmissionResult
-					checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+					// Wait for the SubmissionResult
+					waitForSubmissionResult();
 				}
 			});
 		}
 		
+		/**
+		 * Wait for the pending submission to be tested.
+		 * If the server supports it, a long-poll request is used to find out
+		 * when the SubmissionResult is ready, and the checkSubmission RPC
+		 * is only invoked once it is.  Otherwise, fall back to polling
+		 * using the checkSubmission RPC.
+		 */
+		private void waitForSubmissionResult() {
+			if (longPollUnavailable) {
+				checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+				return;
+			}
+			
+			RequestBuilder builder = new RequestBuilder(RequestBuilder.GET, GWT.getModuleBaseURL() + "submissionResultReady");
+			try {
+				builder.sendRequest(null, new RequestCallback() {
+					@Override
+					public void onResponseReceived(Request request, Response response) {
+						if (response.getStatusCode() != Response.SC_OK) {
+							fallBackToPolling();
+						} else if (response.getText().trim().equals("pending")) {
+							// Long poll timed out, keep waiting
+							waitForSubmissionResult();
+						} else {
+							// The result is ready (or there is no pending submission,
+							// in which case checkSubmission will report the error)
+							checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+							checkPendingSubmissionTimer.run();
+						}
+					}
+					
+					@Override
+					public void onError(Request request, Throwable exception) {
+						fallBackToPolling();
+					}
+				});
+			} catch (RequestException e) {
+				fallBackToPolling();
+			}
+		}
+		
+		private void fallBackToPolling() {
+			GWT.log("Long poll for submission result not available, polling instead");
+			longPollUnavailable = true;
+			checkPendingSubmissionTimer.scheduleRepeating(POLL_SUBMISSION_RESULT_INTERVAL_MS);
+		}
+		
 		private void doResetProblem() {
 			// Do not allow reset if edits are disallowed
 			if (mode == Mode.PREVENT_EDITS) {
@@ -822,7 +876,9 @@ public class DevelopmentPage extends CloudCoderPage {
 
 						@Override
 						public void onSuccess(Boolean result) {
-							changeList.endTransmit(true);
+							// A false result means the server couldn't accept
+							// the changes right now: they will be sent again
+							changeList.endTransmit(Boolean.TRUE.equals(result));
 						}
 					});
 				}
@@ -1037,7 +1093,9 @@ public class DevelopmentPage extends CloudCoderPage {
 	
 	@Override
 	public void activate() {
-		addSessionObject(new ChangeList());
+		ChangeList changeList = new ChangeList();
+		changeList.setCoalescer(new ChangeCoalescer());
+		addSessionObject(changeList);
 		addSessionObject(new NamedTestResult[0]);
 		addSessionObject(new CompilerDiagnostic[0]);
 		((UI)getWidget()).activate(getSession(), getSubscriptionRegistrar());
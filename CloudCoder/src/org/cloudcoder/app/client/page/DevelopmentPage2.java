@@ -405,8 +405,11 @@ public class DevelopmentPage2 extends CloudCoderPage {
 
 					@Override
 					public void onSuccess(Boolean result) {
-						codeStateManager.finishSavingChanges(true);
-						GWT.log("Changes saved successfully");
+						// A false result means the server couldn't accept
+						// the changes right now: they will be sent again
+						boolean success = Boolean.TRUE.equals(result);
+						codeStateManager.finishSavingChanges(success);
+						GWT.log(success ? "Changes saved successfully" : "Changes not accepted, will retry");
 					}
 				});
 			}
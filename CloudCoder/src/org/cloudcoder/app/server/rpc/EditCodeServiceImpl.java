@@ -20,9 +20,11 @@ package org.cloudcoder.app.server.rpc;
 import java.util.List;
 
 import org.cloudcoder.app.client.rpc.EditCodeService;
+import org.cloudcoder.app.server.persist.ChangeWriteBuffer;
 import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Pair;
@@ -123,9 +125,17 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     }
 
 	protected ProblemText doLoadCurrentText(User user, Problem problem) {
-    	Change mostRecent = Database.getInstance().getMostRecentChange(user, problem.getProblemId());
+    	// Make sure buffered changes are stored
+    	flushChangeWriteBuffer();
+    	
+    	// Get the most recent checkpoint (if any), and the changes
+    	// that must be applied to it to get the current text.
+    	Pair<ChangeCheckpoint, List<Change>> checkpointAndDeltas =
+    			Database.getInstance().getChangeCheckpointAndLaterChanges(user, problem.getProblemId());
+    	ChangeCheckpoint checkpoint = checkpointAndDeltas.getLeft();
+    	List<Change> deltaList = checkpointAndDeltas.getRight();
 
-    	if (mostRecent == null) {
+    	if (checkpoint == null && deltaList.isEmpty()) {
     		// Presumably, user has never worked on this problem.
     		logger.debug("No changes recorded for user " + user.getId() + ", problem " + problem.getProblemId());
     		
@@ -135,49 +145,32 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
     		ProblemText initialProblemText = new ProblemText(initialText, true);
     		
     		return initialProblemText;
-    	} else {
-    		Change change = mostRecent; // result.get(0);
+    	}
 
-    		// If the Change is a full text change, great.
-    		if (change.getType() == ChangeType.FULL_TEXT) {
-    			return new ProblemText(change.getText(), false);
+    	// If the most recent Change is a full text change, great.
+    	if (!deltaList.isEmpty()) {
+    		Change mostRecent = deltaList.get(deltaList.size() - 1);
+    		if (mostRecent.getType() == ChangeType.FULL_TEXT) {
+    			return new ProblemText(mostRecent.getText(), false);
     		}
+    	}
 
-    		// Otherwise, find the last full-text change (if any) and
-    		// apply all later changes.
-    		
-    		// Find the most recent full-text change.
-    		Change fullText = Database.getInstance().getMostRecentFullTextChange(user, problem.getProblemId());
-    		
-    		// Text doc to accumulate changes.
-    		TextDocument textDocument = new TextDocument();
-    		
-    		// Find the base revision (event id) that the deltas are relative to, if any.
-    		int baseRev;
-    		if (fullText != null) {
-    			// found a full-text change to use as a base revision
-    			textDocument.setText(fullText.getText());
-    			baseRev = fullText.getEventId();
+    	// Otherwise, apply the deltas to the checkpoint
+    	// (or to the most recent full text change, if it is newer).
+    	try {
+    		TextDocument textDocument = new ApplyChangeToTextDocument().apply(checkpoint, deltaList);
+    		return new ProblemText(textDocument.getText(), false);
+    	} catch (RuntimeException e) {
+    		// FIXME: should do something smarter than this 
+    		logger.warn("Exception applying deltas to program text", e);
+    		Change first = deltaList.get(0);
+    		String baseText;
+    		if (first.getType() == ChangeType.FULL_TEXT) {
+    			baseText = first.getText();
     		} else {
-    			// no full-text change exists: base revision is implicitly the empty document
-    			baseRev = -1;
-    		}
-    		
-    		// Get all deltas that follow the base revision.
-    		List<Change> deltaList = Database.getInstance().getAllChangesNewerThan(user, problem.getProblemId(), baseRev);
-    		
-    		// Apply the deltas to the base revision.
-    		try {
-        		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
-	    		for (Change delta : deltaList) {
-	    			applicator.apply(delta, textDocument);
-	    		}
-	    		return new ProblemText(textDocument.getText(), false);
-    		} catch (RuntimeException e) {
-    			// FIXME: should do something smarter than this 
-    			logger.warn("Exception applying deltas to program text", e);
-    			return new ProblemText(fullText != null ? fullText.getText() : "", false);
+    			baseText = (checkpoint != null) ? checkpoint.getText() : "";
     		}
+    		return new ProblemText(baseText, false);
     	}
 	}
 
@@ -237,11 +230,27 @@ public class EditCodeServiceImpl extends RemoteServiceServlet implements EditCod
 			change.getEvent().setTimestamp(orig + clientServerTimeDelta);
 		}
 
-		// Insert changes
+		// Insert changes.  If the changes are buffered, and the buffer
+		// is full, the client will send them again later.
+		ChangeWriteBuffer buffer = ChangeWriteBuffer.getInstance();
+		if (buffer != null) {
+			return buffer.offer(changeList);
+		}
 		Database.getInstance().storeChanges(changeList);
 		
 		return true;
 	}
+	
+	/**
+	 * Store any changes in the {@link ChangeWriteBuffer}, so that
+	 * reading changes from the database will see them.
+	 */
+	static void flushChangeWriteBuffer() {
+		ChangeWriteBuffer buffer = ChangeWriteBuffer.getInstance();
+		if (buffer != null && !buffer.flush()) {
+			logger.error("Could not store buffered changes");
+		}
+	}
 
 	@Override
 	public ProblemText getSubmissionText(User submitter, Problem problem, SubmissionReceipt receipt) throws CloudCoderAuthenticationException {
@@ -26,6 +26,7 @@ import org.cloudcoder.app.client.rpc.RunService;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionException;
@@ -80,7 +81,8 @@ public class RunServiceImpl extends RemoteServiceServlet implements RunService
             listTestCases.add(tc);
         }
         
-        IFutureSubmissionResult future = submitService.submitAsync(problem, listTestCases, programText);
+        IFutureSubmissionResult future = submitService.submitAsync(problem, listTestCases, programText,
+                SubmissionPriority.INTERACTIVE, String.valueOf(user.getId()));
 
         // put the future into the session
         session.setAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY, future);
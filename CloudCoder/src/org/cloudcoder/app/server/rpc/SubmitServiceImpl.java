@@ -26,6 +26,7 @@ import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
@@ -84,6 +85,10 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 			}
 		}
 
+		// Make sure buffered changes are stored before the full-text change,
+		// so that the full-text change is the most recent change.
+		EditCodeServiceImpl.flushChangeWriteBuffer();
+		
 		// Insert a full-text change into the database.
 		Change fullTextChange = new Change(
 				ChangeType.FULL_TEXT,
@@ -93,13 +98,15 @@ public class SubmitServiceImpl extends RemoteServiceServlet implements SubmitSer
 				programText);
 		Database.getInstance().storeChanges(new Change[]{fullTextChange});
 		
-		// Get test cases.  (TODO: cache them?)
+		// Get test cases.  (They are cached by the database layer.)
 		List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problemId);
 		
 		ISubmitService submitService = DefaultSubmitService.getInstance();
 
 		logger.info("Passing submission to submit service...");
-		IFutureSubmissionResult future = submitService.submitAsync(problem, testCaseList, programText);
+		SubmissionPriority priority = (quiz != null) ? SubmissionPriority.QUIZ : SubmissionPriority.INTERACTIVE;
+		IFutureSubmissionResult future = submitService.submitAsync(problem, testCaseList, programText,
+				priority, String.valueOf(user.getId()));
 		
 		// Put the full-text Change and IFutureSubmissionResult in the user's session.
 		addSessionObjects(session, fullTextChange, future);
@@ -26,6 +26,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.server.persist.BoundedConnectionPool;
+import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.IConnectionPool;
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.HealthData;
 import org.cloudcoder.app.shared.model.json.JSONConversion;
 import org.json.simple.JSONValue;
@@ -42,6 +49,30 @@ public class Health extends HttpServlet {
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		HealthData healthData = HealthDataSingleton.getInstance().getHealthData();
 		
+		// The database caches are not visible to the submission queue,
+		// so add their hit rates here
+		DatabaseCache cache = DatabaseCache.getInstance();
+		healthData.setProblemCacheHitPercent(cache.getProblemCache().getHitPercent());
+		healthData.setTestCaseCacheHitPercent(cache.getTestCaseCache().getHitPercent());
+		healthData.setModuleCacheHitPercent(cache.getModuleCache().getHitPercent());
+		healthData.setCourseRegistrationCacheHitPercent(cache.getCourseRegistrationCache().getHitPercent());
+		PasswordVerifier passwordVerifier = PasswordVerifier.getInstance();
+		if (passwordVerifier != null) {
+			healthData.setPasswordVerifyQueueSize(passwordVerifier.getQueueSize());
+			healthData.setPasswordVerifyWaitMillisAvg(passwordVerifier.getWaitMillisAvg());
+			healthData.setPasswordVerifyWaitMillisMax(passwordVerifier.getWaitMillisMax());
+			healthData.setPasswordVerifyMillisAvg(passwordVerifier.getVerifyMillisAvg());
+			healthData.setPasswordVerifyRejected(passwordVerifier.getNumRejected());
+		}
+		IDatabase db = Database.getInstance();
+		IConnectionPool connectionPool = (db instanceof JDBCDatabase) ? ((JDBCDatabase) db).getConnectionPool() : null;
+		if (connectionPool instanceof BoundedConnectionPool) {
+			BoundedConnectionPool pool = (BoundedConnectionPool) connectionPool;
+			healthData.setDbConnectionsInUse(pool.getNumInUse());
+			healthData.setDbConnectionsWaiting(pool.getNumWaiting());
+			healthData.setDbConnectionTimeouts((int) pool.getNumTimeouts());
+		}
+		
 		resp.setStatus(HttpServletResponse.SC_OK);
 		resp.setContentType("application/json");
 		Object jsonValue = JSONConversion.convertModelObjectToJSON(healthData, healthData.getSchema());
@@ -0,0 +1,124 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.cloudcoder.app.server.rpc.SessionAttributeKeys;
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.continuation.ContinuationSupport;
+
+/**
+ * Long-poll servlet used by the client to find out when the
+ * pending submission in the user's session has finished
+ * compilation/testing.  Rather than holding a request thread
+ * while the submission is tested, the request is suspended
+ * (using a Jetty {@link Continuation}) and resumed as soon as the
+ * {@link IFutureSubmissionResult} is marked ready.
+ * The response is a single word:
+ * <ul>
+ * <li><b>ready</b>: the result is ready, and the client should call
+ *     <code>SubmitService.checkSubmission()</code> to retrieve it</li>
+ * <li><b>pending</b>: the long poll timed out, and the client should
+ *     issue another request</li>
+ * <li><b>none</b>: there is no pending submission in the session
+ *     (or the session has no authenticated user): the client should
+ *     call <code>checkSubmission()</code>, which will report the error</li>
+ * </ul>
+ */
+public class SubmissionResultReady extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Maximum amount of time a request will be suspended before
+	 * the client is told to try again.
+	 */
+	public static final long LONG_POLL_TIMEOUT_MS = 30000L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		final Continuation continuation = ContinuationSupport.getContinuation(req);
+
+		if (continuation.isExpired()) {
+			writeResponse(resp, "pending");
+			return;
+		}
+
+		HttpSession session = req.getSession(false);
+		IFutureSubmissionResult future = null;
+		if (session != null && session.getAttribute(SessionAttributeKeys.USER_KEY) != null) {
+			future = (IFutureSubmissionResult) session.getAttribute(SessionAttributeKeys.FUTURE_SUBMISSION_RESULT_KEY);
+		}
+		if (future == null) {
+			writeResponse(resp, "none");
+			return;
+		}
+
+		if (future.isReady()) {
+			writeResponse(resp, "ready");
+			return;
+		}
+
+		// Park the request until the submission is ready.
+		// Note that the callback must be registered after the continuation
+		// is suspended, since it might be invoked immediately.
+		final IFutureSubmissionResult pendingFuture = future;
+		final ICallback<IFutureSubmissionResult> callback = new ICallback<IFutureSubmissionResult>() {
+			@Override
+			public void call(IFutureSubmissionResult value) {
+				try {
+					continuation.resume();
+				} catch (IllegalStateException e) {
+					// The continuation already expired: the client will
+					// find out that the result is ready on its next request.
+				}
+			}
+		};
+		continuation.setTimeout(LONG_POLL_TIMEOUT_MS);
+		continuation.suspend();
+		continuation.addContinuationListener(new ContinuationListener() {
+			@Override
+			public void onTimeout(Continuation c) {
+				// The client will poll again (registering a new callback),
+				// so don't let expired callbacks accumulate in the future
+				pendingFuture.removeCompletionCallback(callback);
+			}
+			
+			@Override
+			public void onComplete(Continuation c) {
+			}
+		});
+		pendingFuture.addCompletionCallback(callback);
+	}
+
+	private void writeResponse(HttpServletResponse resp, String status) throws IOException {
+		resp.setStatus(HttpServletResponse.SC_OK);
+		resp.setContentType("text/plain");
+		resp.setHeader("Cache-Control", "no-cache");
+		resp.getWriter().print(status);
+	}
+}
@@ -0,0 +1,381 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.ccompiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.shared.model.Language;
+import org.cloudcoder.builder2.model.CTestHarness;
+import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
+import org.cloudcoder.builder2.util.FileUtil;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Singleton cache of compiled artifacts that can be shared between
+ * C/C++ submissions: precompiled headers, and compiled
+ * {@link CTestHarness}es.  Artifacts are identified by their source
+ * and by the compiler settings used to build them, so a cached artifact
+ * can never be stale.
+ * 
+ * <p>
+ * The maximum number of precompiled headers is
+ * <code>cloudcoder.builder2.cprog.pchCacheSize</code>
+ * (default {@value #DEFAULT_PCH_CACHE_SIZE}), and the maximum number
+ * of compiled test harnesses is <code>cloudcoder.builder2.cprog.harnessCacheSize</code>
+ * (default {@value #DEFAULT_HARNESS_CACHE_SIZE}).  Once the limit is
+ * reached, the least recently used artifact of that kind is evicted.
+ * An artifact is returned as an {@link Artifact}, which must be released
+ * once the compilation using it is finished: the files of an evicted
+ * artifact are deleted when it is no longer in use.
+ * </p>
+ */
+public class CArtifactCache {
+	private static final Logger logger = LoggerFactory.getLogger(CArtifactCache.class);
+	
+	/** Default maximum number of precompiled headers. */
+	public static final int DEFAULT_PCH_CACHE_SIZE = 8;
+	
+	/** Default maximum number of compiled test harnesses. */
+	public static final int DEFAULT_HARNESS_CACHE_SIZE = 256;
+	
+	private static final String PCH_HEADER_FILE_NAME = "cc_prologue.h";
+	private static final String HARNESS_SOURCE_FILE_NAME = "cc_harness.c";
+	private static final String HARNESS_OBJECT_FILE_NAME = "cc_harness.o";
+
+	private static SingletonHolder<CArtifactCache, Properties> holder = new SingletonHolder<CArtifactCache, Properties>() {
+		protected CArtifactCache onCreate(Properties arg) {
+			return new CArtifactCache(arg);
+		}
+	};
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @return the singleton instance
+	 */
+	public static CArtifactCache getInstance(Properties config) {
+		return holder.get(config);
+	}
+	
+	/**
+	 * @return true if the singleton instance has been created, false otherwise
+	 */
+	public static boolean isCreated() {
+		return holder.isCreated();
+	}
+	
+	/**
+	 * Callback to build an artifact in a given directory.
+	 */
+	private interface ArtifactBuilder {
+		/**
+		 * Build the artifact.
+		 * 
+		 * @param dir the directory in which to build the artifact
+		 * @return the full path of the artifact, or null if it couldn't be built
+		 */
+		public String build(File dir);
+	}
+	
+	/**
+	 * Cache entry: the artifact is built by the first thread that needs it,
+	 * other threads needing it wait.  The reference count and evicted flag
+	 * are protected by the lock of the {@link ArtifactMap}.
+	 */
+	private static class Entry {
+		private final File dir;
+		private boolean built;
+		private String fileName;
+		private int refCount;
+		private boolean evicted;
+		
+		public Entry(File dir) {
+			this.dir = dir;
+		}
+	}
+	
+	/**
+	 * A cached artifact in use by a compilation.  The artifact's file
+	 * won't be deleted until {@link #release()} is called.
+	 */
+	public static class Artifact {
+		private final ArtifactMap map;
+		private final Entry entry;
+		private boolean released;
+		
+		private Artifact(ArtifactMap map, Entry entry) {
+			this.map = map;
+			this.entry = entry;
+		}
+		
+		/**
+		 * @return full path of the artifact's file
+		 */
+		public String getFileName() {
+			return entry.fileName;
+		}
+		
+		/**
+		 * Release the artifact: must be called once the compilation using
+		 * it is finished.  Calling this method more than once has no effect.
+		 */
+		public void release() {
+			if (!released) {
+				released = true;
+				map.release(entry);
+			}
+		}
+	}
+	
+	/**
+	 * Map of keys to artifacts of one kind, in least-recently-used order.
+	 */
+	private class ArtifactMap {
+		private final String kind;
+		private final int maxSize;
+		private final LinkedHashMap<String, Entry> entryMap;
+		private int nextDirNum;
+		private long hits, misses, evictions;
+		
+		public ArtifactMap(String kind, int maxSize) {
+			this.kind = kind;
+			this.maxSize = maxSize;
+			this.entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		}
+		
+		public Artifact get(String key, ArtifactBuilder builder) {
+			if (tmpDir == null || maxSize <= 0) {
+				return null;
+			}
+			
+			Entry entry;
+			List<Entry> evictedList = new ArrayList<Entry>();
+			synchronized (this) {
+				entry = entryMap.get(key);
+				if (entry != null) {
+					hits++;
+				} else {
+					misses++;
+					entry = new Entry(new File(tmpDir, kind + (nextDirNum++)));
+					entryMap.put(key, entry);
+					
+					// Evict least recently used entries (the new entry is the
+					// most recently used, so it won't be evicted).  The files
+					// of entries still in use are deleted when they are released.
+					Iterator<Entry> i = entryMap.values().iterator();
+					while (entryMap.size() > maxSize) {
+						Entry eldest = i.next();
+						i.remove();
+						eldest.evicted = true;
+						evictions++;
+						if (eldest.refCount == 0) {
+							evictedList.add(eldest);
+						}
+					}
+				}
+				entry.refCount++;
+			}
+			for (Entry evicted : evictedList) {
+				delete(evicted);
+			}
+			
+			String fileName = null;
+			try {
+				synchronized (entry) {
+					if (!entry.built) {
+						try {
+							if (entry.dir.mkdir()) {
+								long start = System.currentTimeMillis();
+								entry.fileName = builder.build(entry.dir);
+								logger.info("Built {} {} in {} ms (hits={}, misses={}, evictions={})", new Object[]{
+										kind, entry.fileName, System.currentTimeMillis() - start, getHits(), getMisses(), getEvictions()});
+							} else {
+								logger.error("Could not create directory {}", entry.dir);
+							}
+						} finally {
+							entry.built = true;
+						}
+					}
+					fileName = entry.fileName;
+				}
+			} finally {
+				if (fileName == null) {
+					// Artifact couldn't be built
+					release(entry);
+				}
+			}
+			return fileName != null ? new Artifact(this, entry) : null;
+		}
+		
+		public void release(Entry entry) {
+			boolean delete;
+			synchronized (this) {
+				entry.refCount--;
+				delete = entry.evicted && entry.refCount == 0;
+			}
+			if (delete) {
+				delete(entry);
+			}
+		}
+		
+		private void delete(Entry entry) {
+			if (entry.dir.exists()) {
+				new DeleteDirectoryRecursively(entry.dir).delete();
+			}
+		}
+		
+		public synchronized long getHits() {
+			return hits;
+		}
+		
+		public synchronized long getMisses() {
+			return misses;
+		}
+		
+		public synchronized long getEvictions() {
+			return evictions;
+		}
+	}
+	
+	private File tmpDir;
+	private ArtifactMap pchMap;
+	private ArtifactMap harnessMap;
+	
+	private CArtifactCache(Properties config) {
+		this.tmpDir = FileUtil.makeTempDir(config);
+		if (tmpDir == null) {
+			logger.error("Could not create directory for cached C/C++ artifacts");
+		}
+		this.pchMap = new ArtifactMap("pch", Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.cprog.pchCacheSize", String.valueOf(DEFAULT_PCH_CACHE_SIZE))));
+		this.harnessMap = new ArtifactMap("harness", Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.cprog.harnessCacheSize", String.valueOf(DEFAULT_HARNESS_CACHE_SIZE))));
+	}
+	
+	/**
+	 * Get a precompiled header containing given <code>#include</code> directives.
+	 * 
+	 * @param compiler  the {@link Compiler} that will use the precompiled header
+	 *                  (the precompiled header is built using the same settings)
+	 * @param includes  the <code>#include</code> directives
+	 * @return the precompiled header, whose file name is the full path of the
+	 *         header (for {@link Compiler#setPrecompiledHeader(String)}),
+	 *         or null if a precompiled header is not available
+	 */
+	public Artifact getPrecompiledHeader(final Compiler compiler, List<String> includes) {
+		final StringBuilder header = new StringBuilder();
+		for (String include : includes) {
+			header.append(include);
+			header.append("\n");
+		}
+		
+		return pchMap.get(getKey(compiler, header.toString()), new ArtifactBuilder() {
+			@Override
+			public String build(File dir) {
+				Compiler pchCompiler = compiler.createCompatibleCompiler(dir, PCH_HEADER_FILE_NAME + ".gch");
+				pchCompiler.clearEndFlags();
+				pchCompiler.addFlag("-x");
+				pchCompiler.addFlag(compiler.getLanguage() == Language.CPLUSPLUS ? "c++-header" : "c-header");
+				pchCompiler.addModule(PCH_HEADER_FILE_NAME, header.toString());
+				if (!pchCompiler.compile()) {
+					logger.warn("Could not build precompiled header: {}", pchCompiler.getStatusMessage());
+					return null;
+				}
+				return new File(dir, PCH_HEADER_FILE_NAME).getAbsolutePath();
+			}
+		});
+	}
+	
+	/**
+	 * Get the object file for a compiled {@link CTestHarness}.
+	 * The test harness must compile without any errors or warnings,
+	 * otherwise it isn't used: compiling the test harness together
+	 * with the submission will produce the appropriate compiler diagnostics.
+	 * 
+	 * @param compiler  the {@link Compiler} that will link with the object file
+	 *                  (the test harness is compiled using the same settings)
+	 * @param harness   the {@link CTestHarness}
+	 * @return the compiled test harness, whose file name is the full path of the
+	 *         object file, or null if a compiled test harness is not available
+	 */
+	public Artifact getTestHarnessObject(final Compiler compiler, final CTestHarness harness) {
+		return harnessMap.get(getKey(compiler, harness.getCacheKey()), new ArtifactBuilder() {
+			@Override
+			public String build(File dir) {
+				Compiler harnessCompiler = compiler.createCompatibleCompiler(dir, HARNESS_OBJECT_FILE_NAME);
+				harnessCompiler.clearEndFlags();
+				harnessCompiler.addFlag("-c");
+				harnessCompiler.addModule(HARNESS_SOURCE_FILE_NAME, harness.getHarnessSource());
+				if (!harnessCompiler.compile() || !harnessCompiler.getCompilerOutput().isEmpty()) {
+					logger.info("Test harness did not compile cleanly: {}", harnessCompiler.getStatusMessage());
+					return null;
+				}
+				return new File(dir, HARNESS_OBJECT_FILE_NAME).getAbsolutePath();
+			}
+		});
+	}
+	
+	/**
+	 * @return number of times a precompiled header was found in the cache
+	 */
+	public long getPrecompiledHeaderHits() {
+		return pchMap.getHits();
+	}
+	
+	/**
+	 * @return number of times a precompiled header was not found in the cache
+	 */
+	public long getPrecompiledHeaderMisses() {
+		return pchMap.getMisses();
+	}
+	
+	/**
+	 * @return number of times a compiled test harness was found in the cache
+	 */
+	public long getTestHarnessHits() {
+		return harnessMap.getHits();
+	}
+	
+	/**
+	 * @return number of times a compiled test harness was not found in the cache
+	 */
+	public long getTestHarnessMisses() {
+		return harnessMap.getMisses();
+	}
+	
+	/**
+	 * Clean up any files or directories being used by
+	 * the cache.
+	 */
+	public void cleanup() {
+		if (tmpDir != null) {
+			new DeleteDirectoryRecursively(tmpDir).delete();
+		}
+	}
+
+	private static String getKey(Compiler compiler, String source) {
+		return compiler.getLanguage() + "\n" + compiler.getFlags() + "\n" + source;
+	}
+}
@@ -1,5 +1,9 @@
 package org.cloudcoder.builder2.ccompiler;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.CompilerDiagnostic;
@@ -7,6 +11,8 @@ import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestResult;
 
 public class CUtil {
+	private static final Pattern SYSTEM_INCLUDE = Pattern.compile("^\\s*#\\s*include\\s*<[^>]+>\\s*$");
+	private static final Pattern BLANK_OR_LINE_COMMENT = Pattern.compile("^\\s*(//.*)?$");
 
 	public static SubmissionResult createSubmissionResultFromFailedCompile(Compiler compiler, int prologueLength, int epilogueLength) {
 		CompilerDiagnostic[] compilerDiagnosticList = compiler.getCompilerDiagnosticList();
@@ -18,4 +24,26 @@ public class CUtil {
 		return submissionResult;
 	}
 
+	/**
+	 * Get the <code>#include</code> directives for system headers
+	 * at the beginning of C/C++ source code (skipping blank lines and
+	 * line comments).  Because nothing precedes them, including
+	 * them again before the source code does not change its meaning,
+	 * so they can be used to build a precompiled header.
+	 * 
+	 * @param code the C/C++ source code
+	 * @return the leading <code>#include</code> directives for system headers
+	 */
+	public static List<String> getLeadingSystemIncludes(String code) {
+		List<String> result = new ArrayList<String>();
+		for (String line : code.split("\n")) {
+			if (SYSTEM_INCLUDE.matcher(line).matches()) {
+				result.add(line.trim());
+			} else if (!BLANK_OR_LINE_COMMENT.matcher(line).matches() || line.endsWith("\\")) {
+				// A line comment ending in a backslash continues on the next line
+				break;
+			}
+		}
+		return result;
+	}
 }
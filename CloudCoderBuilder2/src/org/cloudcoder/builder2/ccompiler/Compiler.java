@@ -81,6 +81,8 @@ public class Compiler {
 	private List<String> flags;
 	private List<String> endFlags;
 	private List<Module> modules;
+	private List<String> objectFiles;
+	private String precompiledHeader;
 	private String statusMessage;
 	private List<String> compilerOutput;
 	private WrapperMode wrapperMode;
@@ -114,12 +116,31 @@ public class Compiler {
 		this.flags = new ArrayList<String>();
 		this.endFlags = new ArrayList<String>();
 		this.modules = new ArrayList<Module>();
+		this.objectFiles = new ArrayList<String>();
 		this.statusMessage = "";
 		this.compilerOutput = new LinkedList<String>();
 		this.wrapperMode = WrapperMode.SCRIPT; // safe default
 		this.language = Language.C;
 	}
 	
+	/**
+	 * Create a new Compiler with the same flags, end flags, {@link WrapperMode},
+	 * and {@link Language} as this one, but with no modules.
+	 * 
+	 * @param workDir  the working directory where compilation should take place
+	 * @param progName the name to be given to the resulting executable
+	 *                 (or object file or precompiled header)
+	 * @return the new Compiler
+	 */
+	public Compiler createCompatibleCompiler(File workDir, String progName) {
+		Compiler result = new Compiler(workDir, progName, config);
+		result.flags.addAll(flags);
+		result.endFlags.addAll(endFlags);
+		result.wrapperMode = wrapperMode;
+		result.language = language;
+		return result;
+	}
+	
 	/**
 	 * @return the work directory
 	 */
@@ -149,6 +170,46 @@ public class Compiler {
 		endFlags.add(endFlag);
 	}
 	
+	/**
+	 * Get (read-only) list of compiler flags.
+	 * 
+	 * @return (read-only) list of compiler flags
+	 */
+	public List<String> getFlags() {
+		return Collections.unmodifiableList(flags);
+	}
+	
+	/**
+	 * Remove all end flags.
+	 */
+	public void clearEndFlags() {
+		endFlags.clear();
+	}
+	
+	/**
+	 * Add a prebuilt object file to be linked with the compiled modules.
+	 * 
+	 * @param objectFileName the object file name (relative to the work directory,
+	 *                       or absolute)
+	 */
+	public void addObjectFile(String objectFileName) {
+		objectFiles.add(objectFileName);
+	}
+	
+	/**
+	 * Set a header file to be included before the code in each module
+	 * (using gcc's <code>-include</code> option).  This is used
+	 * to take advantage of a precompiled header: the header must contain
+	 * exactly the <code>#include</code> directives that each module
+	 * starts with, so that including it has no effect on the meaning
+	 * of the code.
+	 * 
+	 * @param headerFileName the header file name (should be absolute)
+	 */
+	public void setPrecompiledHeader(String headerFileName) {
+		this.precompiledHeader = headerFileName;
+	}
+	
 	/**
 	 * Add a module to be compiled.
 	 * 
@@ -222,11 +283,16 @@ public class Compiler {
 		cmd.add(getCompilerExe());
 		cmd.add("-Wall");// ALWAYS use -Wall
 		cmd.addAll(flags);
+		if (precompiledHeader != null) {
+			cmd.add("-include");
+			cmd.add(precompiledHeader);
+		}
 		cmd.add("-o");
 		cmd.add(getExeFileName());
 		for (Module m : modules) {
 			cmd.add(m.sourceFileName);
 		}
+		cmd.addAll(objectFiles);
 		cmd.addAll(endFlags);
 		return cmd.toArray(new String[cmd.size()]);
 	}
@@ -295,6 +361,13 @@ public class Compiler {
 		this.progName = progname;
 	}
 
+	/**
+	 * @return the {@link Language}
+	 */
+	public Language getLanguage() {
+		return language;
+	}
+
 	/**
 	 * Set the {@link WrapperMode} to be used when executing the compiler
 	 * in a {@link ProcessRunner}.
@@ -18,25 +18,43 @@
 
 package org.cloudcoder.builder2.ccompiler;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.CTestHarness;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.NativeExecutable;
 import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.util.PropertyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Build step to execute the {@link Compiler} created by a previous
  * {@link CreateCCompilerBuildStep}.  If successful produces a
  * {@link NativeExecutable} artifact.
  * 
+ * <p>
+ * If there is a {@link CTestHarness} artifact, and a compiled version of
+ * the test harness is available from the {@link CArtifactCache}, then
+ * only the submitted code is compiled, and it is linked with the compiled
+ * test harness.  Otherwise, the complete scaffolded program is compiled.
+ * A precompiled header is used for the system headers the code
+ * starts by including, if possible.
+ * </p>
+ * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class ExecuteCCompilerBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(ExecuteCCompilerBuildStep.class);
+	
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
 		// Get ProgramSource list
@@ -49,8 +67,54 @@ public class ExecuteCCompilerBuildStep implements IBuildStep {
 		ProgramSource programSource = programSourceList[0];
 
 		Compiler compiler = submission.requireArtifact(this.getClass(), Compiler.class);
+		CArtifactCache cache = CArtifactCache.getInstance(config);
+		
+		long start = System.currentTimeMillis();
+		boolean success = false;
+		boolean usedHarness = false;
+		
+		// Cached artifacts used by the compilation, which must be released
+		// once it's finished
+		List<CArtifactCache.Artifact> artifactList = new ArrayList<CArtifactCache.Artifact>();
+		try {
+			// If possible, compile just the submitted code and link it with the
+			// compiled test harness.  Coverage results are collected only for
+			// the complete scaffolded program, so don't do this if gcov is enabled.
+			CTestHarness harness = submission.getArtifact(CTestHarness.class);
+			if (harness != null && !PropertyUtil.isEnabled(config, "cloudcoder.builder2.cprog.gcov")) {
+				CArtifactCache.Artifact harnessObject = cache.getTestHarnessObject(compiler, harness);
+				if (harnessObject != null) {
+					artifactList.add(harnessObject);
+					Compiler submissionCompiler =
+							compiler.createCompatibleCompiler(compiler.getWorkDir(), CreateCCompilerBuildStep.DEFAULT_PROG_NAME);
+					submissionCompiler.addModule(CreateCCompilerBuildStep.DEFAULT_PROG_NAME + ".c", harness.getSubmissionSource());
+					submissionCompiler.addObjectFile(harnessObject.getFileName());
+					usePrecompiledHeader(submissionCompiler, harness.getSubmissionSource(), cache, artifactList);
+					success = submissionCompiler.compile();
+					
+					// If the submitted code compiled, but didn't link (for example,
+					// because the tested function was defined in a namespace),
+					// fall back on compiling the complete scaffolded program,
+					// which will produce the appropriate diagnostics
+					if (success || hasErrors(submissionCompiler)) {
+						compiler = submissionCompiler;
+						usedHarness = true;
+					}
+				}
+			}
+			
+			if (!usedHarness) {
+				usePrecompiledHeader(compiler, compiler.getModules().get(0).code, cache, artifactList);
+				success = compiler.compile();
+			}
+		} finally {
+			for (CArtifactCache.Artifact artifact : artifactList) {
+				artifact.release();
+			}
+		}
+		logger.debug("Compiled in {} ms (cached test harness: {})", System.currentTimeMillis() - start, usedHarness);
 		
-		if (!compiler.compile()) {
+		if (!success) {
 			// Compilation failed
 			submission.addArtifact(CUtil.createSubmissionResultFromFailedCompile(
 					compiler,
@@ -72,4 +136,24 @@ public class ExecuteCCompilerBuildStep implements IBuildStep {
 			submission.addArtifact(new NativeExecutable(compiler.getWorkDir(), CreateCCompilerBuildStep.DEFAULT_PROG_NAME));
 		}
 	}
+
+	private void usePrecompiledHeader(Compiler compiler, String code, CArtifactCache cache, List<CArtifactCache.Artifact> artifactList) {
+		List<String> includes = CUtil.getLeadingSystemIncludes(code);
+		if (!includes.isEmpty()) {
+			CArtifactCache.Artifact pch = cache.getPrecompiledHeader(compiler, includes);
+			if (pch != null) {
+				artifactList.add(pch);
+				compiler.setPrecompiledHeader(pch.getFileName());
+			}
+		}
+	}
+
+	private boolean hasErrors(Compiler compiler) {
+		for (CompilerDiagnostic diagnostic : compiler.getCompilerDiagnosticList()) {
+			if (diagnostic.getMessage().startsWith("error")) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
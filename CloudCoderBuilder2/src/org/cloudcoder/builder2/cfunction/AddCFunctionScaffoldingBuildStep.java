@@ -17,12 +17,17 @@
 
 package org.cloudcoder.builder2.cfunction;
 
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.builder.BuilderProtocol;
 import org.cloudcoder.builder2.model.BuilderSubmission;
+import org.cloudcoder.builder2.model.CTestHarness;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
@@ -36,11 +41,28 @@ import org.cloudcoder.builder2.util.StringUtil;
  * or failure.  This is used for {@link ProblemType#C_FUNCTION}
  * submissions.  It works by replacing the {@link ProgramSource}
  * submission artifact with the scaffolded version.
+ * If the submitted code defines the tested function with the same
+ * prototype as the problem's skeleton, it also adds a {@link CTestHarness}
+ * artifact, which allows the scaffolding to be compiled separately from
+ * the submitted code.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
+	/**
+	 * Regex matching the definition of a function, with groups for the
+	 * return type (and any other specifiers) and the parameter list.
+	 * The name of the function must be inserted (see {@link #findPrototype(String, String)}).
+	 */
+	private static final String FUNCTION_DEFINITION_REGEX =
+			"^([A-Za-z_][\\w\\s\\*&:<>,]*?[\\s\\*&])%s\\s*(\\([^;{}]*\\))\\s*\\{";
+	
+	/**
+	 * Regex matching keywords that prevent the tested function from
+	 * being called from a separate translation unit.
+	 */
+	private static final Pattern NOT_SEPARATELY_CALLABLE = Pattern.compile("\\b(static|inline|template)\\b");
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
@@ -63,13 +85,12 @@ public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
 		int prologueLength = 3;
 		int programTextLength = StringUtil.countLines(programText);
 
-		StringBuilder test = new StringBuilder();
-		test.append("#include <string.h>\n");  // 3 lines of prologue
-		test.append("#include <stdlib.h>\n");
-		test.append("#include <stdio.h>\n");
+		StringBuilder prologue = new StringBuilder();
+		prologue.append("#include <string.h>\n");  // 3 lines of prologue
+		prologue.append("#include <stdlib.h>\n");
+		prologue.append("#include <stdio.h>\n");
 
-		// The program text is the user's function
-		test.append(programText);
+		StringBuilder test = new StringBuilder();
 		test.append("\n");
 
 		// Add equality predicate.
@@ -114,7 +135,10 @@ public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
 		// happen in practice.
 		test.append("  return 99;\n");
 		test.append("}\n");
-		String result = test.toString();
+		String epilogue = test.toString();
+
+		// The program text is the user's function
+		String result = prologue + programText + epilogue;
 		System.out.println(result);
 
 		int epilogueLength = StringUtil.countLines(result) - programTextLength - prologueLength;
@@ -122,6 +146,60 @@ public class AddCFunctionScaffoldingBuildStep implements IBuildStep {
 		// Create new ProgramSource artifact with scaffolded source
 		ProgramSource scaffoldedProgramSource = new ProgramSource(result, prologueLength, epilogueLength);
 		submission.addArtifact(new ProgramSource[]{scaffoldedProgramSource});
+		
+		// If the user's code defines the tested function with the same prototype
+		// as the problem's skeleton, the scaffolding can be compiled separately
+		// from the user's code.  The harness declares the skeleton's prototype,
+		// so it depends only on the exercise, and one compiled harness
+		// is shared by all of the submissions for the exercise.
+		String prototype = findPrototype(problem.getSkeleton(), problem.getTestname());
+		if (prototype != null && prototype.equals(findPrototype(programText, problem.getTestname()))) {
+			String cacheKey = BuilderProtocol.computeProblemHash(problem, Arrays.asList(testCaseList)) + "\n" + prototype;
+			String harnessSource = prologue + prototype + "\n" + epilogue;
+			submission.addArtifact(new CTestHarness(cacheKey, harnessSource, prologue + programText));
+		}
+	}
+
+	/**
+	 * Find the prototype of the tested function by finding its definition
+	 * in the given code.  Whitespace in the prototype is normalized,
+	 * so that prototypes differing only in layout are equal.
+	 * 
+	 * @param programText  the code (the user's code or the problem's skeleton)
+	 * @param functionName the name of the tested function
+	 * @return the prototype, or null if there isn't exactly one definition of
+	 *         the tested function, or if the tested function can't be called
+	 *         from a separate translation unit
+	 */
+	private static String findPrototype(String programText, String functionName) {
+		if (programText == null) {
+			return null;
+		}
+		Pattern functionDefinition = Pattern.compile(
+				String.format(FUNCTION_DEFINITION_REGEX, Pattern.quote(functionName)), Pattern.MULTILINE);
+		Matcher m = functionDefinition.matcher(programText);
+		if (!m.find()) {
+			return null;
+		}
+		String returnType = m.group(1);
+		String params = m.group(2);
+		if (m.find() || NOT_SEPARATELY_CALLABLE.matcher(returnType).find()) {
+			// Overloaded, or not visible outside the user's code
+			return null;
+		}
+		return normalizePrototype(returnType + functionName + params) + ";";
+	}
+	
+	/**
+	 * Normalize whitespace in a prototype: whitespace is collapsed to a
+	 * single space, and removed next to parentheses, commas,
+	 * and pointer/reference declarators.
+	 * 
+	 * @param prototype the prototype
+	 * @return the normalized prototype
+	 */
+	private static String normalizePrototype(String prototype) {
+		return prototype.replaceAll("\\s+", " ").replaceAll(" ?([(),*&]) ?", "$1").trim();
 	}
 
 }
@@ -19,6 +19,7 @@
 package org.cloudcoder.builder2.commandrunner;
 
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import org.cloudcoder.builder2.model.Command;
 import org.cloudcoder.builder2.model.CommandExecutionPreferences;
@@ -29,6 +30,7 @@ import org.cloudcoder.builder2.model.ProcessStatus;
 import org.cloudcoder.builder2.process.LimitedProcessRunner;
 import org.cloudcoder.builder2.process.ProcessRunner;
 import org.cloudcoder.builder2.util.ArrayUtil;
+import org.cloudcoder.builder2.util.ExecutionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,16 +49,11 @@ public class CommandExecutor implements Runnable {
 	private CommandInput commandInput;
 	private Properties config;
 	private CommandExecutionPreferences prefs;
+	private long deadline;
 	
-	private Thread thread;
+	private Future<?> future;
 	private CommandResult commandResult;
 
-	/**
-	 * Number of milliseconds between polls to see if a test case
-	 * process has completed.
-	 */
-	public static final int POLL_INTERVAL_IN_MILLIS = 500;
-
 	/**
 	 * Maximum number of seconds (wall time) to allow a command process to run
 	 * by default.
@@ -74,6 +71,7 @@ public class CommandExecutor implements Runnable {
 		this.command = command;
 		this.commandInput = commandInput;
 		this.config = config;
+		this.deadline = Long.MAX_VALUE;
 	}
 	
 	/**
@@ -85,6 +83,18 @@ public class CommandExecutor implements Runnable {
 		this.prefs = prefs;
 	}
 
+	/**
+	 * Set the deadline for the {@link Command} to complete: if the
+	 * deadline passes before the command starts, it won't be started,
+	 * and if it passes while the command is running, the command
+	 * will be killed.
+	 * 
+	 * @param deadline the deadline, as a {@link System#currentTimeMillis()} value
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
 	/**
 	 * @return the testCase
 	 */
@@ -97,6 +107,12 @@ public class CommandExecutor implements Runnable {
 	 */
 	@Override
 	public void run() {
+		if (System.currentTimeMillis() >= deadline) {
+			// Waited too long for an execution slot
+			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, "Deadline for testing submission passed");
+			return;
+		}
+
 		int maxWaitTimeSec;
 		
 		ProcessRunner processRunner;
@@ -119,18 +135,18 @@ public class CommandExecutor implements Runnable {
 		String[] cmd = ArrayUtil.toArray(command.getArgs(), String.class);
 		processRunner.runAsynchronous(command.getDir(), cmd);
 
-		int elapsed = 0;
-		while (processRunner.isRunning() && elapsed < maxWaitTimeSec * 1000) {
-			try {
-				Thread.sleep(CommandExecutor.POLL_INTERVAL_IN_MILLIS);
-			} catch (InterruptedException e) {
-				// can't happen
-			}
-
-			elapsed += CommandExecutor.POLL_INTERVAL_IN_MILLIS;
+		// Wait for the process to complete, but not past the
+		// maximum wait time or the submission deadline
+		long timeout = Math.min(System.currentTimeMillis() + maxWaitTimeSec * 1000L, deadline);
+		boolean completed;
+		try {
+			completed = processRunner.waitForCompletion(timeout - System.currentTimeMillis());
+		} catch (InterruptedException e) {
+			// The builder is shutting down
+			completed = false;
 		}
 
-		if (processRunner.isRunning()) {
+		if (!completed) {
 			// timed out!
 			processRunner.killProcess();
 			commandResult = new CommandResult(ProcessStatus.TIMED_OUT, processRunner.getStatusMessage());
@@ -150,11 +166,11 @@ public class CommandExecutor implements Runnable {
 	}
 
 	/**
-	 * Start executing the {@link Command}.
+	 * Start executing the {@link Command}: it will be executed by the
+	 * {@link ExecutionService} when an execution slot is available.
 	 */
 	public void start() {
-		thread = new Thread(this);
-		thread.start();
+		future = ExecutionService.getInstance(config).executeCommand(this);
 	}
 
 	/**
@@ -165,7 +181,7 @@ public class CommandExecutor implements Runnable {
 		int numAttempts = 0;
 		while (!done && numAttempts < MAX_TEST_EXECUTOR_JOIN_ATTEMPTS) {
 			try {
-				thread.join();
+				ExecutionService.join(future);
 				done = true;
 			} catch (InterruptedException e) {
 				logger.error("test executor interrupted unexpectedly");
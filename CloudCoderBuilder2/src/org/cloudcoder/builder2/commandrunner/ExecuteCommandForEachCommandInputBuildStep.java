@@ -26,6 +26,7 @@ import org.cloudcoder.builder2.model.CommandExecutionPreferences;
 import org.cloudcoder.builder2.model.CommandInput;
 import org.cloudcoder.builder2.model.CommandResult;
 import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.util.ExecutionService;
 
 /**
  * An {@link IBuildStep} to execute a {@link Command} for each {@link CommandInput}
@@ -45,13 +46,17 @@ public class ExecuteCommandForEachCommandInputBuildStep implements IBuildStep {
 		// See if there is a CommandExecutionPreferences
 		CommandExecutionPreferences prefs = submission.getArtifact(CommandExecutionPreferences.class);
 		
-		// Create and start a CommandExecutor for each CommandInput
+		// Create and start a CommandExecutor for each CommandInput.
+		// The CommandExecutors will be run as execution slots become available,
+		// but all of them must complete by the submission deadline.
+		long deadline = ExecutionService.getInstance(config).getSubmissionDeadline();
 		CommandExecutor[] commandExecutorList = new CommandExecutor[commandInputList.length];
 		for (int i = 0; i < commandInputList.length; i++) {
 			commandExecutorList[i] = new CommandExecutor(commandList[i], commandInputList[i], config);
 			if (prefs != null) {
 				commandExecutorList[i].setPrefs(prefs);
 			}
+			commandExecutorList[i].setDeadline(deadline);
 			commandExecutorList[i].start();
 		}
 		
@@ -18,7 +18,6 @@
 
 package org.cloudcoder.builder2.javacompiler;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -26,10 +25,9 @@ import java.util.List;
 
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
-import javax.tools.JavaCompiler;
 import javax.tools.JavaCompiler.CompilationTask;
 import javax.tools.JavaFileObject;
-import javax.tools.ToolProvider;
+import javax.tools.StandardJavaFileManager;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
@@ -46,18 +44,20 @@ public class InMemoryJavaCompiler
 {
 	private static final Logger logger=LoggerFactory.getLogger(InMemoryJavaCompiler.class);
 
+	private JavaCompilerService compilerService;
 	private MemoryFileManager fm;
-	private JavaCompiler compiler;
 	private CompilationResult compileResult;
 	private List<JavaFileObject> sources;
 	private String extraClasspath;
 
 	/**
 	 * Constructor.
+	 * 
+	 * @param compilerService the {@link JavaCompilerService} providing the
+	 *                        compiler and file managers to use
 	 */
-	public InMemoryJavaCompiler() {
-		compiler = ToolProvider.getSystemJavaCompiler();
-		fm = new MemoryFileManager(compiler.getStandardFileManager(null, null, null));
+	public InMemoryJavaCompiler(JavaCompilerService compilerService) {
+		this.compilerService = compilerService;
 		sources = new ArrayList<JavaFileObject>();
 	}
 	
@@ -93,17 +93,21 @@ public class InMemoryJavaCompiler
 		
 		// Prepare compiler options.
 		// We use this opportunity to set the classpath.
-		StringBuilder fullClasspath = new StringBuilder();
-		fullClasspath.append(System.getProperty("java.class.path"));
-		if (extraClasspath != null) {
-			fullClasspath.append(File.pathSeparatorChar);
-			fullClasspath.append(extraClasspath);
-		}
-		List<String> options = Arrays.asList("-classpath", fullClasspath.toString());
+		List<String> options = Arrays.asList("-classpath", compilerService.getClasspath(extraClasspath));
 		
-		CompilationTask task = compiler.getTask(null, fm, collector, options, null, sources);
+		// Compiled classes are kept in memory: the underlying file manager
+		// is only used to find classes on the classpath, so it can be reused
+		StandardJavaFileManager standardFileManager = compilerService.acquireFileManager();
+		boolean success;
+		try {
+			fm = new MemoryFileManager(standardFileManager);
+			CompilationTask task = compilerService.getCompiler().getTask(null, fm, collector, options, null, sources);
+			success = task.call();
+		} finally {
+			compilerService.releaseFileManager(standardFileManager);
+		}
 		
-		if (!task.call()) {
+		if (!success) {
 			// Compiler error
 			compileResult=new CompilationResult(CompilationOutcome.FAILURE);
 			List<CompilerDiagnostic> diagnosticList=new LinkedList<CompilerDiagnostic>();
@@ -126,7 +130,7 @@ public class InMemoryJavaCompiler
 
 	/**
 	 * Get the {@link MemoryFileManager} that is keeping track of sources
-	 * and compiled classes.
+	 * and compiled classes.  Only valid after {@link #compile()} has been called.
 	 * 
 	 * @return the {@link MemoryFileManager}
 	 */
@@ -23,14 +23,19 @@ import java.util.Map;
 import java.util.Properties;
 
 import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.Bytecode;
 import org.cloudcoder.builder2.model.ExternalLibrary;
 import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.ISubmissionResultHook;
 import org.cloudcoder.builder2.model.InternalBuilderException;
+import org.cloudcoder.builder2.model.JavaTestDriver;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.ArrayUtil;
 import org.cloudcoder.builder2.util.SubmissionResultUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Build step to compile Java source files (from the array of
@@ -40,10 +45,20 @@ import org.cloudcoder.builder2.util.SubmissionResultUtil;
  * that record the name of the package and class name in the
  * source file(s), one for each {@link ProgramSource}.
  * 
+ * <p>
+ * If there is a {@link JavaTestDriver} artifact, it is compiled along
+ * with the source files, unless a compiled version of it is cached by the
+ * {@link JavaCompilerService} and the tested class compiled
+ * from the source files is compatible with it.
+ * The time taken to compile, and whether a cached test driver was used,
+ * are recorded as {@link SubmissionResultAnnotation}s.
+ * </p>
+ * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class JavaCompilerBuildStep implements IBuildStep {
+	private static final Logger logger = LoggerFactory.getLogger(JavaCompilerBuildStep.class);
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
@@ -66,19 +81,57 @@ public class JavaCompilerBuildStep implements IBuildStep {
 		
 		submission.addArtifact(packageAndClassNamesList);
 
-		// Attempt to compile the program
-		InMemoryJavaCompiler compiler = getJavaCompiler(submission);
-		for (int i = 0; i < programSourceList.length; i++) {
-			compiler.addSourceFile(packageAndClassNamesList[i].getFullyQualifiedClassName(), programSourceList[i].getProgramText());
+		JavaCompilerService compilerService = JavaCompilerService.getInstance(config);
+		JavaTestDriver testDriver = submission.getArtifact(JavaTestDriver.class);
+		long start = System.currentTimeMillis();
+		
+		Map<String, byte[]> compiledClasses = null;
+		boolean usedCachedTestDriver = false;
+		
+		// If the test driver has already been compiled, try compiling
+		// just the source files
+		JavaCompilerService.CompiledTestDriver compiledTestDriver =
+				(testDriver != null) ? compilerService.getCompiledTestDriver(testDriver) : null;
+		if (compiledTestDriver != null) {
+			InMemoryJavaCompiler compiler = getJavaCompiler(submission, compilerService);
+			addSourceFiles(compiler, programSourceList, packageAndClassNamesList);
+			if (!compiler.compile()) {
+				addCompilationFailureResult(submission, compiler);
+				return;
+			}
+			compiledClasses = compiler.getFileManager().getClasses();
+			String testedClassSignature = compilerService.getTestedClassSignature(testDriver, compiledClasses);
+			if (compiledTestDriver.getTestedClassSignature().equals(testedClassSignature)) {
+				compiledClasses.putAll(compiledTestDriver.getClasses());
+				usedCachedTestDriver = true;
+			} else {
+				// The tested class isn't compatible with the cached test driver
+				// (e.g., the tested method has a different signature),
+				// so the test driver must be compiled against it
+				compiledClasses = null;
+			}
 		}
-		if (!compiler.compile()) {
-			SubmissionResult result = new SubmissionResult(compiler.getCompileResult());
-			submission.addArtifact(result);
-			return;
+		
+		// Attempt to compile the program (and the test driver, if there is one)
+		if (compiledClasses == null) {
+			InMemoryJavaCompiler compiler = getJavaCompiler(submission, compilerService);
+			if (testDriver != null) {
+				compiler.addSourceFile(testDriver.getClassName(), testDriver.getProgramText());
+			}
+			addSourceFiles(compiler, programSourceList, packageAndClassNamesList);
+			if (!compiler.compile()) {
+				addCompilationFailureResult(submission, compiler);
+				return;
+			}
+			compiledClasses = compiler.getFileManager().getClasses();
+			if (testDriver != null) {
+				compilerService.putCompiledTestDriver(testDriver, compiledClasses);
+			}
 		}
 		
+		addCompilationAnnotations(submission, System.currentTimeMillis() - start, testDriver != null ? usedCachedTestDriver : null);
+		
 		// Create Bytecode artifacts for each compiled class
-		Map<String, byte[]> compiledClasses = compiler.getFileManager().getClasses();
 		List<Bytecode> bytecodeList = new ArrayList<Bytecode>();
 		for (Map.Entry<String, byte[]> entry : compiledClasses.entrySet()) {
 			String clsName = entry.getKey();
@@ -93,8 +146,40 @@ public class JavaCompilerBuildStep implements IBuildStep {
 		submission.addArtifact(bytecodeArray);
 	}
 
-	public InMemoryJavaCompiler getJavaCompiler(BuilderSubmission submission) {
-		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler();
+	private void addSourceFiles(InMemoryJavaCompiler compiler, ProgramSource[] programSourceList,
+			FindJavaPackageAndClassNames[] packageAndClassNamesList) {
+		for (int i = 0; i < programSourceList.length; i++) {
+			compiler.addSourceFile(packageAndClassNamesList[i].getFullyQualifiedClassName(), programSourceList[i].getProgramText());
+		}
+	}
+
+	private void addCompilationFailureResult(BuilderSubmission submission, InMemoryJavaCompiler compiler) {
+		SubmissionResult result = new SubmissionResult(compiler.getCompileResult());
+		submission.addArtifact(result);
+	}
+
+	private void addCompilationAnnotations(BuilderSubmission submission, final long compileTimeMillis, final Boolean usedCachedTestDriver) {
+		logger.debug("Compiled in {} ms (cached test driver: {})", compileTimeMillis, usedCachedTestDriver);
+		
+		submission.addSubmissionResultHook(new ISubmissionResultHook() {
+			@Override
+			public void invoke(SubmissionResult result) {
+				SubmissionResultAnnotation annotation = new SubmissionResultAnnotation();
+				annotation.setKey("JavaCompileTimeMillis");
+				annotation.setValue(String.valueOf(compileTimeMillis));
+				result.addAnnotation(annotation);
+				if (usedCachedTestDriver != null) {
+					SubmissionResultAnnotation annotation2 = new SubmissionResultAnnotation();
+					annotation2.setKey("JavaTestDriverCached");
+					annotation2.setValue(usedCachedTestDriver.toString());
+					result.addAnnotation(annotation2);
+				}
+			}
+		});
+	}
+
+	public InMemoryJavaCompiler getJavaCompiler(BuilderSubmission submission, JavaCompilerService compilerService) {
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler(compilerService);
 		
 		// If an ExternalLibrary is required, then make sure it's on the classpath
 		ExternalLibrary extlib = submission.getArtifact(ExternalLibrary.class);
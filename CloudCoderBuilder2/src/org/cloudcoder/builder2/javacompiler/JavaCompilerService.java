@@ -0,0 +1,279 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.javacompiler;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.cloudcoder.builder2.model.JavaTestDriver;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Long-lived Java compiler service shared by all of the builder threads
+ * in a builder process.  It avoids work that used to be repeated for every
+ * submission: the {@link JavaCompiler} is looked up once, file managers
+ * (which cache the contents of the jar files on the classpath) are pooled
+ * and reused, and the classpath is computed once.  It also caches compiled
+ * test drivers (see {@link JavaTestDriver}), so that only the submitted
+ * code needs to be compiled.
+ * 
+ * <p>
+ * The maximum number of compiled test drivers to cache is
+ * <code>cloudcoder.builder2.javaTestDriverCacheSize</code>
+ * (default {@value #DEFAULT_TEST_DRIVER_CACHE_SIZE}).
+ * </p>
+ */
+public class JavaCompilerService {
+	private static final Logger logger = LoggerFactory.getLogger(JavaCompilerService.class);
+	
+	/** Default number of compiled test drivers to cache. */
+	public static final int DEFAULT_TEST_DRIVER_CACHE_SIZE = 64;
+
+	private static final SingletonHolder<JavaCompilerService, Properties> holder = new SingletonHolder<JavaCompilerService, Properties>() {
+		@Override
+		protected JavaCompilerService onCreate(Properties arg) {
+			return new JavaCompilerService(arg);
+		}
+	};
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static JavaCompilerService getInstance(Properties config) {
+		return holder.get(config);
+	}
+	
+	/**
+	 * A compiled test driver.
+	 */
+	public static class CompiledTestDriver {
+		private final Map<String, byte[]> classes;
+		private final String testedClassSignature;
+		
+		CompiledTestDriver(Map<String, byte[]> classes, String testedClassSignature) {
+			this.classes = classes;
+			this.testedClassSignature = testedClassSignature;
+		}
+		
+		/**
+		 * @return map of class names to bytecode for the test driver class(es)
+		 */
+		public Map<String, byte[]> getClasses() {
+			return classes;
+		}
+		
+		/**
+		 * @return the signature of the tested class (as computed by
+		 *         {@link JavaCompilerService#getTestedClassSignature(JavaTestDriver, Map)})
+		 *         the test driver was compiled against
+		 */
+		public String getTestedClassSignature() {
+			return testedClassSignature;
+		}
+	}
+
+	private final JavaCompiler compiler;
+	private final String systemClasspath;
+	private final LinkedList<StandardJavaFileManager> idleFileManagers;
+	private final LinkedHashMap<String, CompiledTestDriver> testDriverCache;
+	
+	private JavaCompilerService(Properties config) {
+		this.compiler = ToolProvider.getSystemJavaCompiler();
+		this.systemClasspath = System.getProperty("java.class.path");
+		this.idleFileManagers = new LinkedList<StandardJavaFileManager>();
+		final int maxCachedTestDrivers = Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.javaTestDriverCacheSize", String.valueOf(DEFAULT_TEST_DRIVER_CACHE_SIZE)));
+		this.testDriverCache = new LinkedHashMap<String, CompiledTestDriver>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledTestDriver> eldest) {
+				return size() > maxCachedTestDrivers;
+			}
+		};
+	}
+	
+	/**
+	 * Compile a trivial class, so that the compiler classes are loaded
+	 * and a file manager has indexed the classpath before the first
+	 * submission is compiled.
+	 */
+	public void warmUp() {
+		long start = System.currentTimeMillis();
+		InMemoryJavaCompiler compiler = new InMemoryJavaCompiler(this);
+		compiler.addSourceFile("WarmUp", "public class WarmUp { public String toString() { return \"\" + hashCode(); } }");
+		if (!compiler.compile()) {
+			logger.warn("Could not compile warm-up class: {}", compiler.getCompileResult());
+		}
+		logger.info("Java compiler warmed up in {} ms", System.currentTimeMillis() - start);
+	}
+	
+	/**
+	 * @return the {@link JavaCompiler}
+	 */
+	public JavaCompiler getCompiler() {
+		return compiler;
+	}
+	
+	/**
+	 * Get the classpath to use for compilation.
+	 * 
+	 * @param extraClasspath extra classpath entries (null if none)
+	 * @return the classpath
+	 */
+	public String getClasspath(String extraClasspath) {
+		return extraClasspath != null ? systemClasspath + File.pathSeparatorChar + extraClasspath : systemClasspath;
+	}
+
+	/**
+	 * Get a file manager to use for a compilation.
+	 * It must be returned by calling {@link #releaseFileManager(StandardJavaFileManager)}
+	 * when the compilation is complete.  (A file manager may only be used by one
+	 * compilation at a time.)
+	 * 
+	 * @return a file manager
+	 */
+	public StandardJavaFileManager acquireFileManager() {
+		synchronized (idleFileManagers) {
+			if (!idleFileManagers.isEmpty()) {
+				return idleFileManagers.removeFirst();
+			}
+		}
+		return compiler.getStandardFileManager(null, null, null);
+	}
+
+	/**
+	 * Return a file manager obtained from {@link #acquireFileManager()}.
+	 * 
+	 * @param fileManager the file manager
+	 */
+	public void releaseFileManager(StandardJavaFileManager fileManager) {
+		synchronized (idleFileManagers) {
+			idleFileManagers.addFirst(fileManager);
+		}
+	}
+	
+	/**
+	 * Get a cached compiled test driver.
+	 * 
+	 * @param driver the {@link JavaTestDriver}
+	 * @return the {@link CompiledTestDriver}, or null if the test driver isn't cached
+	 */
+	public CompiledTestDriver getCompiledTestDriver(JavaTestDriver driver) {
+		if (driver.getCacheKey() == null) {
+			return null;
+		}
+		synchronized (testDriverCache) {
+			return testDriverCache.get(driver.getCacheKey());
+		}
+	}
+	
+	/**
+	 * Cache a compiled test driver.
+	 * 
+	 * @param driver   the {@link JavaTestDriver}
+	 * @param classes  map of class names to bytecode for all of the classes
+	 *                 compiled along with the test driver
+	 */
+	public void putCompiledTestDriver(JavaTestDriver driver, Map<String, byte[]> classes) {
+		if (driver.getCacheKey() == null) {
+			return;
+		}
+		String testedClassSignature = getTestedClassSignature(driver, classes);
+		if (testedClassSignature == null) {
+			return;
+		}
+		
+		// Keep only the test driver class (and its nested/anonymous classes, if any)
+		Map<String, byte[]> driverClasses = new LinkedHashMap<String, byte[]>();
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			String className = entry.getKey();
+			if (className.equals(driver.getClassName()) || className.startsWith(driver.getClassName() + "$")) {
+				driverClasses.put(className, entry.getValue());
+			}
+		}
+		
+		CompiledTestDriver compiledDriver = new CompiledTestDriver(Collections.unmodifiableMap(driverClasses), testedClassSignature);
+		synchronized (testDriverCache) {
+			testDriverCache.put(driver.getCacheKey(), compiledDriver);
+		}
+	}
+	
+	/**
+	 * Compute the signature of the tested class: everything about it that
+	 * the compiled test driver depends on, which are its constructors and
+	 * the tested method (including overloads).  A cached test driver
+	 * may be used with a compiled tested class only if they have the same
+	 * signature.
+	 * 
+	 * @param driver   the {@link JavaTestDriver}
+	 * @param classes  map of class names to bytecode, which must include the tested class
+	 * @return the signature, or null if it can't be determined
+	 */
+	public String getTestedClassSignature(JavaTestDriver driver, Map<String, byte[]> classes) {
+		if (!classes.containsKey(driver.getTestedClassName())) {
+			return null;
+		}
+		
+		// Define (but do not initialize) the class in a throwaway class loader
+		try {
+			ClassLoader loader = new ByteArrayClassLoader(classes);
+			Class<?> cls = Class.forName(driver.getTestedClassName(), false, loader);
+			
+			List<String> members = new ArrayList<String>();
+			for (Constructor<?> ctor : cls.getDeclaredConstructors()) {
+				members.add(ctor.toGenericString());
+			}
+			for (Method method : cls.getDeclaredMethods()) {
+				if (method.getName().equals(driver.getTestedMethodName())) {
+					members.add(method.toGenericString());
+				}
+			}
+			Collections.sort(members);
+			
+			StringBuilder buf = new StringBuilder();
+			buf.append(cls.getModifiers());
+			for (String member : members) {
+				buf.append('\n');
+				buf.append(member);
+			}
+			return buf.toString();
+		} catch (Throwable e) {
+			// Most likely the tested method refers to a class that isn't available
+			logger.debug("Could not determine signature of tested class", e);
+			return null;
+		}
+	}
+}
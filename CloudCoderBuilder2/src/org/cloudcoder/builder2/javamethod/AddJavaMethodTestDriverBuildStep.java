@@ -17,26 +17,34 @@
 
 package org.cloudcoder.builder2.javamethod;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Properties;
+import java.util.regex.Pattern;
 
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.builder.BuilderProtocol;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
-import org.cloudcoder.builder2.model.ProgramSource;
-import org.cloudcoder.builder2.util.ArrayUtil;
+import org.cloudcoder.builder2.model.JavaTestDriver;
 
 /**
  * Add a test driver class to execute all {@link TestCase}s against
  * a scaffolded JAVA_METHOD submission.  This step should be
  * executed <em>after</em> {@link AddJavaMethodScaffoldingBuildStep}.
+ * The test driver is added as a {@link JavaTestDriver} artifact,
+ * so that its compiled form can be reused for other submissions.
  * 
  * @author David Hovemeyer
  */
 public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
+	/**
+	 * Matches the names by which test case inputs and outputs
+	 * (and the equality predicate) could refer to the tested class:
+	 * if they do, the compiled test driver could depend on
+	 * details of the submission, so it must not be reused.
+	 */
+	private static final Pattern TESTED_CLASS_REFERENCE = Pattern.compile("\\b(Test|t)\\b");
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
@@ -49,6 +57,7 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
         // Use the Problem's equality predicate if there is one, otherwise
         // use the default one (which just calls <code>equals</code>.)
         String equalityPredicate = problem.getEqualityPredicate();
+        boolean reusable = !TESTED_CLASS_REFERENCE.matcher(equalityPredicate).find();
         if (equalityPredicate.trim().equals("")) {
         	// Generate the default equality predicate.
 	        tester.append("\tpublic static boolean eq(Object o1, Object o2) { return o1.equals(o2); }\n");
@@ -59,6 +68,9 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
         }
         
         for (TestCase tc : testCaseList) {
+            if (TESTED_CLASS_REFERENCE.matcher(tc.getInput()).find() || TESTED_CLASS_REFERENCE.matcher(tc.getOutput()).find()) {
+                reusable = false;
+            }
             tester.append("\tpublic static Object[] ");
             tester.append(tc.getTestCaseName());
             tester.append("() {\n");
@@ -75,19 +87,10 @@ public class AddJavaMethodTestDriverBuildStep implements IBuildStep {
         tester.append("}");
         String testerCode = tester.toString();
 
-        // Create ProgramSource for test driver
-        ProgramSource testerProgramSource = new ProgramSource(testerCode);
+        // The exercise's content hash identifies the compiled test driver
+        String cacheKey = reusable ? BuilderProtocol.computeProblemHash(problem, Arrays.asList(testCaseList)) : null;
 
-        // Get existing ProgramSource objects
-        ProgramSource[] programSourceList = submission.requireArtifact(this.getClass(), ProgramSource[].class);
-
-		// Build array of all ProgramSource
-		List<ProgramSource> allProgramSourceList = new ArrayList<ProgramSource>();
-		allProgramSourceList.add(testerProgramSource);
-		allProgramSourceList.addAll(Arrays.asList(programSourceList));
-		
-		// Add updated ProgramSource array to submission
-		submission.addArtifact(ArrayUtil.toArray(allProgramSourceList, ProgramSource.class));
+        submission.addArtifact(new JavaTestDriver("Tester", testerCode, "Test", problem.getTestname(), cacheKey));
 	}
 
 }
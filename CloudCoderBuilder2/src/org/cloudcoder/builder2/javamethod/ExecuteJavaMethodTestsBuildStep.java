@@ -38,6 +38,7 @@ import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.LoadedClasses;
+import org.cloudcoder.builder2.util.ExecutionService;
 
 /**
  * Execute {@link ProblemType#JAVA_METHOD} tests and create a
@@ -84,6 +85,7 @@ public class ExecuteJavaMethodTestsBuildStep implements IBuildStep {
                 });
 
         // run each task in a separate thread
+        pool.setExecutionService(ExecutionService.getInstance(config));
         pool.run();
 
         // merge outcomes with their buffered inputs for stdout/stderr
@@ -22,7 +22,10 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import org.cloudcoder.builder2.util.ExecutionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,7 +55,7 @@ public abstract class AbstractKillableTaskManager<T>
     /** List of Outcomes; essentially placeholders objects where tasks will put their results */
     private List<Outcome<T>> results;
     private long maxRunTime;
-    private int numPauses = 5;
+    private ExecutionService executionService;
 
     protected ThreadedPrintStreamMonitor stdOutMonitor;
     protected ThreadedPrintStreamMonitor stdErrMonitor;
@@ -72,7 +75,7 @@ public abstract class AbstractKillableTaskManager<T>
      * before instances of {@link JVMKillableTaskManager} can be created.
      * 
      * @param tasks          tasks to run
-     * @param maxRunTime     maximum time to let any task run
+     * @param maxRunTime     maximum time to let any task run (measured from when the task is started)
      * @param timeoutHandler callback to run if a timeout occurs
      */
     public AbstractKillableTaskManager(List<? extends IsolatedTask<T>> tasks, 
@@ -107,6 +110,17 @@ public abstract class AbstractKillableTaskManager<T>
         this.threadNamePrefix = threadNamePrefix;
     }
 
+    /**
+     * Set the {@link ExecutionService} that limits how many tasks
+     * may execute at the same time, and determines the deadline
+     * for completing all of the tasks.  Must be called before {@link #run()}.
+     * 
+     * @param executionService the {@link ExecutionService}
+     */
+    public void setExecutionService(ExecutionService executionService) {
+        this.executionService = executionService;
+    }
+
     public boolean isFinished(int x) {
         return results.get(x).finished;
     }
@@ -124,46 +138,105 @@ public abstract class AbstractKillableTaskManager<T>
     }
 
     public void run() {
+        if (executionService == null) {
+            throw new IllegalStateException("Must call setExecutionService() before run()");
+        }
+
         // re-direct stdout/stderr to print stream monitors
         // that will buffer the outputs for each thread
         redirectStandardOutputStreams();
 
+        // Each task is started when an execution slot becomes available,
+        // and is allowed to run for maxRunTime from when it was started.
+        // All tasks must complete by the submission deadline.
+        long deadline = executionService.getSubmissionDeadline();
         Thread[] pool=new Thread[tasks.size()];
-        for (int i=0; i<tasks.size(); i++) {
-            IsolatedTask<T> task=tasks.get(i);
-            pool[i]=new WorkerThread<T>(task, results.get(i));
-            pool[i].setDaemon(true);
-            pool[i].start();
+        long[] startTime=new long[tasks.size()];
+        boolean[] holdsSlot=new boolean[tasks.size()];
+        // Released when a task completes, and (while tasks are waiting
+        // to be started) when any execution slot is released
+        Semaphore wakeups=new Semaphore(0);
+        boolean waitingForSlots=tasks.size() > 0;
+        if (waitingForSlots) {
+            executionService.addSlotReleaseListener(wakeups);
         }
+        int numStarted=0;
+        int numRunning=0;
+        try {
+            while (true) {
+                long now=System.currentTimeMillis();
 
-        // now pause a couple of times
-        for (int i=1; i<=numPauses; i++) {
-            if (!pauseAndPoll(maxRunTime/numPauses, pool)) {
-                // we can stop pausing
-                break;
-            }
-        }
+                // Release the slots of finished threads, and kill threads
+                // that have run too long
+                long nextTimeout=deadline;
+                for (int i=0; i<numStarted; i++) {
+                    if (!holdsSlot[i]) {
+                        continue;
+                    }
+                    if (!results.get(i).done) {
+                        long timeout=Math.min(startTime[i]+maxRunTime, deadline);
+                        if (now < timeout) {
+                            // still running
+                            nextTimeout=Math.min(nextTimeout, timeout);
+                            continue;
+                        }
+                        kill(i, pool[i]);
+                    }
+                    holdsSlot[i]=false;
+                    numRunning--;
+                    executionService.releaseSlot();
+                }
 
-        // Go through and kill any threads that haven't finished yet
-        // Also put the buffered output from stdout/stderr into the map
-        for (int i=0; i<pool.length; i++) {
-            Thread t=pool[i];
-            if (t.isAlive()) {
-                //XXX Yes, I know that stop() is deprecated.  
-                //But this is a necessary use of stop!
-                t.stop();
+                // Start as many tasks as there are free slots
+                while (numStarted < tasks.size() && now < deadline && tryAcquireSlot()) {
+                    int i=numStarted++;
+                    pool[i]=new WorkerThread<T>(tasks.get(i), results.get(i), wakeups);
+                    pool[i].setDaemon(true);
+                    startTime[i]=now;
+                    holdsSlot[i]=true;
+                    numRunning++;
+                    pool[i].start();
+                }
 
-                //TODO Log that a thread is being stopped
+                if (waitingForSlots && (numStarted == tasks.size() || now >= deadline)) {
+                    executionService.removeSlotReleaseListener(wakeups);
+                    waitingForSlots=false;
+                }
 
-                // stop the monitors
-                stdOutMonitor.flush(t);
-                stdOutMonitor.close(t);
+                if (numRunning == 0 && (numStarted == tasks.size() || now >= deadline)) {
+                    break;
+                }
 
-                stdErrMonitor.flush(t);
-                stdErrMonitor.close(t);
+                // Wait until a task completes or times out
+                // (or, if tasks are waiting to be started, until
+                // an execution slot is released)
+                awaitWakeup(wakeups, nextTimeout-now);
+            }
+        } finally {
+            if (waitingForSlots) {
+                executionService.removeSlotReleaseListener(wakeups);
+            }
+
+            // Kill any threads still running (should only happen if
+            // this thread was stopped by an unexpected exception),
+            // and make sure that no slots are leaked
+            for (int i=0; i<numStarted; i++) {
+                if (holdsSlot[i]) {
+                    kill(i, pool[i]);
+                    executionService.releaseSlot();
+                }
+            }
+        }
 
-                // handle a timeout
+        // Put the buffered output from stdout/stderr into the map.
+        // Tasks that couldn't be started by the deadline are timeouts.
+        for (int i=0; i<pool.length; i++) {
+            Thread t=pool[i];
+            if (t == null) {
                 results.get(i).result=timeoutHandler.handleTimeout();
+                stdOutMap.put(i, "");
+                stdErrMap.put(i, "");
+                continue;
             }
             stdOutMap.put(i, stdOutMonitor.getBufferedOutput(t));
             stdErrMap.put(i, stdErrMonitor.getBufferedOutput(t));
@@ -173,6 +246,35 @@ public abstract class AbstractKillableTaskManager<T>
         // and Ruby/JRuby
         unredirectStandardOutputStreams();
     }
+
+    /**
+     * Kill a worker thread that hasn't finished, and record a timeout
+     * as its result.
+     * 
+     * @param i  index of the task
+     * @param t  the worker thread executing the task
+     */
+    private void kill(int i, Thread t) {
+        if (!t.isAlive()) {
+            return;
+        }
+
+        //XXX Yes, I know that stop() is deprecated.  
+        //But this is a necessary use of stop!
+        t.stop();
+
+        logger.info("Stopped worker thread {} (task timed out)", t.getName());
+
+        // stop the monitors
+        stdOutMonitor.flush(t);
+        stdOutMonitor.close(t);
+
+        stdErrMonitor.flush(t);
+        stdErrMonitor.close(t);
+
+        // handle a timeout
+        results.get(i).result=timeoutHandler.handleTimeout();
+    }
     
     /**
      * Redirect standard output and standard error.
@@ -192,28 +294,35 @@ public abstract class AbstractKillableTaskManager<T>
     public abstract void redirectStandardOutputStreams();
 
     /**
-     * Pause for a certain amount of time.  Return true if any
-     * of the threads in the given threadpool are still alive,
-     * and false if they are all finished.
-     * @param time
-     * @param pool
-     * @return
+     * Try to acquire an execution slot without waiting.
+     * 
+     * @return true if a slot was acquired, false if not
      */
-    private boolean pauseAndPoll(long time, Thread[] pool) {
+    private boolean tryAcquireSlot() {
         try {
-            Thread.sleep(time);
-            for (Thread t : pool) {
-                if (t.isAlive()) {
-                    return true;
-                }
+            return executionService.acquireSlot(0L);
+        } catch (InterruptedException e) {
+            // should never happen; to be safe, just try again later
+            return false;
+        }
+    }
+
+    /**
+     * Wait for at least one task to complete or execution slot to be
+     * released (or the wait time to expire).
+     * @param wakeups  semaphore released by each task when it completes,
+     *                 and when an execution slot is released
+     * @param waitTime maximum time to wait
+     */
+    private void awaitWakeup(Semaphore wakeups, long waitTime) {
+        try {
+            if (wakeups.tryAcquire(Math.max(0L, waitTime), TimeUnit.MILLISECONDS)) {
+                // several events may have happened
+                wakeups.drainPermits();
             }
         } catch (InterruptedException e) {
-            // should never happen; to be safe, assume a thread may
-            // still be running.
-            return true;
+            // should never happen; we'll just check early
         }
-        // no threads are alive, so we can stop waiting
-        return false;
     }
 
     /**
@@ -255,6 +364,8 @@ public abstract class AbstractKillableTaskManager<T>
         //Outcome() {}
         boolean finished;
         T result;
+        /** set when the worker thread is done with the task, even if it failed */
+        volatile boolean done;
     }
     /**
      * Worker thread takes a given Task, calls its execute() method
@@ -273,6 +384,7 @@ public abstract class AbstractKillableTaskManager<T>
     {
         private IsolatedTask<E> task;
         private Outcome<E> out;
+        private Semaphore completions;
 
         /**
          * Create a thread that executes the given task and puts
@@ -280,12 +392,14 @@ public abstract class AbstractKillableTaskManager<T>
          * 
          * @param task The task to execute
          * @param out The container in which to put the result of the task
+         * @param completions Semaphore to release when the task completes
          */
-        public WorkerThread(IsolatedTask<E> task, Outcome<E> out)
+        public WorkerThread(IsolatedTask<E> task, Outcome<E> out, Semaphore completions)
         {
             super(WORKER_THREAD_GROUP, threadNamePrefix+(numThreads++));
             this.task=task;
             this.out=out;
+            this.completions=completions;
         }
 
         /**
@@ -312,6 +426,8 @@ public abstract class AbstractKillableTaskManager<T>
             } finally {
                 //System.err.println(System.getSecurityManager());
                 //System.out.println(System.getSecurityManager());
+                out.done=true;
+                completions.release();
             }
         }
     }
@@ -0,0 +1,76 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.model;
+
+import org.cloudcoder.app.shared.model.ProblemType;
+
+/**
+ * Test harness for a {@link ProblemType#C_FUNCTION} or
+ * {@link ProblemType#CPLUSPLUS_FUNCTION} submission, split into a
+ * translation unit containing only the submitted code and a
+ * translation unit containing the code that calls the tested function
+ * for each test case.  Because the harness translation unit depends only
+ * on the exercise (it declares the tested function using the prototype
+ * in the problem's skeleton), its compiled form can be cached and linked
+ * with the compiled submission.
+ */
+public class CTestHarness {
+	private final String cacheKey;
+	private final String harnessSource;
+	private final String submissionSource;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param cacheKey          key identifying the compiled harness: must be
+	 *                          determined by the harness source
+	 * @param harnessSource     source of the harness translation unit
+	 * @param submissionSource  source of the submission translation unit
+	 */
+	public CTestHarness(String cacheKey, String harnessSource, String submissionSource) {
+		this.cacheKey = cacheKey;
+		this.harnessSource = harnessSource;
+		this.submissionSource = submissionSource;
+	}
+	
+	/**
+	 * @return key identifying the compiled harness
+	 */
+	public String getCacheKey() {
+		return cacheKey;
+	}
+	
+	/**
+	 * @return source of the harness translation unit
+	 */
+	public String getHarnessSource() {
+		return harnessSource;
+	}
+	
+	/**
+	 * Get the source of the submission translation unit.
+	 * It has the same prologue as the complete scaffolded
+	 * {@link ProgramSource}, so compiler diagnostics can be
+	 * adjusted in the same way.
+	 * 
+	 * @return source of the submission translation unit
+	 */
+	public String getSubmissionSource() {
+		return submissionSource;
+	}
+}
@@ -0,0 +1,92 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.model;
+
+/**
+ * Source code of a generated Java test driver class, which executes
+ * test cases by calling a method of the class being tested.
+ * Because the test driver depends only on the exercise, its compiled
+ * form can be cached and reused for other submissions, provided that
+ * the tested class has the same constructors and tested method
+ * (see {@link #getCacheKey()}).
+ */
+public class JavaTestDriver {
+	private final String className;
+	private final String programText;
+	private final String testedClassName;
+	private final String testedMethodName;
+	private final String cacheKey;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param className         the name of the test driver class
+	 * @param programText       the source code of the test driver class
+	 * @param testedClassName   the name of the tested class
+	 * @param testedMethodName  the name of the tested method
+	 * @param cacheKey          the key identifying the compiled test driver, or null
+	 *                          if it must not be reused
+	 */
+	public JavaTestDriver(String className, String programText, String testedClassName, String testedMethodName, String cacheKey) {
+		this.className = className;
+		this.programText = programText;
+		this.testedClassName = testedClassName;
+		this.testedMethodName = testedMethodName;
+		this.cacheKey = cacheKey;
+	}
+	
+	/**
+	 * @return the name of the test driver class
+	 */
+	public String getClassName() {
+		return className;
+	}
+	
+	/**
+	 * @return the source code of the test driver class
+	 */
+	public String getProgramText() {
+		return programText;
+	}
+	
+	/**
+	 * @return the name of the tested class
+	 */
+	public String getTestedClassName() {
+		return testedClassName;
+	}
+	
+	/**
+	 * @return the name of the tested method
+	 */
+	public String getTestedMethodName() {
+		return testedMethodName;
+	}
+	
+	/**
+	 * Get the key identifying the compiled test driver (the exercise's
+	 * content hash).  This is null if the test driver refers to the
+	 * tested class other than by constructing it and calling the tested
+	 * method, in which case it isn't safe to reuse the compiled test driver.
+	 * 
+	 * @return the cache key, or null if the compiled test driver must not be reused
+	 */
+	public String getCacheKey() {
+		return cacheKey;
+	}
+}
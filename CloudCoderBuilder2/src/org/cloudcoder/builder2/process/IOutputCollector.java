@@ -19,6 +19,8 @@ package org.cloudcoder.builder2.process;
 
 import java.util.List;
 
+import org.cloudcoder.builder2.util.ExecutionService;
+
 /**
  * Interface implemented by objects that collect text output
  * from a running process.
@@ -28,16 +30,18 @@ import java.util.List;
 public interface IOutputCollector {
 	/**
 	 * Start collecting output (asynchronously).
+	 * 
+	 * @param executionService the {@link ExecutionService} providing the thread that collects output
 	 */
-	public abstract void start();
+	public abstract void start(ExecutionService executionService);
 
 	/**
-	 * Interrupt the thread that is collecting output.
+	 * Interrupt the task that is collecting output.
 	 */
 	public abstract void interrupt();
 
 	/**
-	 * Wait for output collector thread to finish.
+	 * Wait for the task that is collecting output to finish.
 	 * 
 	 * @throws InterruptedException
 	 */
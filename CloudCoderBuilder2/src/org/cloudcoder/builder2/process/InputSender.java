@@ -21,8 +21,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
+import org.cloudcoder.builder2.util.ExecutionService;
 
 /**
  * Send text to a process as its standard input (stdin).
@@ -32,7 +34,7 @@ import org.apache.commons.io.IOUtils;
 public class InputSender {
 	private OutputStream outputStream;
 	private String stdin;
-	private Thread writerThread;
+	private Future<?> sendTask;
 	private OutputStreamWriter writer;
 
 	/**
@@ -47,13 +49,15 @@ public class InputSender {
 	}
 
 	/**
-	 * Start a thread to send text to the stdin of the process.
+	 * Start a task to send text to the stdin of the process.
+	 * 
+	 * @param executionService the {@link ExecutionService} providing the thread that sends the text
 	 */
-	public void start() {
+	public void start(ExecutionService executionService) {
 		Charset utf8 = Charset.forName("UTF-8");
 		this.writer = new OutputStreamWriter(outputStream, utf8);
 		
-		this.writerThread = new Thread(new Runnable() {
+		this.sendTask = executionService.executeHelper(new Runnable() {
 			/* (non-Javadoc)
 			 * @see java.lang.Runnable#run()
 			 */
@@ -72,17 +76,15 @@ public class InputSender {
 				}
 			}
 		});
-		
-		this.writerThread.start();
 	}
 
 	/**
-	 * Wait for the InputSender's thread to complete.
+	 * Wait for the InputSender's task to complete.
 	 * 
 	 * @throws InterruptedException 
 	 */
 	public void join() throws InterruptedException {
-		writerThread.join();
+		ExecutionService.join(sendTask);
 	}
 
 	/**
@@ -90,11 +92,11 @@ public class InputSender {
 	 */
 	public void interrupt() {
 		// Try to force writer to close (if it hasn't closed already).
-		// This should ensure that the writer thread will exit.
+		// This should ensure that the writer task will finish.
 		IOUtils.closeQuietly(writer);
 		
-		// And, just in case the thread is blocked on some interruptable
+		// And, just in case the task is blocked on some interruptable
 		// action (sleep, wait, etc.), interrupt it.
-		writerThread.interrupt();
+		sendTask.cancel(true);
 	}
 }
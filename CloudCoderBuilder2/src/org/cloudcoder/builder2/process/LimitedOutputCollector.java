@@ -24,8 +24,10 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
+import org.cloudcoder.builder2.util.ExecutionService;
 
 /**
  * IOutputCollector implementation that captures only a limited amount
@@ -51,7 +53,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 	
 	private InputStream in;
 	private Reader reader;
-	private Thread thread;
+	private Future<?> future;
 	private List<String> collectedLines;
 	
 	/**
@@ -96,7 +98,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 	 * @see org.cloudcoder.submitsvc.oop.builder.IOutputCollector#start()
 	 */
 	@Override
-	public void start() {
+	public void start(ExecutionService executionService) {
 		Runnable runnable = new Runnable() {
 			/* (non-Javadoc)
 			 * @see java.lang.Runnable#run()
@@ -143,8 +145,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 				}
 			}
 		};
-		thread = new Thread(runnable);
-		thread.start();
+		future = executionService.executeHelper(runnable);
 	}
 
 	/* (non-Javadoc)
@@ -152,7 +153,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void interrupt() {
-		thread.interrupt();
+		future.cancel(true);
 	}
 
 	/* (non-Javadoc)
@@ -160,7 +161,7 @@ public class LimitedOutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void join() throws InterruptedException {
-		thread.join();
+		ExecutionService.join(future);
 	}
 
 	/* (non-Javadoc)
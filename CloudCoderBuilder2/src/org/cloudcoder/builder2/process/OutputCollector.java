@@ -24,8 +24,10 @@ import java.io.InputStreamReader;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
+import org.cloudcoder.builder2.util.ExecutionService;
 
 /**
  * Start a thread to collect all of the data from a given
@@ -34,7 +36,7 @@ import org.apache.commons.io.IOUtils;
  */
 public class OutputCollector implements IOutputCollector {
 	private InputStream inputStream;
-	private Thread readerThread;
+	private Future<?> reader;
 	private List<String> collectedOutput;
 	
 	/* (non-Javadoc)
@@ -42,7 +44,7 @@ public class OutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void interrupt() {
-	    readerThread.interrupt();
+	    reader.cancel(true);
 	}
 
 	public OutputCollector(InputStream inputStream) {
@@ -54,8 +56,8 @@ public class OutputCollector implements IOutputCollector {
 	 * @see org.cloudcoder.submitsvc.oop.builder.IOutputCollector#start()
 	 */
 	@Override
-	public void start() {
-		readerThread = new Thread(new Runnable() {
+	public void start(ExecutionService executionService) {
+		reader = executionService.executeHelper(new Runnable() {
 			@Override
 			public void run() {
 				BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
@@ -74,8 +76,6 @@ public class OutputCollector implements IOutputCollector {
 				}
 			}
 		});
-
-		readerThread.start();
 	}
 
 	/* (non-Javadoc)
@@ -91,7 +91,7 @@ public class OutputCollector implements IOutputCollector {
 	 */
 	@Override
 	public void join() throws InterruptedException {
-		readerThread.join();
+		ExecutionService.join(reader);
 	}
 
 }
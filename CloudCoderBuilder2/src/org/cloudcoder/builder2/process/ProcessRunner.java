@@ -30,10 +30,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.io.IOUtils;
 import org.cloudcoder.builder2.model.ProcessStatus;
 import org.cloudcoder.builder2.model.WrapperMode;
+import org.cloudcoder.builder2.util.ExecutionService;
 import org.cloudcoder.builder2.util.ProcessUtil;
 import org.cloudcoder.builder2.util.StringUtil;
 import org.slf4j.Logger;
@@ -50,6 +55,7 @@ public class ProcessRunner {
 	private static final Logger logger=LoggerFactory.getLogger(ProcessRunner.class);
     
 	private Properties config;
+	private ExecutionService executionService;
 	private WrapperMode wrapperMode;
 	
 	private String statusMessage = "";
@@ -59,7 +65,7 @@ public class ProcessRunner {
 	private ProcessStatus status;
 	
 	private volatile Process process;
-	private Thread exitValueMonitor;
+	private Future<?> exitValueMonitor;
 	private String stdin;
 	private IOutputCollector stdoutCollector;
 	private IOutputCollector stderrCollector;
@@ -74,6 +80,7 @@ public class ProcessRunner {
 	 */
 	public ProcessRunner(Properties config) {
 		this.config = config;
+		this.executionService = ExecutionService.getInstance(config);
 		this.wrapperMode = WrapperMode.SCRIPT;
 		env = new HashMap<String, String>(System.getenv());
 	    status = ProcessStatus.UNKNOWN;
@@ -163,14 +170,14 @@ public class ProcessRunner {
 			// Collect process output
 			stdoutCollector = createOutputCollector(process.getInputStream());
 			stderrCollector = createOutputCollector(process.getErrorStream());
-			stdoutCollector.start();
-			stderrCollector.start();
+			stdoutCollector.start(executionService);
+			stderrCollector.start(executionService);
 
 			// If stdin was provided, send it
 			if (stdin != null) {
 				//System.out.println("Creating InputSender for input: " + stdin);
 				stdinSender = new InputSender(process.getOutputStream(), stdin);
-				stdinSender.start();
+				stdinSender.start(executionService);
 			}
 
 			// wait for process and output collector threads to finish
@@ -291,12 +298,31 @@ public class ProcessRunner {
 	}
 
 	public void runAsynchronous(final File workingDir, final String... command) {
-	    exitValueMonitor=new Thread() {
+	    exitValueMonitor=executionService.executeHelper(new Runnable() {
 	        public void run() {
 	            runSynchronous(workingDir, command);
 	        }
-	    };
-	    exitValueMonitor.start();
+	    });
+	}
+
+	/**
+	 * Wait for a process started by {@link #runAsynchronous(File, String...)}
+	 * to complete (and for its output to be collected).
+	 * 
+	 * @param timeoutMillis maximum number of milliseconds to wait
+	 * @return true if the process completed, false if the timeout expired
+	 * @throws InterruptedException
+	 */
+	public boolean waitForCompletion(long timeoutMillis) throws InterruptedException {
+		try {
+			exitValueMonitor.get(Math.max(0L, timeoutMillis), TimeUnit.MILLISECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (ExecutionException e) {
+			logger.error("Exception running process", e.getCause());
+			return true;
+		}
 	}
 	
 	/**
@@ -371,6 +397,10 @@ public class ProcessRunner {
 	 * @return the standard output written by the process as a List of strings
 	 */
 	public List<String> getStdoutAsList() {
+		if (stdoutCollector == null) {
+			// process could not be executed
+			return Collections.emptyList();
+		}
 		return stdoutCollector.getCollectedOutput();
 	}
 
@@ -388,7 +418,7 @@ public class ProcessRunner {
 		// Special case: if the process was killed because it exceeded
 		// a resource limit, its stderr is probably not useful.
 		ProcessStatus status = getStatus();
-		if (status == ProcessStatus.TIMED_OUT || status == ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED) {
+		if (stderrCollector == null || status == ProcessStatus.TIMED_OUT || status == ProcessStatus.FILE_SIZE_LIMIT_EXCEEDED) {
 			return Collections.emptyList();
 		} else {
 			return stderrCollector.getCollectedOutput();
@@ -0,0 +1,337 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.pythonfunction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of initialized Jython system states, so that testing a
+ * {@link org.cloudcoder.app.shared.model.ProblemType#PYTHON_FUNCTION}
+ * submission doesn't pay the cost of starting a new interpreter.
+ * Each pooled {@link PySystemState} has its own <code>sys.modules</code>,
+ * <code>sys.path</code>, etc.  Each submission gets a new
+ * {@link PythonInterpreter} (with a new <code>__main__</code> module)
+ * using a pooled system state.
+ * 
+ * <p>
+ * When an interpreter is returned to the pool, modules imported by the
+ * submission are removed, and the state is compared with a snapshot taken
+ * when the system state was created: the modules in <code>sys.modules</code>,
+ * the top-level attributes of each module (including <code>__builtin__</code>),
+ * and the important attributes of <code>sys</code>.  If anything was
+ * modified, the system state is discarded.
+ * </p>
+ * 
+ * <p>
+ * The pool is enabled by the <code>cloudcoder.builder2.python.interpreterPool</code>
+ * property (default true).  The maximum number of idle system states is
+ * <code>cloudcoder.builder2.python.interpreterPoolSize</code>
+ * (default {@value #DEFAULT_POOL_SIZE}), and the number created
+ * in advance is <code>cloudcoder.builder2.python.interpreterPoolPrestart</code>
+ * (default {@value #DEFAULT_PRESTART}).
+ * </p>
+ */
+public class PythonInterpreterPool {
+	private static final Logger logger = LoggerFactory.getLogger(PythonInterpreterPool.class);
+	
+	/** Default maximum number of idle system states. */
+	public static final int DEFAULT_POOL_SIZE = 4;
+	
+	/** Default number of system states to create in advance. */
+	public static final int DEFAULT_PRESTART = 1;
+	
+	/**
+	 * Name of the module that each new {@link PythonInterpreter} replaces.
+	 */
+	private static final String MAIN_MODULE = "__main__";
+	
+	/**
+	 * Attributes of <code>sys</code> that must not be modified
+	 * by a submission.
+	 */
+	private static final String[] SYS_ATTRIBUTES = {
+		"modules", "path", "meta_path", "path_hooks", "path_importer_cache",
+		"stdin", "stdout", "stderr", "displayhook", "excepthook", "exitfunc", "builtins",
+	};
+	
+	private static final SingletonHolder<PythonInterpreterPool, Properties> holder = new SingletonHolder<PythonInterpreterPool, Properties>() {
+		@Override
+		protected PythonInterpreterPool onCreate(Properties arg) {
+			return new PythonInterpreterPool(arg);
+		}
+	};
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static PythonInterpreterPool getInstance(Properties config) {
+		return holder.get(config);
+	}
+	
+	/**
+	 * Determine whether the pool is enabled.
+	 * 
+	 * @param config configuration properties
+	 * @return true if the pool is enabled, false if each submission should
+	 *         use new interpreters using the default system state
+	 */
+	public static boolean isEnabled(Properties config) {
+		return Boolean.valueOf(config.getProperty("cloudcoder.builder2.python.interpreterPool", "true"));
+	}
+	
+	/**
+	 * An interpreter obtained from the pool.  Must be returned
+	 * by calling {@link PythonInterpreterPool#release(PooledInterpreter, boolean)}.
+	 */
+	public static class PooledInterpreter {
+		private final PythonInterpreter interpreter;
+		private final PooledState state;
+		private final PySystemState previousThreadState;
+		
+		private PooledInterpreter(PythonInterpreter interpreter, PooledState state, PySystemState previousThreadState) {
+			this.interpreter = interpreter;
+			this.state = state;
+			this.previousThreadState = previousThreadState;
+		}
+		
+		/**
+		 * @return the {@link PythonInterpreter}
+		 */
+		public PythonInterpreter getInterpreter() {
+			return interpreter;
+		}
+	}
+	
+	/**
+	 * A pooled system state, and a snapshot of its initial state.
+	 */
+	private static class PooledState {
+		private final PySystemState sys;
+		private final PyObject stdout, stderr;
+		private final Map<String, PyObject> modules;
+		private final Map<String, Map<String, PyObject>> moduleAttributes;
+		private final Map<String, PyObject> sysAttributes;
+		private final String path;
+		
+		PooledState(PySystemState sys) {
+			this.sys = sys;
+			this.stdout = sys.stdout;
+			this.stderr = sys.stderr;
+			this.modules = snapshotDict(sys.modules);
+			modules.remove(MAIN_MODULE);
+			this.moduleAttributes = new HashMap<String, Map<String, PyObject>>();
+			for (Map.Entry<String, PyObject> entry : modules.entrySet()) {
+				moduleAttributes.put(entry.getKey(), snapshotModule(entry.getValue()));
+			}
+			this.sysAttributes = snapshotSysAttributes(sys);
+			this.path = sys.path.toString();
+		}
+		
+		/**
+		 * Restore the state by removing modules imported since the snapshot,
+		 * then check whether the state matches the snapshot.
+		 * 
+		 * @return null if the state matches the snapshot, otherwise
+		 *         a description of the first difference found
+		 */
+		String restoreAndCheck() {
+			sys.stdout = stdout;
+			sys.stderr = stderr;
+			
+			Map<String, PyObject> currentModules = snapshotDict(sys.modules);
+			for (String name : currentModules.keySet()) {
+				if (!modules.containsKey(name)) {
+					sys.modules.__delitem__(name);
+				}
+			}
+			
+			for (Map.Entry<String, PyObject> entry : modules.entrySet()) {
+				String name = entry.getKey();
+				if (currentModules.get(name) != entry.getValue()) {
+					return "sys.modules['" + name + "'] was replaced";
+				}
+				if (!sameAttributes(moduleAttributes.get(name), snapshotModule(entry.getValue()))) {
+					return "module " + name + " was modified";
+				}
+			}
+			if (!sameAttributes(sysAttributes, snapshotSysAttributes(sys))) {
+				return "sys was modified";
+			}
+			if (!path.equals(sys.path.toString())) {
+				return "sys.path was modified";
+			}
+			return null;
+		}
+	}
+	
+	private final int maxIdle;
+	private final int prestart;
+	private final LinkedList<PooledState> idle;
+	
+	private PythonInterpreterPool(Properties config) {
+		this.maxIdle = Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.python.interpreterPoolSize", String.valueOf(DEFAULT_POOL_SIZE)));
+		this.prestart = Integer.parseInt(config.getProperty(
+				"cloudcoder.builder2.python.interpreterPoolPrestart", String.valueOf(DEFAULT_PRESTART)));
+		this.idle = new LinkedList<PooledState>();
+	}
+	
+	/**
+	 * Create the configured number of system states in advance.
+	 */
+	public void prestart() {
+		List<PooledState> created = new ArrayList<PooledState>();
+		for (int i = 0; i < Math.min(prestart, maxIdle); i++) {
+			created.add(createState());
+		}
+		synchronized (idle) {
+			idle.addAll(created);
+		}
+	}
+	
+	/**
+	 * Get an interpreter.  Creates a new system state if there
+	 * are no idle system states.
+	 * 
+	 * @return the {@link PooledInterpreter}
+	 */
+	public PooledInterpreter acquire() {
+		PooledState state = null;
+		synchronized (idle) {
+			if (!idle.isEmpty()) {
+				state = idle.removeFirst();
+			}
+		}
+		if (state == null) {
+			state = createState();
+		}
+		
+		// The PythonInterpreter makes its system state the current thread's
+		// system state: we restore the previous one when the interpreter is released
+		PySystemState previousThreadState = Py.getSystemState();
+		return new PooledInterpreter(new PythonInterpreter(null, state.sys), state, previousThreadState);
+	}
+	
+	/**
+	 * Return an interpreter obtained from {@link #acquire()}.
+	 * 
+	 * @param pooledInterpreter the {@link PooledInterpreter}
+	 * @param reusable          false if the interpreter's state might be
+	 *                          inconsistent (e.g., because a thread executing
+	 *                          Python code was killed), in which case it is discarded
+	 */
+	public void release(PooledInterpreter pooledInterpreter, boolean reusable) {
+		Py.setSystemState(pooledInterpreter.previousThreadState);
+		
+		PooledState state = pooledInterpreter.state;
+		if (reusable) {
+			try {
+				String modification = state.restoreAndCheck();
+				if (modification != null) {
+					logger.info("Discarding Python interpreter: {}", modification);
+					reusable = false;
+				}
+			} catch (Throwable e) {
+				logger.warn("Could not check Python interpreter state", e);
+				reusable = false;
+			}
+		}
+		
+		// Note that a discarded interpreter is just left for the garbage
+		// collector: cleanup() would run sys.exitfunc outside the sandbox
+		if (reusable) {
+			synchronized (idle) {
+				if (idle.size() < maxIdle) {
+					idle.addFirst(state);
+				}
+			}
+		}
+	}
+	
+	private static PooledState createState() {
+		long start = System.currentTimeMillis();
+		PySystemState previousThreadState = Py.getSystemState();
+		try {
+			PySystemState sys = new PySystemState();
+			
+			// Compile and execute some code, so that the snapshot
+			// reflects any lazy initialization
+			PythonInterpreter terp = new PythonInterpreter(null, sys);
+			terp.exec("def __warmup():\n  return True\n__warmup()\n");
+			
+			PooledState state = new PooledState(sys);
+			logger.info("Created Python system state in {} ms", System.currentTimeMillis() - start);
+			return state;
+		} finally {
+			Py.setSystemState(previousThreadState);
+		}
+	}
+	
+	private static Map<String, PyObject> snapshotDict(PyObject dict) {
+		Map<String, PyObject> result = new HashMap<String, PyObject>();
+		for (PyObject key : dict.asIterable()) {
+			result.put(key.toString(), dict.__finditem__(key));
+		}
+		return result;
+	}
+	
+	private static Map<String, PyObject> snapshotModule(PyObject module) {
+		// sys is checked separately
+		if (module == null || module instanceof PySystemState) {
+			return new HashMap<String, PyObject>();
+		}
+		PyObject dict = module.__findattr__("__dict__");
+		return (dict != null) ? snapshotDict(dict) : new HashMap<String, PyObject>();
+	}
+	
+	private static Map<String, PyObject> snapshotSysAttributes(PySystemState sys) {
+		Map<String, PyObject> result = new HashMap<String, PyObject>();
+		for (String name : SYS_ATTRIBUTES) {
+			result.put(name, sys.__findattr__(name));
+		}
+		return result;
+	}
+	
+	private static boolean sameAttributes(Map<String, PyObject> expected, Map<String, PyObject> actual) {
+		if (!expected.keySet().equals(actual.keySet())) {
+			return false;
+		}
+		for (Map.Entry<String, PyObject> entry : expected.entrySet()) {
+			if (actual.get(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
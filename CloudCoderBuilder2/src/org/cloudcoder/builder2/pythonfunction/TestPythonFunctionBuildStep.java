@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
@@ -38,6 +39,7 @@ import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
+import org.cloudcoder.builder2.util.ExecutionService;
 import org.cloudcoder.builder2.util.TestResultUtil;
 import org.python.core.PyException;
 import org.python.core.PyFunction;
@@ -65,7 +67,7 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
-		SubmissionResult result = testSubmission(submission);
+		SubmissionResult result = testSubmission(submission, config);
 		submission.addArtifact(result);
 	}
 
@@ -73,9 +75,10 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 	 * Test a {@link ProblemType#PYTHON_FUNCTION} submission.
 	 * 
 	 * @param submission the submission
+	 * @param config     builder configuration properties
 	 * @return the {@link SubmissionResult}
 	 */
-	private SubmissionResult testSubmission(BuilderSubmission submission) {
+	private SubmissionResult testSubmission(BuilderSubmission submission, Properties config) {
 		final Problem problem = submission.requireArtifact(this.getClass(), Problem.class);
 		
 		ProgramSource[] programSourceList = submission.requireArtifact(TestPythonFunctionBuildStep.class, ProgramSource[].class);
@@ -93,25 +96,55 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 
 		final byte[] sBytes = programText.getBytes();
 
-		// Check if the Python code is syntactically correct.
-		// Because Python is a dynamic language, this will only find invalid syntax,
-		// unknown imports, and similar issues.
-		CompilationResult compres = compilePythonScript(problem, programSource);
-		if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
-			compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
-			return new SubmissionResult(compres);
+		PythonInterpreterPool.PooledInterpreter pooledInterpreter = null;
+		final AtomicBoolean timedOut = new AtomicBoolean(false);
+		try {
+			final PythonInterpreter terp;
+			final PyObject True;
+			if (PythonInterpreterPool.isEnabled(config)) {
+				// Use a pooled interpreter both to check the code and to
+				// execute the tests, so that the code is only compiled once
+				pooledInterpreter = PythonInterpreterPool.getInstance(config).acquire();
+				terp = pooledInterpreter.getInterpreter();
+				True = terp.eval("True");
+				CompilationResult compres = compilePythonScript(problem, programSource, terp);
+				if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
+					compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
+					return new SubmissionResult(compres);
+				}
+			} else {
+				// Check if the Python code is syntactically correct.
+				// Because Python is a dynamic language, this will only find invalid syntax,
+				// unknown imports, and similar issues.
+				CompilationResult compres = compilePythonScript(problem, programSource, new PythonInterpreter());
+				if (compres.getOutcome() != CompilationOutcome.SUCCESS) {
+					compres.adjustDiagnosticLineNumbers(programSource.getPrologueLength(), programSource.getEpilogueLength());
+					return new SubmissionResult(compres);
+				}
+				
+				// Create a Python interpreter, load True from the interpreter
+				// then execute our script.
+				// Note that our script will have all statements outside of a function
+				// stripped out (except for import statements) so no global variables
+				terp=new PythonInterpreter();
+				True=terp.eval("True");
+				// won't throw an exception because we checked it at the top of
+				// the method to make sure the code will compile
+				terp.execfile(new ByteArrayInputStream(sBytes));
+			}
+			
+			return runTests(problem, programSource, testCaseList, terp, True, timedOut, config);
+		} finally {
+			if (pooledInterpreter != null) {
+				// If a test timed out, the thread executing it was killed,
+				// so the interpreter state might be inconsistent
+				PythonInterpreterPool.getInstance(config).release(pooledInterpreter, !timedOut.get());
+			}
 		}
-		
-		// Create a Python interpreter, load True from the interpreter
-		// then execute our script.
-		// Note that our script will have all statements outside of a function
-		// stripped out (except for import statements) so no global variables
-		final PythonInterpreter terp=new PythonInterpreter();
-		final PyObject True=terp.eval("True");
-		// won't throw an exception because we checked it at the top of
-		// the method to make sure the code will compile
-		terp.execfile(new ByteArrayInputStream(sBytes));
-
+	}
+	
+	private SubmissionResult runTests(Problem problem, ProgramSource programSource, List<TestCase> testCaseList,
+			PythonInterpreter terp, PyObject True, final AtomicBoolean timedOut, Properties config) {
 		// Create PythonTestCaseTasks, one to execute each test case function
 		List<PythonTestCaseTask> tasks=new ArrayList<PythonTestCaseTask>();
 		for (final TestCase t : testCaseList) {
@@ -127,12 +160,14 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 				new TimeoutHandler<TestResult>() {
 					@Override
 					public TestResult handleTimeout() {
+						timedOut.set(true);
 						return TestResultUtil.createResultForTimeout();
 					}
 				},
 				terp);
 
 		// run each task in a separate thread
+		pool.setExecutionService(ExecutionService.getInstance(config));
 		pool.run();
 		
 		// Collect any CompilerDiagnostics that may have been reported.
@@ -162,14 +197,14 @@ public class TestPythonFunctionBuildStep implements IBuildStep {
 	 * 
 	 * @param problem       the {@link Problem}
 	 * @param programSource the scaffolded code
+	 * @param terp          the {@link PythonInterpreter} in which to execute the code
 	 * @return the {@link CompilationResult}
 	 */
-	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource) {
+	private CompilationResult compilePythonScript(Problem problem, ProgramSource programSource, PythonInterpreter terp) {
 		String programText = programSource.getProgramText();
 		
 		try {
 		    logger.info("\n"+programText);
-			PythonInterpreter terp=new PythonInterpreter();
 			terp.execfile(new ByteArrayInputStream(programText.getBytes()));
 			
 			// Check to see if the test code actually defines the required
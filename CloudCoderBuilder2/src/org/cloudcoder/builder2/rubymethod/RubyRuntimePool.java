@@ -0,0 +1,372 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.builder2.rubymethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.builder2.javasandbox.IsolatedTask;
+import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
+import org.cloudcoder.builder2.util.ExecutionService;
+import org.cloudcoder.builder2.util.SingletonHolder;
+import org.jruby.embed.LocalContextScope;
+import org.jruby.embed.ScriptingContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of JRuby runtimes (each in its own {@link ScriptingContainer})
+ * used to test {@link org.cloudcoder.app.shared.model.ProblemType#RUBY_METHOD}
+ * submissions.  Each submission has exclusive use of a runtime
+ * while it is tested, so submissions tested concurrently don't
+ * contend for (or interfere with) each other's runtime.
+ * 
+ * <p>
+ * When a runtime is returned to the pool, methods and constants defined
+ * by the submission (including its top-level methods) are removed, and
+ * the runtime is checked for modifications to the core classes and
+ * global variables.  A runtime is recycled (discarded and replaced
+ * by a new one) if it was modified, if a test timed out, or after
+ * it has been used for a configured number of submissions.
+ * The check and the teardown of a discarded runtime may execute
+ * code defined by the submission, so they are executed in the sandbox.
+ * </p>
+ * 
+ * <p>
+ * The number of runtimes is <code>cloudcoder.builder2.ruby.runtimePoolSize</code>
+ * (default: the number of builder threads), and the number of
+ * submissions after which a runtime is recycled is
+ * <code>cloudcoder.builder2.ruby.runtimeMaxUses</code>
+ * (default {@value #DEFAULT_MAX_USES}).
+ * </p>
+ */
+public class RubyRuntimePool {
+	private static final Logger logger = LoggerFactory.getLogger(RubyRuntimePool.class);
+	
+	/** Default number of submissions after which a runtime is recycled. */
+	public static final int DEFAULT_MAX_USES = 50;
+	
+	/**
+	 * Maximum time allowed for checking or tearing down a runtime.
+	 */
+	private static final long MAINTENANCE_TIMEOUT_LIMIT = 5000;
+	
+	/**
+	 * Ruby lambda which, when called with nil, returns a snapshot of the
+	 * runtime's state, and when called with a snapshot, removes methods
+	 * and constants added since the snapshot, and returns nil if the
+	 * state matches the snapshot or a description of the first difference.
+	 */
+	private static final String STATE_CHECKER =
+		"lambda do |snapshot|\n" +
+		"  state = {}\n" +
+		"  [BasicObject, Object, Kernel, Module, Class, Comparable, Enumerable, Math,\n" +
+		"   String, Symbol, Numeric, Integer, Fixnum, Bignum, Float, Array, Hash, Range,\n" +
+		"   NilClass, TrueClass, FalseClass, Proc, Exception, StandardError].each do |m|\n" +
+		"    (m.public_instance_methods(false) + m.protected_instance_methods(false) +\n" +
+		"     m.private_instance_methods(false)).each do |name|\n" +
+		"      state[[m, :method, name]] = m.instance_method(name)\n" +
+		"    end\n" +
+		"    m.singleton_methods(false).each do |name|\n" +
+		"      state[[m, :singleton_method, name]] = m.method(name).unbind\n" +
+		"    end\n" +
+		"  end\n" +
+		"  Object.constants.each do |name|\n" +
+		"    state[[Object, :constant, name]] = Object.autoload?(name) ? :autoload : Object.const_get(name)\n" +
+		"  end\n" +
+		"  global_variables.each do |name|\n" +
+		"    state[[Kernel, :global, name]] = true\n" +
+		"  end\n" +
+		"  return state if snapshot.nil?\n" +
+		"  state.each_key do |key|\n" +
+		"    next if snapshot.has_key?(key)\n" +
+		"    m, kind, name = key\n" +
+		"    case kind\n" +
+		"    when :method then m.send(:remove_method, name)\n" +
+		"    when :singleton_method then m.singleton_class.send(:remove_method, name)\n" +
+		"    when :constant then m.send(:remove_const, name)\n" +
+		"    else return \"added global #{name}\"\n" +
+		"    end\n" +
+		"  end\n" +
+		"  snapshot.each_pair do |key, value|\n" +
+		"    m, kind, name = key\n" +
+		"    return \"removed #{kind} #{m}.#{name}\" unless state.has_key?(key)\n" +
+		"    current = state[key]\n" +
+		"    changed = (kind == :constant) ? (value != :autoload && !current.equal?(value)) : current != value\n" +
+		"    return \"modified #{kind} #{m}.#{name}\" if changed\n" +
+		"  end\n" +
+		"  nil\n" +
+		"end\n";
+	
+	private static final SingletonHolder<RubyRuntimePool, Properties> holder = new SingletonHolder<RubyRuntimePool, Properties>() {
+		@Override
+		protected RubyRuntimePool onCreate(Properties arg) {
+			return new RubyRuntimePool(arg);
+		}
+	};
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static RubyRuntimePool getInstance(Properties config) {
+		return holder.get(config);
+	}
+	
+	/**
+	 * @return true if the singleton instance has been created
+	 */
+	public static boolean isCreated() {
+		return holder.isCreated();
+	}
+	
+	/**
+	 * A pooled JRuby runtime.
+	 */
+	public static class PooledRuntime {
+		private final int id;
+		private final ScriptingContainer container;
+		private final Object stateChecker;
+		private final Object snapshot;
+		private final long createdMillis;
+		private int uses;
+		private long busyMillis;
+		private long acquiredMillis;
+		
+		private PooledRuntime(int id, ScriptingContainer container, Object stateChecker, Object snapshot) {
+			this.id = id;
+			this.container = container;
+			this.stateChecker = stateChecker;
+			this.snapshot = snapshot;
+			this.createdMillis = System.currentTimeMillis();
+		}
+		
+		/**
+		 * @return the {@link ScriptingContainer}
+		 */
+		public ScriptingContainer getContainer() {
+			return container;
+		}
+		
+		/**
+		 * @return the runtime's id (unique within the builder process)
+		 */
+		public int getId() {
+			return id;
+		}
+		
+		/**
+		 * @return number of submissions tested using the runtime
+		 *         (not counting the current one)
+		 */
+		public int getUses() {
+			return uses;
+		}
+		
+		private String getStatistics(long now) {
+			long lifetime = Math.max(1L, now - createdMillis);
+			long busy = busyMillis + (acquiredMillis != 0L ? now - acquiredMillis : 0L);
+			return String.format("Ruby runtime %d: %d submissions, %s, %d%% busy over %d s",
+					id, uses, acquiredMillis != 0L ? "in use" : "idle", busy * 100L / lifetime, lifetime / 1000L);
+		}
+	}
+	
+	private final Properties config;
+	private final int size;
+	private final int maxUses;
+	private final LinkedList<PooledRuntime> idle;
+	private final List<PooledRuntime> runtimes;
+	private int nextId;
+	private int numRecycled;
+	
+	private RubyRuntimePool(Properties config) {
+		this.config = config;
+		this.size = Integer.parseInt(config.getProperty("cloudcoder.builder2.ruby.runtimePoolSize",
+				config.getProperty("cloudcoder.submitsvc.oop.numThreads", "2")));
+		this.maxUses = Integer.parseInt(config.getProperty("cloudcoder.builder2.ruby.runtimeMaxUses",
+				String.valueOf(DEFAULT_MAX_USES)));
+		this.idle = new LinkedList<PooledRuntime>();
+		this.runtimes = new ArrayList<PooledRuntime>();
+		logger.info("Using up to {} Ruby runtimes, recycled after {} submissions", size, maxUses);
+	}
+	
+	/**
+	 * Get a runtime for testing a submission, waiting if all of
+	 * the runtimes are in use.  The runtime must be returned
+	 * by calling {@link #release(PooledRuntime, boolean)}.
+	 * 
+	 * @return the {@link PooledRuntime}
+	 */
+	public PooledRuntime acquire() {
+		PooledRuntime runtime = null;
+		boolean create = false;
+		boolean interrupted = false;
+		synchronized (this) {
+			while (idle.isEmpty() && runtimes.size() >= size) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (!idle.isEmpty()) {
+				runtime = idle.removeFirst();
+			} else {
+				// Reserve a place for the new runtime
+				runtimes.add(null);
+				create = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		if (create) {
+			try {
+				runtime = createRuntime();
+			} finally {
+				synchronized (this) {
+					runtimes.remove(null);
+					if (runtime != null) {
+						runtimes.add(runtime);
+					}
+					notifyAll();
+				}
+			}
+		}
+		
+		synchronized (this) {
+			runtime.acquiredMillis = System.currentTimeMillis();
+		}
+		return runtime;
+	}
+	
+	/**
+	 * Return a runtime obtained from {@link #acquire()}.
+	 * 
+	 * @param runtime   the {@link PooledRuntime}
+	 * @param reusable  false if the runtime's state might be inconsistent
+	 *                  (e.g., because a thread executing Ruby code was killed),
+	 *                  in which case it is recycled
+	 */
+	public void release(PooledRuntime runtime, boolean reusable) {
+		String recycleReason = null;
+		if (!reusable) {
+			recycleReason = "a test timed out";
+		} else if (runtime.uses + 1 >= maxUses) {
+			recycleReason = "used for " + maxUses + " submissions";
+		} else {
+			recycleReason = checkState(runtime);
+		}
+		
+		synchronized (this) {
+			runtime.uses++;
+			runtime.busyMillis += System.currentTimeMillis() - runtime.acquiredMillis;
+			runtime.acquiredMillis = 0L;
+			if (recycleReason != null) {
+				runtimes.remove(runtime);
+				numRecycled++;
+			} else {
+				idle.addFirst(runtime);
+			}
+			notifyAll();
+		}
+		
+		if (recycleReason != null) {
+			logger.info("Recycling {} ({})", runtime.getStatistics(System.currentTimeMillis()), recycleReason);
+			terminate(runtime);
+		}
+	}
+	
+	/**
+	 * Get per-runtime usage statistics.
+	 * 
+	 * @return list of descriptions of the runtimes currently in the pool
+	 */
+	public synchronized List<String> getStatistics() {
+		long now = System.currentTimeMillis();
+		List<String> result = new ArrayList<String>();
+		for (PooledRuntime runtime : runtimes) {
+			if (runtime != null) {
+				result.add(runtime.getStatistics(now));
+			}
+		}
+		result.add(String.format("%d Ruby runtimes recycled", numRecycled));
+		return result;
+	}
+	
+	private PooledRuntime createRuntime() {
+		long start = System.currentTimeMillis();
+		int id;
+		synchronized (this) {
+			id = nextId++;
+		}
+		ScriptingContainer container = new ScriptingContainer(LocalContextScope.CONCURRENT);
+		Object stateChecker = container.runScriptlet(STATE_CHECKER);
+		Object snapshot = container.callMethod(stateChecker, "call", (Object) null);
+		logger.info("Created Ruby runtime {} in {} ms", id, System.currentTimeMillis() - start);
+		return new PooledRuntime(id, container, stateChecker, snapshot);
+	}
+	
+	private String checkState(final PooledRuntime runtime) {
+		return runIsolated(runtime, new IsolatedTask<String>() {
+			@Override
+			public String execute() throws Throwable {
+				Object modification = runtime.container.callMethod(runtime.stateChecker, "call", runtime.snapshot);
+				return (modification != null) ? modification.toString() : null;
+			}
+		}, "state check did not complete");
+	}
+	
+	private void terminate(final PooledRuntime runtime) {
+		// Tearing down the runtime runs at_exit blocks
+		String failure = runIsolated(runtime, new IsolatedTask<String>() {
+			@Override
+			public String execute() throws Throwable {
+				runtime.container.terminate();
+				return null;
+			}
+		}, "teardown did not complete");
+		if (failure != null) {
+			logger.warn("Ruby runtime {}: {}", runtime.id, failure);
+		}
+	}
+	
+	private String runIsolated(PooledRuntime runtime, IsolatedTask<String> task, final String failure) {
+		RubyKillableTaskManager<String> taskManager = new RubyKillableTaskManager<String>(
+				Collections.singletonList(task),
+				MAINTENANCE_TIMEOUT_LIMIT,
+				new TimeoutHandler<String>() {
+					@Override
+					public String handleTimeout() {
+						return failure;
+					}
+				},
+				runtime.container);
+		taskManager.setThreadNamePrefix("RubyTest_");
+		taskManager.setExecutionService(ExecutionService.getInstance(config));
+		taskManager.run();
+		return taskManager.isFinished(0) ? taskManager.getResult(0) : failure;
+	}
+}
@@ -20,24 +20,28 @@ package org.cloudcoder.builder2.rubymethod;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.cloudcoder.app.shared.model.CompilationOutcome;
 import org.cloudcoder.app.shared.model.CompilationResult;
 import org.cloudcoder.app.shared.model.CompilerDiagnostic;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.builder2.javasandbox.SandboxUtil;
 import org.cloudcoder.builder2.javasandbox.TimeoutHandler;
 import org.cloudcoder.builder2.model.BuilderSubmission;
 import org.cloudcoder.builder2.model.IBuildStep;
+import org.cloudcoder.builder2.model.ISubmissionResultHook;
 import org.cloudcoder.builder2.model.InternalBuilderException;
 import org.cloudcoder.builder2.model.ProgramSource;
 import org.cloudcoder.builder2.util.ArrayUtil;
+import org.cloudcoder.builder2.util.ExecutionService;
 import org.cloudcoder.builder2.util.TestResultUtil;
 import org.jruby.embed.EvalFailedException;
-import org.jruby.embed.LocalContextScope;
 import org.jruby.embed.ParseFailedException;
 import org.jruby.embed.ScriptingContainer;
 import org.jruby.exceptions.RaiseException;
@@ -48,7 +52,8 @@ import org.slf4j.LoggerFactory;
  * Build step to test a {@link ProblemType#RUBY_METHOD} submission.
  * Assumes that {@link AddRubyMethodScaffoldingBuildStep} has already
  * been run.  Produces an array of {@link TestResult} objects as
- * a result artifact, one per {@link TestCase}.
+ * a result artifact, one per {@link TestCase}.  Each submission
+ * is tested using a JRuby runtime from the {@link RubyRuntimePool}.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
@@ -58,20 +63,33 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 	
 	public static final long TIMEOUT_LIMIT = 5000;
 	
-	private static ScriptingContainer container;
-	
 	// Preload classes that will be needed to test the Ruby submission in the
-	// IsolatedTask, and create the ScriptingContainer.
+	// IsolatedTask.  (The ScriptingContainers are created by the RubyRuntimePool.)
 	static {
 		TestResultUtil.createResultForTimeout();
-		//TODO cannot execute any code with ruby before redirecting
-		container = new ScriptingContainer(LocalContextScope.CONCURRENT);
-		container.runScriptlet("true");
-		new RubyTester(container, new Object(), new Problem(), new TestCase());
+		new RubyTester(null, new Object(), new Problem(), new TestCase());
 	}
 
 	@Override
 	public void execute(BuilderSubmission submission, Properties config) {
+		// Use a JRuby runtime exclusively for this submission
+		RubyRuntimePool runtimePool = RubyRuntimePool.getInstance(config);
+		RubyRuntimePool.PooledRuntime runtime = runtimePool.acquire();
+		int runtimeId = runtime.getId();
+		int runtimeUses = runtime.getUses();
+		AtomicBoolean timedOut = new AtomicBoolean(false);
+		try {
+			testSubmission(submission, config, runtime.getContainer(), timedOut);
+		} finally {
+			// If a test timed out, the thread executing it was killed,
+			// so the runtime's state might be inconsistent
+			runtimePool.release(runtime, !timedOut.get());
+		}
+		addRuntimeAnnotations(submission, runtimeId, runtimeUses);
+	}
+
+	private void testSubmission(BuilderSubmission submission, Properties config,
+			ScriptingContainer container, final AtomicBoolean timedOut) {
 		ProgramSource[] programSourceList = submission.requireArtifact(this.getClass(), ProgramSource[].class);
 		if (programSourceList.length != 1) {
 			throw new InternalBuilderException(this.getClass(), "Only one source file is expected");
@@ -123,12 +141,14 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 				new TimeoutHandler<TestResult>() {
 					@Override
 					public TestResult handleTimeout() {
+						timedOut.set(true);
 						return TestResultUtil.createResultForTimeout();
 					}
 				},
 				container);
 
 		pool.setThreadNamePrefix("RubyTest_"); // enable Ruby-specific security manager rules
+		pool.setExecutionService(ExecutionService.getInstance(config));
 		pool.run();
 		
 		// Collect "dynamic" compiler diagnostics.
@@ -145,6 +165,22 @@ public class TestRubyMethodBuildStep implements IBuildStep {
 		submission.addArtifact(ArrayUtil.toArray(testResults, TestResult.class));
 	}
 
+	private void addRuntimeAnnotations(BuilderSubmission submission, final int runtimeId, final int runtimeUses) {
+		submission.addSubmissionResultHook(new ISubmissionResultHook() {
+			@Override
+			public void invoke(SubmissionResult result) {
+				SubmissionResultAnnotation annotation = new SubmissionResultAnnotation();
+				annotation.setKey("RubyRuntimeId");
+				annotation.setValue(String.valueOf(runtimeId));
+				result.addAnnotation(annotation);
+				SubmissionResultAnnotation annotation2 = new SubmissionResultAnnotation();
+				annotation2.setKey("RubyRuntimeUses");
+				annotation2.setValue(String.valueOf(runtimeUses));
+				result.addAnnotation(annotation2);
+			}
+		});
+	}
+
 	private void failedCompilation(BuilderSubmission submission,
 			CompilerDiagnostic diag) {
 		CompilationResult compres = new CompilationResult(CompilationOutcome.FAILURE);
@@ -23,7 +23,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+import org.cloudcoder.builder2.rubymethod.RubyRuntimePool;
 import org.cloudcoder.builder2.util.DeleteDirectoryRecursively;
 import org.cloudcoder.daemon.IDaemon;
 import org.cloudcoder.daemon.Util;
@@ -42,6 +45,7 @@ public class Builder2Daemon implements IDaemon {
 	private List<BuilderAndThread> builderAndThreadList;
 	private Properties config;
 	private File instanceTempDir;
+	private ScheduledExecutorService timer;
 
 	private static class BuilderAndThread {
 		final Builder2Server builder;
@@ -95,6 +99,10 @@ public class Builder2Daemon implements IDaemon {
 		public String getSshRemoteUser() {
 			return config.getProperty("cloudcoder.submitsvc.oop.ssh.remoteUser", "");
 		}
+		
+		public int getProblemCacheSize() {
+			return Integer.parseInt(config.getProperty("cloudcoder.builder2.problemCacheSize", "64"));
+		}
 	}
 
 	/* (non-Javadoc)
@@ -154,10 +162,16 @@ public class Builder2Daemon implements IDaemon {
 		logger.info("appPort={}", options.getAppPort());
 		logger.info("numThreads={}", options.getNumThreads());
 		
+		// All Builder threads share a cache of exercises
+		ProblemCache problemCache = new ProblemCache(options.getProblemCacheSize());
+		
+		// ...and a timer thread for their watchdogs
+		this.timer = Executors.newSingleThreadScheduledExecutor();
+		
 		// Start Builder threads
 		this.builderAndThreadList = new ArrayList<BuilderAndThread>();
 		for (int i = 0; i < options.getNumThreads(); i++) {
-			Builder2Server builder_ = new Builder2Server(webappSocketFactory, config);
+			Builder2Server builder_ = new Builder2Server(webappSocketFactory, config, problemCache, timer);
 			Thread thread_ = new Thread(builder_);
 		
 			BuilderAndThread builderAndThread = new BuilderAndThread(builder_, thread_);
@@ -172,6 +186,16 @@ public class Builder2Daemon implements IDaemon {
 	 */
 	@Override
 	public void handleCommand(String command) {
+		if (command.equals("stats")) {
+			// Log usage statistics
+			if (RubyRuntimePool.isCreated()) {
+				for (String line : RubyRuntimePool.getInstance(config).getStatistics()) {
+					logger.info(line);
+				}
+			}
+			return;
+		}
+		
 		// Right now the Builder has no runtime configuration commands
 		logger.warn("Builder received unknown command " + command);
 	}
@@ -191,6 +215,7 @@ public class Builder2Daemon implements IDaemon {
 				e.printStackTrace();
 			}
 		}
+		timer.shutdownNow();
 
 		// Perform global cleanup.
 		Global.cleanup(config);
@@ -20,15 +20,20 @@ package org.cloudcoder.builder2.server;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.SubmissionResult;
-import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.builder.BuilderMessage;
+import org.cloudcoder.app.shared.model.builder.BuilderProtocol;
+import org.cloudcoder.app.shared.model.builder.IBuilderMessageCodec;
 import org.cloudcoder.daemon.IOUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,14 +43,17 @@ import org.slf4j.LoggerFactory;
  * and waits to receive submissions (Problem and program text).
  * For each submission received, it compiles it, tests it,
  * and reports back a SubmissionResult.
+ * Exercises (Problems and TestCases) are cached by content hash
+ * in a {@link ProblemCache}, so the webapp only needs to send each
+ * exercise once.
  * 
  * @author David Hovemeyer
  * @author Jaime Spacco
  */
 public class Builder2Server implements Runnable {
 	/**
-	 * The maximum amount of time that the watchdog thread will
-	 * allow a wait for a problem id or keepalive signal from 
+	 * The maximum amount of time that the watchdog will
+	 * allow a wait for a message or keepalive signal from 
 	 * the webapp.  If the wait becomes longer then we will
 	 * assume that the connection between the builder and
 	 * the webapp has been broken and the watchdog will force
@@ -54,34 +62,32 @@ public class Builder2Server implements Runnable {
 	private static final long MAX_WAIT_MS = 60000L; // after 1 minute of waiting, assume connection is bad
 
 	/**
-	 * Runnable for watchdog thread.
+	 * How often the watchdog checks the server loop.
+	 */
+	private static final long WATCHDOG_INTERVAL_MS = 10000L;
+
+	/**
+	 * Watchdog timer task.  It runs on a timer thread shared
+	 * by all of the server loops in the Builder process.
 	 */
 	private class Watchdog implements Runnable {
 		@Override
 		public void run() {
-			try {
-				while (!shutdownRequested) {
-					Thread.sleep(10000L);
-					
-					// Check the current state.
-					// If the server loop is not waiting for a keepalive signal,
-					// then DON'T MESS WITH IT.
-					StateData stateData = stateManager.getStateData();
-					if (stateData.getState() != State.WAITING_FOR_KEEPALIVE) {
-						continue;
-					}
-					
-					// See how long the server loop has been waiting.
-					long waitTime = System.currentTimeMillis() - stateData.getTs();
-					if (waitTime > MAX_WAIT_MS) {
-						// The server loop has waited too long to receive the
-						// problem id / keepalive signal.  Force a reconnect.
-						logger.warn("Watchdog: {} ms without keepalive, forcing reconnect", waitTime);
-						connectionManager.forceClose();
-					}
-				}
-			} catch (InterruptedException e) {
-				logger.info("Watchdog interrupted, shutting down...");
+			// Check the current state.
+			// If the server loop is not waiting for a keepalive signal,
+			// then DON'T MESS WITH IT.
+			StateData stateData = stateManager.getStateData();
+			if (stateData.getState() != State.WAITING_FOR_KEEPALIVE) {
+				return;
+			}
+			
+			// See how long the server loop has been waiting.
+			long waitTime = System.currentTimeMillis() - stateData.getTs();
+			if (waitTime > MAX_WAIT_MS) {
+				// The server loop has waited too long to receive a
+				// message / keepalive signal.  Force a reconnect.
+				logger.warn("Watchdog: {} ms without keepalive, forcing reconnect", waitTime);
+				connectionManager.forceClose();
 			}
 		}
 	}
@@ -165,25 +171,19 @@ public class Builder2Server implements Runnable {
 	 */
 	private static class Connection {
 		private ISocket socket;
-		private ObjectInputStream in;
-		private ObjectOutputStream out;
+		private IBuilderMessageCodec codec;
 		
-		public Connection(ISocket socket, ObjectInputStream in, ObjectOutputStream out) {
+		public Connection(ISocket socket, IBuilderMessageCodec codec) {
 			this.socket = socket;
-			this.in = in;
-			this.out = out;
+			this.codec = codec;
 		}
 
 		public ISocket getSocket() {
 			return socket;
 		}
 		
-		public ObjectInputStream getIn() {
-			return in;
-		}
-		
-		public ObjectOutputStream getOut() {
-			return out;
+		public IBuilderMessageCodec getCodec() {
+			return codec;
 		}
 	}
 	
@@ -232,8 +232,7 @@ public class Builder2Server implements Runnable {
 					Connection c = conn;
 					conn = null;
 					IOUtil.closeQuietly(c.getSocket());
-					IOUtil.closeQuietly(c.getIn());
-					IOUtil.closeQuietly(c.getOut());
+					IOUtil.closeQuietly(c.getCodec());
 				}
 			}
 		}
@@ -245,8 +244,16 @@ public class Builder2Server implements Runnable {
 	private WebappSocketFactory webappSocketFactory;
 	private Builder2 builder2;
 	private ConnectionManager connectionManager;
+	private ProblemCache problemCache;
+	private int maxInFlight;
+	private int[] codecs;
 	
-	private Thread watchdogThread;
+	// Submissions received on the current connection whose
+	// exercise has been requested from the webapp, indexed by exercise hash
+	private Map<String, List<BuilderMessage>> awaitingProblem;
+	
+	private ScheduledExecutorService timer;
+	private volatile ScheduledFuture<?> watchdog;
 
 	/**
 	 * Constructor.
@@ -254,14 +261,27 @@ public class Builder2Server implements Runnable {
 	 * @param webappSocketFactory the {@link WebappSocketFactory} that will create socket
 	 *                            connections to the webapp
 	 * @param config              configuration properties: i.e., properties from cloudcoder.properties file
+	 * @param problemCache        the {@link ProblemCache} (shared by all server loops in the process)
+	 * @param timer               timer on which to run the watchdog (shared by all server loops in the process)
 	 */
-	public Builder2Server(WebappSocketFactory webappSocketFactory, Properties config) {
+	public Builder2Server(WebappSocketFactory webappSocketFactory, Properties config, ProblemCache problemCache, ScheduledExecutorService timer) {
 		this.shutdownRequested = false;
 		this.stateManager = new StateManager();
 		this.noConnectTimer = new NoConnectTimer();
 		this.webappSocketFactory = webappSocketFactory;
 		this.builder2 = new Builder2(config);
 		this.connectionManager = new ConnectionManager();
+		this.problemCache = problemCache;
+		this.timer = timer;
+		this.maxInFlight = Integer.parseInt(config.getProperty("cloudcoder.builder2.maxInFlight", "1"));
+		
+		// Offer the configured codec, falling back to Java serialization
+		// (e.g., if the webapp's model object schemas are different)
+		int codec = BuilderProtocol.getCodecId(config.getProperty("cloudcoder.builder2.codec", "binary"));
+		this.codecs = (codec == BuilderProtocol.CODEC_SERIALIZATION)
+				? new int[]{ BuilderProtocol.CODEC_SERIALIZATION }
+				: new int[]{ codec, BuilderProtocol.CODEC_SERIALIZATION };
+		this.awaitingProblem = new HashMap<String, List<BuilderMessage>>();
 	}
 
 	/**
@@ -270,8 +290,7 @@ public class Builder2Server implements Runnable {
 	public void run() {
 		try {
 			stateManager.setState(State.NOT_CONNECTED);
-			watchdogThread = new Thread(new Watchdog());
-			watchdogThread.start();
+			watchdog = timer.scheduleWithFixedDelay(new Watchdog(), WATCHDOG_INTERVAL_MS, WATCHDOG_INTERVAL_MS, TimeUnit.MILLISECONDS);
 			while (!shutdownRequested) {
 				runOnce();
 			}
@@ -281,8 +300,9 @@ public class Builder2Server implements Runnable {
 	}
 
 	/**
-	 * Attempt to read one submission, compile and test it, and send the
-	 * result back to the webapp.
+	 * Attempt to read one message from the webapp and handle it.
+	 * If the message is a submission whose exercise is available,
+	 * compile and test it, and send the result back to the webapp.
 	 */
 	protected void runOnce() {
 		try {
@@ -293,47 +313,55 @@ public class Builder2Server implements Runnable {
 			Connection conn = connectionManager.getConnection();
 
 			// This is a critical point: the server loop will block waiting
-			// for a problem id / keepalive signal.  If there are connection
+			// for a message / keepalive signal.  If there are connection
 			// issues, this might block indefinitely.  Entering the
-			// WAITING_FOR_KEEPALIVE state lets the watchdog thread know
+			// WAITING_FOR_KEEPALIVE state lets the watchdog know
 			// that the connection should be forcibly closed if the server
 			// loop gets hung up here.
 			stateManager.setState(State.WAITING_FOR_KEEPALIVE);
-			Integer problemId = safeReadObject(conn.getIn());
+			BuilderMessage msg = conn.getCodec().readMessage();
 			stateManager.setState(State.WORKING);
 
-			// The CloudCoder app will send us a negative problem id as
-			// a keepalive signal when there are no submissions that need building/testing.
-			// We can just ignore these.
-			if (problemId < 0) {
-				stateManager.setState(State.CONNECTED);
-				return;
+			switch (msg.getType()) {
+			case KEEPALIVE:
+				// The CloudCoder app sends keepalive signals when there are
+				// no submissions that need building/testing.
+				// We can just ignore these.
+				break;
+				
+			case PROBLEM:
+				// Cache the exercise, and test any submissions that were waiting for it
+				ProblemCache.Entry entry = problemCache.put(msg.getProblemHash(), msg.getProblem(), msg.getTestCaseList());
+				List<BuilderMessage> waiting = awaitingProblem.remove(msg.getProblemHash());
+				if (waiting != null) {
+					for (BuilderMessage submission : waiting) {
+						testSubmission(conn, submission, entry);
+					}
+				}
+				break;
+				
+			case SUBMISSION:
+				// Exercises are cached by content hash, so a cached exercise
+				// is always up to date, even if an instructor has edited it.
+				// If it isn't cached (e.g., it was evicted), ask the webapp for it.
+				ProblemCache.Entry cached = problemCache.get(msg.getProblemHash());
+				if (cached != null) {
+					testSubmission(conn, msg, cached);
+				} else {
+					List<BuilderMessage> list = awaitingProblem.get(msg.getProblemHash());
+					if (list == null) {
+						list = new ArrayList<BuilderMessage>();
+						awaitingProblem.put(msg.getProblemHash(), list);
+					}
+					list.add(msg);
+					conn.getCodec().writeMessage(BuilderMessage.needProblem(msg.getSubmissionId(), msg.getProblemHash()));
+					conn.getCodec().flush();
+				}
+				break;
+				
+			default:
+				throw new IOException("Unexpected message type " + msg.getType() + " from webapp");
 			}
-
-			// The protocol allows the builder to cache Problems and TestCases by their problem id,
-			// but this is a very bad idea, since the Problem and TestCases could change on the
-			// webapp side (for example, if an instructor is editing an exercise).
-			// For this reason, we ALWAYS claim not to have the Problem/TestCases, forcing
-			// the webapp to send the most up to date versions.  It's a small amount
-			// of data, and it's important for correct behavior.
-
-			// Tell the webapp we don't have this Problem/TestCases
-			conn.getOut().writeObject(Boolean.FALSE);
-			conn.getOut().flush();
-
-			// Receive the Problem and TestCases
-			Problem problem = safeReadObject(conn.getIn());
-			List<TestCase> testCaseList = safeReadObject(conn.getIn());
-
-			// read program text
-			String programText = safeReadObject(conn.getIn());
-
-			// Test the submission!
-			SubmissionResult result = builder2.testSubmission(problem, testCaseList, programText);
-
-			// Send the SubmissionResult back to the webapp
-			conn.getOut().writeObject(result);
-			conn.getOut().flush();
 			
 			// Everything went well: return to the CONNECTED state
 			stateManager.setState(State.CONNECTED);
@@ -343,15 +371,17 @@ public class Builder2Server implements Runnable {
 			logger.error("Error communicating with server", e);
 			connectionManager.forceClose();
 			stateManager.setState(State.NOT_CONNECTED);
-		} catch (ClassNotFoundException e) {
-			// This should not happen!
-			logger.error("Unexpected ClassNotFoundException, shutting down builder thread", e);
-			connectionManager.forceClose();
-			stateManager.setState(State.NOT_CONNECTED);
-			shutdown();
-			throw new IllegalStateException("Class not found reading message", e);
 		}
 	}
+	
+	private void testSubmission(Connection conn, BuilderMessage submission, ProblemCache.Entry exercise) throws IOException {
+		// Test the submission!
+		SubmissionResult result = builder2.testSubmission(exercise.getProblem(), exercise.getTestCaseList(), submission.getProgramText());
+
+		// Send the SubmissionResult back to the webapp
+		conn.getCodec().writeMessage(BuilderMessage.result(submission.getSubmissionId(), result));
+		conn.getCodec().flush();
+	}
 
 	private ISocket createSecureSocket() throws IOException, GeneralSecurityException {
 		return webappSocketFactory.connectToWebapp();
@@ -359,8 +389,7 @@ public class Builder2Server implements Runnable {
 
 	public void attemptToConnectToServer() {
 		ISocket socket = null;
-		ObjectInputStream in = null;
-		ObjectOutputStream out = null;
+		IBuilderMessageCodec codec = null;
 		
 		try {
 			try {
@@ -371,16 +400,15 @@ public class Builder2Server implements Runnable {
 				stateManager.setState(State.NOT_CONNECTED);
 				throw new RuntimeException(e);
 			}
-			in = new ObjectInputStream(socket.getInputStream());
-			out = new ObjectOutputStream(socket.getOutputStream());
+			codec = BuilderProtocol.builderHandshake(socket.getInputStream(), socket.getOutputStream(), maxInFlight, codecs).getCodec();
 			logger.info("Connected!");
+			awaitingProblem.clear();
 			stateManager.setState(State.CONNECTED);
 			noConnectTimer.connected();
-			connectionManager.setConnection(new Connection(socket, in, out));
+			connectionManager.setConnection(new Connection(socket, codec));
 		} catch (IOException e) {
 			IOUtil.closeQuietly(socket);
-			IOUtil.closeQuietly(in);
-			IOUtil.closeQuietly(out);
+			IOUtil.closeQuietly(codec);
 			logger.info("Failed attempt to connect to server at {}", System.currentTimeMillis());
 			stateManager.setState(State.NOT_CONNECTED);
 			noConnectTimer.notConnected(e);
@@ -393,24 +421,12 @@ public class Builder2Server implements Runnable {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private<E> E safeReadObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-		Object o = in.readObject();
-		if (o == null) {
-			throw new IOException("Could not read!");
-		}
-		return (E) o;
-	}
-
 	public void shutdown() {
 		shutdownRequested = true;
 
-		// Shut down the watchdog thread
-		watchdogThread.interrupt();
-		try {
-			watchdogThread.join();
-		} catch (InterruptedException e) {
-			logger.error("Interrupted waiting for watchdog thread to finish", e);
+		// Stop the watchdog
+		if (watchdog != null) {
+			watchdog.cancel(false);
 		}
 
 		// Shut down the server loop.
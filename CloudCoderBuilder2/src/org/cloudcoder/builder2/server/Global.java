@@ -20,11 +20,15 @@ package org.cloudcoder.builder2.server;
 
 import java.util.Properties;
 
+import org.cloudcoder.builder2.ccompiler.CArtifactCache;
 import org.cloudcoder.builder2.csandbox.EasySandboxSharedLibrary;
 import org.cloudcoder.builder2.extlib.ExternalLibraryCache;
+import org.cloudcoder.builder2.javacompiler.JavaCompilerService;
 import org.cloudcoder.builder2.javasandbox.JVMKillableTaskManager;
 import org.cloudcoder.builder2.process.RunProcessNativeExe;
+import org.cloudcoder.builder2.pythonfunction.PythonInterpreterPool;
 import org.cloudcoder.builder2.pythonfunction.PythonKillableTaskManager;
+import org.cloudcoder.builder2.util.ExecutionService;
 
 /**
  * Global setup and cleanup needed for before builders start and
@@ -43,6 +47,18 @@ public class Global {
 		// Install KillableTaskManager's security manager
 		JVMKillableTaskManager.installSecurityManager();
 		PythonKillableTaskManager.installSecurityManager();
+		
+		// Create the ExecutionService (in this thread's thread group,
+		// so that its threads are never in the sandboxed thread group)
+		ExecutionService.getInstance(config);
+		
+		// Create and warm up the JavaCompilerService
+		JavaCompilerService.getInstance(config).warmUp();
+		
+		// Create the initial pooled Python interpreters
+		if (PythonInterpreterPool.isEnabled(config)) {
+			PythonInterpreterPool.getInstance(config).prestart();
+		}
 	}
 	
 	/**
@@ -60,7 +76,17 @@ public class Global {
 		// Delete directories/files used by the ExternalLibraryCache
 		ExternalLibraryCache.getInstance(config).cleanup();
 		
+		// Delete directories/files used by the CArtifactCache
+		if (CArtifactCache.isCreated()) {
+			CArtifactCache.getInstance(config).cleanup();
+		}
+		
 		// Delete directories/files used by the RunProcessNativeExe
 		RunProcessNativeExe.getInstance(config).cleanup();
+		
+		// Shut down the ExecutionService's pooled threads
+		if (ExecutionService.isCreated()) {
+			ExecutionService.getInstance(config).shutdown();
+		}
 	}
 }
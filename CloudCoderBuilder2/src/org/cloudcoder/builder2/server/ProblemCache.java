@@ -0,0 +1,104 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.server;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Least-recently-used cache of exercises (a {@link Problem} and its
+ * {@link TestCase}s), keyed by content hash.  Because the key is
+ * a hash of the exercise's content, a cached exercise can never be
+ * stale.  Shared by all of the {@link Builder2Server}s in a builder
+ * process: the cached objects are never modified by the builder,
+ * so they can safely be used by multiple threads.
+ */
+public class ProblemCache {
+	/**
+	 * A cached exercise.
+	 */
+	public static class Entry {
+		private final Problem problem;
+		private final List<TestCase> testCaseList;
+
+		public Entry(Problem problem, List<TestCase> testCaseList) {
+			this.problem = problem;
+			this.testCaseList = testCaseList;
+		}
+
+		/**
+		 * @return the {@link Problem}
+		 */
+		public Problem getProblem() {
+			return problem;
+		}
+
+		/**
+		 * @return the list of {@link TestCase}s
+		 */
+		public List<TestCase> getTestCaseList() {
+			return testCaseList;
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> map;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxSize maximum number of exercises to cache
+	 */
+	public ProblemCache(final int maxSize) {
+		this.map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Get a cached exercise.
+	 *
+	 * @param problemHash the exercise's content hash
+	 * @return the cached exercise, or null if it isn't cached
+	 */
+	public synchronized Entry get(String problemHash) {
+		return map.get(problemHash);
+	}
+
+	/**
+	 * Add an exercise to the cache.
+	 *
+	 * @param problemHash   the exercise's content hash
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the list of {@link TestCase}s
+	 * @return the cached exercise
+	 */
+	public synchronized Entry put(String problemHash, Problem problem, List<TestCase> testCaseList) {
+		Entry entry = new Entry(problem, testCaseList);
+		map.put(problemHash, entry);
+		return entry;
+	}
+}
@@ -0,0 +1,289 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.builder2.util;
+
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Execution service shared by all of the builder threads in a builder
+ * process.  It limits the number of tests (JVM-hosted test threads and
+ * child processes) that can be executing at the same time, so that
+ * a submission with many test cases can't swamp the host, and
+ * it provides pooled threads for the chores (collecting output,
+ * sending input, waiting for exit) that go along with running a
+ * child process.
+ *
+ * <p>
+ * The concurrency cap is <code>cloudcoder.builder2.execSlotsPerCore</code>
+ * (default {@value #DEFAULT_SLOTS_PER_CORE}) times the number of available
+ * processors.  Each submission's tests must complete within
+ * <code>cloudcoder.builder2.submissionDeadlineSec</code> seconds
+ * (default {@value #DEFAULT_SUBMISSION_DEADLINE_SEC}), including any
+ * time spent waiting for an execution slot: tests that haven't completed
+ * by then are killed (or never started) and treated as timeouts.
+ * </p>
+ *
+ * <p>
+ * Note that JVM-hosted tests are not run by pooled threads: they
+ * need a fresh thread in the sandboxed thread group, which can be
+ * stop()ed if the test doesn't finish.  They just need to acquire an
+ * execution slot (see {@link #acquireSlot(long)}) before being started.
+ * A thread that must also wait for other events while waiting for
+ * a slot can register a semaphore to be released whenever a slot
+ * is released (see {@link #addSlotReleaseListener(Semaphore)}).
+ * </p>
+ */
+public class ExecutionService {
+	private static final Logger logger = LoggerFactory.getLogger(ExecutionService.class);
+
+	/** Default number of concurrent executions allowed per processor core. */
+	public static final int DEFAULT_SLOTS_PER_CORE = 2;
+
+	/** Default number of seconds allowed for executing a submission's tests. */
+	public static final int DEFAULT_SUBMISSION_DEADLINE_SEC = 60;
+
+	/** Idle pooled threads are discarded after this many seconds. */
+	private static final int IDLE_THREAD_KEEPALIVE_SEC = 60;
+
+	private static final SingletonHolder<ExecutionService, Properties> holder = new SingletonHolder<ExecutionService, Properties>() {
+		@Override
+		protected ExecutionService onCreate(Properties arg) {
+			return new ExecutionService(arg);
+		}
+	};
+
+	/**
+	 * Get the singleton instance.
+	 *
+	 * @param config configuration properties
+	 * @return the singleton instance
+	 */
+	public static ExecutionService getInstance(Properties config) {
+		return holder.get(config);
+	}
+
+	/**
+	 * @return true if the singleton instance has been created
+	 */
+	public static boolean isCreated() {
+		return holder.isCreated();
+	}
+
+	private final int maxConcurrentExecutions;
+	private final long submissionDeadlineMillis;
+	private final Semaphore slots;
+	private final CopyOnWriteArrayList<Semaphore> slotReleaseListeners;
+	private final ThreadPoolExecutor commandPool;
+	private final ThreadPoolExecutor helperPool;
+
+	private ExecutionService(Properties config) {
+		int slotsPerCore = Integer.parseInt(config.getProperty("cloudcoder.builder2.execSlotsPerCore", String.valueOf(DEFAULT_SLOTS_PER_CORE)));
+		this.maxConcurrentExecutions = Math.max(1, slotsPerCore * Runtime.getRuntime().availableProcessors());
+		this.submissionDeadlineMillis = 1000L * Integer.parseInt(
+				config.getProperty("cloudcoder.builder2.submissionDeadlineSec", String.valueOf(DEFAULT_SUBMISSION_DEADLINE_SEC)));
+		this.slots = new Semaphore(maxConcurrentExecutions, true);
+		this.slotReleaseListeners = new CopyOnWriteArrayList<Semaphore>();
+
+		// Threads that run commands: never more than the number of slots
+		this.commandPool = new ThreadPoolExecutor(
+				maxConcurrentExecutions, maxConcurrentExecutions,
+				IDLE_THREAD_KEEPALIVE_SEC, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new PoolThreadFactory("CommandExecutor-"));
+		this.commandPool.allowCoreThreadTimeOut(true);
+
+		// Threads for process I/O: these block on the process, so the pool
+		// can't be bounded without risking deadlock.  However, since the
+		// number of running processes is bounded, so is the number of
+		// threads in this pool.
+		this.helperPool = new ThreadPoolExecutor(
+				0, Integer.MAX_VALUE,
+				IDLE_THREAD_KEEPALIVE_SEC, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new PoolThreadFactory("ProcessHelper-"));
+
+		logger.info("Allowing {} concurrent test executions, {} ms per submission",
+				maxConcurrentExecutions, submissionDeadlineMillis);
+	}
+
+	/**
+	 * @return the maximum number of tests that can be executing at the same time
+	 */
+	public int getMaxConcurrentExecutions() {
+		return maxConcurrentExecutions;
+	}
+
+	/**
+	 * Compute the deadline for executing a submission's tests,
+	 * assuming that execution is starting now.
+	 *
+	 * @return the deadline, as a {@link System#currentTimeMillis()} value
+	 */
+	public long getSubmissionDeadline() {
+		return System.currentTimeMillis() + submissionDeadlineMillis;
+	}
+
+	/**
+	 * Acquire an execution slot, waiting if necessary.
+	 * The slot must be released by calling {@link #releaseSlot()}
+	 * once the execution has completed (or been killed).
+	 *
+	 * @param timeoutMillis maximum number of milliseconds to wait (0 to not wait at all)
+	 * @return true if a slot was acquired, false if the timeout expired
+	 * @throws InterruptedException
+	 */
+	public boolean acquireSlot(long timeoutMillis) throws InterruptedException {
+		return slots.tryAcquire(Math.max(0L, timeoutMillis), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Release an execution slot.
+	 */
+	public void releaseSlot() {
+		slots.release();
+		for (Semaphore listener : slotReleaseListeners) {
+			listener.release();
+		}
+	}
+
+	/**
+	 * Register a semaphore to be released (by one permit) each time an
+	 * execution slot is released.  This allows a thread to wait for
+	 * a slot to become available and for other events (signaled by
+	 * releasing the same semaphore) at the same time.  The listener
+	 * should be registered before trying to acquire a slot, so that
+	 * no release is missed.
+	 *
+	 * @param listener the semaphore to release when a slot is released
+	 */
+	public void addSlotReleaseListener(Semaphore listener) {
+		slotReleaseListeners.add(listener);
+	}
+
+	/**
+	 * Unregister a semaphore registered with {@link #addSlotReleaseListener(Semaphore)}.
+	 *
+	 * @param listener the semaphore to unregister
+	 */
+	public void removeSlotReleaseListener(Semaphore listener) {
+		slotReleaseListeners.remove(listener);
+	}
+
+	/**
+	 * Execute a command (for example, running a test process
+	 * and waiting for it to finish) using a pooled thread,
+	 * once an execution slot is available.  Commands waiting for an
+	 * execution slot can be cancelled (by calling
+	 * <code>cancel(false)</code> on the returned {@link Future}).
+	 * Commands must arrange to kill anything they start if it runs
+	 * for too long.
+	 *
+	 * @param command the command to execute
+	 * @return a {@link Future} for the command
+	 */
+	public Future<?> executeCommand(final Runnable command) {
+		return commandPool.submit(new Runnable() {
+			@Override
+			public void run() {
+				slots.acquireUninterruptibly();
+				try {
+					command.run();
+				} finally {
+					releaseSlot();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Execute a process-related chore (collecting output, sending input,
+	 * waiting for the process to exit) using a pooled thread.
+	 * The chore must not run for longer than the process does.
+	 *
+	 * @param chore the chore
+	 * @return a {@link Future} for the chore
+	 */
+	public Future<?> executeHelper(Runnable chore) {
+		return helperPool.submit(chore);
+	}
+
+	/**
+	 * Wait for a command or chore to complete.  Exceptions thrown
+	 * by the command or chore are ignored (the command or chore is expected
+	 * to handle them), and if it was cancelled, this method returns
+	 * immediately.
+	 *
+	 * @param future the {@link Future} for the command or chore
+	 * @throws InterruptedException
+	 */
+	public static void join(Future<?> future) throws InterruptedException {
+		try {
+			future.get();
+		} catch (ExecutionException e) {
+			logger.warn("Pooled task threw exception", e.getCause());
+		} catch (CancellationException e) {
+			// Cancelled, so there is nothing to wait for
+		}
+	}
+
+	/**
+	 * Shut down the pooled threads.
+	 */
+	public void shutdown() {
+		commandPool.shutdownNow();
+		helperPool.shutdownNow();
+	}
+
+	/**
+	 * Create daemon threads in the thread group of the thread that
+	 * created the {@link ExecutionService} (so never in the sandboxed
+	 * thread group used for running untrusted code).
+	 */
+	private static class PoolThreadFactory implements ThreadFactory {
+		private final ThreadGroup group;
+		private final String namePrefix;
+		private final AtomicInteger count;
+
+		PoolThreadFactory(String namePrefix) {
+			this.group = Thread.currentThread().getThreadGroup();
+			this.namePrefix = namePrefix;
+			this.count = new AtomicInteger(1);
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(group, r, namePrefix + count.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -84,6 +84,10 @@ public class BuilderTestContext {
 		}
 	}
 	
+	public Properties getConfig() {
+		return config;
+	}
+	
 	public void setup() {
 		Global.setup(config);
 	}
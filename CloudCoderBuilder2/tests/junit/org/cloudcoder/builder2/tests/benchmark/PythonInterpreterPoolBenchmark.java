@@ -0,0 +1,74 @@
+package org.cloudcoder.builder2.tests.benchmark;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measure how long the builder takes to test a Python function
+ * submission with and without the pool of Jython interpreters.
+ * Without the pool, each submission creates two new interpreters.
+ */
+public class PythonInterpreterPoolBenchmark extends BuilderTest {
+	private static final int NUM_WARMUP_RUNS = 3;
+	private static final int NUM_RUNS = 20;
+
+	private ProblemAndTestCaseList computeSum;
+
+	@Before
+	public void start() {
+		if (createContext()) {
+			computeSum = getContext().getExercise("compute_sum");
+		}
+	}
+
+	@Test
+	public void benchmarkWithoutPool() {
+		benchmark(false);
+	}
+
+	@Test
+	public void benchmarkWithPool() {
+		benchmark(true);
+	}
+
+	private void benchmark(boolean pool) {
+		String poolProp = "cloudcoder.builder2.python.interpreterPool";
+		String prevPool = getContext().getConfig().getProperty(poolProp);
+		getContext().getConfig().setProperty(poolProp, String.valueOf(pool));
+		try {
+			String source = getContext().getSourceText("compute_sum_pass.py");
+			for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+				SubmissionResult result = getContext().testSubmission(source, computeSum);
+				super.assertAllTestsPassed(result, computeSum);
+			}
+
+			long total = 0L, max = 0L;
+			for (int i = 0; i < NUM_RUNS; i++) {
+				long begin = System.nanoTime();
+				SubmissionResult result = getContext().testSubmission(source, computeSum);
+				long elapsed = (System.nanoTime() - begin) / 1000000L;
+				super.assertAllTestsPassed(result, computeSum);
+				total += elapsed;
+				max = Math.max(max, elapsed);
+			}
+
+			System.out.printf("Python function, pool %s: mean %d ms, max %d ms over %d runs%n",
+					pool ? "enabled" : "disabled", total / NUM_RUNS, max, NUM_RUNS);
+		} finally {
+			if (prevPool != null) {
+				getContext().getConfig().setProperty(poolProp, prevPool);
+			} else {
+				getContext().getConfig().remove(poolProp);
+			}
+		}
+	}
+
+	@AfterClass
+	public static void whenDone() {
+		BuilderTest.getInstance().destroyContext();
+	}
+}
@@ -0,0 +1,66 @@
+package org.cloudcoder.builder2.tests.benchmark;
+
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.builder2.tests.BuilderTest;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measure how long the builder takes to test trivial submissions
+ * (whose tests finish almost immediately).  Ideally, results are
+ * available as soon as the last test finishes.  When the builder
+ * polled for test completion, each Python submission paid up to
+ * 400 ms of dead time, and each test of a C submission at least 500 ms.
+ */
+public class TrivialSubmissionLatencyBenchmark extends BuilderTest {
+	private static final int NUM_WARMUP_RUNS = 3;
+	private static final int NUM_RUNS = 20;
+
+	private ProblemAndTestCaseList skip3;
+	private ProblemAndTestCaseList computeSum;
+
+	@Before
+	public void start() {
+		if (createContext()) {
+			skip3 = getContext().getExercise("skip3");
+			computeSum = getContext().getExercise("compute_sum");
+		}
+	}
+
+	@Test
+	public void benchmarkCProgram() {
+		benchmark("C program", getContext().getSourceText("skip3_pass.c"), skip3);
+	}
+
+	@Test
+	public void benchmarkPythonFunction() {
+		benchmark("Python function", getContext().getSourceText("compute_sum_pass.py"), computeSum);
+	}
+
+	private void benchmark(String what, String source, ProblemAndTestCaseList exercise) {
+		for (int i = 0; i < NUM_WARMUP_RUNS; i++) {
+			SubmissionResult result = getContext().testSubmission(source, exercise);
+			super.assertAllTestsPassed(result, exercise);
+		}
+
+		long total = 0L, max = 0L;
+		for (int i = 0; i < NUM_RUNS; i++) {
+			long begin = System.nanoTime();
+			SubmissionResult result = getContext().testSubmission(source, exercise);
+			long elapsed = (System.nanoTime() - begin) / 1000000L;
+			super.assertAllTestsPassed(result, exercise);
+			total += elapsed;
+			max = Math.max(max, elapsed);
+		}
+
+		System.out.printf("%s (%d tests): mean %d ms, max %d ms over %d runs%n",
+				what, exercise.getTestCaseData().size(), total / NUM_RUNS, max, NUM_RUNS);
+	}
+
+	@AfterClass
+	public static void whenDone() {
+		BuilderTest.getInstance().destroyContext();
+	}
+}
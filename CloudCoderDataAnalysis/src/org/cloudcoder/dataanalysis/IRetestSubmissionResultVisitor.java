@@ -30,8 +30,11 @@ public interface IRetestSubmissionResultVisitor {
 	 * Called to initialize the {@link IRetestSubmissionResultVisitor}.
 	 * 
 	 * @param outputDirectory the directory where output should be written
+	 * @param resume          true if a previous retest is being resumed,
+	 *                        in which case output should be appended to
+	 *                        the existing output
 	 */
-	public void init(File outputDirectory);
+	public void init(File outputDirectory, boolean resume);
 	
 	/**
 	 * Called when a {@link SubmissionResult} is produced.
@@ -41,6 +44,14 @@ public interface IRetestSubmissionResultVisitor {
 	 */
 	public void onSubmissionResult(SubmissionResult result, RetestSnapshot snapshot);
 	
+	/**
+	 * Called after each {@link SubmissionResult} is delivered, to make sure
+	 * that its output has been written before the snapshot is recorded
+	 * as tested.  Results delivered before a call to flush will not be
+	 * delivered again if the retest is resumed.
+	 */
+	public void flush();
+	
 	/**
 	 * Called after all {@link SubmissionResult}s have been delivered.
 	 */
@@ -29,15 +29,20 @@ public class LineCoverageRetestSubmissionResultVisitor implements IRetestSubmiss
 	private CSVWriter csvWriter;
 	
 	@Override
-	public void init(File outputDirectory) {
+	public void init(File outputDirectory, boolean resume) {
 		try {
-			writer = new BufferedWriter(new FileWriter(new File(outputDirectory, "coverage.csv")));
+			writer = new BufferedWriter(new FileWriter(new File(outputDirectory, "coverage.csv"), resume));
 			//csvWriter = 
 			CSV csv = CSV
 					.separator('|')  // delimiter of fields
 					.quote('"')      // quote character
 					.create();       // new instance is immutable
 			csvWriter = csv.writer(writer);
+			
+			if (resume) {
+				// The header has already been written
+				return;
+			}
 
 			// We put a heck of a lot of information in each CSV record
 			csvWriter.writeNext(
@@ -144,6 +149,18 @@ public class LineCoverageRetestSubmissionResultVisitor implements IRetestSubmiss
 		return coverageList != null ? Arrays.asList(coverageList) : null;
 	}
 
+	@Override
+	public void flush() {
+		if (writer == null) {
+			return;
+		}
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			logger.error("Error writing coverage results data file", e);
+		}
+	}
+
 	@Override
 	public void cleanup() {
 		try {
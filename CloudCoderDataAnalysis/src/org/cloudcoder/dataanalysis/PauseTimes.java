@@ -3,7 +3,7 @@ package org.cloudcoder.dataanalysis;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
+import java.io.Writer;
 import java.util.Properties;
 import java.util.Scanner;
 
@@ -13,6 +13,7 @@ import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.ChangeType;
 import org.cloudcoder.app.shared.model.Event;
 import org.cloudcoder.app.shared.model.EventType;
+import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
 import org.cloudcoder.app.shared.model.WorkSession;
@@ -21,6 +22,49 @@ public class PauseTimes implements IAnalyzeSnapshots {
 	private SnapshotSelectionCriteria criteria;
 	private int separation;
 	private String outputFile;
+	
+	/**
+	 * Visitor to write the pause times between the events of a single
+	 * work session.
+	 */
+	private static class PauseTimeVisitor implements ICallback<Pair<Event, Change>> {
+		private final Writer w;
+		private int userId;
+		private long last;
+		private int count;
+		
+		public PauseTimeVisitor(Writer w) {
+			this.w = w;
+		}
+		
+		public void startSession(WorkSession ws) {
+			this.userId = ws.getUserId();
+			this.last = -1;
+		}
+		
+		@Override
+		public void call(Pair<Event, Change> pair) {
+			// ignore full-text change events: they are generated automatically
+			// with each submission
+			if (pair.getLeft().getType() == EventType.CHANGE && pair.getRight().getType() == ChangeType.FULL_TEXT) {
+				return;
+			}
+			if (last > 0L) {
+				try {
+					w.write(userId + "," + (pair.getLeft().getTimestamp() - last) + "\n");
+				} catch (IOException e) {
+					throw new RuntimeIOException(e);
+				}
+				
+				count++;
+				if (count % 200 == 0) {
+					System.out.print(".");
+					System.out.flush();
+				}
+			}
+			last = pair.getLeft().getTimestamp();
+		}
+	}
 
 	@Override
 	public void setConfig(Properties config) {
@@ -48,33 +92,22 @@ public class PauseTimes implements IAnalyzeSnapshots {
 			
 			w.write("userId,pauseTime\n");
 			
-			List<WorkSession> sessions = Database.getInstance().findWorkSessions(criteria, separation);
-			System.out.println("Found " + sessions.size() + " work sessions");
-			
-			int count = 0;
-			
-			for (WorkSession ws : sessions) {
-				List<Pair<Event, Change>> events =
-						Database.getInstance().getEventsWithChanges(ws.getUserId(), ws.getProblemId(), ws.getStartEventId(), ws.getEndEventId());
+			SpooledWorkSessions sessions = SpooledWorkSessions.find(Database.getInstance(), criteria, separation);
+			try {
+				System.out.println("Found " + sessions.getNumWorkSessions() + " work sessions");
 				
-				long last = -1;
-				for (Pair<Event, Change> pair : events) {
-					// ignore full-text change events: they are generated automatically
-					// with each submission
-					if (pair.getLeft().getType() == EventType.CHANGE && pair.getRight().getType() == ChangeType.FULL_TEXT) {
-						continue;
-					}
-					if (last > 0L) {
-						w.write(ws.getUserId() + "," + (pair.getLeft().getTimestamp() - last) + "\n");
-						
-						count++;
-						if (count % 200 == 0) {
-							System.out.print(".");
-							System.out.flush();
-						}
-					}
-					last = pair.getLeft().getTimestamp();
+				// Each session's events (and their Changes) are streamed
+				// rather than being loaded into memory
+				PauseTimeVisitor visitor = new PauseTimeVisitor(w);
+				WorkSession ws;
+				while ((ws = sessions.next()) != null) {
+					visitor.startSession(ws);
+					Database.getInstance().visitEventsWithChanges(ws.getUserId(), ws.getProblemId(), ws.getStartEventId(), ws.getEndEventId(), visitor);
 				}
+			} catch (RuntimeIOException e) {
+				throw (IOException) e.getCause();
+			} finally {
+				sessions.close();
 			}
 			w.flush();
 			System.out.println("done");
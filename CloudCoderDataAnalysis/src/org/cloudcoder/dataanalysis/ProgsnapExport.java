@@ -17,14 +17,19 @@
 
 package org.cloudcoder.dataanalysis;
 
+import java.io.BufferedInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
-import java.io.StringWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -33,17 +38,26 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.persist.IDatabase;
 import org.cloudcoder.app.shared.model.Change;
@@ -52,12 +66,14 @@ import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.NamedTestResult;
+import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemList;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
 import org.cloudcoder.app.shared.model.SubmissionStatus;
 import org.cloudcoder.app.shared.model.TestCase;
 import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
 import org.cloudcoder.app.shared.model.User;
 
 import com.fasterxml.jackson.core.JsonFactory;
@@ -71,7 +87,7 @@ import com.fasterxml.jackson.core.JsonGenerator;
  * @author David Hovemeyer
  */
 public class ProgsnapExport {
-	private interface DataWriter extends Closeable {
+	interface DataWriter extends Closeable {
 		public Writer writeTo(String fileName) throws IOException;
 	}
 	
@@ -232,10 +248,149 @@ public class ProgsnapExport {
 		}
 	}
 
+	/**
+	 * Work histories of the students on one problem, spooled to a
+	 * temporary file in order by student id, so that problems gathered
+	 * ahead of the one being written aren't held in memory.
+	 */
+	private final class SpooledWorkHistories implements Closeable {
+		private final File file;
+		private final CountingOutputStream out;
+		private final Writer writer;
+		private final List<Pair<Integer, Long>> histories; // student ids and lengths in bytes
+
+		private SpooledWorkHistories() throws IOException {
+			this.file = File.createTempFile("progsnap-histories", ".tmp");
+			this.out = new CountingOutputStream(new FileOutputStream(file));
+			this.writer = new OutputStreamWriter(out, Charset.forName("UTF-8"));
+			this.histories = new ArrayList<>();
+		}
+
+		public void addWorkHistory(int studentId, List<WorkHistoryEvent> eventList) throws IOException {
+			long start = out.getByteCount();
+			writeWorkHistoryEvents(writer, eventList);
+			writer.flush();
+			histories.add(new Pair<Integer, Long>(studentId, out.getByteCount() - start));
+		}
+
+		/**
+		 * Copy the spooled work histories to their work history files.
+		 */
+		public void writeWorkHistoryFiles(Problem problem) throws IOException {
+			writer.close();
+			try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+				for (Pair<Integer, Long> history : histories) {
+					Reader r = new InputStreamReader(new BoundedInputStream(in, history.getRight()), Charset.forName("UTF-8"));
+					try (Writer w = dataWriter.writeTo(getWorkHistoryFileName(problem, history.getLeft()))) {
+						IOUtils.copy(r, w);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			IOUtils.closeQuietly(writer);
+			file.delete();
+		}
+	}
+
+	/**
+	 * Render the work histories of all students on a problem, given
+	 * the problem's changes in order by user id (and then by event id),
+	 * and each student's submission receipts and test results.
+	 */
+	private final class GatherWorkHistories implements ICallback<Change> {
+		private final Problem problem;
+		private final Set<Integer> userIds;
+		private final Map<Integer, List<SubmissionReceipt>> receiptMap;
+		private final Map<Integer, List<TestResult>> testResultMap;
+		private final TreeSet<Integer> receiptUserIds;
+		private final SpooledWorkHistories workHistories;
+		private int userId;
+		private List<WorkHistoryEvent> eventList;
+		private RecordEditEvents recordEditEvents;
+
+		private GatherWorkHistories(Problem problem, Set<Integer> userIds,
+				Map<Integer, List<SubmissionReceipt>> receiptMap, Map<Integer, List<TestResult>> testResultMap,
+				SpooledWorkHistories workHistories) {
+			this.problem = problem;
+			this.userIds = userIds;
+			this.receiptMap = receiptMap;
+			this.testResultMap = testResultMap;
+			this.receiptUserIds = new TreeSet<>(receiptMap.keySet());
+			this.workHistories = workHistories;
+			this.userId = -1;
+		}
+
+		@Override
+		public void call(Change value) {
+			int changeUserId = value.getEvent().getUserId();
+			if (changeUserId != userId) {
+				finishStudent();
+				addReceiptOnlyWorkHistories(receiptUserIds.headSet(changeUserId));
+				userId = changeUserId;
+				eventList = new ArrayList<>();
+				recordEditEvents = new RecordEditEvents(problem, eventList);
+			}
+			if (userIds.contains(userId)) {
+				recordEditEvents.call(value);
+			}
+		}
+
+		/**
+		 * Called after all changes have been visited.
+		 */
+		public void finish() {
+			finishStudent();
+			addReceiptOnlyWorkHistories(receiptUserIds);
+		}
+
+		private void finishStudent() {
+			if (userId >= 0) {
+				receiptUserIds.remove(userId);
+				if (userIds.contains(userId)) {
+					addWorkHistory(userId, eventList);
+				}
+			}
+		}
+
+		// Students with submission receipts but no changes
+		private void addReceiptOnlyWorkHistories(Set<Integer> studentIds) {
+			for (Integer studentId : studentIds) {
+				if (userIds.contains(studentId)) {
+					addWorkHistory(studentId, new ArrayList<WorkHistoryEvent>());
+				}
+			}
+			studentIds.clear();
+		}
+
+		private void addWorkHistory(int studentId, List<WorkHistoryEvent> studentEventList) {
+			List<SubmissionReceipt> receipts = receiptMap.get(studentId);
+			if (receipts == null) {
+				receipts = Collections.emptyList();
+			}
+			try {
+				if (addSubmissionEvents(studentEventList, receipts, testResultMap)) {
+					workHistories.addWorkHistory(studentId, studentEventList);
+				}
+			} catch (IOException e) {
+				throw new RuntimeIOException(e);
+			}
+		}
+	}
+
 	// Version of progsnap spec the exported data will conform to
 	private static final String PSVERSION = "0.1-dev";
 	
+	// Shared by all threads: each line is written by its own JsonGenerator,
+	// which must neither close nor flush the Writer it writes to
+	private static final JsonFactory JSON_FACTORY = new JsonFactory()
+			.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+			.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+	
 	private Properties config;
+	private IDatabase database;
 	private DataWriter dataWriter;
 	
 	public ProgsnapExport() {
@@ -246,6 +401,14 @@ public class ProgsnapExport {
 		this.config = config;
 	}
 	
+	/**
+	 * @param database the {@link IDatabase} from which to export data
+	 *                 (the default is to connect using the config properties)
+	 */
+	public void setDatabase(IDatabase database) {
+		this.database = database;
+	}
+	
 	public void setDataWriter(DataWriter dataWriter) {
 		this.dataWriter = dataWriter;
 	}
@@ -310,7 +473,10 @@ public class ProgsnapExport {
 	}
 	
 	public void execute() throws IOException {
-		Util.connectToDatabase(config);
+		if (database == null) {
+			Util.connectToDatabase(config);
+			database = Database.getInstance();
+		}
 
 		User instructor = findUser(getUsername());
 		Course course = findCourse(instructor, getCourseId());
@@ -342,38 +508,51 @@ public class ProgsnapExport {
 		writeStudentsFile(users, course);
 		
 		// For each activity (problem), write student work history files
+		List<Problem> exportedProblems = new ArrayList<>();
 		for (Problem p : problems.getProblemList()) {
 			if (problemIds.contains(p.getProblemId())) {
+				exportedProblems.add(p);
+			}
+		}
+		if (useBulkQueries()) {
+			writeWorkHistories(instructor, exportedProblems, users);
+		} else {
+			// Query the data for each student/activity separately
+			for (Problem p : exportedProblems) {
 				for (User student : users) {
 					writeStudentWorkHistory(instructor, student, p);
 				}
 			}
 		}
 	}
+	
+	private int getNumExportThreads() {
+		return Integer.parseInt(config.getProperty("exportThreads", "4"));
+	}
+	
+	private boolean useBulkQueries() {
+		return Boolean.parseBoolean(config.getProperty("bulkQueries", "true"));
+	}
 
 	private void writeTaggedFile(Writer w, Properties props) throws IOException {
 		for (Map.Entry<Object, Object> entry : props.entrySet()) {
 			String tagname = entry.getKey().toString();
 			Object value = entry.getValue();
 			
-			String line = encodeLine(tagname, value);
-			w.write(line);
-			w.write("\n");
+			writeLine(w, tagname, value);
 		}
 	}
 
-	// Encode a line consisting of a tagname and a value
-	private String encodeLine(String tagname, Object value) throws IOException {
-		StringWriter sw = new StringWriter();
-		JsonFactory factory = new JsonFactory();
-		JsonGenerator jg = factory.createGenerator(sw);
+	// Write a line consisting of a tagname and a value
+	private void writeLine(Writer w, String tagname, Object value) throws IOException {
+		JsonGenerator jg = JSON_FACTORY.createGenerator(w);
 		jg.writeStartObject();
 		jg.writeStringField("tag", tagname);
 		jg.writeFieldName("value");
 		writeJsonFieldValue(jg, value);
 		jg.writeEndObject();
 		jg.close();
-		return sw.toString();
+		w.write("\n");
 	}
 
 	private void writeJsonFieldValue(JsonGenerator jg, Object value) throws IOException {
@@ -416,12 +595,12 @@ public class ProgsnapExport {
 	}
 
 	private User findUser(String username) {
-		IDatabase db = Database.getInstance();
+		IDatabase db = database;
 		return db.getUserWithoutAuthentication(username);
 	}
 	
 	private Course findCourse(User user, int courseId) {
-		IDatabase db = Database.getInstance();
+		IDatabase db = database;
 		List<? extends Object[]> courses = db.getCoursesForUser(user);
 		for (Object[] triple : courses) {
 			Course course = (Course) triple[0];
@@ -433,7 +612,7 @@ public class ProgsnapExport {
 	}
 
 	private ProblemList getProblems(User user, Course course) {
-		IDatabase db = Database.getInstance();
+		IDatabase db = database;
 		
 		return db.getProblemsInCourse(user, course);
 	}
@@ -451,15 +630,13 @@ public class ProgsnapExport {
 				String path = String.format("activity/%04d.txt", problemId);
 				obj.put("number", problemId);
 				obj.put("path", path);
-				String line = encodeLine("activity", obj);
-				w.write(line);
-				w.write("\n");
+				writeLine(w, "activity", obj);
 			}
 		}
 	}
 
 	private void writeActivityFile(Problem p) throws IOException {
-		IDatabase db = Database.getInstance();
+		IDatabase db = database;
 
 		try (Writer w = dataWriter.writeTo(String.format("activity/%04d.txt", p.getProblemId()))) {
 			Properties activityProps = new Properties();
@@ -489,15 +666,13 @@ public class ProgsnapExport {
 				test.put("output", t.getOutput());
 				test.put("opaque", t.isSecret());
 				test.put("invisible", false);
-				String line = encodeLine("test", test);
-				w.write(line);
-				w.write("\n");
+				writeLine(w, "test", test);
 			}
 		}
 	}
 
 	private List<User> getUsers(Course course) {
-		IDatabase db = Database.getInstance();
+		IDatabase db = database;
 		
 		List<User> rawUsers = db.getUsersInCourse(course.getId(), 0);
 		
@@ -520,7 +695,7 @@ public class ProgsnapExport {
 	}
 
 	private void writeStudentsFile(List<User> users, Course course) throws IOException {
-		IDatabase db = Database.getInstance();
+		IDatabase db = database;
 		
 		try (Writer w = dataWriter.writeTo("students.txt")) {
 			for (User user : users) {
@@ -531,9 +706,7 @@ public class ProgsnapExport {
 				Map<String, Object> student = new LinkedHashMap<>();
 				student.put("id", String.valueOf(user.getId()));
 				student.put("instructor", regList.isInstructor());
-				String line = encodeLine("student", student);
-				w.write(line);
-				w.write("\n");
+				writeLine(w, "student", student);
 			}
 		}
 	}
@@ -544,8 +717,185 @@ public class ProgsnapExport {
 		
 		// Retrieve edit events
 		ICallback<Change> visitor = new RecordEditEvents(problem, eventList);
-		Database.getInstance().visitAllChangesNewerThan(student, problem.getProblemId(), -1, visitor, IDatabase.RetrieveChangesMode.RETRIEVE_CHANGES_AND_EDIT_EVENTS);
+		database.visitAllChangesNewerThan(student, problem.getProblemId(), -1, visitor, IDatabase.RetrieveChangesMode.RETRIEVE_CHANGES_AND_EDIT_EVENTS);
+		
+		// Retrieve submission receipts
+		SubmissionReceipt[] receipts = database.getAllSubmissionReceiptsForUser(problem, student);
 		
+		// Retrieve test results for submissions that were actually tested.
+		// Note that we need to specify the instructor account here to ensure
+		// that we can get the test results for any user.
+		Map<Integer, List<TestResult>> testResultMap = new HashMap<>();
+		for (SubmissionReceipt receipt : receipts) {
+			SubmissionStatus status = receipt.getStatus();
+			if (status == SubmissionStatus.TESTS_PASSED || status == SubmissionStatus.TESTS_FAILED) {
+				NamedTestResult[] namedTestResults =
+						database.getTestResultsForSubmission(instructor, problem, receipt);
+				List<TestResult> testResults = new ArrayList<>();
+				for (NamedTestResult ntr : namedTestResults) {
+					testResults.add(ntr.getTestResult());
+				}
+				testResultMap.put(receipt.getEventId(), testResults);
+			}
+		}
+		
+		if (addSubmissionEvents(eventList, Arrays.asList(receipts), testResultMap)) {
+			try (Writer w = dataWriter.writeTo(getWorkHistoryFileName(problem, student.getId()))) {
+				writeWorkHistoryEvents(w, eventList);
+			}
+		}
+	}
+	
+	/**
+	 * Write the work history files for given problems, gathering each
+	 * problem's data with bulk queries (rather than separately for each
+	 * student/activity.)  Problems are gathered in parallel, each into its
+	 * own spool file, but the files are written in the same order as the
+	 * sequential export.
+	 */
+	private void writeWorkHistories(final User instructor, List<Problem> problemList, List<User> users) throws IOException {
+		final Set<Integer> userIds = new HashSet<>();
+		for (User user : users) {
+			userIds.add(user.getId());
+		}
+		
+		int numThreads = Math.max(getNumExportThreads(), 1);
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		LinkedList<Pair<Problem, Future<SpooledWorkHistories>>> pending = new LinkedList<>();
+		try {
+			// At most 2*numThreads problems are gathered ahead of the one being written
+			Iterator<Problem> i = problemList.iterator();
+			while (i.hasNext() || !pending.isEmpty()) {
+				while (i.hasNext() && pending.size() < numThreads*2) {
+					final Problem problem = i.next();
+					Future<SpooledWorkHistories> future = executor.submit(new Callable<SpooledWorkHistories>() {
+						@Override
+						public SpooledWorkHistories call() throws Exception {
+							SpooledWorkHistories histories = gatherWorkHistories(instructor, problem, userIds);
+							if (Thread.interrupted()) {
+								// Cancelled: nobody will write or delete the spool file
+								histories.close();
+								throw new InterruptedIOException("Interrupted gathering work histories");
+							}
+							return histories;
+						}
+					});
+					pending.add(new Pair<Problem, Future<SpooledWorkHistories>>(problem, future));
+				}
+				
+				Pair<Problem, Future<SpooledWorkHistories>> next = pending.removeFirst();
+				SpooledWorkHistories histories = getWorkHistories(next.getRight());
+				try {
+					histories.writeWorkHistoryFiles(next.getLeft());
+				} finally {
+					histories.close();
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			
+			// Delete the spool files of problems that were gathered but not written
+			for (Pair<Problem, Future<SpooledWorkHistories>> p : pending) {
+				if (!p.getRight().cancel(true)) {
+					try {
+						getWorkHistories(p.getRight()).close();
+					} catch (Exception e) {
+						// The error has already been reported (or is being reported)
+					}
+				}
+			}
+		}
+	}
+	
+	private SpooledWorkHistories getWorkHistories(Future<SpooledWorkHistories> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting for work histories");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeIOException) {
+				cause = cause.getCause();
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Error gathering work histories", cause);
+		}
+	}
+	
+	/**
+	 * Gather the work histories of all students on given problem,
+	 * using one query each for the changes, submission receipts,
+	 * and test results.
+	 * 
+	 * @return the spooled work histories
+	 */
+	private SpooledWorkHistories gatherWorkHistories(User instructor, final Problem problem, final Set<Integer> userIds) throws IOException {
+		IDatabase db = database;
+		
+		// Submission receipts, by user id
+		final Map<Integer, List<SubmissionReceipt>> receiptMap = new HashMap<>();
+		db.visitAllSubmissionReceiptsForProblem(problem, new ICallback<SubmissionReceipt>() {
+			@Override
+			public void call(SubmissionReceipt value) {
+				Integer userId = value.getEvent().getUserId();
+				List<SubmissionReceipt> receipts = receiptMap.get(userId);
+				if (receipts == null) {
+					receipts = new ArrayList<>();
+					receiptMap.put(userId, receipts);
+				}
+				receipts.add(value);
+			}
+		});
+		
+		// Test results, by submission receipt event id
+		final Map<Integer, List<TestResult>> testResultMap = new HashMap<>();
+		db.visitTestResultsForProblem(instructor, problem, new ICallback<TestResult>() {
+			@Override
+			public void call(TestResult value) {
+				Integer receiptEventId = value.getSubmissionReceiptEventId();
+				List<TestResult> testResults = testResultMap.get(receiptEventId);
+				if (testResults == null) {
+					testResults = new ArrayList<>();
+					testResultMap.put(receiptEventId, testResults);
+				}
+				testResults.add(value);
+			}
+		});
+		
+		// Changes are visited in order by user id, so a student's edit
+		// events are complete when the next student's first Change is visited
+		SpooledWorkHistories workHistories = new SpooledWorkHistories();
+		boolean success = false;
+		try {
+			GatherWorkHistories gather = new GatherWorkHistories(problem, userIds, receiptMap, testResultMap, workHistories);
+			db.visitAllChangesForProblem(problem.getProblemId(), gather);
+			gather.finish();
+			success = true;
+			return workHistories;
+		} catch (RuntimeIOException e) {
+			throw (IOException) e.getCause();
+		} finally {
+			if (!success) {
+				workHistories.close();
+			}
+		}
+	}
+	
+	/**
+	 * Add a student's submission, compilation, and test results events
+	 * to the student's edit events, and sort all of the events by timestamp.
+	 * 
+	 * @return true if the student has any events for the activity,
+	 *         false if not (in which case no work history file is written)
+	 */
+	private boolean addSubmissionEvents(List<WorkHistoryEvent> eventList, List<SubmissionReceipt> receipts,
+			Map<Integer, List<TestResult>> testResultMap) throws IOException {
 		// Build map of edit ids to edit events
 		Map<Integer, WorkHistoryEvent> editEventMap = new HashMap<>();
 		for (WorkHistoryEvent evt : eventList) {
@@ -554,9 +904,6 @@ public class ProgsnapExport {
 			editEventMap.put(editId, evt);
 		}
 		
-		// Retrieve submission receipts
-		SubmissionReceipt[] receipts = Database.getInstance().getAllSubmissionReceiptsForUser(problem, student);
-		
 		// Use submission receipts to
 		// - annotate edit events with snapshot ids (which are submission event ids)
 		// - generate submission and compilation events
@@ -612,15 +959,14 @@ public class ProgsnapExport {
 			// Only report test results if testing was actually performed
 			if (status == SubmissionStatus.TESTS_PASSED || status == SubmissionStatus.TESTS_FAILED) {
 				// Collect test results, add TestResults event.
-				// Note that we need to specify the instructor account here to ensure
-				// that we can get the test results for any user.
-				NamedTestResult[] testResults =
-						Database.getInstance().getTestResultsForSubmission(instructor, problem, receipt);
-				Object[] statuses = new Object[testResults.length];
-				for (int i = 0; i < testResults.length; i++) {
-					NamedTestResult tr = testResults[i];
+				List<TestResult> testResults = testResultMap.get(receipt.getEventId());
+				if (testResults == null) {
+					testResults = Collections.emptyList();
+				}
+				Object[] statuses = new Object[testResults.size()];
+				for (int i = 0; i < statuses.length; i++) {
 					String trStatus;
-					TestOutcome outcome = tr.getTestResult().getOutcome();
+					TestOutcome outcome = testResults.get(i).getOutcome();
 					switch (outcome) {
 					case FAILED_ASSERTION:
 						trStatus = "failed";
@@ -654,23 +1000,25 @@ public class ProgsnapExport {
 		// If there were no events for this student/activity combo,
 		// don't bother writing a file.
 		if (eventList.isEmpty()) {
-			return;
+			return false;
 		}
 		
 		// Sort all work history events by timestamp
 		Collections.sort(eventList);
-		
-		// Write all work history events to the work history file
-		
+		return true;
+	}
+	
+	// Encode all work history events
+	private void writeWorkHistoryEvents(Writer w, List<WorkHistoryEvent> eventList) throws IOException {
+		for (WorkHistoryEvent ev : eventList) {
+			writeLine(w, ev.tag, ev.value);
+		}
+	}
+	
+	private String getWorkHistoryFileName(Problem problem, int studentId) {
 		// Directory name has form "/history/NNNN", where NNNN is the activity number
 		// (i.e., problem number.) Filename is based on student id.
-		String fname = String.format("history/%04d/%04d.txt", problem.getProblemId(), student.getId());
-		try (Writer w = dataWriter.writeTo(fname)) {
-			for (WorkHistoryEvent ev : eventList) {
-				w.write(encodeLine(ev.tag, ev.value));
-				w.write("\n");
-			}
-		}
+		return String.format("history/%04d/%04d.txt", problem.getProblemId(), studentId);
 	}
 	
 	public static void main(String[] args) throws IOException {
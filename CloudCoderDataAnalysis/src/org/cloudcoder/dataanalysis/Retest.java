@@ -17,23 +17,42 @@
 
 package org.cloudcoder.dataanalysis;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.RandomAccessFile;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
 import org.cloudcoder.app.server.persist.Database;
+import org.cloudcoder.app.server.persist.IDatabase;
 import org.cloudcoder.app.server.persist.SnapshotCallback;
-import org.cloudcoder.app.server.submitsvc.DefaultSubmitService;
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
 import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
@@ -49,22 +68,62 @@ import org.slf4j.LoggerFactory;
  * Acts as a submission queue, so any number of builders on any
  * number of machines can be used to do the retesting.
  * 
- * @author David Hovemeyer
+ * <p>
+ * The snapshots are retrieved from the database and spooled to a
+ * temporary file in the output directory: the retrieval (which streams
+ * its result set) doesn't wait for submissions or query the database.
+ * Snapshots are then submitted from the spool file: at most
+ * {@link #setMaxInFlight(int) maxInFlight} snapshots are being tested
+ * at any time, and results are delivered to the
+ * {@link IRetestSubmissionResultVisitor}s as they complete.
+ * </p>
+ * 
+ * <p>
+ * After each result is delivered, the visitors' output is flushed,
+ * and then the snapshot's submit event id is recorded in a checkpoint
+ * file in the output directory, so that an interrupted retest can be
+ * resumed (see {@link #setResume(boolean)}).  The checkpoint never
+ * records a snapshot whose results weren't written, and at most one
+ * snapshot's results are written again by a resumed retest.
+ * </p>
  */
 public class Retest {
 	private static final Logger logger = LoggerFactory.getLogger(Retest.class);
 	
+	/** Name of the checkpoint file (in the output directory). */
+	public static final String CHECKPOINT_FILE_NAME = "retest-checkpoint.txt";
+	
+	/** Default maximum number of snapshots being tested at any time. */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+	
+	/** Interval at which progress is reported. */
+	private static final long PROGRESS_INTERVAL_MS = 10000L;
+	
 	private SnapshotSelectionCriteria criteria;
 	private Properties config;
+	private IDatabase database;
 	private Map<Integer, ProblemAndTestCaseList> exerciseMap;
-	private IdentityHashMap<IFutureSubmissionResult, RetestSnapshot> snapshotMap;
 	private File outputDirectory;
 	private List<IRetestSubmissionResultVisitor> visitorList;
+	private int maxInFlight;
+	private boolean resume;
+	private long stubBuilderLatencyMillis;
+	
+	// Retest state
+	private ISubmitService submitService;
+	private Semaphore inFlight;
+	private BlockingQueue<Pair<IFutureSubmissionResult, RetestSnapshot>> completedQueue;
+	private BufferedWriter checkpointWriter;
+	private int numToTest;
+	private int numTested;
+	private int numFailed;
+	private long startTime;
 	
 	public Retest() {
 		exerciseMap = new HashMap<Integer, ProblemAndTestCaseList>();
-		snapshotMap = new IdentityHashMap<IFutureSubmissionResult, RetestSnapshot>();
 		visitorList = new LinkedList<IRetestSubmissionResultVisitor>();
+		maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+		stubBuilderLatencyMillis = -1L;
 	}
 	
 	public void setCriteria(SnapshotSelectionCriteria criteria) {
@@ -75,6 +134,14 @@ public class Retest {
 		this.config = config;
 	}
 	
+	/**
+	 * @param database the {@link IDatabase} from which to retrieve snapshots
+	 *                 (the default is {@link Database#getInstance()})
+	 */
+	public void setDatabase(IDatabase database) {
+		this.database = database;
+	}
+	
 	public void setOutputDirectory(File outputDirectory) {
 		this.outputDirectory = outputDirectory;
 	}
@@ -83,12 +150,188 @@ public class Retest {
 		visitorList.add(visitor);
 	}
 	
+	/**
+	 * @param maxInFlight maximum number of snapshots being tested at any time
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = maxInFlight;
+	}
+	
+	/**
+	 * @param resume true if snapshots recorded in the checkpoint file
+	 *               should be skipped, and output appended to the
+	 *               existing output
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+	
+	/**
+	 * Use a {@link StubSubmitService} rather than real builders.
+	 * 
+	 * @param latencyMillis delay before each submission completes
+	 */
+	public void setStubBuilder(long latencyMillis) {
+		this.stubBuilderLatencyMillis = latencyMillis;
+	}
+	
 	public void execute() throws IOException {
+		if (database == null) {
+			database = Database.getInstance();
+		}
+		startSubmitService();
+		
+		// Find snapshots that were tested by a previous (interrupted) retest
+		outputDirectory.mkdirs();
+		File checkpointFile = new File(outputDirectory, CHECKPOINT_FILE_NAME);
+		Set<Integer> alreadyTested = resume ? readCheckpoint(checkpointFile) : new HashSet<Integer>();
+		if (resume) {
+			System.out.println("Resuming: " + alreadyTested.size() + " snapshots already tested");
+		}
+		
+		// Initialize visitors
+		for (IRetestSubmissionResultVisitor visitor : visitorList) {
+			visitor.init(outputDirectory, resume);
+		}
+		boolean partialLine = resume && !endsWithNewline(checkpointFile);
+		checkpointWriter = new BufferedWriter(new FileWriter(checkpointFile, resume));
+		if (partialLine) {
+			// Don't append to a partially-written line
+			checkpointWriter.newLine();
+		}
+		
+		// Retrieve snapshots from database.  The result set is streamed,
+		// so the callback just spools the snapshots to be tested.
+		File spoolFile = File.createTempFile("retest-snapshots", ".tmp", outputDirectory);
+		try {
+			spoolSnapshots(spoolFile, alreadyTested);
+			System.out.println(numToTest + " snapshots to test");
+			testSnapshots(spoolFile);
+		} finally {
+			if (!spoolFile.delete()) {
+				logger.warn("Could not delete spool file {}", spoolFile);
+			}
+		}
+		
+		// Allow retest submission result visitors to shut down.
+		for (IRetestSubmissionResultVisitor visitor : visitorList) {
+			visitor.cleanup();
+		}
+		checkpointWriter.close();
+		
+		stopSubmitService();
+		System.out.println("exiting");
+	}
+	
+	private void spoolSnapshots(File spoolFile, final Set<Integer> alreadyTested) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+		final IOException[] spoolError = new IOException[1];
+		try {
+			database.retrieveSnapshots(criteria, new SnapshotCallback() {
+				@Override
+				public void onSnapshotFound(int submitEventId,
+						int fullTextChangeId, int courseId, int problemId,
+						int userId, String programText, SubmissionReceipt receipt) {
+					if (alreadyTested.contains(submitEventId) || spoolError[0] != null) {
+						return;
+					}
+					try {
+						writeSnapshot(out, new RetestSnapshot(courseId, problemId, userId, submitEventId, fullTextChangeId, programText));
+						numToTest++;
+					} catch (IOException e) {
+						spoolError[0] = e;
+					}
+				}
+			});
+		} finally {
+			out.close();
+		}
+		if (spoolError[0] != null) {
+			throw spoolError[0];
+		}
+	}
+	
+	private void testSnapshots(File spoolFile) throws IOException {
+		// Results are delivered to the visitors by a single thread,
+		// in the order in which they complete
+		inFlight = new Semaphore(maxInFlight);
+		completedQueue = new LinkedBlockingQueue<Pair<IFutureSubmissionResult, RetestSnapshot>>();
+		startTime = System.currentTimeMillis();
+		Thread resultThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				deliverResults();
+			}
+		}, "RetestResults");
+		resultThread.start();
+		
+		// Submit each snapshot for testing as soon as fewer than
+		// maxInFlight snapshots are being tested
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+		try {
+			RetestSnapshot snapshot;
+			while ((snapshot = readSnapshot(in)) != null) {
+				submit(snapshot);
+			}
+		} finally {
+			in.close();
+		}
+		
+		// Wait for all submission results
+		inFlight.acquireUninterruptibly(maxInFlight);
+		completedQueue.add(new Pair<IFutureSubmissionResult, RetestSnapshot>(null, null));
+		try {
+			resultThread.join();
+		} catch (InterruptedException e) {
+			logger.error("Interrupted waiting for results to be delivered", e);
+		}
+		
+		reportProgress();
+		System.out.print("All snapshots tested...");
+		System.out.flush();
+	}
+	
+	private static void writeSnapshot(DataOutputStream out, RetestSnapshot snapshot) throws IOException {
+		out.writeInt(snapshot.courseId);
+		out.writeInt(snapshot.problemId);
+		out.writeInt(snapshot.userId);
+		out.writeInt(snapshot.submitEventId);
+		out.writeInt(snapshot.fullTextChangeId);
+		// Program text may be longer than writeUTF allows
+		byte[] programText = snapshot.programText.getBytes("UTF-8");
+		out.writeInt(programText.length);
+		out.write(programText);
+	}
+	
+	private static RetestSnapshot readSnapshot(DataInputStream in) throws IOException {
+		int courseId;
+		try {
+			courseId = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		int problemId = in.readInt();
+		int userId = in.readInt();
+		int submitEventId = in.readInt();
+		int fullTextChangeId = in.readInt();
+		byte[] programText = new byte[in.readInt()];
+		in.readFully(programText);
+		return new RetestSnapshot(courseId, problemId, userId, submitEventId, fullTextChangeId, new String(programText, "UTF-8"));
+	}
+
+	private void startSubmitService() throws IOException {
+		if (stubBuilderLatencyMillis >= 0) {
+			System.out.println("Using stub builder (latency " + stubBuilderLatencyMillis + " ms)");
+			submitService = new StubSubmitService(4, stubBuilderLatencyMillis);
+			return;
+		}
+		
 		// Initialize OutOfProcessSubmitService
 		OutOfProcessSubmitService svc = new OutOfProcessSubmitService();
 		svc.initFromConfigProperties(config);
 		svc.start();
 		OutOfProcessSubmitService.setInstance(svc);
+		submitService = svc;
 		
 		// Pause a bit to allow builders to connect
 		System.out.println("Waiting for builders to connect...");
@@ -107,95 +350,161 @@ public class Retest {
 				}
 			}
 		}
+	}
+
+	private void stopSubmitService() {
+		if (submitService instanceof StubSubmitService) {
+			((StubSubmitService) submitService).shutdown();
+			return;
+		}
 		
-		// Retrieve snapshots from database
-		final List<RetestSnapshot> snapshotList = new ArrayList<RetestSnapshot>();
-		Database.getInstance().retrieveSnapshots(criteria, new SnapshotCallback() {
-			@Override
-			public void onSnapshotFound(int submitEventId,
-					int fullTextChangeId, int courseId, int problemId,
-					int userId, String programText, SubmissionReceipt receipt) {
-				snapshotList.add(new RetestSnapshot(courseId, problemId, userId, submitEventId, fullTextChangeId, programText));
-			}
-		});
-		System.out.println(snapshotList.size() + " snapshots");
-		
-		// Add snapshots to submission queue, resolving problem/test cases as necessary.
-		// Add IFutureSubmissionResults to a list.
-		List<IFutureSubmissionResult> futureList = new ArrayList<IFutureSubmissionResult>();
-		for (RetestSnapshot snapshot : snapshotList) {
-			ProblemAndTestCaseList exercise = findExercise(snapshot.problemId);
-			IFutureSubmissionResult future;
-			try {
-				future = DefaultSubmitService.getInstance().submitAsync(exercise.getProblem(), exercise.getTestCaseData(), snapshot.programText);
-				futureList.add(future);
-				
-				// Map the future to its snapshot
-				// FIXME: this could consume a lot of main memory
-				snapshotMap.put(future, snapshot);
-			} catch (SubmissionException e) {
-				logger.error("Error submitting snapshot for retest", e);
-			}
+		// Shut down the submission queue.
+		try {
+			OutOfProcessSubmitService.getInstance().shutdown();
+		} catch (InterruptedException e) {
+			logger.error("Interrupted waiting for OutOfProcessBuildService to shutdown", e);
 		}
+	}
+
+	private void submit(final RetestSnapshot snapshot) {
+		ProblemAndTestCaseList exercise = findExercise(snapshot.problemId);
 		
-		// The snapshot list can be cleared now to release memory
-		snapshotList.clear();
+		// Wait until there is room for another submission
+		inFlight.acquireUninterruptibly();
 		
-		// Initialize visitors
-		outputDirectory.mkdirs();
-		for (IRetestSubmissionResultVisitor visitor : visitorList) {
-			visitor.init(outputDirectory);
+		final IFutureSubmissionResult future;
+		try {
+			future = submitService.submitAsync(exercise.getProblem(), exercise.getTestCaseData(), snapshot.programText,
+					SubmissionPriority.BATCH, null);
+		} catch (SubmissionException e) {
+			logger.error("Error submitting snapshot for retest", e);
+			inFlight.release();
+			return;
 		}
 		
-		// Wait for all submission results.
-		for (IFutureSubmissionResult future : futureList) {
+		// The callback must not block: just hand the result to the result thread
+		future.addCompletionCallback(new ICallback<IFutureSubmissionResult>() {
+			@Override
+			public void call(IFutureSubmissionResult value) {
+				completedQueue.add(new Pair<IFutureSubmissionResult, RetestSnapshot>(future, snapshot));
+			}
+		});
+	}
+
+	private void deliverResults() {
+		long lastProgressReport = System.currentTimeMillis();
+		while (true) {
+			Pair<IFutureSubmissionResult, RetestSnapshot> completed;
+			try {
+				completed = completedQueue.take();
+			} catch (InterruptedException e) {
+				logger.error("Interrupted waiting for submission results", e);
+				return;
+			}
+			if (completed.getLeft() == null) {
+				// All snapshots have been tested
+				return;
+			}
+			
+			RetestSnapshot snapshot = completed.getRight();
 			try {
-				SubmissionResult result = waitForSubmissionResult(future);
-				RetestSnapshot snapshot = snapshotMap.get(future);
+				SubmissionResult result = completed.getLeft().waitFor(0L);
 				onSubmissionResult(result, snapshot);
+				
+				// Make sure the results are written before the snapshot is
+				// recorded in the checkpoint file
+				for (IRetestSubmissionResultVisitor visitor : visitorList) {
+					visitor.flush();
+				}
+				checkpointWriter.write(String.valueOf(snapshot.submitEventId));
+				checkpointWriter.newLine();
+				checkpointWriter.flush();
+				numTested++;
 			} catch (SubmissionException e) {
-				logger.error("Error testing snapshot (should not happen)", e);
+				// Not recorded in the checkpoint, so a resumed retest will try again
+				logger.error("Error testing snapshot " + snapshot.submitEventId, e);
+				numFailed++;
 			} catch (InterruptedException e) {
-				logger.error("Interrupted waiting for submission result (should not happen)", e);
+				logger.error("Interrupted getting submission result (should not happen)", e);
+				numFailed++;
+			} catch (IOException e) {
+				logger.error("Error writing checkpoint file", e);
+			} catch (RuntimeException e) {
+				// Don't let a misbehaving visitor stop the retest
+				logger.error("Error handling result for snapshot " + snapshot.submitEventId, e);
+				numFailed++;
+			}
+			inFlight.release();
+			
+			long now = System.currentTimeMillis();
+			if (now - lastProgressReport >= PROGRESS_INTERVAL_MS) {
+				reportProgress();
+				lastProgressReport = now;
 			}
 		}
-		
-		System.out.print("All snapshots tested...");
-		System.out.flush();
-		
-		// Allow retest submission result visitors to shut down.
-		for (IRetestSubmissionResultVisitor visitor : visitorList) {
-			visitor.cleanup();
+	}
+
+	private void reportProgress() {
+		long elapsedMillis = Math.max(System.currentTimeMillis() - startTime, 1L);
+		double perSecond = (numTested + numFailed) * 1000.0 / elapsedMillis;
+		StringBuilder buf = new StringBuilder();
+		buf.append(numTested + "/" + numToTest + " snapshots tested");
+		if (numFailed > 0) {
+			buf.append(" (" + numFailed + " failed)");
 		}
-		
-		// Shut down the submission queue.
-		try {
-			OutOfProcessSubmitService.getInstance().shutdown();
-		} catch (InterruptedException e) {
-			logger.error("Interrupted waiting for OutOfProcessBuildService to shutdown", e);
+		buf.append(String.format(", %.1f/s", perSecond));
+		int remaining = numToTest - numTested - numFailed;
+		if (remaining > 0 && perSecond > 0.0) {
+			long etaSeconds = (long) (remaining / perSecond);
+			buf.append(String.format(", ETA %d:%02d:%02d", etaSeconds / 3600, (etaSeconds / 60) % 60, etaSeconds % 60));
 		}
-		System.out.println("exiting");
+		System.out.println(buf.toString());
 	}
 
-	private SubmissionResult waitForSubmissionResult(IFutureSubmissionResult future) throws SubmissionException, InterruptedException {
-		System.out.print("Waiting for submission result...");
-		SubmissionResult submissionResult = null;
-		while (submissionResult == null) {
-			submissionResult = future.waitFor(IFutureSubmissionResult.STANDARD_POLL_WAIT_MS);
-			if (submissionResult == null) {
-				System.out.print(".");
-				System.out.flush();
+	private static Set<Integer> readCheckpoint(File checkpointFile) throws IOException {
+		Set<Integer> result = new HashSet<Integer>();
+		if (!checkpointFile.exists()) {
+			return result;
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				try {
+					result.add(Integer.valueOf(line));
+				} catch (NumberFormatException e) {
+					// Most likely a partially-written line at the end of the file
+					logger.warn("Invalid line in checkpoint file: {}", line);
+				}
 			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+
+	private static boolean endsWithNewline(File file) throws IOException {
+		if (!file.exists() || file.length() == 0L) {
+			return true;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(file.length() - 1);
+			return raf.read() == '\n';
+		} finally {
+			raf.close();
 		}
-		System.out.println("done");
-		return submissionResult;
 	}
 
 	private ProblemAndTestCaseList findExercise(int problemId) {
 		ProblemAndTestCaseList exercise = exerciseMap.get(problemId);
 		if (exercise == null) {
-			Problem problem = Database.getInstance().getProblem(problemId);
-			List<TestCase> testCaseList = Database.getInstance().getTestCasesForProblem(problemId);
+			Problem problem = database.getProblem(problemId);
+			List<TestCase> testCaseList = database.getTestCasesForProblem(problemId);
 			exercise = new ProblemAndTestCaseList();
 			exercise.setProblem(problem);
 			exercise.setTestCaseList(testCaseList);
@@ -205,8 +514,6 @@ public class Retest {
 	}
 
 	private void onSubmissionResult(SubmissionResult result, RetestSnapshot snapshot) {
-		//System.out.println("Submission result received: " + result.determineSubmissionStatus());
-
 		// Deliver submission result to visitors
 		for (IRetestSubmissionResultVisitor visitor : visitorList) {
 			visitor.onSubmissionResult(result, snapshot);
@@ -215,11 +522,24 @@ public class Retest {
 
 	public static void main(String[] args) throws IOException {
 		boolean interactiveConfig = false;
+		int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+		boolean resume = false;
+		long stubBuilderLatencyMillis = -1L;
 		
 		for (String arg : args) {
 			if (arg.equals("--interactiveConfig")) {
 				// Configure interactively rather than using embedded cloudcoder.properties
 				interactiveConfig = true;
+			} else if (arg.startsWith("--maxInFlight=")) {
+				maxInFlight = Integer.parseInt(arg.substring("--maxInFlight=".length()));
+			} else if (arg.equals("--resume")) {
+				// Skip snapshots recorded in the checkpoint file
+				resume = true;
+			} else if (arg.equals("--stubBuilder")) {
+				// Test the retest pipeline without real builders
+				stubBuilderLatencyMillis = 100L;
+			} else if (arg.startsWith("--stubBuilder=")) {
+				stubBuilderLatencyMillis = Long.parseLong(arg.substring("--stubBuilder=".length()));
 			} else {
 				throw new IllegalArgumentException("Unknown option: " + arg);
 			}
@@ -245,6 +565,11 @@ public class Retest {
 		SnapshotSelectionCriteria criteria = Util.getSnapshotSelectionCriteria(keyboard);
 		retest.setCriteria(criteria);
 		retest.setConfig(config);
+		retest.setMaxInFlight(maxInFlight);
+		retest.setResume(resume);
+		if (stubBuilderLatencyMillis >= 0) {
+			retest.setStubBuilder(stubBuilderLatencyMillis);
+		}
 		
 		File outputDirectory = new File(Util.ask(keyboard, "Data output directory: "));
 		retest.setOutputDirectory(outputDirectory);
@@ -0,0 +1,152 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.dataanalysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.io.IOUtils;
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
+import org.cloudcoder.app.shared.model.WorkSession;
+
+/**
+ * {@link WorkSession}s found by
+ * {@link IDatabase#visitWorkSessions(SnapshotSelectionCriteria, int, ICallback)},
+ * spooled to a temporary file.  The database can't be queried while the
+ * work sessions are being visited, so analyses which query the database
+ * for each work session read them back from the spool file instead of
+ * keeping them all in memory.
+ */
+public class SpooledWorkSessions implements Closeable {
+	private final File file;
+	private final int numWorkSessions;
+	private final DataInputStream in;
+
+	private SpooledWorkSessions(File file, int numWorkSessions) throws IOException {
+		this.file = file;
+		this.numWorkSessions = numWorkSessions;
+		this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+	}
+
+	/**
+	 * Find and spool all {@link WorkSession}s matching given {@link SnapshotSelectionCriteria}.
+	 *
+	 * @param db                the {@link IDatabase}
+	 * @param criteria          the {@link SnapshotSelectionCriteria}
+	 * @param separationSeconds events separated by this much time are considered to be
+	 *                          in separate sessions
+	 * @return the spooled work sessions, which will be read in order by
+	 *         user id, and then by start time
+	 * @throws IOException
+	 */
+	public static SpooledWorkSessions find(IDatabase db, SnapshotSelectionCriteria criteria, int separationSeconds) throws IOException {
+		File file = File.createTempFile("work-sessions", ".tmp");
+		boolean success = false;
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			final IOException[] spoolError = new IOException[1];
+			final int[] count = new int[1];
+			try {
+				db.visitWorkSessions(criteria, separationSeconds, new ICallback<WorkSession>() {
+					@Override
+					public void call(WorkSession value) {
+						if (spoolError[0] != null) {
+							return;
+						}
+						try {
+							writeWorkSession(out, value);
+							count[0]++;
+						} catch (IOException e) {
+							spoolError[0] = e;
+						}
+					}
+				});
+			} finally {
+				out.close();
+			}
+			if (spoolError[0] != null) {
+				throw spoolError[0];
+			}
+			SpooledWorkSessions result = new SpooledWorkSessions(file, count[0]);
+			success = true;
+			return result;
+		} finally {
+			if (!success) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of spooled work sessions
+	 */
+	public int getNumWorkSessions() {
+		return numWorkSessions;
+	}
+
+	/**
+	 * Read the next spooled work session.
+	 *
+	 * @return the next {@link WorkSession}, or null if there are no more
+	 * @throws IOException
+	 */
+	public WorkSession next() throws IOException {
+		WorkSession ws = new WorkSession();
+		try {
+			ws.setCourseId(in.readInt());
+		} catch (EOFException e) {
+			return null;
+		}
+		ws.setProblemId(in.readInt());
+		ws.setUserId(in.readInt());
+		ws.setStartEventId(in.readInt());
+		ws.setEndEventId(in.readInt());
+		ws.setStartTime(in.readLong());
+		ws.setEndTime(in.readLong());
+		return ws;
+	}
+
+	/**
+	 * Close and delete the spool file.
+	 */
+	@Override
+	public void close() {
+		IOUtils.closeQuietly(in);
+		file.delete();
+	}
+
+	private static void writeWorkSession(DataOutputStream out, WorkSession ws) throws IOException {
+		out.writeInt(ws.getCourseId());
+		out.writeInt(ws.getProblemId());
+		out.writeInt(ws.getUserId());
+		out.writeInt(ws.getStartEventId());
+		out.writeInt(ws.getEndEventId());
+		out.writeLong(ws.getStartTime());
+		out.writeLong(ws.getEndTime());
+	}
+}
@@ -0,0 +1,98 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.dataanalysis;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.server.submitsvc.oop.OOPBuildServiceSubmission;
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.Submission;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Stand-in for real builders, so that {@link Retest} can be
+ * tried out (and its throughput measured) without connecting
+ * any builders.  Each submission "compiles" successfully and
+ * "passes" all of its tests after a fixed delay.
+ */
+public class StubSubmitService implements ISubmitService {
+	private final ScheduledExecutorService executor;
+	private final long latencyMillis;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param numThreads     number of threads to complete submissions
+	 * @param latencyMillis  delay before each submission completes
+	 */
+	public StubSubmitService(int numThreads, long latencyMillis) {
+		this.executor = Executors.newScheduledThreadPool(numThreads);
+		this.latencyMillis = latencyMillis;
+	}
+
+	@Override
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText)
+			throws SubmissionException {
+		return submitAsync(problem, testCaseList, programText, SubmissionPriority.BATCH, null);
+	}
+
+	@Override
+	public IFutureSubmissionResult submitAsync(Problem problem, final List<TestCase> testCaseList, String programText,
+			SubmissionPriority priority, String owner) throws SubmissionException {
+		final OOPBuildServiceSubmission submission =
+				new OOPBuildServiceSubmission(new Submission(problem, testCaseList, programText), priority, owner);
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				submission.setSubmissionResult(createSubmissionResult(testCaseList));
+				submission.setReady();
+			}
+		}, latencyMillis, TimeUnit.MILLISECONDS);
+		return submission;
+	}
+	
+	/**
+	 * Shut down the threads completing submissions.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static SubmissionResult createSubmissionResult(List<TestCase> testCaseList) {
+		SubmissionResult result = new SubmissionResult(new CompilationResult(CompilationOutcome.SUCCESS));
+		TestResult[] testResults = new TestResult[testCaseList.size()];
+		for (int i = 0; i < testResults.length; i++) {
+			testResults[i] = new TestResult(TestOutcome.PASSED, "Passed (stub builder)");
+		}
+		result.setTestResults(testResults);
+		return result;
+	}
+}
@@ -92,12 +92,30 @@ public class TimeToSolve implements IAnalyzeSnapshots {
 	private void execute() throws IOException {
 		System.out.print("Getting work sessions...");
 		System.out.flush();
-		List<WorkSession> sessions = Database.getInstance().findWorkSessions(criteria, separation);
-		System.out.println("done");
+		SpooledWorkSessions sessions = SpooledWorkSessions.find(Database.getInstance(), criteria, separation);
+		try {
+			System.out.println("done");
+			analyzeWorkSessions(sessions);
+		} finally {
+			sessions.close();
+		}
 		
+		writeOutput();
+		System.out.println("Wrote output to " + outputFile);
+	}
+
+	private void analyzeWorkSessions(SpooledWorkSessions sessions) throws IOException {
 		System.out.print("Analyzing work sessions...");
 		System.out.flush();
-		for (WorkSession session : sessions) {
+		int currentUserId = -1;
+		WorkSession session;
+		while ((session = sessions.next()) != null) {
+			if (session.getUserId() != currentUserId) {
+				// Work sessions are ordered by user id, so the previous user's
+				// submission receipts won't be needed again
+				submissionReceiptMap.clear();
+				currentUserId = session.getUserId();
+			}
 			Progress progress = getProgress(session.getUserId(), session.getProblemId());
 			if (progress.solved) {
 				// problem was solved in a previous work session
@@ -120,9 +138,6 @@ public class TimeToSolve implements IAnalyzeSnapshots {
 			}
 		}
 		System.out.println("done");
-		
-		writeOutput();
-		System.out.println("Wrote output to " + outputFile);
 	}
 
 	private long findTimeToSolve(WorkSession session) {
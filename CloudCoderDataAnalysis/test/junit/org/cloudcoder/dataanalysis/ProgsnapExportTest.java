@@ -0,0 +1,353 @@
+package org.cloudcoder.dataanalysis;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.CourseRegistrationList;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.NamedTestResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemList;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Export a small course from a fake database, using both bulk
+ * and per-student queries, and compare the exported files
+ * with testdata/progsnap-export.txt, which is the output of the
+ * exporter from before bulk queries were added for the same data.
+ * The fake database returns rows in the order given by the
+ * <code>order by</code> clauses of the real queries, which
+ * <code>TestBulkVisitOrdering</code> checks.  No student has two
+ * submission receipts with the same timestamp, for which the
+ * per-student query doesn't define an order.
+ */
+public class ProgsnapExportTest {
+	private static final int COURSE_ID = 5;
+	private static final long BASE_TS = 1500000000000L;
+
+	// Fake database which answers the queries made by the export
+	private class FakeDatabase implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("getUserWithoutAuthentication")) {
+				return users.get(0);
+			} else if (name.equals("getCoursesForUser")) {
+				return Collections.singletonList(new Object[]{ course });
+			} else if (name.equals("getProblemsInCourse")) {
+				return new ProblemList(problems);
+			} else if (name.equals("getTestCasesForProblem") && args.length == 1) {
+				return testCasesForProblem((Integer) args[0]);
+			} else if (name.equals("getUsersInCourse")) {
+				// One user is registered in two sections
+				List<User> result = new ArrayList<User>(users);
+				result.add(users.get(2));
+				return result;
+			} else if (name.equals("findCourseRegistrations")) {
+				return new CourseRegistrationList();
+			} else if (name.equals("visitAllChangesForProblem")) {
+				visitChanges(-1, (Integer) args[0], castCallback(Change.class, args[1]));
+				return null;
+			} else if (name.equals("visitAllChangesNewerThan")) {
+				visitChanges(((User) args[0]).getId(), (Integer) args[1], castCallback(Change.class, args[3]));
+				return null;
+			} else if (name.equals("visitAllSubmissionReceiptsForProblem")) {
+				ICallback<SubmissionReceipt> visitor = castCallback(SubmissionReceipt.class, args[1]);
+				for (SubmissionReceipt receipt : receiptsFor(-1, (Problem) args[0])) {
+					visitor.call(receipt);
+				}
+				return null;
+			} else if (name.equals("getAllSubmissionReceiptsForUser")) {
+				List<SubmissionReceipt> result = receiptsFor(((User) args[1]).getId(), (Problem) args[0]);
+				return result.toArray(new SubmissionReceipt[result.size()]);
+			} else if (name.equals("visitTestResultsForProblem")) {
+				ICallback<TestResult> visitor = castCallback(TestResult.class, args[2]);
+				for (SubmissionReceipt receipt : receiptsFor(-1, (Problem) args[1])) {
+					for (TestResult testResult : testResultsFor(receipt)) {
+						visitor.call(testResult);
+					}
+				}
+				return null;
+			} else if (name.equals("getTestResultsForSubmission")) {
+				List<NamedTestResult> result = new ArrayList<NamedTestResult>();
+				for (TestResult testResult : testResultsFor((SubmissionReceipt) args[2])) {
+					result.add(new NamedTestResult("test" + result.size(), testResult));
+				}
+				return result.toArray(new NamedTestResult[result.size()]);
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+	// Data writer which collects the exported files in memory
+	private static class MemoryDataWriter implements ProgsnapExport.DataWriter {
+		Map<String, StringWriter> files = new TreeMap<String, StringWriter>();
+
+		@Override
+		public Writer writeTo(String fileName) throws IOException {
+			assertFalse(fileName + " written twice", files.containsKey(fileName));
+			StringWriter w = new StringWriter();
+			files.put(fileName, w);
+			return w;
+		}
+
+		@Override
+		public void close() throws IOException {
+		}
+
+		String getContents() {
+			StringBuilder buf = new StringBuilder();
+			for (Map.Entry<String, StringWriter> entry : files.entrySet()) {
+				buf.append("== ").append(entry.getKey()).append("\n");
+				buf.append(entry.getValue().toString());
+			}
+			return buf.toString();
+		}
+	}
+
+	private Course course;
+	private List<User> users;
+	private List<Problem> problems;
+	private List<Change> changes;
+	private List<SubmissionReceipt> receipts;
+	private List<TestResult> testResults;
+	private int nextEventId;
+
+	@Before
+	public void setUp() {
+		course = new Course();
+		course.setId(COURSE_ID);
+
+		users = new ArrayList<User>();
+		for (int id = 1; id <= 4; id++) {
+			User user = new User();
+			user.setId(id);
+			user.setUsername("user" + id);
+			users.add(user);
+		}
+
+		problems = new ArrayList<Problem>();
+		problems.add(createProblem(10, "sum"));
+		problems.add(createProblem(20, "max"));
+
+		changes = new ArrayList<Change>();
+		receipts = new ArrayList<SubmissionReceipt>();
+		testResults = new ArrayList<TestResult>();
+		nextEventId = 100;
+
+		// Problem 10: user 2 passes on the second try, user 3 only views the
+		// problem (a receipt but no changes), user 4 doesn't compile,
+		// and user 9 (who isn't in the course) is not exported
+		Change last = change(2, 10, ChangeType.INSERT_TEXT, 0, 0, "int sum(int a, int b) {\n");
+		change(2, 10, ChangeType.INSERT_LINES, 1, 0, "\treturn a - b;\r");
+		receipt(last, 10, SubmissionStatus.STARTED);
+		last = change(2, 10, ChangeType.INSERT_TEXT, 2, 0, "}");
+		receipt(last, 10, SubmissionStatus.TESTS_FAILED, TestOutcome.FAILED_ASSERTION, TestOutcome.PASSED);
+		change(2, 10, ChangeType.REMOVE_TEXT, 1, 10, "-");
+		last = change(2, 10, ChangeType.INSERT_TEXT, 1, 10, "+");
+		receipt(last, 10, SubmissionStatus.TESTS_PASSED, TestOutcome.PASSED, TestOutcome.PASSED);
+		receipt(null, 3, 10, SubmissionStatus.STARTED);
+		last = change(4, 10, ChangeType.FULL_TEXT, 0, 0, "int sum(int a, int b) { return a + b }");
+		receipt(last, 10, SubmissionStatus.COMPILE_ERROR);
+		last = change(9, 10, ChangeType.INSERT_TEXT, 0, 0, "int sum");
+		receipt(last, 10, SubmissionStatus.BUILD_ERROR);
+
+		// Problem 20: user 3 has an infinite loop and an exception,
+		// and user 4 edits without submitting
+		last = change(3, 20, ChangeType.INSERT_TEXT, 0, 0, "int max(int a, int b) { while (1); }");
+		receipt(last, 20, SubmissionStatus.TESTS_FAILED, TestOutcome.FAILED_FROM_TIMEOUT, TestOutcome.FAILED_WITH_EXCEPTION);
+		change(4, 20, ChangeType.INSERT_TEXT, 0, 0, "int max(");
+		change(4, 20, ChangeType.REMOVE_LINES, 0, 0, "int max(");
+	}
+
+	@Test
+	public void testBulkQueries() throws Exception {
+		assertEquals(readExpected(), export(true, 2));
+	}
+
+	@Test
+	public void testBulkQueriesSingleThread() throws Exception {
+		assertEquals(readExpected(), export(true, 1));
+	}
+
+	@Test
+	public void testPerStudentQueries() throws Exception {
+		assertEquals(readExpected(), export(false, 1));
+	}
+
+	private String export(boolean bulkQueries, int exportThreads) throws IOException {
+		Properties config = new Properties();
+		config.setProperty("username", "user1");
+		config.setProperty("courseId", String.valueOf(COURSE_ID));
+		config.setProperty("name", "Test data set");
+		config.setProperty("contact", "Test Instructor");
+		config.setProperty("email", "instructor@example.com");
+		config.setProperty("courseurl", "http://example.com/course");
+		config.setProperty("bulkQueries", String.valueOf(bulkQueries));
+		config.setProperty("exportThreads", String.valueOf(exportThreads));
+
+		MemoryDataWriter dataWriter = new MemoryDataWriter();
+		ProgsnapExport exporter = new ProgsnapExport();
+		exporter.setConfig(config);
+		exporter.setDatabase((IDatabase) Proxy.newProxyInstance(IDatabase.class.getClassLoader(), new Class<?>[]{ IDatabase.class }, new FakeDatabase()));
+		exporter.setDataWriter(dataWriter);
+		exporter.execute();
+		return dataWriter.getContents();
+	}
+
+	private String readExpected() throws IOException {
+		InputStream in = getClass().getResourceAsStream("testdata/progsnap-export.txt");
+		assertNotNull("Missing testdata/progsnap-export.txt", in);
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	private static Problem createProblem(int problemId, String name) {
+		Problem problem = new Problem();
+		problem.setProblemId(problemId);
+		problem.setCourseId(COURSE_ID);
+		problem.setProblemType(ProblemType.C_FUNCTION);
+		problem.setTestname(name);
+		problem.setBriefDescription("Compute the " + name + " of two integers");
+		problem.setWhenAssigned(BASE_TS);
+		problem.setWhenDue(BASE_TS + 7L*24*60*60*1000);
+		return problem;
+	}
+
+	private static List<TestCase> testCasesForProblem(int problemId) {
+		List<TestCase> result = new ArrayList<TestCase>();
+		for (int i = 0; i < 2; i++) {
+			TestCase testCase = new TestCase();
+			testCase.setProblemId(problemId);
+			testCase.setTestCaseName("test" + i);
+			testCase.setInput(i + ", 3");
+			testCase.setOutput(String.valueOf(problemId == 10 ? i + 3 : 3));
+			testCase.setSecret(i == 1);
+			result.add(testCase);
+		}
+		return result;
+	}
+
+	private Change change(int userId, int problemId, ChangeType type, int row, int col, String text) {
+		int eventId = nextEventId++;
+		Change change = new Change(type, row, col, row, col + text.length(), BASE_TS + eventId*1000L, userId, problemId, text);
+		change.setEventId(eventId);
+		change.getEvent().setId(eventId);
+		changes.add(change);
+		return change;
+	}
+
+	private void receipt(Change lastChange, int problemId, SubmissionStatus status, TestOutcome... outcomes) {
+		receipt(lastChange, lastChange.getEvent().getUserId(), problemId, status, outcomes);
+	}
+
+	private void receipt(Change lastChange, int userId, int problemId, SubmissionStatus status, TestOutcome... outcomes) {
+		int eventId = nextEventId++;
+		SubmissionReceipt receipt = new SubmissionReceipt();
+		receipt.setEventId(eventId);
+		receipt.getEvent().setId(eventId);
+		receipt.getEvent().setUserId(userId);
+		receipt.getEvent().setProblemId(problemId);
+		// A submission has the same timestamp as the edit it submits
+		receipt.getEvent().setTimestamp(lastChange != null ? lastChange.getEvent().getTimestamp() : BASE_TS + eventId*1000L);
+		receipt.setLastEditEventId(lastChange != null ? lastChange.getEventId() : -1);
+		receipt.setStatus(status);
+		receipt.setNumTestsAttempted(outcomes.length);
+		int numPassed = 0;
+		for (TestOutcome outcome : outcomes) {
+			TestResult testResult = new TestResult(outcome, outcome.toString());
+			testResult.setSubmissionReceiptEventId(eventId);
+			testResults.add(testResult);
+			if (outcome == TestOutcome.PASSED) {
+				numPassed++;
+			}
+		}
+		receipt.setNumTestsPassed(numPassed);
+		receipts.add(receipt);
+	}
+
+	// Visit the changes for a problem (for one user, or all users if userId is -1)
+	// in order by user id and event id, as the database would
+	private void visitChanges(int userId, int problemId, ICallback<Change> visitor) {
+		List<Change> result = new ArrayList<Change>();
+		for (Change change : changes) {
+			if ((userId < 0 || change.getEvent().getUserId() == userId) && change.getEvent().getProblemId() == problemId) {
+				result.add(change);
+			}
+		}
+		Collections.sort(result, new Comparator<Change>() {
+			@Override
+			public int compare(Change o1, Change o2) {
+				int cmp = Integer.valueOf(o1.getEvent().getUserId()).compareTo(o2.getEvent().getUserId());
+				return cmp != 0 ? cmp : Integer.valueOf(o1.getEventId()).compareTo(o2.getEventId());
+			}
+		});
+		for (Change change : result) {
+			visitor.call(change);
+		}
+	}
+
+	// Receipts for a problem (for one user, or all users if userId is -1)
+	// in order by user id and timestamp, as the database would
+	private List<SubmissionReceipt> receiptsFor(int userId, Problem problem) {
+		List<SubmissionReceipt> result = new ArrayList<SubmissionReceipt>();
+		for (SubmissionReceipt receipt : receipts) {
+			if ((userId < 0 || receipt.getEvent().getUserId() == userId) && receipt.getEvent().getProblemId() == problem.getProblemId()) {
+				result.add(receipt);
+			}
+		}
+		Collections.sort(result, new Comparator<SubmissionReceipt>() {
+			@Override
+			public int compare(SubmissionReceipt o1, SubmissionReceipt o2) {
+				int cmp = Integer.valueOf(o1.getEvent().getUserId()).compareTo(o2.getEvent().getUserId());
+				return cmp != 0 ? cmp : Long.valueOf(o1.getEvent().getTimestamp()).compareTo(o2.getEvent().getTimestamp());
+			}
+		});
+		return result;
+	}
+
+	private List<TestResult> testResultsFor(SubmissionReceipt receipt) {
+		List<TestResult> result = new ArrayList<TestResult>();
+		for (TestResult testResult : testResults) {
+			if (testResult.getSubmissionReceiptEventId() == receipt.getEventId()) {
+				result.add(testResult);
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <E> ICallback<E> castCallback(Class<E> cls, Object callback) {
+		return (ICallback<E>) callback;
+	}
+}
@@ -0,0 +1,193 @@
+package org.cloudcoder.dataanalysis;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.server.persist.SnapshotCallback;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RetestTest {
+	private static final int NUM_SNAPSHOTS = 200;
+	private static final int NUM_PROBLEMS = 3;
+
+	// Fake database which fails if it is queried while snapshots are
+	// being retrieved (as it would if the snapshots were streamed)
+	private class FakeDatabase implements InvocationHandler {
+		boolean retrieving;
+		List<String> errors = new ArrayList<String>();
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (retrieving) {
+				errors.add(name + " called while retrieving snapshots");
+			}
+			if (name.equals("retrieveSnapshots")) {
+				SnapshotCallback callback = (SnapshotCallback) args[1];
+				retrieving = true;
+				try {
+					for (int i = 1; i <= NUM_SNAPSHOTS; i++) {
+						callback.onSnapshotFound(1000 + i, i, 1, i % NUM_PROBLEMS, 100 + i % 7, "program " + i, null);
+					}
+				} finally {
+					retrieving = false;
+				}
+				return null;
+			} else if (name.equals("getProblem")) {
+				Problem problem = new Problem();
+				problem.setProblemId((Integer) args[0]);
+				return problem;
+			} else if (name.equals("getTestCasesForProblem")) {
+				return Arrays.asList(new TestCase(), new TestCase());
+			}
+			throw new UnsupportedOperationException(name);
+		}
+	}
+
+	// Visitor which records the results, and checks that its output
+	// is flushed before snapshots are recorded in the checkpoint file
+	private class RecordingVisitor implements IRetestSubmissionResultVisitor {
+		List<Integer> delivered = new ArrayList<Integer>();
+		Set<Integer> flushed = new HashSet<Integer>();
+		List<String> errors = new ArrayList<String>();
+
+		@Override
+		public void init(File outputDirectory, boolean resume) {
+		}
+
+		@Override
+		public void onSubmissionResult(SubmissionResult result, RetestSnapshot snapshot) {
+			if (result.getTestResults().length != 2) {
+				errors.add("Wrong number of test results for snapshot " + snapshot.submitEventId);
+			}
+			delivered.add(snapshot.submitEventId);
+		}
+
+		@Override
+		public void flush() {
+			try {
+				for (int submitEventId : readCheckpoint()) {
+					if (!flushed.contains(submitEventId)) {
+						errors.add("Snapshot " + submitEventId + " checkpointed before its results were flushed");
+					}
+				}
+			} catch (IOException e) {
+				errors.add(e.toString());
+			}
+			flushed.addAll(delivered);
+		}
+
+		@Override
+		public void cleanup() {
+		}
+	}
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private FakeDatabase db;
+	private RecordingVisitor visitor;
+	private File outputDirectory;
+
+	@Before
+	public void setUp() {
+		db = new FakeDatabase();
+		visitor = new RecordingVisitor();
+		outputDirectory = new File(tmp.getRoot(), "output");
+	}
+
+	@Test
+	public void testRetest() throws Exception {
+		createRetest(false).execute();
+
+		assertEquals(new ArrayList<String>(), db.errors);
+		assertEquals(new ArrayList<String>(), visitor.errors);
+		assertEquals(NUM_SNAPSHOTS, visitor.delivered.size());
+		assertEquals(allSnapshots(), new HashSet<Integer>(visitor.delivered));
+		assertEquals(visitor.delivered, readCheckpoint());
+
+		// The spool file is deleted
+		assertEquals(Arrays.asList(Retest.CHECKPOINT_FILE_NAME), Arrays.asList(outputDirectory.list()));
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		outputDirectory.mkdirs();
+		FileWriter writer = new FileWriter(new File(outputDirectory, Retest.CHECKPOINT_FILE_NAME));
+		for (int i = 1; i <= NUM_SNAPSHOTS / 2; i++) {
+			writer.write((1000 + i) + "\n");
+		}
+		writer.write("10"); // partially-written line
+		writer.close();
+
+		createRetest(true).execute();
+
+		assertEquals(new ArrayList<String>(), db.errors);
+		assertEquals(NUM_SNAPSHOTS - NUM_SNAPSHOTS / 2, visitor.delivered.size());
+		for (int submitEventId : visitor.delivered) {
+			assertTrue(submitEventId > 1000 + NUM_SNAPSHOTS / 2);
+		}
+		Set<Integer> checkpointed = new HashSet<Integer>(readCheckpoint());
+		checkpointed.remove(10);
+		assertEquals(allSnapshots(), checkpointed);
+	}
+
+	private Retest createRetest(boolean resume) {
+		Retest retest = new Retest();
+		retest.setCriteria(new SnapshotSelectionCriteria());
+		retest.setDatabase((IDatabase) Proxy.newProxyInstance(IDatabase.class.getClassLoader(), new Class<?>[]{ IDatabase.class }, db));
+		retest.setOutputDirectory(outputDirectory);
+		retest.setMaxInFlight(8);
+		retest.setResume(resume);
+		retest.setStubBuilder(1L);
+		retest.addVisitor(visitor);
+		return retest;
+	}
+
+	private static Set<Integer> allSnapshots() {
+		Set<Integer> result = new HashSet<Integer>();
+		for (int i = 1; i <= NUM_SNAPSHOTS; i++) {
+			result.add(1000 + i);
+		}
+		return result;
+	}
+
+	private List<Integer> readCheckpoint() throws IOException {
+		List<Integer> result = new ArrayList<Integer>();
+		File checkpointFile = new File(outputDirectory, Retest.CHECKPOINT_FILE_NAME);
+		if (!checkpointFile.exists()) {
+			return result;
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				result.add(Integer.valueOf(line));
+			}
+		} finally {
+			reader.close();
+		}
+		return result;
+	}
+}
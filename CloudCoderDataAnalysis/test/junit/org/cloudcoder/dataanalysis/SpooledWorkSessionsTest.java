@@ -0,0 +1,79 @@
+package org.cloudcoder.dataanalysis;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.SnapshotSelectionCriteria;
+import org.cloudcoder.app.shared.model.WorkSession;
+import org.junit.Test;
+
+public class SpooledWorkSessionsTest {
+	private static final int NUM_WORK_SESSIONS = 1000;
+
+	// Fake database which visits work sessions, and fails if it is
+	// queried while they are being visited
+	private static class FakeDatabase implements InvocationHandler {
+		boolean visiting;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			assertFalse(method.getName() + " called while visiting work sessions", visiting);
+			if (!method.getName().equals("visitWorkSessions")) {
+				throw new UnsupportedOperationException(method.getName());
+			}
+			assertEquals(300, args[1]);
+			@SuppressWarnings("unchecked")
+			ICallback<WorkSession> visitor = (ICallback<WorkSession>) args[2];
+			visiting = true;
+			try {
+				for (int i = 0; i < NUM_WORK_SESSIONS; i++) {
+					visitor.call(createWorkSession(i));
+				}
+			} finally {
+				visiting = false;
+			}
+			return null;
+		}
+	}
+
+	@Test
+	public void testSpool() throws Exception {
+		IDatabase db = (IDatabase) Proxy.newProxyInstance(IDatabase.class.getClassLoader(), new Class<?>[]{ IDatabase.class }, new FakeDatabase());
+		SpooledWorkSessions sessions = SpooledWorkSessions.find(db, new SnapshotSelectionCriteria(), 300);
+		try {
+			assertEquals(NUM_WORK_SESSIONS, sessions.getNumWorkSessions());
+			for (int i = 0; i < NUM_WORK_SESSIONS; i++) {
+				WorkSession expected = createWorkSession(i);
+				WorkSession ws = sessions.next();
+				assertNotNull(ws);
+				assertEquals(expected.getCourseId(), ws.getCourseId());
+				assertEquals(expected.getProblemId(), ws.getProblemId());
+				assertEquals(expected.getUserId(), ws.getUserId());
+				assertEquals(expected.getStartEventId(), ws.getStartEventId());
+				assertEquals(expected.getEndEventId(), ws.getEndEventId());
+				assertEquals(expected.getStartTime(), ws.getStartTime());
+				assertEquals(expected.getEndTime(), ws.getEndTime());
+			}
+			assertNull(sessions.next());
+		} finally {
+			sessions.close();
+		}
+	}
+
+	private static WorkSession createWorkSession(int i) {
+		WorkSession ws = new WorkSession();
+		ws.setCourseId(1 + i % 2);
+		ws.setProblemId(10 + i % 7);
+		ws.setUserId(100 + i / 10);
+		ws.setStartEventId(1000 + i * 50);
+		ws.setEndEventId(1000 + i * 50 + 49);
+		ws.setStartTime(1500000000000L + i * 3600000L);
+		ws.setEndTime(1500000000000L + i * 3600000L + 1800000L);
+		return ws;
+	}
+}
@@ -20,7 +20,6 @@ package org.cloudcoder.app.loadtester;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
@@ -28,6 +27,7 @@ import org.cloudcoder.app.server.persist.Database;
 import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
 import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.Problem;
 
 /**
@@ -37,12 +37,68 @@ import org.cloudcoder.app.shared.model.Problem;
  * @author David Hovemeyer
  */
 public class CaptureAllEditSequencesForProblem {
+	/**
+	 * Visit changes in order by user id, and then by event id, saving each
+	 * user's {@link EditSequence} when the next user's first change is visited.
+	 */
+	private class SaveEditSequences implements ICallback<Change> {
+		private final String exerciseName;
+		private EditSequence seq;
+		private int userId;
+		private int numEditSequences;
+		private IOException error;
+		
+		public SaveEditSequences(String exerciseName) {
+			this.exerciseName = exerciseName;
+			this.userId = -1;
+		}
+		
+		@Override
+		public void call(Change change) {
+			if (change.getEvent().getUserId() != userId) {
+				saveEditSequence();
+				
+				// Make a new EditSequence
+				seq = new EditSequence();
+				seq.setExerciseName(exerciseName);
+				seq.setChangeList(new ArrayList<Change>());
+				userId = change.getEvent().getUserId();
+			}
+			seq.getChangeList().add(change);
+		}
+		
+		/**
+		 * Called after all changes have been visited.
+		 * 
+		 * @return the number of edit sequences saved
+		 * @throws IOException if an edit sequence couldn't be saved
+		 */
+		public int finish() throws IOException {
+			saveEditSequence();
+			if (error != null) {
+				throw error;
+			}
+			return numEditSequences;
+		}
+		
+		private void saveEditSequence() {
+			if (seq != null && error == null) {
+				try {
+					write(userId, seq);
+					numEditSequences++;
+				} catch (IOException e) {
+					// Reported by finish()
+					error = e;
+				}
+			}
+			seq = null;
+		}
+	}
+	
 	private int problemId;
 	private String outputDir;
-	private List<EditSequence> editSequenceList;
 	
 	public CaptureAllEditSequencesForProblem() {
-		editSequenceList = new ArrayList<EditSequence>();
 	}
 	
 	public void setProblemId(int problemId) {
@@ -53,47 +109,30 @@ public class CaptureAllEditSequencesForProblem {
 		this.outputDir = outputDir;
 	}
 	
-	public List<EditSequence> getEditSequenceList() {
-		return editSequenceList;
-	}
-	
-	public void capture() {
+	/**
+	 * Capture the edit sequences, saving each one to a file
+	 * as soon as all of its changes have been visited.
+	 */
+	public void capture() throws IOException {
 		// Load the Problem, in order to determine the exercise name
 		Problem problem = new Problem();
 		problem.setProblemId(problemId);
 		Database.getInstance().reloadModelObject(problem);
 		
-		List<Change> allChanges = Database.getInstance().loadChangesForAllUsersOnProblem(problemId);
-		
-		EditSequence seq = null;
-		int userId = -1;
-		
-		for (Change change : allChanges) {
-			if (change.getEvent().getUserId() != userId) {
-				// Make a new EditSequence
-				seq = new EditSequence();
-				seq.setExerciseName(problem.getTestname());
-				seq.setChangeList(new ArrayList<Change>());
-				userId = change.getEvent().getUserId();
-				editSequenceList.add(seq);
-			}
-			seq.getChangeList().add(change);
-		}
+		SaveEditSequences visitor = new SaveEditSequences(problem.getTestname());
+		Database.getInstance().visitAllChangesForProblem(problemId, visitor);
+		int numEditSequences = visitor.finish();
+		System.out.println("Captured " + numEditSequences + " edit sequences");
 	}
 
-	public void write() throws IOException {
-		List<EditSequence> editSequenceList = this.getEditSequenceList();
-		System.out.println("Captured " + editSequenceList.size() + " edit sequences");
-		for (EditSequence seq : editSequenceList) {
-			int userId = seq.getChangeList().get(0).getEvent().getUserId();
-			System.out.print("User id=" + userId + ", ");
-			System.out.println(seq.getChangeList().size() + " changes");
+	private void write(int userId, EditSequence seq) throws IOException {
+		System.out.print("User id=" + userId + ", ");
+		System.out.println(seq.getChangeList().size() + " changes");
 
-			// Files are named by user id
-			String outFile = String.format("%s/%03d.dat", outputDir, userId);
-			seq.saveToFile(outFile);
-			System.out.println("Saved to file " + outFile);
-		}
+		// Files are named by user id
+		String outFile = String.format("%s/%03d.dat", outputDir, userId);
+		seq.saveToFile(outFile);
+		System.out.println("Saved to file " + outFile);
 	}
 	
 	public static void main(String[] args) throws Exception {
@@ -115,6 +154,5 @@ public class CaptureAllEditSequencesForProblem {
 		cesp.setOutputDir(outputDir);
 		
 		cesp.capture();
-		cesp.write();
 	}
 }
@@ -0,0 +1,131 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.loadtester;
+
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCoalescer;
+import org.cloudcoder.app.shared.model.TextDocument;
+
+/**
+ * Check {@link ChangeCoalescer} against captured {@link EditSequence}s:
+ * replay each edit sequence with and without coalescing, and verify that
+ * the resulting text is identical.
+ */
+public class CoalesceEditSequence {
+	private ChangeCoalescer coalescer;
+	private int numSequences;
+	private int numMismatches;
+	private int numSkipped;
+	private long numChanges;
+	private long numCoalescedChanges;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param coalescer the {@link ChangeCoalescer} to check
+	 */
+	public CoalesceEditSequence(ChangeCoalescer coalescer) {
+		this.coalescer = coalescer;
+	}
+	
+	/**
+	 * Check given {@link EditSequence}.
+	 * 
+	 * @param seq the {@link EditSequence}
+	 * @return true if the coalesced changes produce the same text as the original changes
+	 *         (or if the original changes can't be replayed)
+	 */
+	public boolean check(EditSequence seq) {
+		List<Change> changeList = seq.getChangeList();
+		
+		String expected;
+		try {
+			expected = replay(changeList);
+		} catch (RuntimeException e) {
+			// Some captured sequences are inconsistent, and can't be replayed
+			numSkipped++;
+			return true;
+		}
+		
+		List<Change> coalesced = coalescer.coalesce(changeList);
+		
+		numSequences++;
+		numChanges += changeList.size();
+		numCoalescedChanges += coalesced.size();
+		
+		String actual;
+		try {
+			actual = replay(coalesced);
+		} catch (RuntimeException e) {
+			actual = null;
+		}
+		boolean same = expected.equals(actual);
+		if (!same) {
+			numMismatches++;
+		}
+		return same;
+	}
+
+	private static String replay(List<Change> changeList) {
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		TextDocument doc = new TextDocument();
+		for (Change change : changeList) {
+			applicator.apply(change, doc);
+		}
+		return doc.getText();
+	}
+	
+	/**
+	 * @return number of edit sequences checked
+	 */
+	public int getNumSequences() {
+		return numSequences;
+	}
+	
+	/**
+	 * @return number of edit sequences skipped because they couldn't be replayed
+	 */
+	public int getNumSkipped() {
+		return numSkipped;
+	}
+	
+	/**
+	 * @return number of edit sequences where the coalesced changes produced different text
+	 */
+	public int getNumMismatches() {
+		return numMismatches;
+	}
+	
+	/**
+	 * @return total number of original changes
+	 */
+	public long getNumChanges() {
+		return numChanges;
+	}
+	
+	/**
+	 * @return total number of coalesced changes
+	 */
+	public long getNumCoalescedChanges() {
+		return numCoalescedChanges;
+	}
+}
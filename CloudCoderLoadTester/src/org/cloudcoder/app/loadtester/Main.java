@@ -19,6 +19,10 @@
 package org.cloudcoder.app.loadtester;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.ChangeCoalescer;
 
 /**
  * Entry point for load tester.
@@ -42,6 +46,8 @@ public class Main {
 			doCaptureEditSequences(opts);
 		} else if (command.equals("execute")) {
 			doExecute(opts);
+		} else if (command.equals("checkCoalesce")) {
+			doCheckCoalesce(opts);
 		} else if (command.equals("createTestUsers")) {
 			HostConfig hostConfig = opts.hasOption("hostConfig")
 					? getHostConfig(opts.getOptVal("hostConfig")) : HostConfigDatabase.forName("default");
@@ -59,6 +65,35 @@ public class Main {
 		CaptureAllEditSequencesForProblem.execute(problemId, outputDir);
 	}
 
+	private static void doCheckCoalesce(Options opts) throws Exception {
+		List<EditSequence> seqList;
+		if (opts.hasOption("file")) {
+			EditSequence seq = new EditSequence();
+			seq.loadFromFile(opts.getOptVal("file"));
+			seqList = Collections.singletonList(seq);
+		} else {
+			String mixName = opts.hasOption("mix") ? opts.getOptVal("mix") : "skip3";
+			seqList = MixDatabase.forName(mixName).getEditSequenceList();
+		}
+		
+		CoalesceEditSequence checker = new CoalesceEditSequence(new ChangeCoalescer());
+		for (EditSequence seq : seqList) {
+			if (!checker.check(seq)) {
+				System.out.println("Coalesced changes produce different text for " + seq.getExerciseName());
+			}
+		}
+		
+		System.out.printf("%d edit sequences, %d mismatches, %d skipped (not replayable)\n",
+				checker.getNumSequences(), checker.getNumMismatches(), checker.getNumSkipped());
+		System.out.printf("%d changes, %d after coalescing (%.1f%%)\n",
+				checker.getNumChanges(),
+				checker.getNumCoalescedChanges(),
+				checker.getNumChanges() > 0 ? (100.0 * checker.getNumCoalescedChanges()) / checker.getNumChanges() : 0.0);
+		if (checker.getNumMismatches() > 0) {
+			System.exit(1);
+		}
+	}
+
 	private static void doExecute(Options opts) {
 		HostConfig hostConfig = getHostConfig(opts.getOptVal("hostConfig"));
 
@@ -17,6 +17,7 @@
 
 package org.cloudcoder.app.shared.model;
 
+import java.util.List;
 
 /**
  * Apply a Change object to a TextDocument.
@@ -72,7 +73,7 @@ public class ApplyChangeToTextDocument {
                     String line = doc.getLine(change.getStartRow());
                     String newline = line.substring(0, change.getStartColumn()) + 
                             line.substring(change.getStartColumn()+change.getText().length());
-                    doc.setLine(change.getStartRow(), newline);
+                    setLine(doc, change.getStartRow(), newline);
 		        }
 		    } else {
 		        // change.getStartRow() < change.getEndRow()
@@ -83,7 +84,7 @@ public class ApplyChangeToTextDocument {
 		            // combine with line below
 		            s = doc.getLine(change.getStartRow());
 		            up = s.substring(0, s.length() - 1) + doc.getLine(change.getEndRow());
-		            doc.setLine(change.getStartRow(), up);
+		            setLine(doc, change.getStartRow(), up);
 		            doc.removeLine(change.getEndRow());
 		        } else {
 		            // multi-line remove
@@ -97,7 +98,7 @@ public class ApplyChangeToTextDocument {
 
 		            // adjust first line by removing everything after startCol
 		            String firstLine=doc.getLine(change.getStartRow());
-		            doc.setLine(change.getStartRow(), firstLine.substring(0, change.getStartColumn()));
+		            setLine(doc, change.getStartRow(), firstLine.substring(0, change.getStartColumn()));
 
 		            // delete lines startRow+1 through endRow-1
 		            for (int i=change.getStartRow(); i<change.getEndRow(); i++) {
@@ -110,7 +111,7 @@ public class ApplyChangeToTextDocument {
 		            String lastChangeLine=textChanges[textChanges.length-1];
 
 		            lastLine=lastLine.substring(lastChangeLine.length());
-		            doc.setLine(change.getStartRow()+1, lastLine);
+		            setLine(doc, change.getStartRow()+1, lastLine);
 		        }
 		    }
 
@@ -132,7 +133,7 @@ public class ApplyChangeToTextDocument {
 			break;
 		case INSERT_LINES:
 			for (int i = 0; i < change.getNumLines(); i++) {
-				doc.insertLine(change.getStartRow() + i, change.getLine(i) + "\n");
+				insertLine(doc, change.getStartRow() + i, change.getLine(i) + "\n");
 			}
 			break;
 		case REMOVE_LINES:
@@ -146,17 +147,26 @@ public class ApplyChangeToTextDocument {
 		default:
 			throw new IllegalStateException("Not handled? " + change.getType());
 		}
-		
-		// check integrity of TextDocument
-		if (DEBUG) {
-			for (int i = 0; i < doc.getNumLines(); i++) {
-				String line = doc.getLine(i);
-				int nl = line.indexOf('\n');
-				if (nl >= 0 && nl != line.length() - 1) {
-					throw new IllegalStateException("Line has enbedded newline!");
-				}
-			}
+	}
+	
+	/**
+	 * Reconstruct a TextDocument by applying a sequence of Change objects
+	 * to the text of a {@link ChangeCheckpoint}.
+	 * 
+	 * @param checkpoint the checkpoint, or null if the changes should be
+	 *                   applied to an empty document
+	 * @param changeList the Change objects newer than the checkpoint
+	 * @return the reconstructed TextDocument
+	 */
+	public TextDocument apply(ChangeCheckpoint checkpoint, List<Change> changeList) {
+		TextDocument doc = new TextDocument();
+		if (checkpoint != null) {
+			doc.setTextExactly(checkpoint.getText());
+		}
+		for (Change change : changeList) {
+			apply(change, doc);
 		}
+		return doc;
 	}
 	
 	/**
@@ -173,7 +183,7 @@ public class ApplyChangeToTextDocument {
 		if (nl < 0 || nl == text.length() - 1) {
 			// Line either has no newline, or there is only one newline at
 			// the end of the line
-			doc.setLine(index, text);
+			setLine(doc, index, text);
 			return;
 		}
 		
@@ -181,11 +191,40 @@ public class ApplyChangeToTextDocument {
 		doc.removeLine(index);
 		boolean done = false;
 		while (!done) {
-			doc.insertLine(index, text.substring(0, nl+1));
+			insertLine(doc, index, text.substring(0, nl+1));
 			index++;
 			text = text.substring(nl + 1);
 			nl = text.indexOf('\n');
 			done = (nl < 0);
 		}
 	}
+
+	/**
+	 * Replace a line, checking the integrity of the line if
+	 * {@link #DEBUG} is enabled.  Only lines modified by
+	 * applying a change are checked, so the cost of checking is
+	 * proportional to the size of the change, not the size of the document.
+	 */
+	private void setLine(TextDocument doc, int index, String line) {
+		checkLine(line);
+		doc.setLine(index, line);
+	}
+	
+	/**
+	 * Insert a line, checking the integrity of the line if
+	 * {@link #DEBUG} is enabled.
+	 */
+	private void insertLine(TextDocument doc, int index, String line) {
+		checkLine(line);
+		doc.insertLine(index, line);
+	}
+	
+	private void checkLine(String line) {
+		if (DEBUG) {
+			int nl = line.indexOf('\n');
+			if (nl >= 0 && nl != line.length() - 1) {
+				throw new IllegalStateException("Line has enbedded newline!");
+			}
+		}
+	}
 }
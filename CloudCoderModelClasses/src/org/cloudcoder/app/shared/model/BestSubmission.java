@@ -0,0 +1,172 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * Records the best {@link SubmissionReceipt} for a {@link User}'s work
+ * on a {@link Problem}: the one with the most tests passed, and (of those)
+ * the earliest.  There is (at most) one per problem and user, and it is
+ * updated in the same transaction that stores (or replaces) a submission
+ * receipt, so instructors can see the best submissions of every student
+ * without aggregating all of their submission receipts.
+ */
+public class BestSubmission implements Serializable, IModelObject<BestSubmission> {
+	private static final long serialVersionUID = 1L;
+	
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<BestSubmission, Integer> PROBLEM_ID = new ModelObjectField<BestSubmission, Integer>("problem_id", Integer.class, 0) {
+		public void set(BestSubmission obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(BestSubmission obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for user id. */
+	public static final ModelObjectField<BestSubmission, Integer> USER_ID = new ModelObjectField<BestSubmission, Integer>("user_id", Integer.class, 0) {
+		public void set(BestSubmission obj, Integer value) { obj.setUserId(value); }
+		public Integer get(BestSubmission obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for event id of the best submission receipt. */
+	public static final ModelObjectField<BestSubmission, Integer> EVENT_ID = new ModelObjectField<BestSubmission, Integer>("event_id", Integer.class, 0) {
+		public void set(BestSubmission obj, Integer value) { obj.setEventId(value); }
+		public Integer get(BestSubmission obj) { return obj.getEventId(); }
+	};
+	/** {@link ModelObjectField} for number of tests passed by the best submission. */
+	public static final ModelObjectField<BestSubmission, Integer> NUM_TESTS_PASSED = new ModelObjectField<BestSubmission, Integer>("num_tests_passed", Integer.class, 0) {
+		public void set(BestSubmission obj, Integer value) { obj.setNumTestsPassed(value); }
+		public Integer get(BestSubmission obj) { return obj.getNumTestsPassed(); }
+	};
+	/** {@link ModelObjectField} for timestamp of the best submission. */
+	public static final ModelObjectField<BestSubmission, Long> TIMESTAMP = new ModelObjectField<BestSubmission, Long>("timestamp", Long.class, 0) {
+		public void set(BestSubmission obj, Long value) { obj.setTimestamp(value); }
+		public Long get(BestSubmission obj) { return obj.getTimestamp(); }
+	};
+	
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<BestSubmission> SCHEMA_V0 = new ModelObjectSchema<BestSubmission>("best_submission", BestSubmission.class)
+			.add(PROBLEM_ID)
+			.add(USER_ID)
+			.add(EVENT_ID)
+			.add(NUM_TESTS_PASSED)
+			.add(TIMESTAMP)
+			// There is at most one per problem and user.  Because the table
+			// has no primary key, InnoDB uses this index as the clustered
+			// index, so a problem's best submissions are stored together.
+			.addIndex(new ModelObjectIndex<BestSubmission>(ModelObjectIndexType.UNIQUE)
+					.addField(PROBLEM_ID)
+					.addField(USER_ID)
+					);
+	
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<BestSubmission> SCHEMA = SCHEMA_V0;
+	
+	private int problemId;
+	private int userId;
+	private int eventId;
+	private int numTestsPassed;
+	private long timestamp;
+	
+	/**
+	 * Constructor.
+	 */
+	public BestSubmission() {
+	}
+	
+	@Override
+	public ModelObjectSchema<? super BestSubmission> getSchema() {
+		return SCHEMA;
+	}
+	
+	/**
+	 * Set the problem id.
+	 * @param problemId the problem id
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+	
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+	
+	/**
+	 * Set the user id.
+	 * @param userId the user id
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+	
+	/**
+	 * @return the user id
+	 */
+	public int getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * Set the event id of the best {@link SubmissionReceipt}.
+	 * @param eventId the event id
+	 */
+	public void setEventId(int eventId) {
+		this.eventId = eventId;
+	}
+	
+	/**
+	 * @return the event id of the best {@link SubmissionReceipt}
+	 */
+	public int getEventId() {
+		return eventId;
+	}
+	
+	/**
+	 * Set the number of tests passed by the best submission.
+	 * @param numTestsPassed the number of tests passed
+	 */
+	public void setNumTestsPassed(int numTestsPassed) {
+		this.numTestsPassed = numTestsPassed;
+	}
+	
+	/**
+	 * @return the number of tests passed by the best submission
+	 */
+	public int getNumTestsPassed() {
+		return numTestsPassed;
+	}
+	
+	/**
+	 * Set the timestamp of the best submission.
+	 * @param timestamp the timestamp
+	 */
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+	
+	/**
+	 * @return the timestamp of the best submission
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
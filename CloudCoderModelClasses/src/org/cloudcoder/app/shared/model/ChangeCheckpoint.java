@@ -0,0 +1,173 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * A checkpoint of the full text of a {@link User}'s work on a
+ * {@link Problem}, materialized from the user's {@link Change}s.
+ * The current text can be reconstructed by applying only the
+ * changes newer than the checkpoint, rather than every change
+ * since the most recent full-text change.  There is (at most) one
+ * checkpoint per user and problem, and it also records how many
+ * changes have been stored since the checkpoint was written.
+ */
+public class ChangeCheckpoint implements Serializable, IModelObject<ChangeCheckpoint> {
+	private static final long serialVersionUID = 1L;
+	
+	/** {@link ModelObjectField} for user id. */
+	public static final ModelObjectField<ChangeCheckpoint, Integer> USER_ID = new ModelObjectField<ChangeCheckpoint, Integer>("user_id", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setUserId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<ChangeCheckpoint, Integer> PROBLEM_ID = new ModelObjectField<ChangeCheckpoint, Integer>("problem_id", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for event id of the most recent change reflected in the text. */
+	public static final ModelObjectField<ChangeCheckpoint, Integer> EVENT_ID = new ModelObjectField<ChangeCheckpoint, Integer>("event_id", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setEventId(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getEventId(); }
+	};
+	/** {@link ModelObjectField} for number of changes stored since the checkpoint. */
+	public static final ModelObjectField<ChangeCheckpoint, Integer> NUM_CHANGES = new ModelObjectField<ChangeCheckpoint, Integer>("num_changes", Integer.class, 0) {
+		public void set(ChangeCheckpoint obj, Integer value) { obj.setNumChanges(value); }
+		public Integer get(ChangeCheckpoint obj) { return obj.getNumChanges(); }
+	};
+	/** {@link ModelObjectField} for the text. */
+	public static final ModelObjectField<ChangeCheckpoint, String> TEXT = new ModelObjectField<ChangeCheckpoint, String>("text", String.class, 131072, ModelObjectIndexType.NONE, ModelObjectField.ALLOW_NULL) {
+		public void set(ChangeCheckpoint obj, String value) { obj.setText(value); }
+		public String get(ChangeCheckpoint obj) { return obj.getText(); }
+	};
+	
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<ChangeCheckpoint> SCHEMA_V0 = new ModelObjectSchema<ChangeCheckpoint>("change_checkpoint", ChangeCheckpoint.class)
+			.add(USER_ID)
+			.add(PROBLEM_ID)
+			.add(EVENT_ID)
+			.add(NUM_CHANGES)
+			.add(TEXT)
+			// There is at most one checkpoint per user and problem
+			.addIndex(new ModelObjectIndex<ChangeCheckpoint>(ModelObjectIndexType.UNIQUE)
+					.addField(USER_ID)
+					.addField(PROBLEM_ID)
+					);
+	
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<ChangeCheckpoint> SCHEMA = SCHEMA_V0;
+	
+	private int userId;
+	private int problemId;
+	private int eventId;
+	private int numChanges;
+	private String text;
+	
+	/**
+	 * Constructor.
+	 */
+	public ChangeCheckpoint() {
+	}
+	
+	@Override
+	public ModelObjectSchema<? super ChangeCheckpoint> getSchema() {
+		return SCHEMA;
+	}
+	
+	/**
+	 * Set the user id.
+	 * @param userId the user id
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+	
+	/**
+	 * @return the user id
+	 */
+	public int getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * Set the problem id.
+	 * @param problemId the problem id
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+	
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+	
+	/**
+	 * Set the event id of the most recent {@link Change} reflected in the text.
+	 * @param eventId the event id
+	 */
+	public void setEventId(int eventId) {
+		this.eventId = eventId;
+	}
+	
+	/**
+	 * @return the event id of the most recent {@link Change} reflected in the text
+	 */
+	public int getEventId() {
+		return eventId;
+	}
+	
+	/**
+	 * Set the number of {@link Change}s stored since the checkpoint was written.
+	 * @param numChanges the number of changes
+	 */
+	public void setNumChanges(int numChanges) {
+		this.numChanges = numChanges;
+	}
+	
+	/**
+	 * @return the number of {@link Change}s stored since the checkpoint was written
+	 */
+	public int getNumChanges() {
+		return numChanges;
+	}
+	
+	/**
+	 * Set the text.
+	 * @param text the text (as returned by {@link TextDocument#getText()}),
+	 *             or null if no checkpoint has been written yet
+	 */
+	public void setText(String text) {
+		this.text = text;
+	}
+	
+	/**
+	 * @return the text, or null if no checkpoint has been written yet
+	 */
+	public String getText() {
+		return text;
+	}
+}
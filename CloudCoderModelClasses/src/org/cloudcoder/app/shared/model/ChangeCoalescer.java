@@ -0,0 +1,165 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.shared.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coalesce adjacent single-line {@link ChangeType#INSERT_TEXT} and
+ * {@link ChangeType#REMOVE_TEXT} {@link Change}s, such as the
+ * one-character changes produced by typing and backspacing, into a
+ * single {@link Change}.  Since each {@link Change} is stored as an
+ * {@link Event} and a change, this greatly reduces the number of rows
+ * written to the database, without changing the text that results
+ * from applying the changes.
+ * 
+ * <p>
+ * A coalesced change has the timestamp of the last change merged into
+ * it, so the reconstructed text at any point in time never includes
+ * text typed later.  Changes separated by more than the maximum pause
+ * are never coalesced, so pauses (which are interesting for analysis)
+ * are preserved exactly.  Coalesced text is limited to
+ * {@link Change#MAX_TEXT_LEN_IN_ROW} characters by default, so it can
+ * still be stored in the row rather than in a blob.
+ * </p>
+ */
+public class ChangeCoalescer {
+	/**
+	 * Default maximum pause (in milliseconds) between changes that can be coalesced.
+	 */
+	public static final long DEFAULT_MAX_PAUSE_MS = 1000L;
+
+	private long maxPauseMs;
+	private int maxTextLength;
+	
+	/**
+	 * Constructor.
+	 */
+	public ChangeCoalescer() {
+		this.maxPauseMs = DEFAULT_MAX_PAUSE_MS;
+		this.maxTextLength = Change.MAX_TEXT_LEN_IN_ROW;
+	}
+	
+	/**
+	 * Set the maximum pause (in milliseconds) between changes that can be coalesced.
+	 * Defaults to {@link #DEFAULT_MAX_PAUSE_MS}.
+	 * 
+	 * @param maxPauseMs the maximum pause in milliseconds
+	 */
+	public void setMaxPauseMs(long maxPauseMs) {
+		this.maxPauseMs = maxPauseMs;
+	}
+	
+	/**
+	 * Set the maximum length of the text of a coalesced change.
+	 * Defaults to {@link Change#MAX_TEXT_LEN_IN_ROW}.
+	 * 
+	 * @param maxTextLength the maximum length of the text of a coalesced change
+	 */
+	public void setMaxTextLength(int maxTextLength) {
+		this.maxTextLength = maxTextLength;
+	}
+	
+	/**
+	 * Attempt to coalesce a change into the change immediately preceding it.
+	 * If successful, the previous change is modified so that applying it
+	 * has the same effect as applying both changes.
+	 * 
+	 * @param prev the previous change (modified if the changes are coalesced)
+	 * @param next the next change
+	 * @return true if the changes were coalesced (and <code>next</code>
+	 *         should be discarded), false if not
+	 */
+	public boolean coalesce(Change prev, Change next) {
+		if (prev.getType() != next.getType() || !isSingleLine(prev) || !isSingleLine(next)
+				|| prev.getStartRow() != next.getStartRow()) {
+			return false;
+		}
+		
+		Event prevEvent = prev.getEvent(), nextEvent = next.getEvent();
+		if (prevEvent == null || nextEvent == null
+				|| prevEvent.getUserId() != nextEvent.getUserId()
+				|| prevEvent.getProblemId() != nextEvent.getProblemId()) {
+			return false;
+		}
+		long pause = nextEvent.getTimestamp() - prevEvent.getTimestamp();
+		if (pause < 0 || pause > maxPauseMs) {
+			return false;
+		}
+		
+		String prevText = prev.getText(), nextText = next.getText();
+		if (prevText.length() + nextText.length() > maxTextLength) {
+			return false;
+		}
+		
+		int prevStart = prev.getStartColumn(), nextStart = next.getStartColumn();
+		if (prev.getType() == ChangeType.INSERT_TEXT) {
+			// Typing: next insertion starts where the previous one ended
+			if (nextStart != prevStart + prevText.length()) {
+				return false;
+			}
+			prev.setText(prevText + nextText);
+		} else {
+			if (nextStart + nextText.length() == prevStart) {
+				// Backspace: next removal ends where the previous one started
+				prev.setText(nextText + prevText);
+				prev.setStartColumn(nextStart);
+			} else if (nextStart == prevStart) {
+				// Delete: next removal starts at the same position
+				prev.setText(prevText + nextText);
+			} else {
+				return false;
+			}
+		}
+		prev.setEndColumn(prev.getStartColumn() + prev.getText().length());
+		prevEvent.setTimestamp(nextEvent.getTimestamp());
+		
+		return true;
+	}
+	
+	/**
+	 * Coalesce a sequence of changes.
+	 * The changes in the given list are not modified.
+	 * 
+	 * @param changeList the changes
+	 * @return list of coalesced changes
+	 */
+	public List<Change> coalesce(List<Change> changeList) {
+		List<Change> result = new ArrayList<Change>();
+		for (Change change : changeList) {
+			if (result.isEmpty() || !coalesce(result.get(result.size() - 1), change)) {
+				result.add(change.duplicate());
+			}
+		}
+		return result;
+	}
+	
+	private static boolean isSingleLine(Change change) {
+		if (change.getType() != ChangeType.INSERT_TEXT && change.getType() != ChangeType.REMOVE_TEXT) {
+			return false;
+		}
+		String text = change.getText();
+		return change.getStartRow() == change.getEndRow()
+				&& text != null
+				&& text.length() > 0
+				&& text.indexOf('\n') < 0
+				&& text.indexOf('\r') < 0;
+	}
+}
@@ -30,6 +30,18 @@ public class CompilationResult implements Serializable
     private CompilationOutcome outcome;
     private CompilerDiagnostic[] diagnosticList;
     
+    public static final ModelObjectField<CompilationResult, CompilationOutcome> OUTCOME=new ModelObjectField<CompilationResult, CompilationOutcome>("outcome", CompilationOutcome.class, 0) {
+        public void set(CompilationResult obj, CompilationOutcome value) { obj.setOutcome(value); }
+        public CompilationOutcome get(CompilationResult obj) { return obj.getOutcome(); }
+    };
+    
+    /**
+     * Description of (scalar) fields.  The list of {@link CompilerDiagnostic}s
+     * is not included.
+     */
+    public static final ModelObjectSchema<CompilationResult> SCHEMA = new ModelObjectSchema<CompilationResult>("compilation_result", CompilationResult.class)
+        .add(OUTCOME);
+    
     public CompilationResult() {
     	diagnosticList = new CompilerDiagnostic[0];
     }
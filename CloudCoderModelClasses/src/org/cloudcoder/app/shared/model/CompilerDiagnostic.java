@@ -37,6 +37,39 @@ public class CompilerDiagnostic implements Serializable
     private long endColumn;
     private String message;
     
+    public static final ModelObjectField<CompilerDiagnostic, Long> START_LINE=new ModelObjectField<CompilerDiagnostic, Long>("start_line", Long.class, 0) {
+        public void set(CompilerDiagnostic obj, Long value) { obj.setStartLine(value); }
+        public Long get(CompilerDiagnostic obj) { return obj.getStartLine(); }
+    };
+    public static final ModelObjectField<CompilerDiagnostic, Long> START_COLUMN=new ModelObjectField<CompilerDiagnostic, Long>("start_column", Long.class, 0) {
+        public void set(CompilerDiagnostic obj, Long value) { obj.setStartColumn(value); }
+        public Long get(CompilerDiagnostic obj) { return obj.getStartColumn(); }
+    };
+    public static final ModelObjectField<CompilerDiagnostic, Long> END_LINE=new ModelObjectField<CompilerDiagnostic, Long>("end_line", Long.class, 0) {
+        public void set(CompilerDiagnostic obj, Long value) { obj.setEndLine(value); }
+        public Long get(CompilerDiagnostic obj) { return obj.getEndLine(); }
+    };
+    public static final ModelObjectField<CompilerDiagnostic, Long> END_COLUMN=new ModelObjectField<CompilerDiagnostic, Long>("end_column", Long.class, 0) {
+        public void set(CompilerDiagnostic obj, Long value) { obj.setEndColumn(value); }
+        public Long get(CompilerDiagnostic obj) { return obj.getEndColumn(); }
+    };
+    public static final ModelObjectField<CompilerDiagnostic, String> MESSAGE=new ModelObjectField<CompilerDiagnostic, String>("message", String.class, Integer.MAX_VALUE) {
+        public void set(CompilerDiagnostic obj, String value) { obj.setMessage(value); }
+        public String get(CompilerDiagnostic obj) { return obj.getMessage(); }
+    };
+    
+    /**
+     * Description of fields.  Compiler diagnostics aren't stored in the
+     * database, but the schema is used to encode them for transmission
+     * from the builder to the webapp.
+     */
+    public static final ModelObjectSchema<CompilerDiagnostic> SCHEMA = new ModelObjectSchema<CompilerDiagnostic>("compiler_diagnostic", CompilerDiagnostic.class)
+        .add(START_LINE)
+        .add(START_COLUMN)
+        .add(END_LINE)
+        .add(END_COLUMN)
+        .add(MESSAGE);
+    
     public void adjustDiagnosticLineNumbers(int prologue, int epilogue) {
         // Student-written code may be embedded in a test harness
         // Using the number of lines of prologue/epilogue code
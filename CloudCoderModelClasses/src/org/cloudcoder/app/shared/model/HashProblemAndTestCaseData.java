@@ -20,12 +20,23 @@ package org.cloudcoder.app.shared.model;
 import java.io.UnsupportedEncodingException;
 
 /**
+ * <p>
  * Compute a hash of the data in a {@link IProblemAndTestCaseData} object.
  * The hash should be "unique enough" that collisions will not arise
  * in practice.  <b>Important</b>: we only try to hash the "content"
  * of the problem and test cases, and not the "provenence" of the problem.
  * So, things like timestamps, parent hashes (for derived problems), etc.
  * should not be hashed.
+ * </p>
+ * 
+ * <p>
+ * By default, strings are trimmed and digested without delimiters,
+ * which is appropriate for identifying "the same" exercise in the repository.
+ * In <em>strict</em> mode, strings are digested exactly and prefixed by
+ * their lengths, so that any change to the content that could affect
+ * building and testing results in a different hash.  Strict mode
+ * should be used when the hash is used as a cache key.
+ * </p>
  * 
  * @author David Hovemeyer
  */
@@ -33,6 +44,7 @@ public class HashProblemAndTestCaseData<
 	ObjType extends IProblemAndTestCaseData<? extends IProblemData, ? extends ITestCaseData>
 	> {
 	private ObjType problemAndTestCaseData;
+	private boolean strict;
 	private SHA1 sha1;
 	
 	/**
@@ -41,7 +53,19 @@ public class HashProblemAndTestCaseData<
 	 * @param problemAndTestCaseData the ProblemData to compute a hash for
 	 */
 	public HashProblemAndTestCaseData(ObjType problemAndTestCaseData) {
+		this(problemAndTestCaseData, false);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param problemAndTestCaseData the ProblemData to compute a hash for
+	 * @param strict                 true if strings should be digested exactly
+	 *                               (untrimmed and length-prefixed)
+	 */
+	public HashProblemAndTestCaseData(ObjType problemAndTestCaseData, boolean strict) {
 		this.problemAndTestCaseData = problemAndTestCaseData;
+		this.strict = strict;
 		this.sha1 = new SHA1();
 	}
 	
@@ -100,6 +124,11 @@ public class HashProblemAndTestCaseData<
 	}
 
 	private void updateString(String s) {
+		if (strict) {
+			updateStringStrict(s);
+			return;
+		}
+		
 		// Note: we always digest the trimmed version of the string,
 		// and always using UTF-8 to convert to bytes.
 		try {
@@ -108,8 +137,25 @@ public class HashProblemAndTestCaseData<
 			throw new IllegalStateException("Can't convert string to UTF-8 bytes?");
 		}
 	}
+	
+	private void updateStringStrict(String s) {
+		// Digest the length (-1 for null) followed by the exact UTF-8 bytes
+		try {
+			byte[] bytes = (s != null) ? s.getBytes("UTF-8") : new byte[0];
+			int len = (s != null) ? bytes.length : -1;
+			sha1.update(new byte[]{ (byte)(len >> 24), (byte)(len >> 16), (byte)(len >> 8), (byte)len });
+			sha1.update(bytes);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Can't convert string to UTF-8 bytes?");
+		}
+	}
 
 	private void updateStringIfNonEmpty(String s) {
+		if (strict) {
+			// Always digest the value, so that fields can't be confused
+			updateStringStrict(s);
+			return;
+		}
 		if (s == null) {
 			return;
 		}
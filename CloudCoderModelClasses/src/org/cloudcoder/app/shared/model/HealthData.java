@@ -28,6 +28,30 @@ public class HealthData implements IModelObject<HealthData> {
 	private int submissionQueueSizeCurrent;
 	private int submissionQueueSizeMaxLastFiveMinutes;
 	private int numConnectedBuilderThreads;
+	private int submissionQueueSizeQuiz;
+	private int submissionQueueSizeInteractive;
+	private int submissionQueueSizeApi;
+	private int submissionQueueSizeBatch;
+	private int submissionMaxWaitMillisQuiz;
+	private int submissionMaxWaitMillisInteractive;
+	private int submissionMaxWaitMillisApi;
+	private int submissionMaxWaitMillisBatch;
+	private int submissionDispatchMillisAvg;
+	private int submissionDispatchMillisMax;
+	private int submissionTurnaroundMillisAvg;
+	private int submissionTurnaroundMillisMax;
+	private int problemCacheHitPercent;
+	private int testCaseCacheHitPercent;
+	private int moduleCacheHitPercent;
+	private int courseRegistrationCacheHitPercent;
+	private int passwordVerifyQueueSize;
+	private int passwordVerifyWaitMillisAvg;
+	private int passwordVerifyWaitMillisMax;
+	private int passwordVerifyMillisAvg;
+	private int passwordVerifyRejected;
+	private int dbConnectionsInUse;
+	private int dbConnectionsWaiting;
+	private int dbConnectionTimeouts;
 	
 	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_CURRENT = new ModelObjectField<HealthData, Integer>("submissionQueueSizeCurrent", Integer.class, 0) {
 		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeCurrent(value); }
@@ -44,6 +68,126 @@ public class HealthData implements IModelObject<HealthData> {
 		public Integer get(HealthData obj) { return obj.getNumConnectedBuilderThreads(); }
 	};
 	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_QUIZ = new ModelObjectField<HealthData, Integer>("submissionQueueSizeQuiz", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeQuiz(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueSizeQuiz(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_INTERACTIVE = new ModelObjectField<HealthData, Integer>("submissionQueueSizeInteractive", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeInteractive(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueSizeInteractive(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_API = new ModelObjectField<HealthData, Integer>("submissionQueueSizeApi", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeApi(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueSizeApi(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_QUEUE_SIZE_BATCH = new ModelObjectField<HealthData, Integer>("submissionQueueSizeBatch", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionQueueSizeBatch(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionQueueSizeBatch(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_MAX_WAIT_MILLIS_QUIZ = new ModelObjectField<HealthData, Integer>("submissionMaxWaitMillisQuiz", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionMaxWaitMillisQuiz(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionMaxWaitMillisQuiz(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_MAX_WAIT_MILLIS_INTERACTIVE = new ModelObjectField<HealthData, Integer>("submissionMaxWaitMillisInteractive", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionMaxWaitMillisInteractive(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionMaxWaitMillisInteractive(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_MAX_WAIT_MILLIS_API = new ModelObjectField<HealthData, Integer>("submissionMaxWaitMillisApi", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionMaxWaitMillisApi(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionMaxWaitMillisApi(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_MAX_WAIT_MILLIS_BATCH = new ModelObjectField<HealthData, Integer>("submissionMaxWaitMillisBatch", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionMaxWaitMillisBatch(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionMaxWaitMillisBatch(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_DISPATCH_MILLIS_AVG = new ModelObjectField<HealthData, Integer>("submissionDispatchMillisAvg", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionDispatchMillisAvg(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionDispatchMillisAvg(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_DISPATCH_MILLIS_MAX = new ModelObjectField<HealthData, Integer>("submissionDispatchMillisMax", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionDispatchMillisMax(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionDispatchMillisMax(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_TURNAROUND_MILLIS_AVG = new ModelObjectField<HealthData, Integer>("submissionTurnaroundMillisAvg", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionTurnaroundMillisAvg(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionTurnaroundMillisAvg(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> SUBMISSION_TURNAROUND_MILLIS_MAX = new ModelObjectField<HealthData, Integer>("submissionTurnaroundMillisMax", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setSubmissionTurnaroundMillisMax(value); }
+		public Integer get(HealthData obj) { return obj.getSubmissionTurnaroundMillisMax(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> PROBLEM_CACHE_HIT_PERCENT = new ModelObjectField<HealthData, Integer>("problemCacheHitPercent", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setProblemCacheHitPercent(value); }
+		public Integer get(HealthData obj) { return obj.getProblemCacheHitPercent(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> TEST_CASE_CACHE_HIT_PERCENT = new ModelObjectField<HealthData, Integer>("testCaseCacheHitPercent", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setTestCaseCacheHitPercent(value); }
+		public Integer get(HealthData obj) { return obj.getTestCaseCacheHitPercent(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> MODULE_CACHE_HIT_PERCENT = new ModelObjectField<HealthData, Integer>("moduleCacheHitPercent", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setModuleCacheHitPercent(value); }
+		public Integer get(HealthData obj) { return obj.getModuleCacheHitPercent(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> COURSE_REGISTRATION_CACHE_HIT_PERCENT = new ModelObjectField<HealthData, Integer>("courseRegistrationCacheHitPercent", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setCourseRegistrationCacheHitPercent(value); }
+		public Integer get(HealthData obj) { return obj.getCourseRegistrationCacheHitPercent(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> PASSWORD_VERIFY_QUEUE_SIZE = new ModelObjectField<HealthData, Integer>("passwordVerifyQueueSize", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setPasswordVerifyQueueSize(value); }
+		public Integer get(HealthData obj) { return obj.getPasswordVerifyQueueSize(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> PASSWORD_VERIFY_WAIT_MILLIS_AVG = new ModelObjectField<HealthData, Integer>("passwordVerifyWaitMillisAvg", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setPasswordVerifyWaitMillisAvg(value); }
+		public Integer get(HealthData obj) { return obj.getPasswordVerifyWaitMillisAvg(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> PASSWORD_VERIFY_WAIT_MILLIS_MAX = new ModelObjectField<HealthData, Integer>("passwordVerifyWaitMillisMax", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setPasswordVerifyWaitMillisMax(value); }
+		public Integer get(HealthData obj) { return obj.getPasswordVerifyWaitMillisMax(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> PASSWORD_VERIFY_MILLIS_AVG = new ModelObjectField<HealthData, Integer>("passwordVerifyMillisAvg", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setPasswordVerifyMillisAvg(value); }
+		public Integer get(HealthData obj) { return obj.getPasswordVerifyMillisAvg(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> PASSWORD_VERIFY_REJECTED = new ModelObjectField<HealthData, Integer>("passwordVerifyRejected", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setPasswordVerifyRejected(value); }
+		public Integer get(HealthData obj) { return obj.getPasswordVerifyRejected(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_IN_USE = new ModelObjectField<HealthData, Integer>("dbConnectionsInUse", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsInUse(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsInUse(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTIONS_WAITING = new ModelObjectField<HealthData, Integer>("dbConnectionsWaiting", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionsWaiting(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionsWaiting(); }
+	};
+	
+	public static final ModelObjectField<HealthData, Integer> DB_CONNECTION_TIMEOUTS = new ModelObjectField<HealthData, Integer>("dbConnectionTimeouts", Integer.class, 0) {
+		public void set(HealthData obj, Integer value) { obj.setDbConnectionTimeouts(value); }
+		public Integer get(HealthData obj) { return obj.getDbConnectionTimeouts(); }
+	};
+	
 	/**
 	 * Model object fields (schema version 0).
 	 */
@@ -52,10 +196,69 @@ public class HealthData implements IModelObject<HealthData> {
 			.add(SUBMISSION_QUEUE_SIZE_MAX_LAST_FIVE_MINUTES)
 			.add(NUM_CONNECTED_BUILDER_THREADS);
 	
+	/**
+	 * Model object fields (schema version 1): adds queue size and wait time
+	 * for each submission priority class.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V1 = ModelObjectSchema.basedOn(SCHEMA_V0, HealthData.class)
+			.addAfter(NUM_CONNECTED_BUILDER_THREADS, SUBMISSION_QUEUE_SIZE_QUIZ)
+			.addAfter(SUBMISSION_QUEUE_SIZE_QUIZ, SUBMISSION_QUEUE_SIZE_INTERACTIVE)
+			.addAfter(SUBMISSION_QUEUE_SIZE_INTERACTIVE, SUBMISSION_QUEUE_SIZE_API)
+			.addAfter(SUBMISSION_QUEUE_SIZE_API, SUBMISSION_QUEUE_SIZE_BATCH)
+			.addAfter(SUBMISSION_QUEUE_SIZE_BATCH, SUBMISSION_MAX_WAIT_MILLIS_QUIZ)
+			.addAfter(SUBMISSION_MAX_WAIT_MILLIS_QUIZ, SUBMISSION_MAX_WAIT_MILLIS_INTERACTIVE)
+			.addAfter(SUBMISSION_MAX_WAIT_MILLIS_INTERACTIVE, SUBMISSION_MAX_WAIT_MILLIS_API)
+			.addAfter(SUBMISSION_MAX_WAIT_MILLIS_API, SUBMISSION_MAX_WAIT_MILLIS_BATCH)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 2): adds dispatch latency
+	 * and turnaround time.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V2 = ModelObjectSchema.basedOn(SCHEMA_V1, HealthData.class)
+			.addAfter(SUBMISSION_MAX_WAIT_MILLIS_BATCH, SUBMISSION_DISPATCH_MILLIS_AVG)
+			.addAfter(SUBMISSION_DISPATCH_MILLIS_AVG, SUBMISSION_DISPATCH_MILLIS_MAX)
+			.addAfter(SUBMISSION_DISPATCH_MILLIS_MAX, SUBMISSION_TURNAROUND_MILLIS_AVG)
+			.addAfter(SUBMISSION_TURNAROUND_MILLIS_AVG, SUBMISSION_TURNAROUND_MILLIS_MAX)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 3): adds hit rates of the
+	 * webapp's database caches.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V3 = ModelObjectSchema.basedOn(SCHEMA_V2, HealthData.class)
+			.addAfter(SUBMISSION_TURNAROUND_MILLIS_MAX, PROBLEM_CACHE_HIT_PERCENT)
+			.addAfter(PROBLEM_CACHE_HIT_PERCENT, TEST_CASE_CACHE_HIT_PERCENT)
+			.addAfter(TEST_CASE_CACHE_HIT_PERCENT, MODULE_CACHE_HIT_PERCENT)
+			.addAfter(MODULE_CACHE_HIT_PERCENT, COURSE_REGISTRATION_CACHE_HIT_PERCENT)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 4): adds password verification
+	 * queue size and latency.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V4 = ModelObjectSchema.basedOn(SCHEMA_V3, HealthData.class)
+			.addAfter(COURSE_REGISTRATION_CACHE_HIT_PERCENT, PASSWORD_VERIFY_QUEUE_SIZE)
+			.addAfter(PASSWORD_VERIFY_QUEUE_SIZE, PASSWORD_VERIFY_WAIT_MILLIS_AVG)
+			.addAfter(PASSWORD_VERIFY_WAIT_MILLIS_AVG, PASSWORD_VERIFY_WAIT_MILLIS_MAX)
+			.addAfter(PASSWORD_VERIFY_WAIT_MILLIS_MAX, PASSWORD_VERIFY_MILLIS_AVG)
+			.addAfter(PASSWORD_VERIFY_MILLIS_AVG, PASSWORD_VERIFY_REJECTED)
+			.finishDelta();
+	
+	/**
+	 * Model object fields (schema version 5): adds database connection
+	 * pool usage.
+	 */
+	public static final ModelObjectSchema<HealthData> SCHEMA_V5 = ModelObjectSchema.basedOn(SCHEMA_V4, HealthData.class)
+			.addAfter(PASSWORD_VERIFY_REJECTED, DB_CONNECTIONS_IN_USE)
+			.addAfter(DB_CONNECTIONS_IN_USE, DB_CONNECTIONS_WAITING)
+			.addAfter(DB_CONNECTIONS_WAITING, DB_CONNECTION_TIMEOUTS)
+			.finishDelta();
+	
 	/**
 	 * Model object fields (current schema version).
 	 */
-	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V0;
+	public static final ModelObjectSchema<HealthData> SCHEMA = SCHEMA_V5;
 	
 	/**
 	 * Constructor.
@@ -86,7 +289,7 @@ public class HealthData implements IModelObject<HealthData> {
 	public int getSubmissionQueueSizeCurrent() {
 		return submissionQueueSizeCurrent;
 	}
-
+	
 	/**
 	 * Set the maximum submission queue size in the last five minutes. 
 	 * 
@@ -122,4 +325,452 @@ public class HealthData implements IModelObject<HealthData> {
 	public void setNumConnectedBuilderThreads(int numConnectedBuilderThreads) {
 		this.numConnectedBuilderThreads = numConnectedBuilderThreads;
 	}
+	
+	/**
+	 * Set the current number of queued quiz submissions.
+	 * 
+	 * @param submissionQueueSizeQuiz the current number of queued quiz submissions
+	 */
+	public void setSubmissionQueueSizeQuiz(int submissionQueueSizeQuiz) {
+		this.submissionQueueSizeQuiz = submissionQueueSizeQuiz;
+	}
+	
+	/**
+	 * Get the current number of queued quiz submissions.
+	 * 
+	 * @return the current number of queued quiz submissions
+	 */
+	public int getSubmissionQueueSizeQuiz() {
+		return submissionQueueSizeQuiz;
+	}
+	
+	/**
+	 * Set the current number of queued interactive submissions.
+	 * 
+	 * @param submissionQueueSizeInteractive the current number of queued interactive submissions
+	 */
+	public void setSubmissionQueueSizeInteractive(int submissionQueueSizeInteractive) {
+		this.submissionQueueSizeInteractive = submissionQueueSizeInteractive;
+	}
+	
+	/**
+	 * Get the current number of queued interactive submissions.
+	 * 
+	 * @return the current number of queued interactive submissions
+	 */
+	public int getSubmissionQueueSizeInteractive() {
+		return submissionQueueSizeInteractive;
+	}
+	
+	/**
+	 * Set the current number of queued API submissions.
+	 * 
+	 * @param submissionQueueSizeApi the current number of queued API submissions
+	 */
+	public void setSubmissionQueueSizeApi(int submissionQueueSizeApi) {
+		this.submissionQueueSizeApi = submissionQueueSizeApi;
+	}
+	
+	/**
+	 * Get the current number of queued API submissions.
+	 * 
+	 * @return the current number of queued API submissions
+	 */
+	public int getSubmissionQueueSizeApi() {
+		return submissionQueueSizeApi;
+	}
+	
+	/**
+	 * Set the current number of queued batch submissions.
+	 * 
+	 * @param submissionQueueSizeBatch the current number of queued batch submissions
+	 */
+	public void setSubmissionQueueSizeBatch(int submissionQueueSizeBatch) {
+		this.submissionQueueSizeBatch = submissionQueueSizeBatch;
+	}
+	
+	/**
+	 * Get the current number of queued batch submissions.
+	 * 
+	 * @return the current number of queued batch submissions
+	 */
+	public int getSubmissionQueueSizeBatch() {
+		return submissionQueueSizeBatch;
+	}
+	
+	/**
+	 * Set the current longest wait time (in milliseconds) of a queued quiz submission.
+	 * 
+	 * @param submissionMaxWaitMillisQuiz the current longest wait time (in milliseconds) of a queued quiz submission
+	 */
+	public void setSubmissionMaxWaitMillisQuiz(int submissionMaxWaitMillisQuiz) {
+		this.submissionMaxWaitMillisQuiz = submissionMaxWaitMillisQuiz;
+	}
+	
+	/**
+	 * Get the current longest wait time (in milliseconds) of a queued quiz submission.
+	 * 
+	 * @return the current longest wait time (in milliseconds) of a queued quiz submission
+	 */
+	public int getSubmissionMaxWaitMillisQuiz() {
+		return submissionMaxWaitMillisQuiz;
+	}
+	
+	/**
+	 * Set the current longest wait time (in milliseconds) of a queued interactive submission.
+	 * 
+	 * @param submissionMaxWaitMillisInteractive the current longest wait time (in milliseconds) of a queued interactive submission
+	 */
+	public void setSubmissionMaxWaitMillisInteractive(int submissionMaxWaitMillisInteractive) {
+		this.submissionMaxWaitMillisInteractive = submissionMaxWaitMillisInteractive;
+	}
+	
+	/**
+	 * Get the current longest wait time (in milliseconds) of a queued interactive submission.
+	 * 
+	 * @return the current longest wait time (in milliseconds) of a queued interactive submission
+	 */
+	public int getSubmissionMaxWaitMillisInteractive() {
+		return submissionMaxWaitMillisInteractive;
+	}
+	
+	/**
+	 * Set the current longest wait time (in milliseconds) of a queued API submission.
+	 * 
+	 * @param submissionMaxWaitMillisApi the current longest wait time (in milliseconds) of a queued API submission
+	 */
+	public void setSubmissionMaxWaitMillisApi(int submissionMaxWaitMillisApi) {
+		this.submissionMaxWaitMillisApi = submissionMaxWaitMillisApi;
+	}
+	
+	/**
+	 * Get the current longest wait time (in milliseconds) of a queued API submission.
+	 * 
+	 * @return the current longest wait time (in milliseconds) of a queued API submission
+	 */
+	public int getSubmissionMaxWaitMillisApi() {
+		return submissionMaxWaitMillisApi;
+	}
+	
+	/**
+	 * Set the current longest wait time (in milliseconds) of a queued batch submission.
+	 * 
+	 * @param submissionMaxWaitMillisBatch the current longest wait time (in milliseconds) of a queued batch submission
+	 */
+	public void setSubmissionMaxWaitMillisBatch(int submissionMaxWaitMillisBatch) {
+		this.submissionMaxWaitMillisBatch = submissionMaxWaitMillisBatch;
+	}
+	
+	/**
+	 * Get the current longest wait time (in milliseconds) of a queued batch submission.
+	 * 
+	 * @return the current longest wait time (in milliseconds) of a queued batch submission
+	 */
+	public int getSubmissionMaxWaitMillisBatch() {
+		return submissionMaxWaitMillisBatch;
+	}
+	
+	/**
+	 * Set the average time (in milliseconds) from submission until sent to a Builder
+	 * (for recently-completed submissions).
+	 * 
+	 * @param submissionDispatchMillisAvg the average time (in milliseconds) from submission until sent to a Builder
+	 */
+	public void setSubmissionDispatchMillisAvg(int submissionDispatchMillisAvg) {
+		this.submissionDispatchMillisAvg = submissionDispatchMillisAvg;
+	}
+	
+	/**
+	 * Get the average time (in milliseconds) from submission until sent to a Builder
+	 * (for recently-completed submissions).
+	 * 
+	 * @return the average time (in milliseconds) from submission until sent to a Builder
+	 */
+	public int getSubmissionDispatchMillisAvg() {
+		return submissionDispatchMillisAvg;
+	}
+	
+	/**
+	 * Set the maximum time (in milliseconds) from submission until sent to a Builder
+	 * (for recently-completed submissions).
+	 * 
+	 * @param submissionDispatchMillisMax the maximum time (in milliseconds) from submission until sent to a Builder
+	 */
+	public void setSubmissionDispatchMillisMax(int submissionDispatchMillisMax) {
+		this.submissionDispatchMillisMax = submissionDispatchMillisMax;
+	}
+	
+	/**
+	 * Get the maximum time (in milliseconds) from submission until sent to a Builder
+	 * (for recently-completed submissions).
+	 * 
+	 * @return the maximum time (in milliseconds) from submission until sent to a Builder
+	 */
+	public int getSubmissionDispatchMillisMax() {
+		return submissionDispatchMillisMax;
+	}
+	
+	/**
+	 * Set the average time (in milliseconds) from submission until the result is received
+	 * (for recently-completed submissions).
+	 * 
+	 * @param submissionTurnaroundMillisAvg the average time (in milliseconds) from submission until the result is received
+	 */
+	public void setSubmissionTurnaroundMillisAvg(int submissionTurnaroundMillisAvg) {
+		this.submissionTurnaroundMillisAvg = submissionTurnaroundMillisAvg;
+	}
+	
+	/**
+	 * Get the average time (in milliseconds) from submission until the result is received
+	 * (for recently-completed submissions).
+	 * 
+	 * @return the average time (in milliseconds) from submission until the result is received
+	 */
+	public int getSubmissionTurnaroundMillisAvg() {
+		return submissionTurnaroundMillisAvg;
+	}
+	
+	/**
+	 * Set the maximum time (in milliseconds) from submission until the result is received
+	 * (for recently-completed submissions).
+	 * 
+	 * @param submissionTurnaroundMillisMax the maximum time (in milliseconds) from submission until the result is received
+	 */
+	public void setSubmissionTurnaroundMillisMax(int submissionTurnaroundMillisMax) {
+		this.submissionTurnaroundMillisMax = submissionTurnaroundMillisMax;
+	}
+	
+	/**
+	 * Get the maximum time (in milliseconds) from submission until the result is received
+	 * (for recently-completed submissions).
+	 * 
+	 * @return the maximum time (in milliseconds) from submission until the result is received
+	 */
+	public int getSubmissionTurnaroundMillisMax() {
+		return submissionTurnaroundMillisMax;
+	}
+	
+	/**
+	 * Set the percentage of lookups in the exercise cache that were hits.
+	 * 
+	 * @param problemCacheHitPercent the percentage of lookups in the exercise cache that were hits
+	 */
+	public void setProblemCacheHitPercent(int problemCacheHitPercent) {
+		this.problemCacheHitPercent = problemCacheHitPercent;
+	}
+	
+	/**
+	 * Get the percentage of lookups in the exercise cache that were hits.
+	 * 
+	 * @return the percentage of lookups in the exercise cache that were hits
+	 */
+	public int getProblemCacheHitPercent() {
+		return problemCacheHitPercent;
+	}
+	
+	/**
+	 * Set the percentage of lookups in the test case cache that were hits.
+	 * 
+	 * @param testCaseCacheHitPercent the percentage of lookups in the test case cache that were hits
+	 */
+	public void setTestCaseCacheHitPercent(int testCaseCacheHitPercent) {
+		this.testCaseCacheHitPercent = testCaseCacheHitPercent;
+	}
+	
+	/**
+	 * Get the percentage of lookups in the test case cache that were hits.
+	 * 
+	 * @return the percentage of lookups in the test case cache that were hits
+	 */
+	public int getTestCaseCacheHitPercent() {
+		return testCaseCacheHitPercent;
+	}
+	
+	/**
+	 * Set the percentage of lookups in the module cache that were hits.
+	 * 
+	 * @param moduleCacheHitPercent the percentage of lookups in the module cache that were hits
+	 */
+	public void setModuleCacheHitPercent(int moduleCacheHitPercent) {
+		this.moduleCacheHitPercent = moduleCacheHitPercent;
+	}
+	
+	/**
+	 * Get the percentage of lookups in the module cache that were hits.
+	 * 
+	 * @return the percentage of lookups in the module cache that were hits
+	 */
+	public int getModuleCacheHitPercent() {
+		return moduleCacheHitPercent;
+	}
+	
+	/**
+	 * Set the percentage of lookups in the course registration cache that were hits.
+	 * 
+	 * @param courseRegistrationCacheHitPercent the percentage of lookups in the course registration cache that were hits
+	 */
+	public void setCourseRegistrationCacheHitPercent(int courseRegistrationCacheHitPercent) {
+		this.courseRegistrationCacheHitPercent = courseRegistrationCacheHitPercent;
+	}
+	
+	/**
+	 * Get the percentage of lookups in the course registration cache that were hits.
+	 * 
+	 * @return the percentage of lookups in the course registration cache that were hits
+	 */
+	public int getCourseRegistrationCacheHitPercent() {
+		return courseRegistrationCacheHitPercent;
+	}
+	
+	/**
+	 * Set the current number of password verifications waiting for a thread.
+	 * 
+	 * @param passwordVerifyQueueSize the current number of password verifications waiting for a thread
+	 */
+	public void setPasswordVerifyQueueSize(int passwordVerifyQueueSize) {
+		this.passwordVerifyQueueSize = passwordVerifyQueueSize;
+	}
+	
+	/**
+	 * Get the current number of password verifications waiting for a thread.
+	 * 
+	 * @return the current number of password verifications waiting for a thread
+	 */
+	public int getPasswordVerifyQueueSize() {
+		return passwordVerifyQueueSize;
+	}
+	
+	/**
+	 * Set the average time (in milliseconds) password verifications waited for a thread
+	 * (for recent logins).
+	 * 
+	 * @param passwordVerifyWaitMillisAvg the average time (in milliseconds) password verifications waited for a thread (for recent logins)
+	 */
+	public void setPasswordVerifyWaitMillisAvg(int passwordVerifyWaitMillisAvg) {
+		this.passwordVerifyWaitMillisAvg = passwordVerifyWaitMillisAvg;
+	}
+	
+	/**
+	 * Get the average time (in milliseconds) password verifications waited for a thread
+	 * (for recent logins).
+	 * 
+	 * @return the average time (in milliseconds) password verifications waited for a thread (for recent logins)
+	 */
+	public int getPasswordVerifyWaitMillisAvg() {
+		return passwordVerifyWaitMillisAvg;
+	}
+	
+	/**
+	 * Set the maximum time (in milliseconds) a password verification waited for a thread
+	 * (for recent logins).
+	 * 
+	 * @param passwordVerifyWaitMillisMax the maximum time (in milliseconds) a password verification waited for a thread (for recent logins)
+	 */
+	public void setPasswordVerifyWaitMillisMax(int passwordVerifyWaitMillisMax) {
+		this.passwordVerifyWaitMillisMax = passwordVerifyWaitMillisMax;
+	}
+	
+	/**
+	 * Get the maximum time (in milliseconds) a password verification waited for a thread
+	 * (for recent logins).
+	 * 
+	 * @return the maximum time (in milliseconds) a password verification waited for a thread (for recent logins)
+	 */
+	public int getPasswordVerifyWaitMillisMax() {
+		return passwordVerifyWaitMillisMax;
+	}
+	
+	/**
+	 * Set the average time (in milliseconds) to verify a password
+	 * (for recent logins).
+	 * 
+	 * @param passwordVerifyMillisAvg the average time (in milliseconds) to verify a password (for recent logins)
+	 */
+	public void setPasswordVerifyMillisAvg(int passwordVerifyMillisAvg) {
+		this.passwordVerifyMillisAvg = passwordVerifyMillisAvg;
+	}
+	
+	/**
+	 * Get the average time (in milliseconds) to verify a password
+	 * (for recent logins).
+	 * 
+	 * @return the average time (in milliseconds) to verify a password (for recent logins)
+	 */
+	public int getPasswordVerifyMillisAvg() {
+		return passwordVerifyMillisAvg;
+	}
+	
+	/**
+	 * Set the total number of logins rejected because password verification
+	 * was overloaded.
+	 * 
+	 * @param passwordVerifyRejected the total number of logins rejected because password verification was overloaded
+	 */
+	public void setPasswordVerifyRejected(int passwordVerifyRejected) {
+		this.passwordVerifyRejected = passwordVerifyRejected;
+	}
+	
+	/**
+	 * Get the total number of logins rejected because password verification
+	 * was overloaded.
+	 * 
+	 * @return the total number of logins rejected because password verification was overloaded
+	 */
+	public int getPasswordVerifyRejected() {
+		return passwordVerifyRejected;
+	}
+	
+	/**
+	 * Set the number of database connections currently in use.
+	 * 
+	 * @param dbConnectionsInUse the number of database connections currently in use
+	 */
+	public void setDbConnectionsInUse(int dbConnectionsInUse) {
+		this.dbConnectionsInUse = dbConnectionsInUse;
+	}
+	
+	/**
+	 * Get the number of database connections currently in use.
+	 * 
+	 * @return the number of database connections currently in use
+	 */
+	public int getDbConnectionsInUse() {
+		return dbConnectionsInUse;
+	}
+	
+	/**
+	 * Set the number of threads currently waiting for a database connection.
+	 * 
+	 * @param dbConnectionsWaiting the number of threads currently waiting for a database connection
+	 */
+	public void setDbConnectionsWaiting(int dbConnectionsWaiting) {
+		this.dbConnectionsWaiting = dbConnectionsWaiting;
+	}
+	
+	/**
+	 * Get the number of threads currently waiting for a database connection.
+	 * 
+	 * @return the number of threads currently waiting for a database connection
+	 */
+	public int getDbConnectionsWaiting() {
+		return dbConnectionsWaiting;
+	}
+	
+	/**
+	 * Set the total number of times a thread gave up waiting for a database connection.
+	 * 
+	 * @param dbConnectionTimeouts the total number of times a thread gave up waiting for a database connection
+	 */
+	public void setDbConnectionTimeouts(int dbConnectionTimeouts) {
+		this.dbConnectionTimeouts = dbConnectionTimeouts;
+	}
+	
+	/**
+	 * Get the total number of times a thread gave up waiting for a database connection.
+	 * 
+	 * @return the total number of times a thread gave up waiting for a database connection
+	 */
+	public int getDbConnectionTimeouts() {
+		return dbConnectionTimeouts;
+	}
 }
@@ -0,0 +1,152 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.shared.model;
+
+import java.io.Serializable;
+
+/**
+ * Records the event ids of the most recent {@link Change} and the most
+ * recent full-text {@link Change} for a {@link User}'s work on a
+ * {@link Problem}.  There is (at most) one per user and problem,
+ * and it is updated in the same transaction that stores the changes,
+ * so the most recent changes can be found without searching
+ * all of the user's events.
+ */
+public class LatestChange implements Serializable, IModelObject<LatestChange> {
+	private static final long serialVersionUID = 1L;
+	
+	/** {@link ModelObjectField} for user id. */
+	public static final ModelObjectField<LatestChange, Integer> USER_ID = new ModelObjectField<LatestChange, Integer>("user_id", Integer.class, 0) {
+		public void set(LatestChange obj, Integer value) { obj.setUserId(value); }
+		public Integer get(LatestChange obj) { return obj.getUserId(); }
+	};
+	/** {@link ModelObjectField} for problem id. */
+	public static final ModelObjectField<LatestChange, Integer> PROBLEM_ID = new ModelObjectField<LatestChange, Integer>("problem_id", Integer.class, 0) {
+		public void set(LatestChange obj, Integer value) { obj.setProblemId(value); }
+		public Integer get(LatestChange obj) { return obj.getProblemId(); }
+	};
+	/** {@link ModelObjectField} for event id of the most recent change. */
+	public static final ModelObjectField<LatestChange, Integer> EVENT_ID = new ModelObjectField<LatestChange, Integer>("event_id", Integer.class, 0) {
+		public void set(LatestChange obj, Integer value) { obj.setEventId(value); }
+		public Integer get(LatestChange obj) { return obj.getEventId(); }
+	};
+	/** {@link ModelObjectField} for event id of the most recent full-text change. */
+	public static final ModelObjectField<LatestChange, Integer> FULL_TEXT_EVENT_ID = new ModelObjectField<LatestChange, Integer>("full_text_event_id", Integer.class, 0) {
+		public void set(LatestChange obj, Integer value) { obj.setFullTextEventId(value); }
+		public Integer get(LatestChange obj) { return obj.getFullTextEventId(); }
+	};
+	
+	/**
+	 * Description of fields (schema version 0).
+	 */
+	public static final ModelObjectSchema<LatestChange> SCHEMA_V0 = new ModelObjectSchema<LatestChange>("latest_change", LatestChange.class)
+			.add(USER_ID)
+			.add(PROBLEM_ID)
+			.add(EVENT_ID)
+			.add(FULL_TEXT_EVENT_ID)
+			// There is at most one per user and problem.  Because the table
+			// has no primary key, InnoDB uses this index as the clustered
+			// index, so a lookup reads the event ids from the index itself.
+			.addIndex(new ModelObjectIndex<LatestChange>(ModelObjectIndexType.UNIQUE)
+					.addField(USER_ID)
+					.addField(PROBLEM_ID)
+					);
+	
+	/**
+	 * Description of fields (current schema version).
+	 */
+	public static final ModelObjectSchema<LatestChange> SCHEMA = SCHEMA_V0;
+	
+	private int userId;
+	private int problemId;
+	private int eventId;
+	private int fullTextEventId;
+	
+	/**
+	 * Constructor.
+	 */
+	public LatestChange() {
+	}
+	
+	@Override
+	public ModelObjectSchema<? super LatestChange> getSchema() {
+		return SCHEMA;
+	}
+	
+	/**
+	 * Set the user id.
+	 * @param userId the user id
+	 */
+	public void setUserId(int userId) {
+		this.userId = userId;
+	}
+	
+	/**
+	 * @return the user id
+	 */
+	public int getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * Set the problem id.
+	 * @param problemId the problem id
+	 */
+	public void setProblemId(int problemId) {
+		this.problemId = problemId;
+	}
+	
+	/**
+	 * @return the problem id
+	 */
+	public int getProblemId() {
+		return problemId;
+	}
+	
+	/**
+	 * Set the event id of the most recent {@link Change}.
+	 * @param eventId the event id
+	 */
+	public void setEventId(int eventId) {
+		this.eventId = eventId;
+	}
+	
+	/**
+	 * @return the event id of the most recent {@link Change}
+	 */
+	public int getEventId() {
+		return eventId;
+	}
+	
+	/**
+	 * Set the event id of the most recent full-text {@link Change}.
+	 * @param fullTextEventId the event id, or -1 if there is no full-text change
+	 */
+	public void setFullTextEventId(int fullTextEventId) {
+		this.fullTextEventId = fullTextEventId;
+	}
+	
+	/**
+	 * @return the event id of the most recent full-text {@link Change},
+	 *         or -1 if there is no full-text change
+	 */
+	public int getFullTextEventId() {
+		return fullTextEventId;
+	}
+}
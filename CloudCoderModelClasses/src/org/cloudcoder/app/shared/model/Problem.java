@@ -228,10 +228,21 @@ public class Problem extends ProblemData implements IProblem, IModelObject<Probl
 		.addDeltasFrom(ProblemData.SCHEMA_V8)
 		.finishDelta();
 	
+	/**
+	 * Description of fields (schema version 13).
+	 * No fields have changed, but an index was added for finding
+	 * the problems in a course (or in a module of a course).
+	 */
+	public static final ModelObjectSchema<IProblem> SCHEMA_V13 = ModelObjectSchema.basedOn(SCHEMA_V12, Problem.class)
+		.addIndexDelta(new ModelObjectIndex<IProblem>(ModelObjectIndexType.NON_UNIQUE)
+				.addField(COURSE_ID)
+				.addField(MODULE_ID))
+		.finishDelta();
+	
 	/**
 	 * Description of fields (current schema version).
 	 */
-	public static final ModelObjectSchema<IProblem> SCHEMA = SCHEMA_V12;
+	public static final ModelObjectSchema<IProblem> SCHEMA = SCHEMA_V13;
 	
 	/**
 	 * Number of fields.
@@ -32,6 +32,22 @@ public class SubmissionResultAnnotation implements Serializable {
 	private String key;
 	private String value;
 	
+	public static final ModelObjectField<SubmissionResultAnnotation, String> KEY = new ModelObjectField<SubmissionResultAnnotation, String>("key", String.class, 100) {
+		public void set(SubmissionResultAnnotation obj, String value) { obj.setKey(value); }
+		public String get(SubmissionResultAnnotation obj) { return obj.getKey(); }
+	};
+	public static final ModelObjectField<SubmissionResultAnnotation, String> VALUE = new ModelObjectField<SubmissionResultAnnotation, String>("value", String.class, Integer.MAX_VALUE) {
+		public void set(SubmissionResultAnnotation obj, String value) { obj.setValue(value); }
+		public String get(SubmissionResultAnnotation obj) { return obj.getValue(); }
+	};
+	
+	/**
+	 * Description of fields.
+	 */
+	public static final ModelObjectSchema<SubmissionResultAnnotation> SCHEMA = new ModelObjectSchema<SubmissionResultAnnotation>("submission_result_annotation", SubmissionResultAnnotation.class)
+		.add(KEY)
+		.add(VALUE);
+	
 	/**
 	 * Constructor.
 	 */
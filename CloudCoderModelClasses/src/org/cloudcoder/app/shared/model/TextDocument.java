@@ -17,20 +17,35 @@
 
 package org.cloudcoder.app.shared.model;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Simple text document class; treats document as sequence of lines.
+ * The lines are stored in a balanced (AVL) tree ordered by line index,
+ * so getting, setting, inserting, and removing a line take
+ * O(log n) time, where n is the number of lines.
  */
 public class TextDocument {
-	private List<String> lineList;
+	/**
+	 * Tree node: each node stores one line, and the height and
+	 * number of lines (size) of the subtree it roots.
+	 */
+	private static class Node {
+		String line;
+		Node left, right;
+		int height, size;
+
+		Node(String line) {
+			this.line = line;
+			this.height = 1;
+			this.size = 1;
+		}
+	}
+
+	private Node root;
 
 	/**
 	 * Constructor: initialize empty text document.
 	 */
 	public TextDocument() {
-		lineList = new ArrayList<String>();
 	}
 
 	/**
@@ -39,14 +54,14 @@ public class TextDocument {
 	 * @param line line of text to append
 	 */
 	public void append(String line) {
-		lineList.add(line);
+		root = insert(root, size(root), line);
 	}
 	
 	/**
 	 * @return number of lines of text in document
 	 */
 	public int getNumLines() {
-		return lineList.size();
+		return size(root);
 	}
 	
 	/**
@@ -56,7 +71,7 @@ public class TextDocument {
 	 * @return line of text
 	 */
 	public String getLine(int index) {
-		return lineList.get(index);
+		return findNode(index).line;
 	}
 	
 	/**
@@ -66,7 +81,7 @@ public class TextDocument {
 	 * @param line text value to set as new value of line
 	 */
 	public void setLine(int index, String line) {
-		lineList.set(index, line);
+		findNode(index).line = line;
 	}
 	
 	/**
@@ -77,7 +92,10 @@ public class TextDocument {
 	 * @param line line of text to insert
 	 */
 	public void insertLine(int index, String line) {
-		lineList.add(index, line);
+		if (index < 0 || index > size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+		root = insert(root, index, line);
 	}
 
 	/**
@@ -87,7 +105,8 @@ public class TextDocument {
 	 * @param index index of line to remove
 	 */
 	public void removeLine(int index) {
-		lineList.remove(index);
+		checkIndex(index);
+		root = remove(root, index);
 	}
 
 	/**
@@ -95,22 +114,171 @@ public class TextDocument {
 	 */
 	public String getText() {
 		StringBuilder buf = new StringBuilder();
-
-		for (String s : lineList) {
-			buf.append(s);
-		}
-		
+		appendText(root, buf);
 		return buf.toString();
 	}
 
 	public void setText(String text) {
-		lineList.clear();
 		String[] lines = text.split("\n");
-		for (String line : lines) {
-			lineList.add(line + "\n");
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = lines[i] + "\n";
+		}
+		root = build(lines, 0, lines.length);
+	}
+
+	/**
+	 * Set the text of the document so that {@link #getText()} returns
+	 * exactly the given text.  Unlike {@link #setText(String)}, trailing
+	 * empty lines are preserved, and a newline is not added to the
+	 * last line if it doesn't already have one.  This is appropriate
+	 * for restoring a document from text returned by {@link #getText()}.
+	 * 
+	 * @param text the text
+	 */
+	public void setTextExactly(String text) {
+		int numLines = 0;
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) == '\n') {
+				numLines++;
+			}
+		}
+		boolean unterminated = text.length() > 0 && !text.endsWith("\n");
+		String[] lines = new String[unterminated ? numLines + 1 : numLines];
+		int start = 0;
+		for (int i = 0; i < numLines; i++) {
+			int nl = text.indexOf('\n', start);
+			lines[i] = text.substring(start, nl + 1);
+			start = nl + 1;
 		}
+		if (unterminated) {
+			lines[numLines] = text.substring(start);
+		}
+		root = build(lines, 0, lines.length);
 	}
+
 	public String toString() {
 	    return this.getText();
 	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size(root)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size(root));
+		}
+	}
+
+	private Node findNode(int index) {
+		checkIndex(index);
+		Node n = root;
+		while (true) {
+			int leftSize = size(n.left);
+			if (index < leftSize) {
+				n = n.left;
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				n = n.right;
+			} else {
+				return n;
+			}
+		}
+	}
+
+	private static int size(Node n) {
+		return n != null ? n.size : 0;
+	}
+
+	private static int height(Node n) {
+		return n != null ? n.height : 0;
+	}
+
+	private static Node update(Node n) {
+		n.height = 1 + Math.max(height(n.left), height(n.right));
+		n.size = 1 + size(n.left) + size(n.right);
+		return n;
+	}
+
+	private static Node rotateRight(Node n) {
+		Node l = n.left;
+		n.left = l.right;
+		l.right = update(n);
+		return update(l);
+	}
+
+	private static Node rotateLeft(Node n) {
+		Node r = n.right;
+		n.right = r.left;
+		r.left = update(n);
+		return update(r);
+	}
+
+	private static Node balance(Node n) {
+		update(n);
+		int balanceFactor = height(n.left) - height(n.right);
+		if (balanceFactor > 1) {
+			if (height(n.left.left) < height(n.left.right)) {
+				n.left = rotateLeft(n.left);
+			}
+			return rotateRight(n);
+		} else if (balanceFactor < -1) {
+			if (height(n.right.right) < height(n.right.left)) {
+				n.right = rotateRight(n.right);
+			}
+			return rotateLeft(n);
+		}
+		return n;
+	}
+
+	private static Node insert(Node n, int index, String line) {
+		if (n == null) {
+			return new Node(line);
+		}
+		int leftSize = size(n.left);
+		if (index <= leftSize) {
+			n.left = insert(n.left, index, line);
+		} else {
+			n.right = insert(n.right, index - leftSize - 1, line);
+		}
+		return balance(n);
+	}
+
+	private static Node remove(Node n, int index) {
+		int leftSize = size(n.left);
+		if (index < leftSize) {
+			n.left = remove(n.left, index);
+		} else if (index > leftSize) {
+			n.right = remove(n.right, index - leftSize - 1);
+		} else {
+			if (n.left == null) {
+				return n.right;
+			} else if (n.right == null) {
+				return n.left;
+			}
+			// Replace with the first line of the right subtree
+			Node first = n.right;
+			while (first.left != null) {
+				first = first.left;
+			}
+			n.line = first.line;
+			n.right = remove(n.right, 0);
+		}
+		return balance(n);
+	}
+
+	private static Node build(String[] lines, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		int mid = (start + end) >>> 1;
+		Node n = new Node(lines[mid]);
+		n.left = build(lines, start, mid);
+		n.right = build(lines, mid + 1, end);
+		return update(n);
+	}
+
+	private static void appendText(Node n, StringBuilder buf) {
+		if (n != null) {
+			appendText(n.left, buf);
+			buf.append(n.line);
+			appendText(n.right, buf);
+		}
+	}
 }
@@ -0,0 +1,439 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Implementation of {@link IBuilderMessageCodec} using a compact binary
+ * encoding.  Model objects are encoded field by field, in the order
+ * given by their {@link ModelObjectSchema}, so no type information
+ * or field names are sent.  Integers use a variable-length encoding.
+ * Because the encoding depends on the schemas, both sides must
+ * have the same schemas: see {@link #getSchemaSignature()}, which is
+ * compared during the protocol handshake.
+ */
+public class BinaryBuilderMessageCodec implements IBuilderMessageCodec {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Maximum length of an encoded string or list, to avoid
+	 * allocating huge amounts of memory if the data is corrupt.
+	 */
+	private static final int MAX_LENGTH = 64*1024*1024;
+
+	private static final int SCHEMA_SIGNATURE = computeSchemaSignature(
+			Problem.SCHEMA,
+			TestCase.SCHEMA,
+			TestResult.SCHEMA,
+			CompilationResult.SCHEMA,
+			CompilerDiagnostic.SCHEMA,
+			SubmissionResultAnnotation.SCHEMA);
+
+	private DataOutputStream out;
+	private DataInputStream in;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param in   the socket input stream
+	 * @param out  the socket output stream
+	 */
+	public BinaryBuilderMessageCodec(InputStream in, OutputStream out) {
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 16384));
+		this.in = new DataInputStream(new BufferedInputStream(in, 16384));
+	}
+
+	/**
+	 * Get the signature of the model object schemas used by the encoding.
+	 * If the webapp and builder have different signatures, they
+	 * can't use this codec to communicate.
+	 *
+	 * @return the schema signature
+	 */
+	public static int getSchemaSignature() {
+		return SCHEMA_SIGNATURE;
+	}
+
+	@Override
+	public void writeMessage(BuilderMessage msg) throws IOException {
+		out.writeByte(msg.getType().ordinal());
+		switch (msg.getType()) {
+		case KEEPALIVE:
+			break;
+
+		case PROBLEM:
+			writeString(msg.getProblemHash());
+			writeModelObject(msg.getProblem(), Problem.SCHEMA);
+			writeLength(msg.getTestCaseList().size());
+			for (TestCase testCase : msg.getTestCaseList()) {
+				writeModelObject(testCase, TestCase.SCHEMA);
+			}
+			break;
+
+		case SUBMISSION:
+			writeVarInt(msg.getSubmissionId());
+			writeString(msg.getProblemHash());
+			writeString(msg.getProgramText());
+			break;
+
+		case NEED_PROBLEM:
+			writeVarInt(msg.getSubmissionId());
+			writeString(msg.getProblemHash());
+			break;
+
+		case RESULT:
+			writeVarInt(msg.getSubmissionId());
+			writeSubmissionResult(msg.getSubmissionResult());
+			break;
+
+		default:
+			throw new IOException("Don't know how to encode message type " + msg.getType());
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public BuilderMessage readMessage() throws IOException {
+		int ordinal = in.readUnsignedByte();
+		BuilderMessage.Type[] types = BuilderMessage.Type.values();
+		if (ordinal >= types.length) {
+			throw new IOException("Invalid message type " + ordinal);
+		}
+
+		switch (types[ordinal]) {
+		case KEEPALIVE:
+			return BuilderMessage.keepalive();
+
+		case PROBLEM:
+			{
+				String problemHash = readString();
+				Problem problem = new Problem();
+				readModelObject(problem, Problem.SCHEMA);
+				int numTestCases = readLength();
+				List<TestCase> testCaseList = new ArrayList<TestCase>(numTestCases);
+				for (int i = 0; i < numTestCases; i++) {
+					TestCase testCase = new TestCase();
+					readModelObject(testCase, TestCase.SCHEMA);
+					testCaseList.add(testCase);
+				}
+				return BuilderMessage.problem(problemHash, problem, testCaseList);
+			}
+
+		case SUBMISSION:
+			{
+				int submissionId = readVarInt();
+				String problemHash = readString();
+				String programText = readString();
+				return BuilderMessage.submission(submissionId, problemHash, programText);
+			}
+
+		case NEED_PROBLEM:
+			{
+				int submissionId = readVarInt();
+				String problemHash = readString();
+				return BuilderMessage.needProblem(submissionId, problemHash);
+			}
+
+		case RESULT:
+			{
+				int submissionId = readVarInt();
+				SubmissionResult submissionResult = readSubmissionResult();
+				return BuilderMessage.result(submissionId, submissionResult);
+			}
+
+		default:
+			throw new IOException("Don't know how to decode message type " + types[ordinal]);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeSubmissionResult(SubmissionResult result) throws IOException {
+		// Arrays are written as length+1, so that 0 can represent null
+		if (result == null) {
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+
+		CompilationResult compilationResult = result.getCompilationResult();
+		out.writeBoolean(compilationResult != null);
+		if (compilationResult != null) {
+			writeModelObject(compilationResult, CompilationResult.SCHEMA);
+			CompilerDiagnostic[] diagnostics = compilationResult.getCompilerDiagnosticList();
+			writeLength(diagnostics != null ? diagnostics.length + 1 : 0);
+			if (diagnostics != null) {
+				for (CompilerDiagnostic diagnostic : diagnostics) {
+					writeModelObject(diagnostic, CompilerDiagnostic.SCHEMA);
+				}
+			}
+		}
+
+		TestResult[] testResults = result.getTestResults();
+		writeLength(testResults != null ? testResults.length + 1 : 0);
+		if (testResults != null) {
+			for (TestResult testResult : testResults) {
+				writeModelObject(testResult, TestResult.SCHEMA);
+			}
+		}
+
+		List<SubmissionResultAnnotation> annotationList = result.getAnnotationList();
+		writeLength(annotationList.size());
+		for (SubmissionResultAnnotation annotation : annotationList) {
+			writeModelObject(annotation, SubmissionResultAnnotation.SCHEMA);
+		}
+	}
+
+	private SubmissionResult readSubmissionResult() throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		SubmissionResult result = new SubmissionResult();
+
+		if (in.readBoolean()) {
+			CompilationResult compilationResult = new CompilationResult();
+			readModelObject(compilationResult, CompilationResult.SCHEMA);
+			int numDiagnostics = readLength();
+			if (numDiagnostics > 0) {
+				CompilerDiagnostic[] diagnostics = new CompilerDiagnostic[numDiagnostics - 1];
+				for (int i = 0; i < diagnostics.length; i++) {
+					diagnostics[i] = new CompilerDiagnostic();
+					readModelObject(diagnostics[i], CompilerDiagnostic.SCHEMA);
+				}
+				compilationResult.setCompilerDiagnosticList(diagnostics);
+			} else {
+				compilationResult.setCompilerDiagnosticList(null);
+			}
+			result.setCompilationResult(compilationResult);
+		}
+
+		int numTestResults = readLength();
+		if (numTestResults > 0) {
+			TestResult[] testResults = new TestResult[numTestResults - 1];
+			for (int i = 0; i < testResults.length; i++) {
+				testResults[i] = new TestResult();
+				readModelObject(testResults[i], TestResult.SCHEMA);
+			}
+			result.setTestResults(testResults);
+		}
+
+		int numAnnotations = readLength();
+		for (int i = 0; i < numAnnotations; i++) {
+			SubmissionResultAnnotation annotation = new SubmissionResultAnnotation();
+			readModelObject(annotation, SubmissionResultAnnotation.SCHEMA);
+			result.addAnnotation(annotation);
+		}
+
+		return result;
+	}
+
+	private<E> void writeModelObject(E obj, ModelObjectSchema<? super E> schema) throws IOException {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			writeValue(field.get(obj), field.getType());
+		}
+	}
+
+	private<E> void readModelObject(E obj, ModelObjectSchema<? super E> schema) throws IOException {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			Object value = readValue(field.getType());
+			// As with JSON conversion, null values are not set
+			// (the field might have a primitive type)
+			if (value != null) {
+				field.setUntyped(obj, value);
+			}
+		}
+	}
+
+	private void writeValue(Object value, Class<?> type) throws IOException {
+		if (type == String.class) {
+			writeString((String) value);
+			return;
+		}
+
+		// All other types have a null/non-null indicator
+		out.writeBoolean(value != null);
+		if (value == null) {
+			return;
+		}
+
+		if (type == Integer.class) {
+			writeVarLong(zigzag((Integer) value));
+		} else if (type == Long.class) {
+			writeVarLong(zigzag((Long) value));
+		} else if (type == Boolean.class) {
+			out.writeBoolean((Boolean) value);
+		} else if (type.isEnum()) {
+			writeVarInt(((Enum<?>) value).ordinal());
+		} else {
+			throw new IOException("Don't know how to encode field of type " + type.getName());
+		}
+	}
+
+	private Object readValue(Class<?> type) throws IOException {
+		if (type == String.class) {
+			return readString();
+		}
+
+		if (!in.readBoolean()) {
+			return null;
+		}
+
+		if (type == Integer.class) {
+			return Integer.valueOf((int) unzigzag(readVarLong()));
+		} else if (type == Long.class) {
+			return Long.valueOf(unzigzag(readVarLong()));
+		} else if (type == Boolean.class) {
+			return Boolean.valueOf(in.readBoolean());
+		} else if (type.isEnum()) {
+			int ordinal = readVarInt();
+			Object[] members = type.getEnumConstants();
+			if (ordinal >= members.length) {
+				throw new IOException("Invalid ordinal " + ordinal + " for enumeration " + type.getName());
+			}
+			return members[ordinal];
+		} else {
+			throw new IOException("Don't know how to decode field of type " + type.getName());
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		// Length is encoded as length+1, so that 0 can represent null
+		if (s == null) {
+			writeVarInt(0);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarInt(bytes.length + 1);
+		out.write(bytes);
+	}
+
+	private String readString() throws IOException {
+		int len = readLength();
+		if (len == 0) {
+			return null;
+		}
+		byte[] bytes = new byte[len - 1];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private void writeLength(int len) throws IOException {
+		writeVarInt(len);
+	}
+
+	private int readLength() throws IOException {
+		int len = readVarInt();
+		if (len < 0 || len > MAX_LENGTH) {
+			throw new IOException("Invalid length " + len);
+		}
+		return len;
+	}
+
+	private void writeVarInt(int value) throws IOException {
+		writeVarLong(value & 0xFFFFFFFFL);
+	}
+
+	private int readVarInt() throws IOException {
+		return (int) readVarLong();
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		// 7 bits per byte, low-order bits first, high bit set on all but the last byte
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0L;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid variable-length integer");
+	}
+
+	private static long zigzag(long value) {
+		// Small negative values (e.g., -1 for unassigned ids) encode compactly
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static int computeSchemaSignature(ModelObjectSchema<?>... schemaList) {
+		StringBuilder buf = new StringBuilder();
+		for (ModelObjectSchema<?> schema : schemaList) {
+			buf.append(schema.getName());
+			buf.append(':');
+			buf.append(schema.getVersion());
+			for (ModelObjectField<?, ?> field : schema.getFieldList()) {
+				buf.append(',');
+				buf.append(field.getName());
+				buf.append(':');
+				buf.append(field.getType().getName());
+				if (field.getType().isEnum()) {
+					// Enum values are encoded by ordinal
+					for (Object member : field.getType().getEnumConstants()) {
+						buf.append('/');
+						buf.append(((Enum<?>) member).name());
+					}
+				}
+			}
+			buf.append(';');
+		}
+		return buf.toString().hashCode();
+	}
+}
@@ -0,0 +1,178 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.builder;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * A message exchanged between the webapp and a builder.
+ * Use the static factory methods to create messages.
+ */
+public class BuilderMessage implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Message types.
+	 */
+	public enum Type {
+		/** Webapp to builder: keep the connection alive. */
+		KEEPALIVE,
+		/** Webapp to builder: an exercise (Problem and TestCases) and its hash. */
+		PROBLEM,
+		/** Webapp to builder: a submission to test, with the hash of its exercise. */
+		SUBMISSION,
+		/** Builder to webapp: the exercise for a submission is not cached, please send it. */
+		NEED_PROBLEM,
+		/** Builder to webapp: the result of testing a submission. */
+		RESULT,
+	}
+
+	private Type type;
+	private int submissionId;
+	private String problemHash;
+	private Problem problem;
+	private List<TestCase> testCaseList;
+	private String programText;
+	private SubmissionResult submissionResult;
+
+	private BuilderMessage(Type type) {
+		this.type = type;
+	}
+
+	/**
+	 * @return a KEEPALIVE message
+	 */
+	public static BuilderMessage keepalive() {
+		return new BuilderMessage(Type.KEEPALIVE);
+	}
+
+	/**
+	 * Create a PROBLEM message.
+	 *
+	 * @param problemHash   the exercise's content hash
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the {@link TestCase}s
+	 * @return the PROBLEM message
+	 */
+	public static BuilderMessage problem(String problemHash, Problem problem, List<TestCase> testCaseList) {
+		BuilderMessage msg = new BuilderMessage(Type.PROBLEM);
+		msg.problemHash = problemHash;
+		msg.problem = problem;
+		msg.testCaseList = new ArrayList<TestCase>(testCaseList);
+		return msg;
+	}
+
+	/**
+	 * Create a SUBMISSION message.
+	 *
+	 * @param submissionId  connection-specific id of the submission
+	 * @param problemHash   content hash of the submission's exercise
+	 * @param programText   the program text
+	 * @return the SUBMISSION message
+	 */
+	public static BuilderMessage submission(int submissionId, String problemHash, String programText) {
+		BuilderMessage msg = new BuilderMessage(Type.SUBMISSION);
+		msg.submissionId = submissionId;
+		msg.problemHash = problemHash;
+		msg.programText = programText;
+		return msg;
+	}
+
+	/**
+	 * Create a NEED_PROBLEM message.
+	 *
+	 * @param submissionId  id of the submission whose exercise is needed
+	 * @param problemHash   content hash of the needed exercise
+	 * @return the NEED_PROBLEM message
+	 */
+	public static BuilderMessage needProblem(int submissionId, String problemHash) {
+		BuilderMessage msg = new BuilderMessage(Type.NEED_PROBLEM);
+		msg.submissionId = submissionId;
+		msg.problemHash = problemHash;
+		return msg;
+	}
+
+	/**
+	 * Create a RESULT message.
+	 *
+	 * @param submissionId      id of the tested submission
+	 * @param submissionResult  the {@link SubmissionResult}
+	 * @return the RESULT message
+	 */
+	public static BuilderMessage result(int submissionId, SubmissionResult submissionResult) {
+		BuilderMessage msg = new BuilderMessage(Type.RESULT);
+		msg.submissionId = submissionId;
+		msg.submissionResult = submissionResult;
+		return msg;
+	}
+
+	/**
+	 * @return the message type
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the submission id (SUBMISSION, NEED_PROBLEM, and RESULT messages)
+	 */
+	public int getSubmissionId() {
+		return submissionId;
+	}
+
+	/**
+	 * @return the exercise content hash (PROBLEM, SUBMISSION, and NEED_PROBLEM messages)
+	 */
+	public String getProblemHash() {
+		return problemHash;
+	}
+
+	/**
+	 * @return the {@link Problem} (PROBLEM messages)
+	 */
+	public Problem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * @return the list of {@link TestCase}s (PROBLEM messages)
+	 */
+	public List<TestCase> getTestCaseList() {
+		return testCaseList;
+	}
+
+	/**
+	 * @return the program text (SUBMISSION messages)
+	 */
+	public String getProgramText() {
+		return programText;
+	}
+
+	/**
+	 * @return the {@link SubmissionResult} (RESULT messages)
+	 */
+	public SubmissionResult getSubmissionResult() {
+		return submissionResult;
+	}
+}
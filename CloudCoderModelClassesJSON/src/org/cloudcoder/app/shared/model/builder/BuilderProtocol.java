@@ -0,0 +1,266 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.builder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.HashProblemAndTestCaseData;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAndTestCaseList;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Constants and handshake logic for the protocol spoken between
+ * the webapp (submission queue) and remote builder processes.
+ *
+ * <p>
+ * When a builder connects to the webapp, it sends a "hello"
+ * consisting of {@link #MAGIC}, the protocol version it speaks,
+ * the maximum number of submissions it is willing to have
+ * in flight on the connection, and the codecs it supports
+ * (in order of preference, each with its schema signature).
+ * The webapp replies with {@link #MAGIC}, the accepted protocol version
+ * (0 if the builder's version is not supported), and the chosen codec.
+ * The handshake uses raw (unbuffered) streams,
+ * so that nothing past the handshake is consumed.  After a successful
+ * handshake, both sides exchange {@link BuilderMessage}s using
+ * the chosen {@link IBuilderMessageCodec}.
+ * </p>
+ *
+ * <p>
+ * Exercises (a {@link Problem} and its {@link TestCase}s) are identified
+ * by a content hash (see {@link #computeProblemHash(Problem, List)}),
+ * so a builder can safely cache them: if an instructor edits
+ * an exercise, its hash changes.
+ * </p>
+ */
+public class BuilderProtocol {
+	/**
+	 * Magic number sent by both sides at the beginning of the handshake ("CCBP").
+	 */
+	public static final int MAGIC = 0x43434250;
+
+	/**
+	 * Current protocol version.  (Version 1 was the original
+	 * unversioned object stream protocol, and version 2 did not
+	 * negotiate the codec.)
+	 */
+	public static final int VERSION = 3;
+
+	/**
+	 * Codec id for {@link SerializationBuilderMessageCodec}.
+	 */
+	public static final int CODEC_SERIALIZATION = 1;
+
+	/**
+	 * Codec id for {@link BinaryBuilderMessageCodec}.
+	 */
+	public static final int CODEC_BINARY = 2;
+
+	/**
+	 * Maximum amount of time the webapp will wait for a builder
+	 * to send its handshake.  Builders that predate the versioned
+	 * protocol never send one.
+	 */
+	public static final int HANDSHAKE_TIMEOUT_MS = 10000;
+
+	/**
+	 * Result of a successful handshake.
+	 */
+	public static class Handshake {
+		private final int maxInFlight;
+		private final IBuilderMessageCodec codec;
+
+		private Handshake(int maxInFlight, IBuilderMessageCodec codec) {
+			this.maxInFlight = maxInFlight;
+			this.codec = codec;
+		}
+
+		/**
+		 * @return the maximum number of submissions the builder will accept
+		 *         on this connection before returning a result
+		 */
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		/**
+		 * @return the {@link IBuilderMessageCodec} to use to exchange messages
+		 */
+		public IBuilderMessageCodec getCodec() {
+			return codec;
+		}
+	}
+
+	/**
+	 * Handshake performed by the builder (the connecting side).
+	 *
+	 * @param in           the raw socket input stream
+	 * @param out          the raw socket output stream
+	 * @param maxInFlight  maximum number of submissions the builder will
+	 *                     accept on this connection before returning a result
+	 * @param codecs       ids of the codecs the builder supports, in order of preference
+	 * @return the {@link Handshake}
+	 * @throws IOException if the webapp doesn't accept the handshake
+	 */
+	public static Handshake builderHandshake(InputStream in, OutputStream out, int maxInFlight, int... codecs) throws IOException {
+		int[] hello = new int[4 + codecs.length*2];
+		hello[0] = MAGIC;
+		hello[1] = VERSION;
+		hello[2] = maxInFlight;
+		hello[3] = codecs.length;
+		for (int i = 0; i < codecs.length; i++) {
+			hello[4 + i*2] = codecs[i];
+			hello[4 + i*2 + 1] = getSchemaSignature(codecs[i]);
+		}
+		writeInts(out, hello);
+
+		DataInputStream din = new DataInputStream(in);
+		if (din.readInt() != MAGIC) {
+			throw new IOException("Webapp did not send a builder protocol handshake (webapp predates protocol version " + VERSION + "?)");
+		}
+		int acceptedVersion = din.readInt();
+		int codec = din.readInt();
+		if (acceptedVersion != VERSION) {
+			throw new IOException("Webapp rejected builder protocol version " + VERSION + " (or none of the offered codecs)");
+		}
+
+		return new Handshake(maxInFlight, createCodec(codec, in, out));
+	}
+
+	/**
+	 * Handshake performed by the webapp (the accepting side).
+	 * The first codec offered by the builder that the webapp supports
+	 * (with the same schema signature) is chosen.
+	 *
+	 * @param in   the raw socket input stream
+	 * @param out  the raw socket output stream
+	 * @return the {@link Handshake}
+	 * @throws IOException if the builder does not speak a compatible protocol version
+	 */
+	public static Handshake webappHandshake(InputStream in, OutputStream out) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		if (din.readInt() != MAGIC) {
+			throw new IOException("Builder did not send a builder protocol handshake (builder predates protocol version " + VERSION + "?)");
+		}
+		int version = din.readInt();
+		if (version != VERSION) {
+			writeInts(out, MAGIC, 0, 0);
+			throw new IOException("Builder speaks protocol version " + version + ", but version " + VERSION + " is required");
+		}
+		int maxInFlight = din.readInt();
+		int numCodecs = din.readInt();
+		if (numCodecs < 0 || numCodecs > 16) {
+			writeInts(out, MAGIC, 0, 0);
+			throw new IOException("Builder offered invalid number of codecs (" + numCodecs + ")");
+		}
+		int chosenCodec = 0;
+		for (int i = 0; i < numCodecs; i++) {
+			int codec = din.readInt();
+			int signature = din.readInt();
+			if (chosenCodec == 0 && isSupportedCodec(codec) && signature == getSchemaSignature(codec)) {
+				chosenCodec = codec;
+			}
+		}
+
+		if (maxInFlight < 1) {
+			writeInts(out, MAGIC, 0, 0);
+			throw new IOException("Builder requested invalid maxInFlight=" + maxInFlight);
+		}
+		if (chosenCodec == 0) {
+			writeInts(out, MAGIC, 0, 0);
+			throw new IOException("Builder did not offer a compatible codec (model object schemas differ?)");
+		}
+		writeInts(out, MAGIC, VERSION, chosenCodec);
+
+		return new Handshake(maxInFlight, createCodec(chosenCodec, in, out));
+	}
+
+	/**
+	 * Get the codec id for a codec name.
+	 *
+	 * @param name the codec name ("binary" or "serialization")
+	 * @return the codec id
+	 * @throws IllegalArgumentException if the name is not a known codec
+	 */
+	public static int getCodecId(String name) {
+		if (name.equals("binary")) {
+			return CODEC_BINARY;
+		} else if (name.equals("serialization")) {
+			return CODEC_SERIALIZATION;
+		} else {
+			throw new IllegalArgumentException("Unknown builder protocol codec: " + name);
+		}
+	}
+
+	private static boolean isSupportedCodec(int codec) {
+		return codec == CODEC_SERIALIZATION || codec == CODEC_BINARY;
+	}
+
+	private static int getSchemaSignature(int codec) {
+		// Java serialization tolerates schema differences
+		// (to the extent that serialVersionUIDs allow)
+		return (codec == CODEC_BINARY) ? BinaryBuilderMessageCodec.getSchemaSignature() : 0;
+	}
+
+	private static IBuilderMessageCodec createCodec(int codec, InputStream in, OutputStream out) throws IOException {
+		switch (codec) {
+		case CODEC_SERIALIZATION:
+			return new SerializationBuilderMessageCodec(in, out);
+		case CODEC_BINARY:
+			return new BinaryBuilderMessageCodec(in, out);
+		default:
+			throw new IOException("Unknown codec " + codec);
+		}
+	}
+
+	/**
+	 * Compute the content hash identifying an exercise.
+	 * The "strict" hash is used, so that any change in the
+	 * exercise (including whitespace in test case inputs and outputs)
+	 * results in a different hash.
+	 *
+	 * @param problem       the {@link Problem}
+	 * @param testCaseList  the {@link TestCase}s
+	 * @return the content hash
+	 */
+	public static String computeProblemHash(Problem problem, List<TestCase> testCaseList) {
+		ProblemAndTestCaseList exercise = new ProblemAndTestCaseList();
+		exercise.setProblem(problem);
+		exercise.setTestCaseList(testCaseList.toArray(new TestCase[testCaseList.size()]));
+		return new HashProblemAndTestCaseData<ProblemAndTestCaseList>(exercise, true).compute();
+	}
+
+	private static void writeInts(OutputStream out, int... values) throws IOException {
+		// Write all values with a single write, to avoid sending tiny packets
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		DataOutputStream dout = new DataOutputStream(buf);
+		for (int value : values) {
+			dout.writeInt(value);
+		}
+		dout.flush();
+		out.write(buf.toByteArray());
+		out.flush();
+	}
+}
@@ -0,0 +1,53 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.builder;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Interface for reading and writing {@link BuilderMessage}s
+ * on a connection between the webapp and a builder.
+ * Reading and writing may be done by different threads,
+ * but only one thread at a time may write.
+ */
+public interface IBuilderMessageCodec extends Closeable {
+	/**
+	 * Write a message.  The message might not be sent
+	 * until {@link #flush()} is called.
+	 *
+	 * @param msg the {@link BuilderMessage} to write
+	 * @throws IOException
+	 */
+	public void writeMessage(BuilderMessage msg) throws IOException;
+
+	/**
+	 * Send all written messages.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Read a message, blocking until one is available.
+	 *
+	 * @return the {@link BuilderMessage}
+	 * @throws IOException if the message can't be read or is invalid
+	 */
+	public BuilderMessage readMessage() throws IOException;
+}
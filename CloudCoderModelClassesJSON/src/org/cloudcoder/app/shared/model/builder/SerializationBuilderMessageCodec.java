@@ -0,0 +1,88 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.shared.model.builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Implementation of {@link IBuilderMessageCodec} using Java serialization.
+ */
+public class SerializationBuilderMessageCodec implements IBuilderMessageCodec {
+	private ObjectOutputStream out;
+	private ObjectInputStream in;
+
+	/**
+	 * Constructor.  Note that this blocks until the object stream
+	 * header is received from the other side.
+	 *
+	 * @param in   the socket input stream
+	 * @param out  the socket output stream
+	 * @throws IOException
+	 */
+	public SerializationBuilderMessageCodec(InputStream in, OutputStream out) throws IOException {
+		// Send our stream header before waiting for the peer's,
+		// otherwise both sides would deadlock
+		this.out = new ObjectOutputStream(new BufferedOutputStream(out));
+		this.out.flush();
+		this.in = new ObjectInputStream(new BufferedInputStream(in));
+	}
+
+	@Override
+	public void writeMessage(BuilderMessage msg) throws IOException {
+		out.writeObject(msg);
+
+		// Don't let the stream retain references to sent objects:
+		// this would leak memory, and (worse) would cause a modified
+		// object to be sent as a back-reference to its stale version.
+		out.reset();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public BuilderMessage readMessage() throws IOException {
+		Object obj;
+		try {
+			obj = in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Unknown class reading builder message", e);
+		}
+		if (!(obj instanceof BuilderMessage)) {
+			throw new IOException("Received unexpected object " + (obj != null ? obj.getClass().getName() : "null"));
+		}
+		return (BuilderMessage) obj;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			out.close();
+		}
+	}
+}
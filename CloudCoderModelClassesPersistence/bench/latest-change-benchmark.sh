@@ -0,0 +1,146 @@
+#! /bin/bash
+
+# Compare the plans and running times of the most-recent-change lookups
+# before and after the cc_latest_changes table (and the covering index
+# on cc_events) were added.
+#
+# Loads a synthetic dataset into a scratch database on a local
+# MySQL/MariaDB server: the tables have the same definitions as
+# the ones created by CreateWebappDatabase.  Loading 50M changes
+# takes a while, and needs several GB of disk space.
+#
+# Usage:
+#   ./latest-change-benchmark.sh [numChanges] [numLookups]
+#
+# The mysql client options (user, password, etc.) can be set
+# in the MYSQL_OPTS environment variable.  The scratch database
+# name can be set in the BENCH_DB environment variable
+# (default cloudcoder_bench): it is dropped and recreated!
+
+numChanges=${1:-50000000}
+numLookups=${2:-1000}
+db=${BENCH_DB:-cloudcoder_bench}
+numUsers=5000
+numProblems=300
+
+# Ordinal of ChangeType.FULL_TEXT
+FULL_TEXT=4
+
+mysql_db() {
+	mysql $MYSQL_OPTS --batch --skip-column-names "$db" "$@"
+}
+
+mysql $MYSQL_OPTS -e "drop database if exists $db; create database $db character set 'utf8' collate 'utf8_general_ci'" || exit 1
+
+echo "Creating tables..."
+mysql_db <<SQL || exit 1
+create table cc_events (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  user_id int(11) NOT NULL,
+  problem_id int(11) NOT NULL,
+  type int(11) NOT NULL,
+  timestamp bigint(20) NOT NULL,
+  PRIMARY KEY (id),
+  KEY user_id (user_id),
+  KEY problem_id (problem_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_changes (
+  event_id int(11) NOT NULL,
+  type int(11) NOT NULL,
+  start_row int(11) NOT NULL,
+  end_row int(11) NOT NULL,
+  start_col int(11) NOT NULL,
+  end_col int(11) NOT NULL,
+  text_short varchar(80) NULL,
+  text varchar(32768) NULL,
+  UNIQUE KEY event_id (event_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_latest_changes (
+  user_id int(11) NOT NULL,
+  problem_id int(11) NOT NULL,
+  event_id int(11) NOT NULL,
+  full_text_event_id int(11) NOT NULL,
+  UNIQUE INDEX latest_change_idx_0 (user_id, problem_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table digits (d int not null);
+insert into digits values (0), (1), (2), (3), (4), (5), (6), (7), (8), (9);
+SQL
+
+# Each user works on one problem at a time, in bursts of 1000 changes,
+# so a user's changes for a problem are spread over the whole table.
+# Every 200th change is a full-text change.
+echo "Loading $numChanges changes..."
+mysql_db <<SQL || exit 1
+set unique_checks = 0;
+insert into cc_events (id, user_id, problem_id, type, timestamp)
+  select n + 1, n % $numUsers, floor(n / ($numUsers * 1000)) % $numProblems, 0, 1500000000000 + n * 10
+    from (select d0.d + 10*d1.d + 100*d2.d + 1000*d3.d + 10000*d4.d + 100000*d5.d + 1000000*d6.d + 10000000*d7.d as n
+            from digits d0, digits d1, digits d2, digits d3, digits d4, digits d5, digits d6, digits d7) as seq
+   where n < $numChanges;
+insert into cc_changes
+  select id, if(id % 200 = 1, $FULL_TEXT, 0), 0, 0, 0, 1, 'x', NULL from cc_events;
+SQL
+
+# Pick random user/problem pairs which have changes
+for i in $(seq $numLookups); do
+	n=$(( (RANDOM * 32768 + RANDOM) % numChanges ))
+	echo "$(( n % numUsers )) $(( (n / (numUsers * 1000)) % numProblems ))"
+done > /tmp/$db-pairs.txt
+
+most_recent_change_old() {
+	echo "select c.* from cc_changes as c, cc_events as e where c.event_id = e.id and e.id = (select max(ee.id) from cc_changes as cc, cc_events as ee where cc.event_id = ee.id and ee.problem_id = $2 and ee.user_id = $1);"
+}
+
+most_recent_full_text_old() {
+	echo "select c.* from cc_changes as c, cc_events as e where c.event_id = e.id and e.id = (select max(ee.id) from cc_changes as cc, cc_events as ee where cc.event_id = ee.id and ee.problem_id = $2 and ee.user_id = $1 and cc.type = $FULL_TEXT);"
+}
+
+most_recent_change_new() {
+	echo "select c.* from cc_changes as c, cc_latest_changes as lc where lc.user_id = $1 and lc.problem_id = $2 and c.event_id = lc.event_id;"
+}
+
+most_recent_full_text_new() {
+	echo "select c.* from cc_changes as c, cc_latest_changes as lc where lc.user_id = $1 and lc.problem_id = $2 and c.event_id = lc.full_text_event_id;"
+}
+
+# Run a lookup query for each of the user/problem pairs
+run_lookups() {
+	local query=$1
+	local label=$2
+	local first=$(head -1 /tmp/$db-pairs.txt)
+	echo "---- $label: plan"
+	mysql_db -t -e "explain $($query $first | sed 's/;$//')"
+	echo "---- $label: $numLookups lookups"
+	while read user problem; do
+		$query $user $problem
+	done < /tmp/$db-pairs.txt > /tmp/$db-queries.sql
+	mysql_db -e "flush tables"
+	/usr/bin/time -f "%e seconds" mysql_db < /tmp/$db-queries.sql > /dev/null
+}
+
+run_lookups most_recent_change_old "most recent change (before)"
+run_lookups most_recent_full_text_old "most recent full-text change (before)"
+
+echo "Adding covering index on cc_events..."
+/usr/bin/time -f "%e seconds" mysql_db -e "alter table cc_events add index event_idx_0 (user_id, problem_id, id)"
+
+run_lookups most_recent_change_old "most recent change (covering index)"
+run_lookups most_recent_full_text_old "most recent full-text change (covering index)"
+
+# Same statement as MigrateWebappDatabase uses to populate the table
+echo "Populating cc_latest_changes..."
+/usr/bin/time -f "%e seconds" mysql_db <<SQL
+insert into cc_latest_changes (user_id, problem_id, event_id, full_text_event_id)
+  select e.user_id, e.problem_id, max(e.id), coalesce(max(case when c.type = $FULL_TEXT then e.id end), -1)
+    from cc_changes as c, cc_events as e
+   where c.event_id = e.id
+   group by e.user_id, e.problem_id;
+SQL
+
+run_lookups most_recent_change_new "most recent change (cc_latest_changes)"
+run_lookups most_recent_full_text_new "most recent full-text change (cc_latest_changes)"
+
+rm -f /tmp/$db-pairs.txt /tmp/$db-queries.sql
@@ -0,0 +1,262 @@
+#! /bin/bash
+
+# Compare the plans and running times of the query which finds the
+# problems (and most recent submission receipts) of a student in a course,
+# before and after the module filter was moved into the query and the
+# most recent submission receipts were found using cc_latest_submissions.
+#
+# Loads a synthetic dataset into a scratch database on a local
+# MySQL/MariaDB server: the tables have the same definitions as
+# the ones created by CreateWebappDatabase (except that cc_problems
+# only has the columns used by the query, plus a description).
+# The benchmarked course has 500 problems in 10 modules and 2,000
+# students; there are 20 courses in all.
+#
+# Usage:
+#   ./problem-list-benchmark.sh [numReceipts] [numLookups]
+#
+# The mysql client options (user, password, etc.) can be set
+# in the MYSQL_OPTS environment variable.  The scratch database
+# name can be set in the BENCH_DB environment variable
+# (default cloudcoder_bench): it is dropped and recreated!
+
+numReceipts=${1:-2000000}
+numLookups=${2:-200}
+db=${BENCH_DB:-cloudcoder_bench}
+numCourses=20
+numProblems=500
+numModules=10
+numStudents=2000
+courseId=1
+
+# Ordinal of CourseRegistrationType.INSTRUCTOR
+INSTRUCTOR=1
+
+mysql_db() {
+	mysql $MYSQL_OPTS --batch --skip-column-names "$db" "$@"
+}
+
+mysql $MYSQL_OPTS -e "drop database if exists $db; create database $db character set 'utf8' collate 'utf8_general_ci'" || exit 1
+
+echo "Creating tables..."
+mysql_db <<SQL || exit 1
+create table cc_problems (
+  problem_id int(11) NOT NULL AUTO_INCREMENT,
+  course_id int(11) NOT NULL,
+  when_assigned bigint(20) NOT NULL,
+  when_due bigint(20) NOT NULL,
+  visible tinyint(1) NOT NULL,
+  deleted tinyint(1) NOT NULL,
+  module_id int(11) NOT NULL DEFAULT 1,
+  description varchar(8192) NULL,
+  PRIMARY KEY (problem_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_modules (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  name varchar(100) NOT NULL,
+  PRIMARY KEY (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_course_registrations (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  course_id int(11) NOT NULL,
+  user_id int(11) NOT NULL,
+  registration_type int(11) NOT NULL,
+  section int(11) NOT NULL,
+  PRIMARY KEY (id),
+  KEY user_id (user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_quizzes (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  course_id int(11) NOT NULL,
+  problem_id int(11) NOT NULL,
+  section int(11) NOT NULL,
+  start_time bigint(20) NOT NULL,
+  end_time bigint(20) NOT NULL,
+  PRIMARY KEY (id),
+  KEY quiz_idx_0 (course_id, problem_id, section)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_events (
+  id int(11) NOT NULL AUTO_INCREMENT,
+  user_id int(11) NOT NULL,
+  problem_id int(11) NOT NULL,
+  type int(11) NOT NULL,
+  timestamp bigint(20) NOT NULL,
+  PRIMARY KEY (id),
+  KEY user_id (user_id),
+  KEY problem_id (problem_id),
+  KEY event_idx_0 (user_id, problem_id, id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_submission_receipts (
+  event_id int(11) NOT NULL,
+  last_edit_event_id int(11) NOT NULL,
+  status int(11) NOT NULL,
+  num_tests_attempted int(11) NOT NULL,
+  num_tests_passed int(11) NOT NULL,
+  UNIQUE KEY event_id (event_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table cc_latest_submissions (
+  user_id int(11) NOT NULL,
+  problem_id int(11) NOT NULL,
+  event_id int(11) NOT NULL,
+  UNIQUE INDEX latest_submission_idx_0 (user_id, problem_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+create table digits (d int not null);
+insert into digits values (0), (1), (2), (3), (4), (5), (6), (7), (8), (9);
+create table seq (n int not null, primary key (n));
+insert into seq
+  select d0.d + 10*d1.d + 100*d2.d + 1000*d3.d + 10000*d4.d + 100000*d5.d + 1000000*d6.d + 10000000*d7.d
+    from digits d0, digits d1, digits d2, digits d3, digits d4, digits d5, digits d6, digits d7
+   where d0.d + 10*d1.d + 100*d2.d + 1000*d3.d + 10000*d4.d + 100000*d5.d + 1000000*d6.d + 10000000*d7.d < $numReceipts;
+SQL
+
+# Problems of course c are numbered (c-1)*numProblems+1 and up, and
+# every 50th problem is an (invisible) quiz.  User 0 is the instructor,
+# users 1..numStudents are the students, in 4 sections.
+echo "Loading courses, modules, registrations, and quizzes..."
+mysql_db <<SQL || exit 1
+insert into cc_modules (id, name)
+  select n + 1, concat('Module ', n + 1) from seq where n < $numModules;
+insert into cc_problems (problem_id, course_id, when_assigned, when_due, visible, deleted, module_id, description)
+  select n + 1, floor(n / $numProblems) + 1, 1500000000000, 1600000000000, if(n % 50 = 0, 0, 1), 0,
+         (n % $numProblems) % $numModules + 1, repeat('x', 2000)
+    from seq where n < $numCourses * $numProblems;
+insert into cc_course_registrations (course_id, user_id, registration_type, section)
+  select $courseId, n, if(n = 0, $INSTRUCTOR, 0), n % 4 + 1 from seq where n <= $numStudents;
+insert into cc_course_registrations (course_id, user_id, registration_type, section)
+  select c.n + 1, s.n + 1, 0, 1
+    from (select n from seq where n > 0 and n < $numCourses) as c,
+         (select n from seq where n < $numStudents) as s
+   where s.n % $numCourses = c.n;
+insert into cc_quizzes (course_id, problem_id, section, start_time, end_time)
+  select $courseId, p.problem_id, s.n + 1, 1500000000000, 0
+    from cc_problems as p, (select n from seq where n < 2) as s
+   where p.course_id = $courseId and p.visible = 0;
+SQL
+
+# Students submit in bursts on one problem at a time
+echo "Loading $numReceipts submission receipts..."
+mysql_db <<SQL || exit 1
+set unique_checks = 0;
+insert into cc_events (id, user_id, problem_id, type, timestamp)
+  select n + 1, n % $numStudents + 1, ($courseId - 1) * $numProblems + floor(n / ($numStudents * 5)) % $numProblems + 1,
+         1, 1500000000000 + n * 10
+    from seq;
+insert into cc_submission_receipts
+  select id, id, 1, 10, id % 11 from cc_events;
+SQL
+
+# Pick random students
+for i in $(seq $numLookups); do
+	echo "$(( RANDOM % numStudents + 1 )) $(( RANDOM % numModules + 1 ))"
+done > /tmp/$db-students.txt
+
+now=1700000000000
+
+problem_list_old() {
+	echo "select p.*, m.*, sr.*, e.*, sr_ids.max_sr_event_id
+  from cc_problems as p
+  join (select p.problem_id, sm.max_sr_event_id
+          from cc_problems as p
+          left join (select e.problem_id as problem_id, max(sr.event_id) as max_sr_event_id
+                       from cc_submission_receipts as sr, cc_events as e
+                      where e.id = sr.event_id
+                        and e.user_id = $1
+                      group by e.problem_id) as sm on p.problem_id = sm.problem_id
+         where p.course_id = $courseId
+       ) as sr_ids on sr_ids.problem_id = p.problem_id
+  join cc_modules as m on p.module_id = m.id
+  left join cc_submission_receipts as sr on sr.event_id = sr_ids.max_sr_event_id
+  left join cc_events as e on e.id = sr_ids.max_sr_event_id
+ where p.deleted = 0
+   and p.problem_id in
+       (select p.problem_id from cc_problems as p
+          join cc_course_registrations as cr on cr.course_id = p.course_id and cr.user_id = $1
+         where p.course_id = $courseId
+           and (   p.visible <> 0
+                or cr.registration_type >= $INSTRUCTOR
+                or p.problem_id in (select q.problem_id
+                                      from cc_quizzes as q, cc_course_registrations as cr
+                                     where cr.user_id = $1
+                                       and cr.course_id = $courseId
+                                       and q.course_id = cr.course_id
+                                       and q.section = cr.section
+                                       and q.start_time <= $now
+                                       and (q.end_time >= $now or q.end_time = 0))));"
+}
+
+# The module filter is applied in Java by the old query, so only
+# the new query has a module-filtered variant
+problem_list_new() {
+	local moduleFilter=""
+	if [ -n "$3" ]; then
+		moduleFilter="and p.module_id = $2"
+	fi
+	echo "select p.*, m.*, sr.*, e.*
+  from cc_problems as p
+  join cc_modules as m on m.id = p.module_id
+  left join cc_latest_submissions as ls on ls.user_id = $1 and ls.problem_id = p.problem_id
+  left join cc_submission_receipts as sr on sr.event_id = ls.event_id
+  left join cc_events as e on e.id = ls.event_id
+ where p.course_id = $courseId $moduleFilter
+   and p.deleted = 0
+   and exists (select 1 from cc_course_registrations as cr
+                where cr.course_id = p.course_id
+                  and cr.user_id = $1
+                  and (   p.visible <> 0
+                       or cr.registration_type >= $INSTRUCTOR
+                       or exists (select 1 from cc_quizzes as q, cc_course_registrations as qcr
+                                   where q.course_id = p.course_id
+                                     and q.problem_id = p.problem_id
+                                     and qcr.user_id = $1
+                                     and qcr.course_id = q.course_id
+                                     and q.section = qcr.section
+                                     and q.start_time <= $now
+                                     and (q.end_time >= $now or q.end_time = 0))));"
+}
+
+problem_list_new_module() {
+	problem_list_new $1 $2 module
+}
+
+# Run a query for each of the students
+run_lookups() {
+	local query=$1
+	local label=$2
+	local first=$(head -1 /tmp/$db-students.txt)
+	echo "---- $label: plan"
+	mysql_db -t -e "explain $($query $first | sed 's/;$//')"
+	echo "---- $label: $numLookups lookups"
+	while read student module; do
+		$query $student $module
+	done < /tmp/$db-students.txt > /tmp/$db-queries.sql
+	mysql_db -e "flush tables"
+	/usr/bin/time -f "%e seconds" mysql_db < /tmp/$db-queries.sql > /dev/null
+}
+
+run_lookups problem_list_old "problem list (before)"
+
+echo "Adding index on cc_problems..."
+/usr/bin/time -f "%e seconds" mysql_db -e "alter table cc_problems add index problem_idx_0 (course_id, module_id)"
+
+# Same statement as MigrateWebappDatabase uses to populate the table
+echo "Populating cc_latest_submissions..."
+/usr/bin/time -f "%e seconds" mysql_db <<SQL
+insert into cc_latest_submissions (user_id, problem_id, event_id)
+  select e.user_id, e.problem_id, max(e.id)
+    from cc_submission_receipts as sr, cc_events as e
+   where sr.event_id = e.id
+   group by e.user_id, e.problem_id;
+SQL
+
+run_lookups problem_list_old "problem list (before, with index)"
+run_lookups problem_list_new "problem list (cc_latest_submissions)"
+run_lookups problem_list_new_module "problem list for module (cc_latest_submissions)"
+
+rm -f /tmp/$db-students.txt /tmp/$db-queries.sql
@@ -0,0 +1,358 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+// Copyright (C) 2013, York College of Pennsylvania
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.PreparedStatementCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of {@link IConnectionPool} which keeps a bounded
+ * number of MySQL connections open and reuses them across transactions.
+ * A {@link Semaphore} limits the number of connections in use at
+ * any one time, and idle connections are kept in a lock-free deque
+ * (most recently used first, so that rarely-needed connections
+ * are the ones that go stale).  Idle connections that haven't been
+ * used recently are validated before being handed out.
+ * Because connections live across transactions, the JDBC driver's
+ * per-connection prepared statement cache is effective.  In addition,
+ * each connection has a {@link PreparedStatementCache}, so that transactions
+ * reuse open statements rather than preparing and closing them each time.
+ *
+ * <p>
+ * The following optional configuration properties (relative to the
+ * database property prefix, e.g. "cloudcoder.db") are supported:
+ * </p>
+ * <ul>
+ * <li><b>pool.maxSize</b>: maximum number of connections (default 40)</li>
+ * <li><b>pool.maxWaitMs</b>: maximum time to wait for a connection (default 30000)</li>
+ * <li><b>pool.validateAfterMs</b>: validate idle connections that have been
+ *     unused for this long (default 5000)</li>
+ * <li><b>pool.validationTimeoutSec</b>: timeout for validating a connection (default 2)</li>
+ * <li><b>pool.statementCacheSize</b>: number of prepared statements cached
+ *     per connection by the JDBC driver (default 250)</li>
+ * <li><b>pool.openStatementCacheSize</b>: number of open prepared statements
+ *     kept per connection by the {@link PreparedStatementCache}
+ *     (default 100, 0 to disable)</li>
+ * </ul>
+ */
+public class BoundedConnectionPool extends AbstractConnectionPool {
+	private static final Logger logger = LoggerFactory.getLogger(BoundedConnectionPool.class);
+
+	static {
+		try {
+			Class.forName(JDBCDatabase.JDBC_DRIVER_CLASS);
+		} catch (Exception e) {
+			throw new IllegalStateException("Could not load mysql jdbc driver", e);
+		}
+	}
+
+	private static class IdleConnection {
+		final Connection conn;
+		final long lastUsed;
+
+		IdleConnection(Connection conn, long lastUsed) {
+			this.conn = conn;
+			this.lastUsed = lastUsed;
+		}
+	}
+
+	private final String jdbcUrl;
+	private final int maxSize;
+	private final long maxWaitMillis;
+	private final long validateAfterMillis;
+	private final int validationTimeoutSec;
+	private final int openStatementCacheSize;
+	private final Semaphore permits;
+	private final ConcurrentLinkedDeque<IdleConnection> idle;
+	private volatile boolean destroyed;
+
+	// Statistics
+	private final AtomicInteger numOpen;
+	private final AtomicInteger numInUse;
+	private final AtomicLong numCheckouts;
+	private final AtomicLong totalWaitNanos;
+	private final AtomicLong maxWaitNanos;
+	private final AtomicLong numTimeouts;
+	private final AtomicLong numCreated;
+	private final AtomicLong numValidationFailures;
+	private final PreparedStatementCache.Stats statementCacheStats;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param config the database configuration properties
+	 */
+	public BoundedConnectionPool(ConfigProperties config) {
+		this.maxSize = Integer.parseInt(config.getOptionalProperty("pool.maxSize", "40"));
+		this.maxWaitMillis = Long.parseLong(config.getOptionalProperty("pool.maxWaitMs", "30000"));
+		this.validateAfterMillis = Long.parseLong(config.getOptionalProperty("pool.validateAfterMs", "5000"));
+		this.validationTimeoutSec = Integer.parseInt(config.getOptionalProperty("pool.validationTimeoutSec", "2"));
+		int statementCacheSize = Integer.parseInt(config.getOptionalProperty("pool.statementCacheSize", "250"));
+		this.openStatementCacheSize = Integer.parseInt(config.getOptionalProperty("pool.openStatementCacheSize", "100"));
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("pool.maxSize must be positive");
+		}
+
+		this.jdbcUrl =
+				"jdbc:mysql://" +
+				config.getHost() + config.getPortStr() +
+				"/" +
+				config.getDatabaseName() +
+				"?user=" +
+				config.getUser() +
+				"&password=" + config.getPasswd() +
+				"&useServerPrepStmts=true" +
+				// Send batched inserts as multi-row inserts
+				"&rewriteBatchedStatements=true" +
+				"&cachePrepStmts=" + (statementCacheSize > 0) +
+				"&prepStmtCacheSize=" + statementCacheSize;
+
+		this.permits = new Semaphore(maxSize, true);
+		this.idle = new ConcurrentLinkedDeque<IdleConnection>();
+
+		this.numOpen = new AtomicInteger();
+		this.numInUse = new AtomicInteger();
+		this.numCheckouts = new AtomicLong();
+		this.totalWaitNanos = new AtomicLong();
+		this.maxWaitNanos = new AtomicLong();
+		this.numTimeouts = new AtomicLong();
+		this.numCreated = new AtomicLong();
+		this.numValidationFailures = new AtomicLong();
+		this.statementCacheStats = new PreparedStatementCache.Stats();
+
+		logger.info("Bounded connection pool: maxSize={}, maxWaitMs={}", maxSize, maxWaitMillis);
+	}
+
+	@Override
+	protected Connection createConnection() throws SQLException {
+		if (destroyed) {
+			throw new SQLException("Connection pool has been destroyed");
+		}
+
+		// Wait for a permit to use a connection
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection", e);
+		}
+		recordWait(System.nanoTime() - start);
+		if (!acquired) {
+			numTimeouts.incrementAndGet();
+			throw new SQLException("Timed out waiting for a database connection (" + maxSize + " in use)");
+		}
+
+		// We have a permit: reuse an idle connection, or open a new one
+		boolean success = false;
+		try {
+			Connection conn = takeIdleConnection();
+			if (conn == null) {
+				conn = DriverManager.getConnection(jdbcUrl);
+				if (openStatementCacheSize > 0) {
+					PreparedStatementCache.register(conn, new PreparedStatementCache(openStatementCacheSize, statementCacheStats));
+				}
+				numOpen.incrementAndGet();
+				numCreated.incrementAndGet();
+			}
+			numInUse.incrementAndGet();
+			numCheckouts.incrementAndGet();
+			success = true;
+			return conn;
+		} finally {
+			if (!success) {
+				permits.release();
+			}
+		}
+	}
+
+	@Override
+	protected void closeConnection(Connection conn) throws SQLException {
+		numInUse.decrementAndGet();
+		try {
+			boolean reusable = !destroyed && !conn.isClosed();
+			if (reusable && !conn.getAutoCommit()) {
+				// Don't let an unfinished transaction leak into the next user
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			if (reusable) {
+				idle.offerFirst(new IdleConnection(conn, System.currentTimeMillis()));
+			} else {
+				discard(conn);
+			}
+		} catch (SQLException e) {
+			logger.warn("Discarding connection that could not be returned to the pool", e);
+			discard(conn);
+		} finally {
+			permits.release();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		destroyed = true;
+		IdleConnection c;
+		while ((c = idle.pollFirst()) != null) {
+			discard(c.conn);
+		}
+	}
+
+	/**
+	 * @return the maximum number of connections
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return number of currently-open connections (in use or idle)
+	 */
+	public int getNumOpen() {
+		return numOpen.get();
+	}
+
+	/**
+	 * @return number of connections currently in use
+	 */
+	public int getNumInUse() {
+		return numInUse.get();
+	}
+
+	/**
+	 * @return (estimated) number of threads currently waiting for a connection
+	 */
+	public int getNumWaiting() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * @return total number of times a connection has been checked out
+	 */
+	public long getNumCheckouts() {
+		return numCheckouts.get();
+	}
+
+	/**
+	 * @return total time (in milliseconds) threads have spent waiting for a connection
+	 */
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	/**
+	 * @return the longest time (in milliseconds) any thread has waited for a connection
+	 */
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	/**
+	 * @return number of times a thread gave up waiting for a connection
+	 */
+	public long getNumTimeouts() {
+		return numTimeouts.get();
+	}
+
+	/**
+	 * @return total number of connections opened to the database
+	 */
+	public long getNumCreated() {
+		return numCreated.get();
+	}
+
+	/**
+	 * @return number of idle connections discarded because they failed validation
+	 */
+	public long getNumValidationFailures() {
+		return numValidationFailures.get();
+	}
+
+	/**
+	 * @return number of times a transaction reused an open prepared statement
+	 */
+	public long getNumStatementCacheHits() {
+		return statementCacheStats.getHits();
+	}
+
+	/**
+	 * @return number of times a transaction had to prepare a statement
+	 *         (when the statement cache is enabled)
+	 */
+	public long getNumStatementCacheMisses() {
+		return statementCacheStats.getMisses();
+	}
+
+	/**
+	 * @return number of cached prepared statements closed because a
+	 *         cache was full or its connection was discarded
+	 */
+	public long getNumStatementCacheEvictions() {
+		return statementCacheStats.getEvictions();
+	}
+
+	private Connection takeIdleConnection() {
+		IdleConnection c;
+		while ((c = idle.pollFirst()) != null) {
+			if (System.currentTimeMillis() - c.lastUsed < validateAfterMillis || isValid(c.conn)) {
+				return c.conn;
+			}
+			numValidationFailures.incrementAndGet();
+			discard(c.conn);
+		}
+		return null;
+	}
+
+	private boolean isValid(Connection conn) {
+		try {
+			return conn.isValid(validationTimeoutSec);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private void discard(Connection conn) {
+		numOpen.decrementAndGet();
+		PreparedStatementCache.invalidate(conn);
+		DBUtil.closeQuietly(conn);
+	}
+
+	private void recordWait(long nanos) {
+		totalWaitNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxWaitNanos.get())) {
+			if (maxWaitNanos.compareAndSet(max, nanos)) {
+				break;
+			}
+		}
+	}
+}
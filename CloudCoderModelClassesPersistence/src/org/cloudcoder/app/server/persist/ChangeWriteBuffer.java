@@ -0,0 +1,787 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-behind buffer for {@link Change}s sent by clients.
+ * Rather than storing each client's batch of changes in its own
+ * transaction, batches are queued and periodically stored
+ * (for all users at once) by a flush thread.
+ * 
+ * <p>
+ * Durability: a batch is appended to a local journal file before
+ * {@link #offer(Change[])} returns, so changes acknowledged to the client
+ * survive a webapp crash; journal files left over from a previous run are
+ * stored by the first flush.  Because the webapp could have crashed after
+ * a flush committed but before its journal file was deleted, the first
+ * flush skips the recovered changes for each user and problem up to and
+ * including the user's most recent stored change.
+ * </p>
+ * 
+ * <p>
+ * Failures: if the buffered changes can't be stored in one transaction,
+ * each user's changes are stored separately (one batch at a time if necessary),
+ * so that a batch that can't be stored doesn't hold up other users' changes.
+ * A batch that fails in {@link #MAX_FLUSH_ATTEMPTS} flushes that stored
+ * other changes (i.e., while the database is available) is appended
+ * to the dead-letter file {@value #DEAD_LETTER_FILE_NAME} in the journal
+ * directory and discarded.
+ * </p>
+ * 
+ * <p>
+ * Backpressure: the number of buffered changes is bounded, and
+ * {@link #offer(Change[])} returns false if the buffer is full,
+ * in which case the client should resend the changes later.
+ * </p>
+ * 
+ * <p>
+ * Code that reads changes (e.g., to get the most recent text
+ * or before storing a submission's full-text change) should call
+ * {@link #flush()} first, so that all accepted changes are stored.
+ * </p>
+ * 
+ * <p>
+ * Configuration properties (relative to the database property prefix,
+ * e.g., "cloudcoder.db"):
+ * <ul>
+ * <li><b>changeBuffer.journalDir</b>: directory for journal files (required:
+ *     if it is not set, the buffer is not used); it should not be
+ *     a directory which is cleared at reboot, such as /tmp</li>
+ * <li><b>changeBuffer.enable</b>: whether the buffer is used (default true)</li>
+ * <li><b>changeBuffer.flushIntervalMs</b>: how often buffered changes are stored (default 250)</li>
+ * <li><b>changeBuffer.maxPendingChanges</b>: maximum number of buffered changes (default 20000)</li>
+ * <li><b>changeBuffer.maxFlushAttempts</b>: number of failed flushes after which
+ *     a batch is moved to the dead-letter file (default {@value #MAX_FLUSH_ATTEMPTS})</li>
+ * <li><b>changeBuffer.journalSync</b>: whether to sync each journal write
+ *     to disk (default true); if false, the journal survives a crash of
+ *     the webapp but not of the operating system</li>
+ * </ul>
+ * </p>
+ */
+public class ChangeWriteBuffer {
+	private static final Logger logger = LoggerFactory.getLogger(ChangeWriteBuffer.class);
+	
+	/**
+	 * Default number of failed flushes after which a batch of changes
+	 * is moved to the dead-letter file.
+	 */
+	public static final int MAX_FLUSH_ATTEMPTS = 5;
+	
+	/**
+	 * Name of the file (in the journal directory) to which batches of changes
+	 * which could not be stored are appended.  It has the same format as a journal
+	 * file, and can be read using {@link #readJournal(File)}.
+	 */
+	public static final String DEAD_LETTER_FILE_NAME = "dead-letter.journal";
+	
+	private static final String JOURNAL_PREFIX = "changes-";
+	private static final String JOURNAL_SUFFIX = ".journal";
+	
+	// When storing users' changes separately, give up on the flush
+	// if this many users' changes fail before any are stored
+	// (the database is probably unavailable)
+	private static final int MAX_FAILURES_BEFORE_ANY_STORED = 3;
+	
+	private static ChangeWriteBuffer instance;
+	private static Object instanceLock = new Object();
+	
+	/**
+	 * A batch of changes offered to the buffer.
+	 */
+	private static class Batch {
+		Change[] changeList;
+		boolean recovered;
+		int numFailedAttempts;
+		
+		Batch(Change[] changeList, boolean recovered) {
+			this.changeList = changeList;
+			this.recovered = recovered;
+		}
+	}
+	
+	private final IDatabase database;
+	private final long flushIntervalMillis;
+	private final int maxPendingChanges;
+	private final int maxFlushAttempts;
+	private final File journalDir;
+	private final boolean journalSync;
+	
+	// Fields protected by lock
+	private final Object lock = new Object();
+	private List<Batch> pending;
+	private int numPendingChanges;
+	private List<File> closedJournalFiles;
+	private File journalFile;
+	private FileOutputStream journalFileOut;
+	private DataOutputStream journalOut;
+	private long nextJournalSeq;
+	private boolean shutdown;
+	
+	// Held while a flush is in progress, so that when flush()
+	// returns, all changes accepted before it was called are stored
+	private final Object flushLock = new Object();
+	
+	private Thread flushThread;
+	
+	/**
+	 * Constructor.  Normally, the singleton instance should be created
+	 * using {@link #create(ConfigProperties)}; a buffer created using the
+	 * constructor has no flush thread, and {@link #recover()} must be
+	 * called before changes are offered.
+	 * 
+	 * @param config   the database configuration properties
+	 * @param database the {@link IDatabase} in which to store the changes
+	 */
+	public ChangeWriteBuffer(ConfigProperties config, IDatabase database) {
+		String journalDirName = config.getOptionalProperty("changeBuffer.journalDir", null);
+		if (journalDirName == null) {
+			throw new IllegalArgumentException("changeBuffer.journalDir must be set");
+		}
+		this.database = database;
+		this.flushIntervalMillis = Long.parseLong(config.getOptionalProperty("changeBuffer.flushIntervalMs", "250"));
+		this.maxPendingChanges = Integer.parseInt(config.getOptionalProperty("changeBuffer.maxPendingChanges", "20000"));
+		this.maxFlushAttempts = Integer.parseInt(config.getOptionalProperty("changeBuffer.maxFlushAttempts", String.valueOf(MAX_FLUSH_ATTEMPTS)));
+		this.journalDir = new File(journalDirName);
+		this.journalSync = Boolean.parseBoolean(config.getOptionalProperty("changeBuffer.journalSync", "true"));
+		if (flushIntervalMillis <= 0 || maxPendingChanges <= 0 || maxFlushAttempts <= 0) {
+			throw new IllegalArgumentException(
+					"changeBuffer.flushIntervalMs, changeBuffer.maxPendingChanges, and changeBuffer.maxFlushAttempts must be positive");
+		}
+		this.pending = new ArrayList<Batch>();
+		this.closedJournalFiles = new ArrayList<File>();
+	}
+	
+	/**
+	 * @return the singleton instance of ChangeWriteBuffer, or null if
+	 *         the buffer has not been created (in which case changes
+	 *         should be stored directly)
+	 */
+	public static ChangeWriteBuffer getInstance() {
+		synchronized (instanceLock) {
+			return instance;
+		}
+	}
+	
+	/**
+	 * Create the singleton instance of ChangeWriteBuffer (if enabled
+	 * by the configuration properties), recover changes from any journal
+	 * files left by a previous run, and start the flush thread.
+	 * 
+	 * @param config the database configuration properties
+	 * @throws IOException if the journal directory can't be used
+	 */
+	public static void create(ConfigProperties config) throws IOException {
+		if (!Boolean.parseBoolean(config.getOptionalProperty("changeBuffer.enable", "true"))) {
+			logger.info("Change write buffer is disabled");
+			return;
+		}
+		if (config.getOptionalProperty("changeBuffer.journalDir", null) == null) {
+			logger.warn("Change write buffer is disabled because changeBuffer.journalDir is not set");
+			return;
+		}
+		synchronized (instanceLock) {
+			if (instance != null) {
+				throw new IllegalStateException("ChangeWriteBuffer already exists");
+			}
+			ChangeWriteBuffer buffer = new ChangeWriteBuffer(config, Database.getInstance());
+			buffer.recover();
+			buffer.start();
+			instance = buffer;
+		}
+	}
+	
+	/**
+	 * Destroy the singleton instance of ChangeWriteBuffer (if it exists),
+	 * storing all buffered changes.
+	 */
+	public static void destroy() {
+		ChangeWriteBuffer buffer;
+		synchronized (instanceLock) {
+			buffer = instance;
+			instance = null;
+		}
+		if (buffer != null) {
+			buffer.shutdown();
+		}
+	}
+	
+	/**
+	 * Add a batch of changes to the buffer.
+	 * When this method returns true, the changes have been written
+	 * to the journal, and will be stored in the database by the
+	 * next flush.
+	 * 
+	 * @param changeList the changes
+	 * @return true if the changes were accepted, false if the buffer is
+	 *         full (or the changes couldn't be journaled), in which
+	 *         case the changes should be sent again later
+	 */
+	public boolean offer(Change[] changeList) {
+		if (changeList.length == 0) {
+			return true;
+		}
+		synchronized (lock) {
+			if (shutdown) {
+				return false;
+			}
+			if (numPendingChanges > 0 && numPendingChanges + changeList.length > maxPendingChanges) {
+				logger.warn("Change write buffer is full ({} changes), rejecting {} changes", numPendingChanges, changeList.length);
+				lock.notifyAll();
+				return false;
+			}
+			try {
+				appendToJournal(changeList);
+			} catch (IOException e) {
+				logger.error("Could not write changes to journal file " + journalFile, e);
+				closeJournal();
+				return false;
+			}
+			pending.add(new Batch(changeList, false));
+			numPendingChanges += changeList.length;
+			if (numPendingChanges >= maxPendingChanges / 2) {
+				// Wake up the flush thread early
+				lock.notifyAll();
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * Store all buffered changes in the database.  When this method
+	 * returns true, all changes accepted by {@link #offer(Change[])}
+	 * before it was called have been stored (or moved to the dead-letter file).
+	 * 
+	 * @return true if successful, false if some changes could not be stored
+	 *         (they will remain buffered and another attempt will be made
+	 *         by the next flush)
+	 */
+	public boolean flush() {
+		synchronized (flushLock) {
+			List<Batch> batches;
+			List<File> journalFilesToDelete;
+			synchronized (lock) {
+				if (pending.isEmpty()) {
+					return true;
+				}
+				batches = pending;
+				pending = new ArrayList<Batch>();
+				
+				// Subsequent changes go to a new journal file
+				closeJournal();
+				journalFilesToDelete = new ArrayList<File>(closedJournalFiles);
+			}
+			int numChanges = countChanges(batches);
+			
+			// Recovered changes may have been stored before the previous run ended
+			try {
+				skipStoredRecoveredChanges(batches);
+			} catch (RuntimeException e) {
+				logger.error("Could not check whether recovered changes were already stored", e);
+				requeue(batches, numChanges, numChanges);
+				return false;
+			}
+			
+			List<Batch> unstored = new ArrayList<Batch>();
+			List<Batch> rejected = new ArrayList<Batch>();
+			boolean anyStored = storeBatches(batches, unstored, rejected);
+			
+			// If the database is available, count the failed attempt for each
+			// batch that couldn't be stored, and give up on it after too many
+			if (anyStored) {
+				List<Batch> deadLetters = new ArrayList<Batch>();
+				for (Batch batch : rejected) {
+					batch.numFailedAttempts++;
+					if (batch.numFailedAttempts >= maxFlushAttempts) {
+						deadLetters.add(batch);
+					}
+				}
+				if (!deadLetters.isEmpty() && writeDeadLetters(deadLetters)) {
+					for (Batch batch : deadLetters) {
+						unstored.remove(batch);
+					}
+				}
+			}
+			
+			int numUnstoredChanges = countChanges(unstored);
+			requeue(unstored, numChanges, numUnstoredChanges);
+			if (!unstored.isEmpty()) {
+				// Keep the journal files until all of their changes are stored
+				return false;
+			}
+			
+			synchronized (lock) {
+				closedJournalFiles.removeAll(journalFilesToDelete);
+			}
+			for (File file : journalFilesToDelete) {
+				if (!file.delete()) {
+					logger.warn("Could not delete journal file {}", file);
+				}
+			}
+			logger.debug("Stored {} buffered changes", numChanges);
+			return true;
+		}
+	}
+	
+	/**
+	 * @return the number of changes currently buffered
+	 */
+	public int getNumPendingChanges() {
+		synchronized (lock) {
+			return numPendingChanges;
+		}
+	}
+	
+	/**
+	 * @return the dead-letter file, to which batches of changes which
+	 *         could not be stored are appended
+	 */
+	public File getDeadLetterFile() {
+		return new File(journalDir, DEAD_LETTER_FILE_NAME);
+	}
+	
+	/**
+	 * Recover changes from journal files left by a previous run
+	 * (creating the journal directory if it doesn't exist).
+	 * The changes will be stored by the next flush.
+	 * 
+	 * @throws IOException if the journal directory can't be used
+	 */
+	public void recover() throws IOException {
+		if (!journalDir.isDirectory() && !journalDir.mkdirs()) {
+			throw new IOException("Could not create change journal directory " + journalDir);
+		}
+		
+		File[] files = journalDir.listFiles();
+		if (files == null) {
+			throw new IOException("Could not list change journal directory " + journalDir);
+		}
+		List<File> journalFiles = new ArrayList<File>();
+		for (File file : files) {
+			if (getJournalSeq(file) >= 0) {
+				journalFiles.add(file);
+			}
+		}
+		Collections.sort(journalFiles, new Comparator<File>() {
+			@Override
+			public int compare(File o1, File o2) {
+				return Long.valueOf(getJournalSeq(o1)).compareTo(getJournalSeq(o2));
+			}
+		});
+		
+		// Buffer the changes in the journal files: they will be
+		// stored by the first flush
+		synchronized (lock) {
+			for (File file : journalFiles) {
+				List<Change[]> batches = readJournal(file);
+				for (Change[] batch : batches) {
+					pending.add(new Batch(batch, true));
+					numPendingChanges += batch.length;
+				}
+				closedJournalFiles.add(file);
+				nextJournalSeq = Math.max(nextJournalSeq, getJournalSeq(file) + 1);
+				logger.info("Recovered {} batches of changes from journal file {}", batches.size(), file);
+			}
+		}
+	}
+	
+	/**
+	 * Read the batches of changes in a journal file (or the dead-letter file).
+	 * 
+	 * @param file the file
+	 * @return the batches of changes
+	 * @throws IOException
+	 */
+	public static List<Change[]> readJournal(File file) throws IOException {
+		List<Change[]> result = new ArrayList<Change[]>();
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			while (true) {
+				byte[] record;
+				try {
+					int len = in.readInt();
+					if (len < 0) {
+						break;
+					}
+					record = new byte[len];
+					in.readFully(record);
+				} catch (EOFException e) {
+					// End of file, or an incomplete record
+					// (which was never acknowledged to the client)
+					break;
+				}
+				try {
+					ObjectInputStream objIn = new ObjectInputStream(new ByteArrayInputStream(record));
+					result.add((Change[]) objIn.readObject());
+				} catch (ClassNotFoundException e) {
+					throw new IOException("Could not read journal file " + file, e);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+	
+	private void start() {
+		flushThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runFlushThread();
+			}
+		}, "ChangeWriteBuffer");
+		flushThread.setDaemon(true);
+		flushThread.start();
+	}
+	
+	private void runFlushThread() {
+		while (true) {
+			synchronized (lock) {
+				if (shutdown) {
+					return;
+				}
+				if (numPendingChanges < maxPendingChanges / 2) {
+					try {
+						lock.wait(flushIntervalMillis);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (shutdown) {
+					return;
+				}
+			}
+			if (!flush()) {
+				// Don't retry right away if the database is unavailable
+				synchronized (lock) {
+					try {
+						lock.wait(flushIntervalMillis * 4);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	private void shutdown() {
+		synchronized (lock) {
+			shutdown = true;
+			lock.notifyAll();
+		}
+		try {
+			flushThread.join();
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted waiting for change write buffer flush thread to finish");
+		}
+		if (!flush()) {
+			logger.error("Could not store buffered changes at shutdown: they will be recovered from the journal at startup");
+		}
+		synchronized (lock) {
+			closeJournal();
+		}
+	}
+	
+	/**
+	 * Put batches which weren't stored back at the front of the buffer,
+	 * to preserve their order.
+	 * 
+	 * @param unstored           the batches which weren't stored
+	 * @param numChanges         the number of changes taken from the buffer
+	 * @param numUnstoredChanges the number of changes in the batches which weren't stored
+	 */
+	private void requeue(List<Batch> unstored, int numChanges, int numUnstoredChanges) {
+		synchronized (lock) {
+			unstored.addAll(pending);
+			pending = unstored;
+			numPendingChanges -= numChanges - numUnstoredChanges;
+		}
+	}
+	
+	/**
+	 * Store batches of changes: all in one transaction if possible,
+	 * otherwise each user's separately.
+	 * 
+	 * @param batches  the batches to store
+	 * @param unstored the batches which weren't stored are added to this list,
+	 *                 preserving the order of each user's batches
+	 * @param rejected for each user whose changes couldn't all be stored,
+	 *                 the batch which failed is added to this list
+	 * @return true if any batches were stored
+	 */
+	private boolean storeBatches(List<Batch> batches, List<Batch> unstored, List<Batch> rejected) {
+		boolean anyFailedBefore = false;
+		for (Batch batch : batches) {
+			anyFailedBefore |= batch.numFailedAttempts > 0;
+		}
+		if (!anyFailedBefore && store(batches)) {
+			return true;
+		}
+		
+		// Store each user's batches separately, starting with users
+		// whose batches haven't failed before
+		Map<Integer, List<Batch>> batchesByUser = new LinkedHashMap<Integer, List<Batch>>();
+		for (Batch batch : batches) {
+			Integer userId = batch.changeList[0].getEvent().getUserId();
+			List<Batch> userBatches = batchesByUser.get(userId);
+			if (userBatches == null) {
+				userBatches = new ArrayList<Batch>();
+				batchesByUser.put(userId, userBatches);
+			}
+			userBatches.add(batch);
+		}
+		List<List<Batch>> groups = new ArrayList<List<Batch>>(batchesByUser.values());
+		Collections.sort(groups, new Comparator<List<Batch>>() {
+			@Override
+			public int compare(List<Batch> o1, List<Batch> o2) {
+				return Integer.valueOf(o1.get(0).numFailedAttempts).compareTo(o2.get(0).numFailedAttempts);
+			}
+		});
+		
+		boolean anyStored = false;
+		int numFailures = 0;
+		for (List<Batch> group : groups) {
+			if (!anyStored && numFailures >= MAX_FAILURES_BEFORE_ANY_STORED) {
+				unstored.addAll(group);
+				continue;
+			}
+			int numStored = 0;
+			if (group.size() > 1 && store(group)) {
+				numStored = group.size();
+			} else {
+				// Store one batch at a time, to find the batch that fails
+				while (numStored < group.size() && store(group.subList(numStored, numStored + 1))) {
+					numStored++;
+				}
+			}
+			if (numStored > 0) {
+				anyStored = true;
+			}
+			if (numStored < group.size()) {
+				numFailures++;
+				rejected.add(group.get(numStored));
+				unstored.addAll(group.subList(numStored, group.size()));
+			}
+		}
+		return anyStored;
+	}
+	
+	private boolean store(List<Batch> batches) {
+		int numChanges = countChanges(batches);
+		Change[] changeList = new Change[numChanges];
+		int pos = 0;
+		for (Batch batch : batches) {
+			System.arraycopy(batch.changeList, 0, changeList, pos, batch.changeList.length);
+			pos += batch.changeList.length;
+		}
+		try {
+			database.storeChanges(changeList);
+			return true;
+		} catch (RuntimeException e) {
+			logger.error("Could not store " + numChanges + " buffered changes", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Remove recovered changes that are already stored: for each user and problem,
+	 * the recovered changes up to and including the user's most recently stored change.
+	 * 
+	 * @param batches the batches (recovered batches are modified or removed as necessary)
+	 */
+	private void skipStoredRecoveredChanges(List<Batch> batches) {
+		Map<String, List<Change>> recoveredChanges = new LinkedHashMap<String, List<Change>>();
+		for (Batch batch : batches) {
+			if (!batch.recovered) {
+				continue;
+			}
+			for (Change change : batch.changeList) {
+				String key = change.getEvent().getUserId() + "," + change.getEvent().getProblemId();
+				List<Change> changeList = recoveredChanges.get(key);
+				if (changeList == null) {
+					changeList = new ArrayList<Change>();
+					recoveredChanges.put(key, changeList);
+				}
+				changeList.add(change);
+			}
+		}
+		if (recoveredChanges.isEmpty()) {
+			return;
+		}
+		
+		Map<Change, Boolean> stored = new IdentityHashMap<Change, Boolean>();
+		for (List<Change> changeList : recoveredChanges.values()) {
+			User user = new User();
+			user.setId(changeList.get(0).getEvent().getUserId());
+			Change mostRecent = database.getMostRecentChange(user, changeList.get(0).getEvent().getProblemId());
+			if (mostRecent == null) {
+				continue;
+			}
+			for (int i = changeList.size() - 1; i >= 0; i--) {
+				if (isSameChange(changeList.get(i), mostRecent)) {
+					for (Change change : changeList.subList(0, i + 1)) {
+						stored.put(change, Boolean.TRUE);
+					}
+					break;
+				}
+			}
+		}
+		
+		for (ListIterator<Batch> i = batches.listIterator(); i.hasNext(); ) {
+			Batch batch = i.next();
+			if (!batch.recovered) {
+				continue;
+			}
+			batch.recovered = false;
+			List<Change> remaining = new ArrayList<Change>();
+			for (Change change : batch.changeList) {
+				if (!stored.containsKey(change)) {
+					remaining.add(change);
+				}
+			}
+			if (remaining.isEmpty()) {
+				i.remove();
+			} else {
+				batch.changeList = remaining.toArray(new Change[remaining.size()]);
+			}
+		}
+		if (!stored.isEmpty()) {
+			logger.info("Skipped {} recovered changes which were already stored", stored.size());
+		}
+	}
+	
+	private static boolean isSameChange(Change change, Change storedChange) {
+		// Note that the end column isn't compared: Change.END_COL stores the start column
+		return change.getType() == storedChange.getType()
+				&& change.getStartRow() == storedChange.getStartRow()
+				&& change.getEndRow() == storedChange.getEndRow()
+				&& change.getStartColumn() == storedChange.getStartColumn()
+				&& change.getText().equals(storedChange.getText())
+				&& change.getEvent().getTimestamp() == storedChange.getEvent().getTimestamp();
+	}
+	
+	private boolean writeDeadLetters(List<Batch> deadLetters) {
+		File file = getDeadLetterFile();
+		int numChanges = countChanges(deadLetters);
+		try {
+			FileOutputStream fileOut = new FileOutputStream(file, true);
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+				for (Batch batch : deadLetters) {
+					writeRecord(out, batch.changeList);
+				}
+				out.flush();
+				fileOut.getFD().sync();
+			} finally {
+				fileOut.close();
+			}
+		} catch (IOException e) {
+			logger.error("Could not write " + numChanges + " changes to dead-letter file " + file, e);
+			return false;
+		}
+		logger.error("Could not store {} changes after {} attempts: moved them to dead-letter file {}",
+				new Object[]{ numChanges, maxFlushAttempts, file });
+		return true;
+	}
+	
+	private void appendToJournal(Change[] changeList) throws IOException {
+		if (journalOut == null) {
+			journalFile = new File(journalDir, JOURNAL_PREFIX + nextJournalSeq + JOURNAL_SUFFIX);
+			nextJournalSeq++;
+			journalFileOut = new FileOutputStream(journalFile);
+			journalOut = new DataOutputStream(new BufferedOutputStream(journalFileOut));
+		}
+		writeRecord(journalOut, changeList);
+		journalOut.flush();
+		if (journalSync) {
+			journalFileOut.getFD().sync();
+		}
+	}
+	
+	private static void writeRecord(DataOutputStream out, Change[] changeList) throws IOException {
+		// Each record is the length of the serialized batch followed by the batch,
+		// so that a partially-written record at the end of the file can be detected
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream objOut = new ObjectOutputStream(bytes);
+		objOut.writeObject(changeList);
+		objOut.close();
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+	
+	private void closeJournal() {
+		if (journalOut != null) {
+			try {
+				journalOut.close();
+			} catch (IOException e) {
+				logger.warn("Error closing journal file " + journalFile, e);
+			}
+			closedJournalFiles.add(journalFile);
+			journalOut = null;
+			journalFileOut = null;
+			journalFile = null;
+		}
+	}
+	
+	private static int countChanges(List<Batch> batches) {
+		int numChanges = 0;
+		for (Batch batch : batches) {
+			numChanges += batch.changeList.length;
+		}
+		return numChanges;
+	}
+	
+	private static long getJournalSeq(File file) {
+		String name = file.getName();
+		if (!name.startsWith(JOURNAL_PREFIX) || !name.endsWith(JOURNAL_SUFFIX)) {
+			return -1L;
+		}
+		try {
+			return Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1L;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist;
+
+import java.io.IOException;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * Servlet context listener to create and destroy the {@link ChangeWriteBuffer}
+ * for the webapp.  Must be registered after the listener that configures
+ * the database (e.g., {@link WebappDatabaseConfigServletContextListener}),
+ * since the buffer is configured using the database configuration properties.
+ */
+public class ChangeWriteBufferServletContextListener implements ServletContextListener {
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent e) {
+		try {
+			ChangeWriteBuffer.create(JDBCDatabaseConfig.getInstance().getConfigProperties());
+		} catch (IOException ex) {
+			throw new IllegalStateException("Could not create change write buffer", ex);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent e) {
+		// Store all buffered changes
+		ChangeWriteBuffer.destroy();
+	}
+}
@@ -30,13 +30,17 @@ import java.util.Scanner;
 import org.cloudcoder.app.server.persist.util.ConfigurationUtil;
 import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.server.persist.util.SchemaUtil;
+import org.cloudcoder.app.shared.model.BestSubmission;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
 import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistration;
 import org.cloudcoder.app.shared.model.CourseRegistrationType;
 import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.LatestChange;
+import org.cloudcoder.app.shared.model.LatestSubmission;
 import org.cloudcoder.app.shared.model.ModelObjectSchema;
 import org.cloudcoder.app.shared.model.Module;
 import org.cloudcoder.app.shared.model.Problem;
@@ -77,6 +81,10 @@ public class CreateWebappDatabase {
 		Quiz.SCHEMA,
 		Module.SCHEMA,
 		StartedQuiz.SCHEMA,
+		ChangeCheckpoint.SCHEMA,
+		LatestChange.SCHEMA,
+		BestSubmission.SCHEMA,
+		LatestSubmission.SCHEMA,
 	};
 	
 	private static class Props {
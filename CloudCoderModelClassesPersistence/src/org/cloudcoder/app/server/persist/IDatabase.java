@@ -24,6 +24,7 @@ import java.util.Map;
 
 import org.cloudcoder.app.shared.model.Anonymization;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
@@ -122,10 +123,12 @@ public interface IDatabase {
 	
 	/**
 	 * Get given {@link User}'s most recent {@link Change} for given problem.
+	 * The {@link Change}'s {@link Event} is populated.
 	 * 
 	 * @param user       the {@link User}
 	 * @param problemId  the problem id
-	 * @return {@link User}'s most recent {@link Change}
+	 * @return {@link User}'s most recent {@link Change}, or null if the user
+	 *         has no changes for the problem
 	 */
 	public Change getMostRecentChange(User user, int problemId);
 	
@@ -150,6 +153,21 @@ public interface IDatabase {
 	 */
 	public List<Change> getAllChangesNewerThan(User user, int problemId, int baseRev);
 	
+	/**
+	 * Get given {@link User}'s most recent {@link ChangeCheckpoint} for given problem,
+	 * and the {@link Change}s needed to reconstruct the current text from it.
+	 * If there is a full-text {@link Change} newer than the checkpoint, the
+	 * list of {@link Change}s starts with the most recent full-text change
+	 * (and the checkpoint can be ignored).  Note that the retrieved
+	 * {@link Change}s will <em>not</em> have their associated {@link Event}s populated.
+	 * 
+	 * @param user       the {@link User}
+	 * @param problemId  the problem id
+	 * @return the {@link ChangeCheckpoint} (null if no checkpoint has been written),
+	 *         and the {@link Change}s that should be applied to it
+	 */
+	public Pair<ChangeCheckpoint, List<Change>> getChangeCheckpointAndLaterChanges(User user, int problemId);
+	
 	public enum RetrieveChangesMode {
 		RETRIEVE_CHANGES_ONLY,
 		RETRIEVE_CHANGES_AND_EDIT_EVENTS,
@@ -168,6 +186,39 @@ public interface IDatabase {
 	 */
 	public void visitAllChangesNewerThan(User user, int problemId, int baseRev, ICallback<Change> visitor, RetrieveChangesMode mode);
 	
+	/**
+	 * Visit all {@link Change}s (with their {@link Event}s) on given problem,
+	 * for all users.  The {@link Change}s are visited in order by user id,
+	 * and then by event id.  The changes are streamed, so the visitor
+	 * should not access the database.
+	 * 
+	 * @param problemId  the problem id
+	 * @param visitor    the callback to do the visitation of the {@link Change}s
+	 */
+	public void visitAllChangesForProblem(int problemId, ICallback<Change> visitor);
+	
+	/**
+	 * Visit all {@link SubmissionReceipt}s (with their {@link Event}s) for given
+	 * {@link Problem}, for all users.  The receipts are visited in order by
+	 * user id, and then by timestamp.
+	 * 
+	 * @param problem  the {@link Problem}
+	 * @param visitor  the callback to do the visitation of the {@link SubmissionReceipt}s
+	 */
+	public void visitAllSubmissionReceiptsForProblem(Problem problem, ICallback<SubmissionReceipt> visitor);
+	
+	/**
+	 * Visit the {@link TestResult}s of all submissions for given {@link Problem}.
+	 * The test results are visited in order by submission receipt event id,
+	 * and then in the order they were stored.  The authenticated user must
+	 * be an instructor in the course to visit other users' test results.
+	 * 
+	 * @param authenticatedUser the authenticated {@link User}
+	 * @param problem           the {@link Problem}
+	 * @param visitor           the callback to do the visitation of the {@link TestResult}s
+	 */
+	public void visitTestResultsForProblem(User authenticatedUser, Problem problem, ICallback<TestResult> visitor);
+	
 	/**
 	 * Get all of the courses in which given user is registered.
 	 * Each returned item is a triple consisting of {@link Course},
@@ -223,6 +274,8 @@ public interface IDatabase {
 	/**
 	 * Load sequence of {@link Change}s for all users on given problem.
 	 * Changes are ordered by user id, and then by event id.
+	 * Use {@link #visitAllChangesForProblem(int, ICallback)} to avoid
+	 * loading all of the changes into memory.
 	 * 
 	 * @param problemId the problem id
 	 * @return list of {@link Change}s for all uses on the problem
@@ -470,6 +523,24 @@ public interface IDatabase {
 	 */
 	public List<UserAndSubmissionReceipt> getBestSubmissionReceipts(Course course, int section, Problem problem, long maxTs);
 
+	/**
+	 * Visit best submission receipts for given {@link Problem} in given {@link Course}.
+	 * Like {@link #getBestSubmissionReceipts(Course, int, Problem, long)}, but
+	 * the results are streamed rather than being collected in a list.
+	 * Should not be called unless the currently-authenticated user is an
+	 * instructor in the course.
+	 * 
+	 * @param course   the {@link Course}
+	 * @param section  the section number of the course (0 for all sections)
+	 * @param problem  the {@link Problem}
+	 * @param maxTs    timestamps of submissions preceeding this timestamp are
+	 *                 ignored; pass Long.MAX_VALUE to consider all submissions
+	 *                 regardless of timestamp
+	 * @param visitor  the callback to do the visitation of the {@link UserAndSubmissionReceipt}s
+	 */
+	public void visitBestSubmissionReceipts(Course course, int section, Problem problem, long maxTs,
+			ICallback<UserAndSubmissionReceipt> visitor);
+
 	/**
 	 * Get best submission receipts for given {@link Problem}.
 	 * Returns empty list if the authenticated user is not an instructor
@@ -746,6 +817,20 @@ public interface IDatabase {
 	 */
 	public List<WorkSession> findWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds);
 	
+	/**
+	 * Visit all {@link WorkSession}s matching given {@link SnapshotSelectionCriteria}.
+	 * Work sessions are visited in order by user id, and then by start time.
+	 * The underlying events are streamed, so this method is preferable to
+	 * {@link #findWorkSessions(SnapshotSelectionCriteria, int)} for large
+	 * amounts of data.  The visitor should not access the database.
+	 * 
+	 * @param criteria             the {@link SnapshotSelectionCriteria}
+	 * @param separationSeconds    events separated by this much time are considered to be
+	 *                             in separate sessions
+	 * @param visitor              the callback to do the visitation of the {@link WorkSession}s
+	 */
+	public void visitWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, ICallback<WorkSession> visitor);
+	
 	/**
 	 * Retrieve submissions/snapshots matching given {@link SnapshotSelectionCriteria}.
 	 * 
@@ -769,6 +854,23 @@ public interface IDatabase {
 	public List<Pair<Event, Change>> getEventsWithChanges(int userId,
 			int problemId, int startEventId, int endEventId);
 
+	/**
+	 * Visit all {@link Event}s for given user/problem within specified range of event ids,
+	 * in order by event id.  For each event that is a {@link Change}, the Change object
+	 * is retrieved as well.  The events are streamed, so the visitor should not
+	 * access the database.
+	 * 
+	 * @param userId        the user id
+	 * @param problemId     the problem id
+	 * @param startEventId  the start event id
+	 * @param endEventId    the end event id
+	 * @param visitor       the callback to do the visitation of the {@link Pair}s of
+	 *                      Event and Change (Change is null if the event is
+	 *                      not a change event)
+	 */
+	public void visitEventsWithChanges(int userId, int problemId, int startEventId, int endEventId,
+			ICallback<Pair<Event, Change>> visitor);
+
 	/**
 	 * Check whether the given authenticated (logged-in) user is an instructor
 	 * for a course in which the given (edited) user is registered.
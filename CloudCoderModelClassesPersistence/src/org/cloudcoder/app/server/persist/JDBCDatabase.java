@@ -30,7 +30,6 @@ import org.cloudcoder.app.server.persist.txn.AddTestCasesToProblem;
 import org.cloudcoder.app.server.persist.txn.AddUserRegistrationRequest;
 import org.cloudcoder.app.server.persist.txn.AddUserToCourse;
 import org.cloudcoder.app.server.persist.txn.AnonymizeUserData;
-import org.cloudcoder.app.server.persist.txn.AuthenticateUser;
 import org.cloudcoder.app.server.persist.txn.CompleteRegistration;
 import org.cloudcoder.app.server.persist.txn.CreateCourseFromSpec;
 import org.cloudcoder.app.server.persist.txn.CreateProblemSummary;
@@ -46,13 +45,18 @@ import org.cloudcoder.app.server.persist.txn.FindUnfinishedQuizForStudent;
 import org.cloudcoder.app.server.persist.txn.FindUserRegistrationRequestGivenSecret;
 import org.cloudcoder.app.server.persist.txn.FindWorkSessions;
 import org.cloudcoder.app.server.persist.txn.VisitAllChangesNewerThan;
+import org.cloudcoder.app.server.persist.txn.VisitAllChangesForProblem;
+import org.cloudcoder.app.server.persist.txn.VisitAllSubmissionReceiptsForProblem;
+import org.cloudcoder.app.server.persist.txn.VisitBestSubmissionReceiptsForProblem;
+import org.cloudcoder.app.server.persist.txn.VisitEventsWithChanges;
+import org.cloudcoder.app.server.persist.txn.VisitTestResultsForProblem;
 import org.cloudcoder.app.server.persist.txn.GetAllSubmissionReceiptsForUserAndProblem;
 import org.cloudcoder.app.server.persist.txn.GetBestSubmissionReceiptsForProblem;
 import org.cloudcoder.app.server.persist.txn.GetBestSubmissionReceiptsForProblemForAuthenticatedUser;
+import org.cloudcoder.app.server.persist.txn.GetChangeCheckpointAndLaterChanges;
 import org.cloudcoder.app.server.persist.txn.GetChangeGivenChangeEventId;
 import org.cloudcoder.app.server.persist.txn.GetConfigurationSetting;
 import org.cloudcoder.app.server.persist.txn.GetCoursesForUser;
-import org.cloudcoder.app.server.persist.txn.GetEventsWithChanges;
 import org.cloudcoder.app.server.persist.txn.GetModulesForCourse;
 import org.cloudcoder.app.server.persist.txn.GetMostRecentChangeForUserAndProblem;
 import org.cloudcoder.app.server.persist.txn.GetMostRecentFullTextChange;
@@ -81,7 +85,6 @@ import org.cloudcoder.app.server.persist.txn.InsertUsersFromInputStream;
 import org.cloudcoder.app.server.persist.txn.InstructorStartQuiz;
 import org.cloudcoder.app.server.persist.txn.IsInstructorFor;
 import org.cloudcoder.app.server.persist.txn.LoadChanges;
-import org.cloudcoder.app.server.persist.txn.LoadChangesForAllUsersOnProblem;
 import org.cloudcoder.app.server.persist.txn.RegisterExistingUser;
 import org.cloudcoder.app.server.persist.txn.ReloadModelObject;
 import org.cloudcoder.app.server.persist.txn.ReplaceSubmissionReceipt;
@@ -98,11 +101,14 @@ import org.cloudcoder.app.server.persist.txn.StudentStartOrContinueQuiz;
 import org.cloudcoder.app.server.persist.txn.SuggestTagNames;
 import org.cloudcoder.app.server.persist.txn.SuggestUsernames;
 import org.cloudcoder.app.server.persist.txn.UpdateConfigurationSettings;
+import org.cloudcoder.app.server.persist.txn.UpdatePasswordHash;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.server.persist.util.DatabaseRunnable;
 import org.cloudcoder.app.shared.model.Anonymization;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.ConfigurationSettingName;
@@ -158,10 +164,50 @@ public class JDBCDatabase implements IDatabase {
 
 	private IConnectionPool connectionPool;
 	
+	// If true, best submission receipts are read from the incrementally-maintained
+	// cc_best_submissions table rather than being computed from scratch
+	private boolean useBestSubmissionsTable;
+	
 	public JDBCDatabase() throws SQLException {
 		JDBCDatabaseConfig.ConfigProperties config = JDBCDatabaseConfig.getInstance().getConfigProperties();
-		this.connectionPool = new MysqlConnectionPool(config);
-//		this.connectionPool = new C3P0ConnectionPool(config);
+		this.connectionPool = createConnectionPool(config);
+		this.useBestSubmissionsTable = Boolean.parseBoolean(config.getOptionalProperty("bestSubmissions.enable", "true"));
+		int cacheMaxEntries = Integer.parseInt(config.getOptionalProperty("cache.maxEntries", "1000"));
+		logger.info("Caching up to {} entries per cache", cacheMaxEntries);
+		DatabaseCache.getInstance().configure(cacheMaxEntries);
+		PasswordUtil.setLog2Rounds(Integer.parseInt(
+				config.getOptionalProperty("password.log2Rounds", String.valueOf(PasswordUtil.DEFAULT_LOG2_ROUNDS))));
+	}
+	
+	/**
+	 * Create the {@link IConnectionPool} selected by the "pool" configuration
+	 * property (e.g., cloudcoder.db.pool in cloudcoder.properties).
+	 * Supported values are "bounded" (the default), "c3p0", and "none"
+	 * (open a new connection for each transaction).
+	 * 
+	 * @param config the database configuration properties
+	 * @return the {@link IConnectionPool}
+	 * @throws SQLException
+	 */
+	private static IConnectionPool createConnectionPool(JDBCDatabaseConfig.ConfigProperties config) throws SQLException {
+		String poolType = config.getOptionalProperty("pool", "bounded");
+		logger.info("Using connection pool type {}", poolType);
+		if (poolType.equals("bounded")) {
+			return new BoundedConnectionPool(config);
+		} else if (poolType.equals("c3p0")) {
+			return new C3P0ConnectionPool(config);
+		} else if (poolType.equals("none")) {
+			return new MysqlConnectionPool(config);
+		} else {
+			throw new IllegalArgumentException("Unknown connection pool type: " + poolType);
+		}
+	}
+	
+	/**
+	 * @return the {@link IConnectionPool} used by this database
+	 */
+	public IConnectionPool getConnectionPool() {
+		return connectionPool;
 	}
 	
 	@Override
@@ -175,7 +221,26 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public User authenticateUser(final String userName, final String password) {
-		return databaseRun(new AuthenticateUser(userName, password));
+		// Verify the password outside of a transaction, so that a database
+		// connection isn't held while the (deliberately slow) hash is computed
+		User user = databaseRun(new GetUserWithoutAuthentication(userName));
+		if (user == null) {
+			// No such user
+			return null;
+		}
+		
+		String hash = PasswordVerifier.verifyPassword(password, user.getPasswordHash());
+		if (hash == null) {
+			// Plaintext password does not match hash: authentication failed
+			return null;
+		}
+		
+		if (!hash.equals(user.getPasswordHash())) {
+			// The password was rehashed using the current number of rounds
+			databaseRun(new UpdatePasswordHash(user.getId(), user.getPasswordHash(), hash));
+			user.setPasswordHash(hash);
+		}
+		return user;
 	}
 	
 	@Override
@@ -225,11 +290,31 @@ public class JDBCDatabase implements IDatabase {
 		return result;
 	}
 	
+	@Override
+	public Pair<ChangeCheckpoint, List<Change>> getChangeCheckpointAndLaterChanges(User user, int problemId) {
+		return databaseRun(new GetChangeCheckpointAndLaterChanges(problemId, user));
+	}
+	
 	@Override
 	public void visitAllChangesNewerThan(User user, int problemId, int baseRev, ICallback<Change> visitor, IDatabase.RetrieveChangesMode mode) {
 		databaseRun(new VisitAllChangesNewerThan(problemId, user, baseRev, visitor, mode));
 	}
 	
+	@Override
+	public void visitAllChangesForProblem(int problemId, ICallback<Change> visitor) {
+		databaseRun(new VisitAllChangesForProblem(problemId, visitor));
+	}
+	
+	@Override
+	public void visitAllSubmissionReceiptsForProblem(Problem problem, ICallback<SubmissionReceipt> visitor) {
+		databaseRun(new VisitAllSubmissionReceiptsForProblem(problem.getProblemId(), visitor));
+	}
+	
+	@Override
+	public void visitTestResultsForProblem(User authenticatedUser, Problem problem, ICallback<TestResult> visitor) {
+		databaseRun(new VisitTestResultsForProblem(authenticatedUser, problem, visitor));
+	}
+	
 	@Override
 	public List<? extends Object[]> getCoursesForUser(final User user) {
 		return databaseRun(new GetCoursesForUser(user));
@@ -259,7 +344,14 @@ public class JDBCDatabase implements IDatabase {
 
 	@Override
 	public List<Change> loadChangesForAllUsersOnProblem(int problemId) {
-		return databaseRun(new LoadChangesForAllUsersOnProblem(problemId));
+		final List<Change> result = new ArrayList<Change>();
+		databaseRun(new VisitAllChangesForProblem(problemId, new ICallback<Change>() {
+			@Override
+			public void call(Change value) {
+				result.add(value);
+			}
+		}));
+		return result;
 	}
 	
 	@Override
@@ -390,13 +482,19 @@ public class JDBCDatabase implements IDatabase {
 	@Override
 	public List<UserAndSubmissionReceipt> getBestSubmissionReceipts(
 			final Course unused, final int section, final Problem problem, final long maxTs) {
-		return databaseRun(new GetBestSubmissionReceiptsForProblem(section, problem, maxTs));
+		return databaseRun(new GetBestSubmissionReceiptsForProblem(section, problem, maxTs, useBestSubmissionsTable));
+	}
+	
+	@Override
+	public void visitBestSubmissionReceipts(final Course unused, final int section, final Problem problem, final long maxTs,
+			ICallback<UserAndSubmissionReceipt> visitor) {
+		databaseRun(new VisitBestSubmissionReceiptsForProblem(section, problem, maxTs, useBestSubmissionsTable, visitor));
 	}
 
 	@Override
 	public List<UserAndSubmissionReceipt> getBestSubmissionReceipts(final Problem problem, final int section, final User authenticatedUser) {
 		return databaseRun(new GetBestSubmissionReceiptsForProblemForAuthenticatedUser(section,
-				problem, authenticatedUser));
+				problem, authenticatedUser, useBestSubmissionsTable));
 	}
 	
 	@Override
@@ -522,7 +620,19 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<WorkSession> findWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds) {
-		return databaseRun(new FindWorkSessions(criteria, separationSeconds));
+		final List<WorkSession> result = new ArrayList<WorkSession>();
+		databaseRun(new FindWorkSessions(criteria, separationSeconds, new ICallback<WorkSession>() {
+			@Override
+			public void call(WorkSession value) {
+				result.add(value);
+			}
+		}));
+		return result;
+	}
+	
+	@Override
+	public void visitWorkSessions(SnapshotSelectionCriteria criteria, int separationSeconds, ICallback<WorkSession> visitor) {
+		databaseRun(new FindWorkSessions(criteria, separationSeconds, visitor));
 	}
 	
 	@Override
@@ -532,7 +642,19 @@ public class JDBCDatabase implements IDatabase {
 	
 	@Override
 	public List<Pair<Event, Change>> getEventsWithChanges(int userId, int problemId, int startEventId, int endEventId) {
-		return databaseRun(new GetEventsWithChanges(userId, problemId, startEventId, endEventId));
+		final List<Pair<Event, Change>> result = new ArrayList<Pair<Event, Change>>();
+		databaseRun(new VisitEventsWithChanges(userId, problemId, startEventId, endEventId, new ICallback<Pair<Event, Change>>() {
+			@Override
+			public void call(Pair<Event, Change> value) {
+				result.add(value);
+			}
+		}));
+		return result;
+	}
+	
+	@Override
+	public void visitEventsWithChanges(int userId, int problemId, int startEventId, int endEventId, ICallback<Pair<Event, Change>> visitor) {
+		databaseRun(new VisitEventsWithChanges(userId, problemId, startEventId, endEventId, visitor));
 	}
 	
 	@Override
@@ -651,6 +773,10 @@ public class JDBCDatabase implements IDatabase {
 					throw new PersistenceException("SQLException", e);
 				}
 			} finally {
+				// Close (or return to the statement cache) the statements
+				// and result sets used by the transaction
+				databaseRunnable.cleanup();
+
 				// If the transaction didn't succeed, roll back
 				if (!successfulCommit) {
 					try {
@@ -675,7 +801,10 @@ public class JDBCDatabase implements IDatabase {
 			throw new PersistenceException("Could not complete transaction (gave up after " + attempts + " attempts)");
 		}
 		
-		// Success!
+		// Success!  Perform actions that should only happen after
+		// the transaction's changes are visible to other transactions
+		// (e.g., invalidating cached data.)
+		databaseRunnable.committed();
 		return result;
 	}
 	
@@ -55,6 +55,16 @@ public class JDBCDatabaseConfig {
 		 * @return the database port string (e.g., ":8889" if using MAMP, empty string if MySQL is listening on its default port)
 		 */
 		public String getPortStr();
+		
+		/**
+		 * Get an optional configuration property used to tune how
+		 * the database is accessed (e.g., "pool.maxSize").
+		 * 
+		 * @param name         the property name, relative to the database property prefix
+		 * @param defaultValue the value to return if the property is not set
+		 * @return the property value, or the default value if the property is not set
+		 */
+		public String getOptionalProperty(String name, String defaultValue);
 	}
 	
 	private static JDBCDatabaseConfig instance;
@@ -122,6 +132,11 @@ public class JDBCDatabaseConfig {
 			public String getDatabaseName() {
 				return config.getProperty("cloudcoder.db.databaseName", "cloudcoderdb");
 			}
+			
+			@Override
+			public String getOptionalProperty(String name, String defaultValue) {
+				return config.getProperty("cloudcoder.db." + name, defaultValue);
+			}
 		});
 	}
 	
@@ -91,6 +91,11 @@ public abstract class JDBCDatabaseConfigServletContextListener implements Servle
 				}
 				return getParam(e.getServletContext(), propertyPrefix + ".portStr", "");
 			}
+			
+			@Override
+			public String getOptionalProperty(String name, String defaultValue) {
+				return getParam(e.getServletContext(), propertyPrefix + "." + name, defaultValue);
+			}
 		});
 	}
 	
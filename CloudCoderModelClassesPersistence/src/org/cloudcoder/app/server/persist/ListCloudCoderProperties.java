@@ -20,6 +20,7 @@ public class ListCloudCoderProperties
             "cloudcoder.db.databaseName",
             "cloudcoder.db.host",
             "cloudcoder.db.portStr",
+            "cloudcoder.db.pool",
             "cloudcoder.login.service",
             "cloudcoder.submitsvc.oop.host",
             "cloudcoder.submitsvc.oop.numThreads",
@@ -21,6 +21,8 @@ package org.cloudcoder.app.server.persist;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
 
@@ -33,6 +35,23 @@ public class MigrateDatabase {
 	protected static void migrateDatabase(ModelObjectSchema<?>[] tables,
 			String appName, String dbConfigPrefix)
 			throws ClassNotFoundException, IOException, SQLException {
+		migrateDatabase(tables, Collections.<ModelObjectSchema<?>, String>emptyMap(), appName, dbConfigPrefix);
+	}
+
+	/**
+	 * Migrate a database to the latest schema.
+	 * 
+	 * @param tables          the tables
+	 * @param populateSql     map of tables to SQL statements which populate them
+	 *                        (from the data in other tables) when they are
+	 *                        created by the migration
+	 * @param appName         the name of the application using the database
+	 * @param dbConfigPrefix  prefix of the database configuration properties
+	 */
+	protected static void migrateDatabase(ModelObjectSchema<?>[] tables,
+			Map<ModelObjectSchema<?>, String> populateSql,
+			String appName, String dbConfigPrefix)
+			throws ClassNotFoundException, IOException, SQLException {
 		System.out.println("Migrate the " + appName + " database to the latest schema.");
 		System.out.println("Important: make sure " + appName + " is not currently running!");
 		
@@ -62,6 +81,11 @@ public class MigrateDatabase {
 				System.out.print("Migrating " + table.getDbTableName() + " to version " + table.getVersion() + "...");
 				System.out.flush();
 				SchemaUtil.migrateTable(conn, table);
+				if (dbSchemaVersion < 0 && populateSql.containsKey(table)) {
+					System.out.print("populating...");
+					System.out.flush();
+					DBUtil.execSql(conn, populateSql.get(table));
+				}
 				System.out.println("done");
 				numMigrated++;
 			}
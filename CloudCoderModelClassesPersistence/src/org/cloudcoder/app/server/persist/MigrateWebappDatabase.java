@@ -2,15 +2,55 @@ package org.cloudcoder.app.server.persist;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.cloudcoder.app.server.persist.txn.Queries;
 import org.cloudcoder.app.server.persist.util.ConfigurationUtil;
+import org.cloudcoder.app.shared.model.BestSubmission;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.LatestChange;
+import org.cloudcoder.app.shared.model.LatestSubmission;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
 
 public class MigrateWebappDatabase {
+	/**
+	 * SQL statements to populate tables which are added to an existing database.
+	 */
+	private static final Map<ModelObjectSchema<?>, String> POPULATE_SQL = new HashMap<ModelObjectSchema<?>, String>();
+	static {
+		// The most recent changes are found by scanning all changes once
+		POPULATE_SQL.put(LatestChange.SCHEMA,
+				"insert into " + LatestChange.SCHEMA.getDbTableName() +
+				"  (user_id, problem_id, event_id, full_text_event_id) " +
+				"  select e.user_id, e.problem_id, max(e.id), " +
+				"         coalesce(max(case when c.type = " + ChangeType.FULL_TEXT.ordinal() + " then e.id end), -1) " +
+				"    from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+				"   where c.event_id = e.id " +
+				"   group by e.user_id, e.problem_id");
+		
+		// The most recent submission receipts are found by scanning
+		// all submission receipts once
+		POPULATE_SQL.put(LatestSubmission.SCHEMA,
+				"insert into " + LatestSubmission.SCHEMA.getDbTableName() +
+				"  (user_id, problem_id, event_id) " +
+				"  select e.user_id, e.problem_id, max(e.id) " +
+				"    from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " + Event.SCHEMA.getDbTableName() + " as e " +
+				"   where sr.event_id = e.id " +
+				"   group by e.user_id, e.problem_id");
+		
+		// The best submissions are found by inserting all submission receipts
+		POPULATE_SQL.put(BestSubmission.SCHEMA, Queries.getInsertBestSubmissionsSql(""));
+	}
+	
 	public static void main(String[] args) throws IOException, ClassNotFoundException {
 		ConfigurationUtil.configureLog4j();
 		
 		try {
-			MigrateDatabase.migrateDatabase(CreateWebappDatabase.TABLES, "CloudCoder", "cloudcoder.db");
+			MigrateDatabase.migrateDatabase(CreateWebappDatabase.TABLES, POPULATE_SQL, "CloudCoder", "cloudcoder.db");
 		} catch (SQLException e) {
 			System.err.println("Database error: " + e.getMessage());
 			e.printStackTrace();
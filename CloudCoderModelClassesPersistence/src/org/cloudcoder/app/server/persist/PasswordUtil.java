@@ -29,7 +29,7 @@ package org.cloudcoder.app.server.persist;
  */
 public class PasswordUtil {
 	/**
-	 * Base 2 log of the number of rounds of hashing to apply.
+	 * Default base 2 log of the number of rounds of hashing to apply.
 	 * If a lot of clients log into CloudCoder at the same time,
 	 * a significant CPU consumption spike can occur if this is
 	 * too high.  So, we specify a value that we can show
@@ -37,8 +37,35 @@ public class PasswordUtil {
 	 * Choosing a lower value does make dictionary attacks more
 	 * feasible, but we have to balance that with the need to
 	 * run the webapp on affordable server hardware.
+	 * The value can be changed using {@link #setLog2Rounds(int)}:
+	 * see the BCryptBenchmark program to measure the cost of
+	 * different values.
 	 */
-	private static final int LOG2_ROUNDS = 8;
+	public static final int DEFAULT_LOG2_ROUNDS = 8;
+	
+	private static volatile int log2Rounds = DEFAULT_LOG2_ROUNDS;
+	
+	/**
+	 * Set the base 2 log of the number of rounds of hashing to apply
+	 * to newly-hashed passwords.  Passwords hashed using a different number
+	 * of rounds are rehashed when the user logs in
+	 * (see {@link #needsRehash(String)}).
+	 * 
+	 * @param log2Rounds base 2 log of the number of rounds (4 to 31)
+	 */
+	public static void setLog2Rounds(int log2Rounds) {
+		if (log2Rounds < 4 || log2Rounds > 31) {
+			throw new IllegalArgumentException("Invalid log2 rounds: " + log2Rounds);
+		}
+		PasswordUtil.log2Rounds = log2Rounds;
+	}
+	
+	/**
+	 * @return base 2 log of the number of rounds of hashing applied to newly-hashed passwords
+	 */
+	public static int getLog2Rounds() {
+		return log2Rounds;
+	}
 	
 	/**
 	 * Convert a plaintext password to a hashed password.
@@ -47,7 +74,7 @@ public class PasswordUtil {
 	 * @return the hashed password
 	 */
 	public static String hashPassword(String plaintext) {
-		return BCrypt.hashpw(plaintext, BCrypt.gensalt(LOG2_ROUNDS));
+		return BCrypt.hashpw(plaintext, BCrypt.gensalt(log2Rounds));
 	}
 	
 	/**
@@ -61,4 +88,32 @@ public class PasswordUtil {
 	public static boolean matches(String plaintext, String hashed) {
 		return BCrypt.checkpw(plaintext, hashed);
 	}
+	
+	/**
+	 * Determine whether a hashed password should be replaced by a new hash,
+	 * because it was hashed using a different number of rounds than
+	 * the current setting.
+	 * 
+	 * @param hashed a hashed password
+	 * @return true if the password should be rehashed, false otherwise
+	 */
+	public static boolean needsRehash(String hashed) {
+		// Hashes have the form $2$NN$... or $2a$NN$..., where NN is the log2 rounds
+		if (!hashed.startsWith("$2")) {
+			return false;
+		}
+		int start = hashed.indexOf('$', 2) + 1;
+		if (start < 3 || start > 4 || hashed.length() < start + 3 || hashed.charAt(start + 2) != '$') {
+			return false;
+		}
+		char d1 = hashed.charAt(start), d2 = hashed.charAt(start + 1);
+		if (!isDigit(d1) || !isDigit(d2)) {
+			return false;
+		}
+		return (d1 - '0') * 10 + (d2 - '0') != log2Rounds;
+	}
+	
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
 }
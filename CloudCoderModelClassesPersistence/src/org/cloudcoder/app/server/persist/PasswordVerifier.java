@@ -0,0 +1,355 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verify passwords using a bounded pool of threads.
+ * Checking a password is deliberately CPU-intensive,
+ * so when many users log in at once (e.g., at the start of a lab),
+ * verifying passwords on the request threads can starve other requests
+ * of CPU time.  Limiting the number of threads verifying passwords
+ * bounds the amount of CPU used for logins: other login requests wait
+ * in a (bounded) queue.
+ * 
+ * <p>
+ * If a password hash was computed using a different number of rounds
+ * than the current setting (see {@link PasswordUtil#setLog2Rounds(int)}),
+ * the password is rehashed after it is verified.
+ * </p>
+ * 
+ * <p>
+ * Configuration properties (relative to the database property prefix,
+ * e.g., "cloudcoder.db"):
+ * <ul>
+ * <li><b>passwordVerifier.enable</b>: whether the pool is used (default true)</li>
+ * <li><b>passwordVerifier.numThreads</b>: number of threads verifying passwords
+ *     (default half of the available processors, but at least 1)</li>
+ * <li><b>passwordVerifier.maxQueued</b>: maximum number of verifications waiting
+ *     for a thread (default 500)</li>
+ * <li><b>passwordVerifier.timeoutMs</b>: maximum time to wait for a verification
+ *     (default 30000)</li>
+ * </ul>
+ * If the queue is full, or the verification times out, the
+ * password is treated as not matching.
+ * </p>
+ */
+public class PasswordVerifier {
+	private static final Logger logger = LoggerFactory.getLogger(PasswordVerifier.class);
+	
+	/**
+	 * Statistics are published for intervals of (at least) this many milliseconds.
+	 */
+	public static final long STATS_INTERVAL_MS = 10000L;
+	
+	private static PasswordVerifier instance;
+	private static Object instanceLock = new Object();
+	
+	private final ThreadPoolExecutor executor;
+	private final long timeoutMillis;
+	private final AtomicInteger numRejected;
+	
+	// Latency of verifications completed in the current stats interval
+	private final Object statsLock = new Object();
+	private long intervalStart;
+	private int count;
+	private long waitMillisSum, waitMillisMax;
+	private long verifyMillisSum;
+	
+	// Latency stats published at the end of the most recent interval
+	// in which passwords were verified
+	private volatile int waitMillisAvgPublished, waitMillisMaxPublished;
+	private volatile int verifyMillisAvgPublished;
+	
+	/**
+	 * Constructor.  Normally, the singleton instance should be used
+	 * (see {@link #create(ConfigProperties)}).
+	 * 
+	 * @param config the database configuration properties
+	 */
+	protected PasswordVerifier(ConfigProperties config) {
+		int numThreads = Integer.parseInt(config.getOptionalProperty("passwordVerifier.numThreads", String.valueOf(getDefaultNumThreads())));
+		int maxQueued = Integer.parseInt(config.getOptionalProperty("passwordVerifier.maxQueued", "500"));
+		this.timeoutMillis = Long.parseLong(config.getOptionalProperty("passwordVerifier.timeoutMs", "30000"));
+		if (numThreads <= 0 || maxQueued <= 0 || timeoutMillis <= 0) {
+			throw new IllegalArgumentException("passwordVerifier.numThreads, passwordVerifier.maxQueued, and passwordVerifier.timeoutMs must be positive");
+		}
+		logger.info("Verifying passwords using {} threads, with up to {} queued", numThreads, maxQueued);
+		
+		final AtomicInteger threadNum = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(
+				numThreads, numThreads,
+				0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maxQueued),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "PasswordVerifier-" + threadNum.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.numRejected = new AtomicInteger();
+		this.intervalStart = System.currentTimeMillis();
+	}
+	
+	/**
+	 * @return the default number of verification threads: half of the
+	 *         available processors, so that logins can't starve
+	 *         request handling and submissions of CPU time
+	 */
+	public static int getDefaultNumThreads() {
+		return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	}
+	
+	/**
+	 * @return the singleton instance of PasswordVerifier, or null if
+	 *         it has not been created (in which case passwords
+	 *         are verified by the calling thread)
+	 */
+	public static PasswordVerifier getInstance() {
+		synchronized (instanceLock) {
+			return instance;
+		}
+	}
+	
+	/**
+	 * Create the singleton instance of PasswordVerifier
+	 * (if enabled by the configuration properties).
+	 * 
+	 * @param config the database configuration properties
+	 */
+	public static void create(ConfigProperties config) {
+		if (!Boolean.parseBoolean(config.getOptionalProperty("passwordVerifier.enable", "true"))) {
+			logger.info("Password verifier is disabled");
+			return;
+		}
+		synchronized (instanceLock) {
+			if (instance != null) {
+				throw new IllegalStateException("PasswordVerifier already exists");
+			}
+			instance = new PasswordVerifier(config);
+		}
+	}
+	
+	/**
+	 * Destroy the singleton instance of PasswordVerifier (if it exists).
+	 */
+	public static void destroy() {
+		PasswordVerifier verifier;
+		synchronized (instanceLock) {
+			verifier = instance;
+			instance = null;
+		}
+		if (verifier != null) {
+			verifier.shutdown();
+		}
+	}
+	
+	/**
+	 * Stop the verification threads.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * Verify a plaintext password against a hashed password, using
+	 * the singleton instance if it exists, or the calling thread
+	 * if not.
+	 * 
+	 * @param plaintext a plaintext password
+	 * @param hashed    a hashed password
+	 * @return null if the password does not match (or could not be verified);
+	 *         otherwise, the hash that should be stored for the password,
+	 *         which is a new hash if the password needed to be rehashed
+	 *         (see {@link PasswordUtil#needsRehash(String)}), or
+	 *         <code>hashed</code> if not
+	 */
+	public static String verifyPassword(String plaintext, String hashed) {
+		PasswordVerifier verifier = getInstance();
+		if (verifier == null) {
+			return doVerify(plaintext, hashed);
+		}
+		return verifier.verify(plaintext, hashed);
+	}
+	
+	/**
+	 * Verify a plaintext password against a hashed password using
+	 * the thread pool.
+	 * 
+	 * @param plaintext a plaintext password
+	 * @param hashed    a hashed password
+	 * @return same as {@link #verifyPassword(String, String)}
+	 */
+	public String verify(final String plaintext, final String hashed) {
+		final long queued = System.currentTimeMillis();
+		FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				long start = System.currentTimeMillis();
+				String result = check(plaintext, hashed);
+				recordLatency(start - queued, System.currentTimeMillis() - start);
+				return result;
+			}
+		});
+		try {
+			executor.execute(future);
+		} catch (RejectedExecutionException e) {
+			numRejected.incrementAndGet();
+			logger.warn("Too many password verifications queued, rejecting login");
+			return null;
+		}
+		
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			cancel(future);
+			numRejected.incrementAndGet();
+			logger.warn("Password verification timed out, rejecting login");
+			return null;
+		} catch (InterruptedException e) {
+			cancel(future);
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			logger.error("Error verifying password", e.getCause());
+			return null;
+		}
+	}
+	
+	// Cancel a verification, and if it is still queued, remove it from the
+	// queue so that it doesn't take up space that other logins could use
+	private void cancel(FutureTask<String> future) {
+		future.cancel(false);
+		executor.remove(future);
+	}
+	
+	/**
+	 * Check a password: called by the verification threads.
+	 * 
+	 * @param plaintext a plaintext password
+	 * @param hashed    a hashed password
+	 * @return same as {@link #verifyPassword(String, String)}
+	 */
+	protected String check(String plaintext, String hashed) {
+		return doVerify(plaintext, hashed);
+	}
+	
+	private static String doVerify(String plaintext, String hashed) {
+		if (!PasswordUtil.matches(plaintext, hashed)) {
+			return null;
+		}
+		return PasswordUtil.needsRehash(hashed) ? PasswordUtil.hashPassword(plaintext) : hashed;
+	}
+	
+	private void recordLatency(long waitMillis, long verifyMillis) {
+		synchronized (statsLock) {
+			count++;
+			waitMillisSum += waitMillis;
+			waitMillisMax = Math.max(waitMillisMax, waitMillis);
+			verifyMillisSum += verifyMillis;
+			updateStats(System.currentTimeMillis());
+		}
+	}
+	
+	// Publish statistics if the current interval has ended
+	// (and passwords were verified during the interval.)
+	// Caller must hold statsLock.
+	private void updateStats(long now) {
+		if (now - intervalStart < STATS_INTERVAL_MS) {
+			return;
+		}
+		if (count > 0) {
+			waitMillisAvgPublished = toInt(waitMillisSum / count);
+			waitMillisMaxPublished = toInt(waitMillisMax);
+			verifyMillisAvgPublished = toInt(verifyMillisSum / count);
+		}
+		intervalStart = now;
+		count = 0;
+		waitMillisSum = waitMillisMax = verifyMillisSum = 0L;
+	}
+	
+	private void updateStats() {
+		synchronized (statsLock) {
+			updateStats(System.currentTimeMillis());
+		}
+	}
+	
+	private static int toInt(long millis) {
+		return (int) Math.min(millis, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * @return number of password verifications currently waiting for a thread
+	 */
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * @return total number of password verifications rejected because the queue
+	 *         was full or the verification timed out
+	 */
+	public int getNumRejected() {
+		return numRejected.get();
+	}
+	
+	/**
+	 * @return average time (in milliseconds) verifications waited for a thread,
+	 *         in the most recent interval in which passwords were verified
+	 */
+	public int getWaitMillisAvg() {
+		updateStats();
+		return waitMillisAvgPublished;
+	}
+	
+	/**
+	 * @return maximum time (in milliseconds) a verification waited for a thread,
+	 *         in the most recent interval in which passwords were verified
+	 */
+	public int getWaitMillisMax() {
+		updateStats();
+		return waitMillisMaxPublished;
+	}
+	
+	/**
+	 * @return average time (in milliseconds) to verify (and if necessary,
+	 *         rehash) a password, in the most recent interval in which
+	 *         passwords were verified
+	 */
+	public int getVerifyMillisAvg() {
+		updateStats();
+		return verifyMillisAvgPublished;
+	}
+}
@@ -0,0 +1,157 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.server.persist.txn.GetBestSubmissionReceiptsForProblem;
+import org.cloudcoder.app.server.persist.txn.Queries;
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.ConfigurationUtil;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.BestSubmission;
+import org.cloudcoder.app.shared.model.IFactory;
+import org.cloudcoder.app.shared.model.IProblem;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.UserAndSubmissionReceipt;
+
+/**
+ * Check that the {@link BestSubmission} table agrees with the best
+ * submission receipts computed from scratch, for every problem.
+ * Run with the "--fix" option to rebuild the best submissions of
+ * problems for which there are discrepancies, or with the "--backfill"
+ * option to rebuild the best submissions of all problems.
+ */
+public class VerifyBestSubmissions {
+	public static void main(String[] args) throws Exception {
+		boolean fix = false, backfill = false;
+		for (String arg : args) {
+			if (arg.equals("--fix")) {
+				fix = true;
+			} else if (arg.equals("--backfill")) {
+				backfill = true;
+			} else {
+				System.err.println("Usage: " + VerifyBestSubmissions.class.getName() + " [--fix|--backfill]");
+				System.exit(1);
+			}
+		}
+		
+		ConfigurationUtil.configureLog4j();
+		
+		Class.forName(JDBCDatabase.JDBC_DRIVER_CLASS);
+		Properties config = DBUtil.getConfigProperties();
+		Connection conn = DBUtil.connectToDatabase(config, "cloudcoder.db");
+		conn.setAutoCommit(false);
+		
+		List<IProblem> problems = DBUtil.getAllModelObjects(conn, Problem.SCHEMA, new IFactory<IProblem>() {
+			@Override
+			public IProblem create() {
+				return new Problem();
+			}
+		});
+		
+		int numMismatched = 0;
+		for (IProblem p : problems) {
+			Problem problem = (Problem) p;
+			int numMismatches = backfill ? 0 : countMismatches(conn, problem);
+			if (numMismatches > 0) {
+				System.out.println("Problem " + problem.getProblemId() + ": " + numMismatches + " users with incorrect best submissions");
+				numMismatched++;
+			}
+			if (backfill || (fix && numMismatches > 0)) {
+				rebuild(conn, problem);
+			}
+		}
+		
+		if (backfill) {
+			System.out.println("Rebuilt best submissions for " + problems.size() + " problems");
+		} else {
+			System.out.println(numMismatched + " of " + problems.size() + " problems have incorrect best submissions" +
+					(fix && numMismatched > 0 ? " (fixed)" : ""));
+		}
+		
+		DBUtil.closeQuietly(conn);
+	}
+
+	private static int countMismatches(Connection conn, Problem problem) throws SQLException {
+		List<UserAndSubmissionReceipt> expected = run(conn, new GetBestSubmissionReceiptsForProblem(0, problem, Long.MAX_VALUE, false));
+		List<UserAndSubmissionReceipt> actual = run(conn, new GetBestSubmissionReceiptsForProblem(0, problem, Long.MAX_VALUE, true));
+		
+		Map<Integer, SubmissionReceipt> actualByUser = new HashMap<Integer, SubmissionReceipt>();
+		for (UserAndSubmissionReceipt pair : actual) {
+			actualByUser.put(pair.getUser().getId(), pair.getReceipt());
+		}
+		
+		int numMismatches = 0;
+		for (UserAndSubmissionReceipt pair : expected) {
+			SubmissionReceipt e = pair.getReceipt();
+			SubmissionReceipt a = actualByUser.get(pair.getUser().getId());
+			if (!sameScore(e, a)) {
+				numMismatches++;
+			}
+		}
+		return numMismatches;
+	}
+
+	/*
+	 * When there are ties, the two queries might choose different
+	 * (equally good) submissions, so only the number of tests passed
+	 * and the timestamp are compared.
+	 */
+	private static boolean sameScore(SubmissionReceipt e, SubmissionReceipt a) {
+		if (e == null || a == null) {
+			return e == a;
+		}
+		return e.getNumTestsPassed() == a.getNumTestsPassed()
+				&& e.getEvent().getTimestamp() == a.getEvent().getTimestamp();
+	}
+
+	private static void rebuild(Connection conn, final Problem problem) throws SQLException {
+		run(conn, new AbstractDatabaseRunnableNoAuthException<Boolean>() {
+			@Override
+			public Boolean run(Connection conn) throws SQLException {
+				Queries.doRebuildBestSubmissions(conn, problem.getProblemId(), -1, this);
+				return true;
+			}
+			@Override
+			public String getDescription() {
+				return " rebuilding best submissions for problem";
+			}
+		});
+	}
+
+	private static<E> E run(Connection conn, AbstractDatabaseRunnableNoAuthException<E> txn) throws SQLException {
+		try {
+			E result = txn.run(conn);
+			conn.commit();
+			return result;
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			txn.cleanup();
+		}
+	}
+}
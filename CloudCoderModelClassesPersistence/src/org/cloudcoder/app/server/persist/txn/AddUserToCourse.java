@@ -22,6 +22,7 @@ import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.ConfigurationUtil;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.EditedUser;
@@ -64,6 +65,7 @@ public class AddUserToCourse extends AbstractDatabaseRunnable<Boolean> {
 		int userId = ConfigurationUtil.createOrUpdateUser(conn, user.getUsername(), user.getFirstname(), user.getLastname(), user.getEmail(), editedUser.getPassword(), user.getWebsite());
 		user.setId(userId);
 		ConfigurationUtil.registerUser(conn, user.getId(), courseId, editedUser.getRegistrationType(), editedUser.getSection());
+		DatabaseCache.getInstance().invalidateCourseRegistrations(this, courseId, user.getId());
 		
 		return true;
 	}
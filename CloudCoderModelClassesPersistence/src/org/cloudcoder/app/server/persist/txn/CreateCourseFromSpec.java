@@ -24,6 +24,7 @@ import java.util.Arrays;
 import org.cloudcoder.app.server.persist.CreateCourse;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.ConfigurationUtil;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.CourseCreationSpec;
 import org.cloudcoder.app.shared.model.CourseRegistration;
 import org.cloudcoder.app.shared.model.OperationResult;
@@ -57,6 +58,10 @@ public class CreateCourseFromSpec extends AbstractDatabaseRunnableNoAuthExceptio
 		
 		// Use CreateCourse to actually create the course
 		CreateCourse.Instructor instructor = new CreateCourse.Instructor(user, spec.getSection());
-		return CreateCourse.createCourse(conn, spec.getCourse(), Arrays.asList(instructor));
+		OperationResult result = CreateCourse.createCourse(conn, spec.getCourse(), Arrays.asList(instructor));
+		if (result.isSuccess()) {
+			DatabaseCache.getInstance().invalidateCourseRegistrations(this, spec.getCourse().getId(), user.getId());
+		}
+		return result;
 	}
 }
@@ -22,6 +22,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
@@ -68,6 +69,9 @@ public class DeleteProblem extends AbstractDatabaseRunnable<Boolean> {
 		
 		stmt.executeUpdate();
 		
+		DatabaseCache.getInstance().invalidateProblem(this, problem.getProblemId());
+		DatabaseCache.getInstance().invalidateModules(this, problem.getCourseId());
+		
 		return true;
 	}
 
@@ -22,6 +22,7 @@ import java.sql.SQLException;
 import java.util.List;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.BestSubmission;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.UserAndSubmissionReceipt;
 
@@ -34,6 +35,7 @@ public class GetBestSubmissionReceiptsForProblem
 	private final int section;
 	private final Problem problem;
 	private final long maxTs;
+	private final boolean useBestSubmissionsTable;
 
 	/**
 	 * Constructor.
@@ -42,17 +44,20 @@ public class GetBestSubmissionReceiptsForProblem
 	 * @param problem  the {@link Problem}
 	 * @param maxTs    the submission maximum timestamp (submissions with greater timestamps
 	 *                 are ignored
+	 * @param useBestSubmissionsTable  true if the best submissions should be read from
+	 *                 the {@link BestSubmission} table (only possible if there is no maximum timestamp)
 	 */
-	public GetBestSubmissionReceiptsForProblem(int section, Problem problem, long maxTs) {
+	public GetBestSubmissionReceiptsForProblem(int section, Problem problem, long maxTs, boolean useBestSubmissionsTable) {
 		this.section = section;
 		this.problem = problem;
 		this.maxTs = maxTs;
+		this.useBestSubmissionsTable = useBestSubmissionsTable;
 	}
 
 	@Override
 	public List<UserAndSubmissionReceipt> run(Connection conn)
 			throws SQLException {
-		return Queries.doGetBestSubmissionReceipts(conn, problem, section, maxTs, this);
+		return Queries.doGetBestSubmissionReceipts(conn, problem, section, maxTs, useBestSubmissionsTable, this);
 	}
 
 	@Override
@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.BestSubmission;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.User;
@@ -38,6 +39,7 @@ public class GetBestSubmissionReceiptsForProblemForAuthenticatedUser
 	private final int section;
 	private final Problem problem;
 	private final User authenticatedUser;
+	private final boolean useBestSubmissionsTable;
 
 	/**
 	 * Constructor.
@@ -46,12 +48,15 @@ public class GetBestSubmissionReceiptsForProblemForAuthenticatedUser
 	 * @param problem            the {@link Problem}
 	 * @param authenticatedUser  the authenticated {@link User}, who should be an
 	 *                           instructor in the course
+	 * @param useBestSubmissionsTable  true if the best submissions should be read from
+	 *                           the {@link BestSubmission} table
 	 */
 	public GetBestSubmissionReceiptsForProblemForAuthenticatedUser(
-			int section, Problem problem, User authenticatedUser) {
+			int section, Problem problem, User authenticatedUser, boolean useBestSubmissionsTable) {
 		this.section = section;
 		this.problem = problem;
 		this.authenticatedUser = authenticatedUser;
+		this.useBestSubmissionsTable = useBestSubmissionsTable;
 	}
 
 	@Override
@@ -62,7 +67,7 @@ public class GetBestSubmissionReceiptsForProblemForAuthenticatedUser
 			return new ArrayList<UserAndSubmissionReceipt>();
 		}
 
-		return Queries.doGetBestSubmissionReceipts(conn, problem, section, Long.MAX_VALUE, this);
+		return Queries.doGetBestSubmissionReceipts(conn, problem, section, Long.MAX_VALUE, useBestSubmissionsTable, this);
 	}
 
 	@Override
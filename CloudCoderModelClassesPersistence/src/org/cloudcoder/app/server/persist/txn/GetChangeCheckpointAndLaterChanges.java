@@ -0,0 +1,67 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.Pair;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Transaction to get the most recent {@link ChangeCheckpoint} for work done
+ * on a given {@link Problem} by a given {@link User}, and the {@link Change}s
+ * needed to reconstruct the current text from it.
+ */
+public class GetChangeCheckpointAndLaterChanges extends AbstractDatabaseRunnableNoAuthException<Pair<ChangeCheckpoint, List<Change>>> {
+	private final int problemId;
+	private final User user;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param problemId the unique id of the problem
+	 * @param user      the user
+	 */
+	public GetChangeCheckpointAndLaterChanges(int problemId, User user) {
+		this.problemId = problemId;
+		this.user = user;
+	}
+
+	@Override
+	public Pair<ChangeCheckpoint, List<Change>> run(Connection conn) throws SQLException {
+		ChangeCheckpoint checkpoint = Queries.doGetChangeCheckpoint(conn, user.getId(), problemId, this);
+		List<Change> changeList = Queries.doGetChangesNewerThanCheckpoint(conn, user.getId(), problemId, checkpoint, this);
+		if (checkpoint != null && checkpoint.getText() == null) {
+			// Changes have been counted, but no checkpoint has been written yet
+			checkpoint = null;
+		}
+		return new Pair<ChangeCheckpoint, List<Change>>(checkpoint, changeList);
+	}
+
+	@Override
+	public String getDescription() {
+		return " retrieving change checkpoint and later changes";
+	}
+}
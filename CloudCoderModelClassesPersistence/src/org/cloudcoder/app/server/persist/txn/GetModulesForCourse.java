@@ -26,7 +26,10 @@ import java.util.List;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
+import org.cloudcoder.app.server.persist.util.ReadThroughCache;
 import org.cloudcoder.app.shared.model.Course;
+import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.Module;
 import org.cloudcoder.app.shared.model.User;
 
@@ -45,19 +48,32 @@ public class GetModulesForCourse extends AbstractDatabaseRunnableNoAuthException
 	}
 
 	@Override
-	public Module[] run(Connection conn) throws SQLException {
+	public Module[] run(final Connection conn) throws SQLException {
+		// Only users registered in the course may see its modules
+		CourseRegistrationList regList = Queries.doGetCourseRegistrations(conn, course.getId(), user.getId(), this);
+		if (regList.getList().isEmpty()) {
+			return new Module[0];
+		}
+		
+		// The modules are the same for all users in the course, so they can be cached
+		return DatabaseCache.getInstance().getModuleCache().get(course.getId(), new ReadThroughCache.Loader<Integer, Module[]>() {
+			@Override
+			public Module[] load(Integer courseId) throws SQLException {
+				return doLoadModules(conn, courseId);
+			}
+		});
+	}
+
+	private Module[] doLoadModules(Connection conn, int courseId) throws SQLException {
 		PreparedStatement stmt = prepareStatement(
 				conn,
 				"select m.* from cc_modules as m " +
 				" where m.id in " +
-				"   (select p.module_id from cc_problems as p, cc_course_registrations as cr " +
-				"     where p.course_id = cr.course_id " +
-				"       and cr.course_id = ? " +
-				"       and cr.user_id = ?) " +
+				"   (select p.module_id from cc_problems as p " +
+				"     where p.course_id = ?) " +
 				" order by m.name"
 		);
-		stmt.setInt(1, course.getId());
-		stmt.setInt(2, user.getId());
+		stmt.setInt(1, courseId);
 		
 		ResultSet resultSet = executeQuery(stmt);
 		List<Module> result = new ArrayList<Module>();
@@ -25,11 +25,14 @@ import java.sql.SQLException;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.LatestChange;
 import org.cloudcoder.app.shared.model.User;
 
 /**
  * Transaction to get the most recent {@link Change} recording a {@link User}'s
- * work on a {@link Problem}. 
+ * work on a {@link Problem}.  The change is found using the
+ * {@link LatestChange} for the user and problem, and its {@link Event}
+ * is populated.
  */
 public class GetMostRecentChangeForUserAndProblem extends AbstractDatabaseRunnableNoAuthException<Change> {
 	private final int problemId;
@@ -50,15 +53,15 @@ public class GetMostRecentChangeForUserAndProblem extends AbstractDatabaseRunnab
 	public Change run(Connection conn) throws SQLException {
 		PreparedStatement stmt = prepareStatement(
 				conn,
-				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
-				" where c.event_id = e.id " +
-				"   and e.id = (select max(ee.id) from " + Change.SCHEMA.getDbTableName() + " as cc, " + Event.SCHEMA.getDbTableName() + " as ee " +
-				"                where cc.event_id = ee.id " +
-				"                  and ee.problem_id = ? " +
-				"                  and ee.user_id = ?)"
+				"select c.*, e.* from " + Change.SCHEMA.getDbTableName() + " as c, " + LatestChange.SCHEMA.getDbTableName() + " as lc, " +
+				Event.SCHEMA.getDbTableName() + " as e " +
+				" where lc.user_id = ? " +
+				"   and lc.problem_id = ? " +
+				"   and c.event_id = lc.event_id " +
+				"   and e.id = c.event_id"
 		);
-		stmt.setInt(1, problemId);
-		stmt.setInt(2, user.getId());
+		stmt.setInt(1, user.getId());
+		stmt.setInt(2, problemId);
 		
 		ResultSet resultSet = executeQuery(stmt);
 		if (!resultSet.next()) {
@@ -66,7 +69,10 @@ public class GetMostRecentChangeForUserAndProblem extends AbstractDatabaseRunnab
 		}
 		
 		Change change = new Change();
-		Queries.load(change, resultSet, 1);
+		int index = Queries.load(change, resultSet, 1);
+		Event event = new Event();
+		Queries.loadGeneric(event, resultSet, index, Event.SCHEMA);
+		change.setEvent(event);
 		return change;
 	}
 
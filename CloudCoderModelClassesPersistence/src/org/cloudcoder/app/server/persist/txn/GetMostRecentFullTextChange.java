@@ -24,13 +24,13 @@ import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.shared.model.Change;
-import org.cloudcoder.app.shared.model.ChangeType;
-import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.LatestChange;
 import org.cloudcoder.app.shared.model.User;
 
 /**
  * Transaction to get the most recent full text {@link Change} for
- * work done on given  {@link Problem} by a given {@link User}. 
+ * work done on given  {@link Problem} by a given {@link User}.
+ * The change is found using the {@link LatestChange} for the user and problem.
  */
 public class GetMostRecentFullTextChange extends AbstractDatabaseRunnableNoAuthException<Change> {
 	private final int problemId;
@@ -51,17 +51,13 @@ public class GetMostRecentFullTextChange extends AbstractDatabaseRunnableNoAuthE
 	public Change run(Connection conn) throws SQLException {
 		PreparedStatement stmt = prepareStatement(
 				conn,
-				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
-				" where c.event_id = e.id " +
-				"   and e.id = (select max(ee.id) from " + Change.SCHEMA.getDbTableName() + " as cc, " + Event.SCHEMA.getDbTableName() + " as ee " +
-				"                where cc.event_id = ee.id " +
-				"                  and ee.problem_id = ? " +
-				"                  and ee.user_id = ? " +
-				"                  and cc.type = ?)"
+				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + LatestChange.SCHEMA.getDbTableName() + " as lc " +
+				" where lc.user_id = ? " +
+				"   and lc.problem_id = ? " +
+				"   and c.event_id = lc.full_text_event_id"
 		);
-		stmt.setInt(1, problemId);
-		stmt.setInt(2, user.getId());
-		stmt.setInt(3, ChangeType.FULL_TEXT.ordinal());
+		stmt.setInt(1, user.getId());
+		stmt.setInt(2, problemId);
 
 		ResultSet resultSet = executeQuery(stmt);
 		if (!resultSet.next()) {
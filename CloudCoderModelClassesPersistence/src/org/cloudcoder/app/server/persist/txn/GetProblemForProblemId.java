@@ -18,8 +18,6 @@
 package org.cloudcoder.app.server.persist.txn;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
@@ -42,18 +40,7 @@ public class GetProblemForProblemId extends AbstractDatabaseRunnableNoAuthExcept
 
 	@Override
 	public Problem run(Connection conn) throws SQLException {
-		PreparedStatement stmt = prepareStatement(
-				conn,
-				"select * from " + Problem.SCHEMA.getDbTableName() + " where problem_id = ?");
-		stmt.setInt(1, problemId);
-		
-		ResultSet resultSet = executeQuery(stmt);
-		if (resultSet.next()) {
-			Problem problem = new Problem();
-			Queries.loadGeneric(problem, resultSet, 1, Problem.SCHEMA);
-			return problem;
-		}
-		return null;
+		return Queries.doGetProblem(conn, problemId, this);
 	}
 
 	/* (non-Javadoc)
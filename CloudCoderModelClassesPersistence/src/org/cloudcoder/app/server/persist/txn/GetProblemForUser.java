@@ -18,14 +18,11 @@
 package org.cloudcoder.app.server.persist.txn;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
-import org.cloudcoder.app.server.persist.util.DBUtil;
-import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistration;
+import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.Pair;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Quiz;
@@ -54,36 +51,23 @@ public class GetProblemForUser extends
 
 	@Override
 	public Pair<Problem, Quiz> run(Connection conn) throws SQLException {
-		PreparedStatement stmt = prepareStatement(
-				conn,
-				"select p.*, r.* from " + Problem.SCHEMA.getDbTableName() + " as p, " + Course.SCHEMA.getDbTableName() + " as c, " + CourseRegistration.SCHEMA.getDbTableName() + " as r " +
-				" where p.problem_id = ? " +
-				"   and c.id = p.course_id " +
-				"   and r.course_id = c.id " +
-				"   and r.user_id = ?"
-		);
-		stmt.setInt(1, problemId);
-		stmt.setInt(2, user.getId());
-		
-		ResultSet resultSet = executeQuery(stmt);
-		
-		if (!resultSet.next()) {
-			// no such problem, or user is not registered in the course
+		// Get Problem and CourseRegistrations (both are usually cached)
+		Problem problem = Queries.doGetProblem(conn, problemId, this);
+		if (problem == null) {
+			// no such problem
+			return null;
+		}
+		CourseRegistrationList regList = Queries.doGetCourseRegistrations(conn, problem.getCourseId(), user.getId(), this);
+		if (regList.getList().isEmpty()) {
+			// user is not registered in the course
 			// in which the problem is assigned
 			return null;
 		}
 		
-		// Get Problem and CourseRegistration
-		Problem problem = new Problem();
-		CourseRegistration reg = new CourseRegistration();
-		
-		int index = DBUtil.loadModelObjectFields(problem, Problem.SCHEMA, resultSet);
-		index = DBUtil.loadModelObjectFields(reg, CourseRegistration.SCHEMA, resultSet, index);
-		
 		// Check to see if user is authorized to see this problem
 		
 		// Instructors are always allowed to see problems, even if not visible
-		if (reg.getRegistrationType().isInstructor()) {
+		if (regList.isInstructor()) {
 			return new Pair<Problem, Quiz>(problem, null);
 		}
 		
@@ -92,11 +76,14 @@ public class GetProblemForUser extends
 			return new Pair<Problem, Quiz>(problem, null);
 		}
 		
-		// See if there is an ongoing quiz
-		Quiz quiz = Queries.doFindQuiz(problem.getProblemId(), reg.getSection(), System.currentTimeMillis(), conn, this);
-		if (quiz != null) {
-			System.out.println("Found quiz for problem " + problem.getProblemId());
-			return new Pair<Problem, Quiz>(problem, quiz);
+		// See if there is an ongoing quiz in any of the user's sections
+		long now = System.currentTimeMillis();
+		for (CourseRegistration reg : regList.getList()) {
+			Quiz quiz = Queries.doFindQuiz(problem.getProblemId(), reg.getSection(), now, conn, this);
+			if (quiz != null) {
+				System.out.println("Found quiz for problem " + problem.getProblemId());
+				return new Pair<Problem, Quiz>(problem, quiz);
+			}
 		}
 		
 		return null;
@@ -22,7 +22,6 @@ import java.sql.SQLException;
 import java.util.List;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
-import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.TestCase;
@@ -57,9 +56,10 @@ public class GetTestCasesForProblemCheckAuth extends AbstractDatabaseRunnableNoA
 	@Override
 	public TestCase[] run(Connection conn) throws SQLException {
 		// Find the problem
-		Problem problem = new Problem();
-		problem.setProblemId(problemId);
-		DBUtil.loadModelObject(conn, problem);
+		Problem problem = Queries.doGetProblem(conn, problemId, this);
+		if (problem == null) {
+			return new TestCase[0];
+		}
 		
 		// Check user's registration in the course
 		CourseRegistrationList regList = Queries.doGetCourseRegistrations(
@@ -30,14 +30,21 @@ import java.util.Scanner;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
+import org.cloudcoder.app.server.persist.util.ReadThroughCache;
+import org.cloudcoder.app.shared.model.BestSubmission;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
 import org.cloudcoder.app.shared.model.ConfigurationSetting;
 import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistration;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.CourseRegistrationType;
 import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.IContainsEvent;
+import org.cloudcoder.app.shared.model.LatestChange;
+import org.cloudcoder.app.shared.model.LatestSubmission;
 import org.cloudcoder.app.shared.model.ModelObjectField;
 import org.cloudcoder.app.shared.model.ModelObjectSchema;
 import org.cloudcoder.app.shared.model.Problem;
@@ -285,6 +292,21 @@ public class Queries {
 	}
 
 	public static CourseRegistrationList doGetCourseRegistrations(
+			final Connection conn,
+			final int courseId,
+			final int userId,
+			final AbstractDatabaseRunnable<?> abstractDatabaseRunnable) throws SQLException {
+		return DatabaseCache.getInstance().getCourseRegistrationCache().get(
+				DatabaseCache.courseRegistrationKey(courseId, userId),
+				new ReadThroughCache.Loader<Long, CourseRegistrationList>() {
+					@Override
+					public CourseRegistrationList load(Long key) throws SQLException {
+						return doLoadCourseRegistrations(conn, courseId, userId, abstractDatabaseRunnable);
+					}
+				});
+	}
+
+	private static CourseRegistrationList doLoadCourseRegistrations(
 			Connection conn,
 			int courseId,
 			int userId,
@@ -388,10 +410,178 @@ public class Queries {
 		storeNoIdGeneric(receipt, stmt, 1, SubmissionReceipt.SCHEMA);
 		stmt.execute();
 		
+		// Update the user's LatestSubmission and BestSubmission for the problem
+		doUpdateLatestSubmission(conn, receipt.getEvent().getUserId(), receipt.getEvent().getProblemId(), receipt.getEventId(), dbRunnable);
+		doUpdateBestSubmission(conn, receipt, dbRunnable);
+		
 		// Store the TestResults
 		Queries.doInsertTestResults(testResultList, receipt.getEventId(), conn, dbRunnable);
 	}
 
+	/**
+	 * Update the {@link LatestSubmission} for given user and problem
+	 * (creating it if it doesn't exist yet).
+	 * 
+	 * @param conn        the database connection
+	 * @param userId      the user id
+	 * @param problemId   the problem id
+	 * @param eventId     the event id of the new submission receipt
+	 * @param dbRunnable  the {@link AbstractDatabaseRunnable}
+	 * @throws SQLException
+	 */
+	public static void doUpdateLatestSubmission(
+			Connection conn,
+			int userId,
+			int problemId,
+			int eventId,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"insert into " + LatestSubmission.SCHEMA.getDbTableName() +
+				" (user_id, problem_id, event_id) values (?, ?, ?) " +
+				" on duplicate key update event_id = greatest(event_id, values(event_id))"
+		);
+		stmt.setInt(1, userId);
+		stmt.setInt(2, problemId);
+		stmt.setInt(3, eventId);
+		stmt.executeUpdate();
+	}
+
+	/**
+	 * On duplicate key clause for inserting a submission receipt into
+	 * the {@link BestSubmission} table: the existing row is replaced if the
+	 * inserted receipt passed more tests, or the same number of tests
+	 * but earlier.  (The event id is updated first, so the other
+	 * columns are updated exactly when the event id changed.)
+	 */
+	private static final String BEST_SUBMISSION_ON_DUPLICATE_KEY;
+	static {
+		String t = BestSubmission.SCHEMA.getDbTableName();
+		BEST_SUBMISSION_ON_DUPLICATE_KEY =
+				" on duplicate key update " +
+				"   " + t + ".event_id = if(values(num_tests_passed) > " + t + ".num_tests_passed " +
+				"       or (values(num_tests_passed) = " + t + ".num_tests_passed and values(timestamp) < " + t + ".timestamp), " +
+				"     values(event_id), " + t + ".event_id), " +
+				"   " + t + ".num_tests_passed = if(" + t + ".event_id = values(event_id), values(num_tests_passed), " + t + ".num_tests_passed), " +
+				"   " + t + ".timestamp = if(" + t + ".event_id = values(event_id), values(timestamp), " + t + ".timestamp)";
+	}
+
+	/**
+	 * Get SQL to insert the {@link BestSubmission}s computed from the
+	 * submission receipts matching given condition.  Receipts are inserted
+	 * in order by event id, so when there is a tie, the receipt with the
+	 * lowest event id is the best.
+	 * 
+	 * @param condition condition on the submission receipts (sr) and their events (e),
+	 *                  beginning with "and", or an empty string for all submission receipts
+	 * @return the SQL statement
+	 */
+	public static String getInsertBestSubmissionsSql(String condition) {
+		return
+				"insert into " + BestSubmission.SCHEMA.getDbTableName() +
+				" (problem_id, user_id, event_id, num_tests_passed, timestamp) " +
+				" select e.problem_id, e.user_id, e.id, sr.num_tests_passed, e.timestamp " +
+				"   from " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr, " + Event.SCHEMA.getDbTableName() + " as e " +
+				"  where sr.event_id = e.id " + condition +
+				"  order by e.id asc " +
+				BEST_SUBMISSION_ON_DUPLICATE_KEY;
+	}
+
+	/**
+	 * Update the {@link BestSubmission} for the user and problem of a
+	 * newly-stored {@link SubmissionReceipt} (creating it if it doesn't exist yet).
+	 * 
+	 * @param conn        the database connection
+	 * @param receipt     the {@link SubmissionReceipt}, which must have its {@link Event}
+	 * @param dbRunnable  the {@link AbstractDatabaseRunnable}
+	 * @throws SQLException
+	 */
+	public static void doUpdateBestSubmission(
+			Connection conn,
+			SubmissionReceipt receipt,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"insert into " + BestSubmission.SCHEMA.getDbTableName() +
+				" (problem_id, user_id, event_id, num_tests_passed, timestamp) values (?, ?, ?, ?, ?) " +
+				BEST_SUBMISSION_ON_DUPLICATE_KEY
+		);
+		stmt.setInt(1, receipt.getEvent().getProblemId());
+		stmt.setInt(2, receipt.getEvent().getUserId());
+		stmt.setInt(3, receipt.getEventId());
+		stmt.setInt(4, receipt.getNumTestsPassed());
+		stmt.setLong(5, receipt.getEvent().getTimestamp());
+		stmt.executeUpdate();
+	}
+
+	/**
+	 * Recompute {@link BestSubmission}s from the submission receipts.
+	 * This is necessary when a submission receipt is replaced, since
+	 * it might not be the best submission any more.
+	 * 
+	 * @param conn        the database connection
+	 * @param problemId   the problem id
+	 * @param userId      the user id, or -1 to recompute the best submissions of all users
+	 * @param dbRunnable  the {@link AbstractDatabaseRunnable}
+	 * @throws SQLException
+	 */
+	public static void doRebuildBestSubmissions(
+			Connection conn,
+			int problemId,
+			int userId,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement delete = dbRunnable.prepareStatement(
+				conn,
+				"delete from " + BestSubmission.SCHEMA.getDbTableName() +
+				" where problem_id = ? and (? < 0 or user_id = ?)"
+		);
+		delete.setInt(1, problemId);
+		delete.setInt(2, userId);
+		delete.setInt(3, userId);
+		delete.executeUpdate();
+		
+		PreparedStatement insert = dbRunnable.prepareStatement(
+				conn,
+				getInsertBestSubmissionsSql("and e.problem_id = ? and (? < 0 or e.user_id = ?)")
+		);
+		insert.setInt(1, problemId);
+		insert.setInt(2, userId);
+		insert.setInt(3, userId);
+		insert.executeUpdate();
+	}
+
+	/**
+	 * Get the {@link Problem} with given problem id.
+	 * 
+	 * @param conn       the database connection
+	 * @param problemId  the problem id
+	 * @param dbRunnable the {@link AbstractDatabaseRunnable}
+	 * @return the {@link Problem}, or null if there is no such problem
+	 * @throws SQLException
+	 */
+	public static Problem doGetProblem(
+			final Connection conn,
+			int problemId,
+			final AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		return DatabaseCache.getInstance().getProblemCache().get(problemId, new ReadThroughCache.Loader<Integer, Problem>() {
+			@Override
+			public Problem load(Integer key) throws SQLException {
+				PreparedStatement stmt = dbRunnable.prepareStatement(
+						conn,
+						"select * from " + Problem.SCHEMA.getDbTableName() + " where problem_id = ?");
+				stmt.setInt(1, key);
+				
+				ResultSet resultSet = dbRunnable.executeQuery(stmt);
+				if (resultSet.next()) {
+					Problem problem = new Problem();
+					loadGeneric(problem, resultSet, 1, Problem.SCHEMA);
+					return problem;
+				}
+				return null;
+			}
+		});
+	}
+
 	/**
 	 * Get test cases for given problem id.
 	 * 
@@ -402,6 +592,18 @@ public class Queries {
 	 * @throws SQLException
 	 */
 	public static List<TestCase> doGetTestCasesForProblem(
+			final Connection conn,
+			int problemId,
+			final AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		return DatabaseCache.getInstance().getTestCaseCache().get(problemId, new ReadThroughCache.Loader<Integer, List<TestCase>>() {
+			@Override
+			public List<TestCase> load(Integer key) throws SQLException {
+				return doLoadTestCasesForProblem(conn, key, dbRunnable);
+			}
+		});
+	}
+
+	private static List<TestCase> doLoadTestCasesForProblem(
 			Connection conn,
 			int problemId,
 			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
@@ -421,6 +623,156 @@ public class Queries {
 		return result;
 	}
 
+	/**
+	 * Get the {@link ChangeCheckpoint} for given user and problem.
+	 * 
+	 * @param conn       the database connection
+	 * @param userId     the user id
+	 * @param problemId  the problem id
+	 * @param dbRunnable the {@link AbstractDatabaseRunnable}
+	 * @return the {@link ChangeCheckpoint}, or null if there is none
+	 * @throws SQLException
+	 */
+	public static ChangeCheckpoint doGetChangeCheckpoint(
+			Connection conn,
+			int userId,
+			int problemId,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select * from " + ChangeCheckpoint.SCHEMA.getDbTableName() +
+				" where user_id = ? and problem_id = ?");
+		stmt.setInt(1, userId);
+		stmt.setInt(2, problemId);
+		
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (!resultSet.next()) {
+			return null;
+		}
+		ChangeCheckpoint checkpoint = new ChangeCheckpoint();
+		loadGeneric(checkpoint, resultSet, 1, ChangeCheckpoint.SCHEMA);
+		return checkpoint;
+	}
+
+	/**
+	 * Get the {@link LatestChange} for given user and problem.
+	 * 
+	 * @param conn       the database connection
+	 * @param userId     the user id
+	 * @param problemId  the problem id
+	 * @param dbRunnable the {@link AbstractDatabaseRunnable}
+	 * @return the {@link LatestChange}, or null if the user has no
+	 *         changes for the problem
+	 * @throws SQLException
+	 */
+	public static LatestChange doGetLatestChange(
+			Connection conn,
+			int userId,
+			int problemId,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select * from " + LatestChange.SCHEMA.getDbTableName() +
+				" where user_id = ? and problem_id = ?");
+		stmt.setInt(1, userId);
+		stmt.setInt(2, problemId);
+		
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		if (!resultSet.next()) {
+			return null;
+		}
+		LatestChange latestChange = new LatestChange();
+		loadGeneric(latestChange, resultSet, 1, LatestChange.SCHEMA);
+		return latestChange;
+	}
+
+	/**
+	 * Record newly-stored {@link Change}s in the {@link LatestChange}
+	 * for their user and problem (creating it if it doesn't exist yet).
+	 * 
+	 * @param conn             the database connection
+	 * @param userId           the user id
+	 * @param problemId        the problem id
+	 * @param eventId          the event id of the most recent newly-stored change
+	 * @param fullTextEventId  the event id of the most recent newly-stored full-text
+	 *                         change, or -1 if none of the changes is a full-text change
+	 * @param dbRunnable       the {@link AbstractDatabaseRunnable}
+	 * @throws SQLException
+	 */
+	public static void doUpdateLatestChange(
+			Connection conn,
+			int userId,
+			int problemId,
+			int eventId,
+			int fullTextEventId,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"insert into " + LatestChange.SCHEMA.getDbTableName() +
+				" (user_id, problem_id, event_id, full_text_event_id) values (?, ?, ?, ?) " +
+				" on duplicate key update event_id = greatest(event_id, values(event_id)), " +
+				"   full_text_event_id = greatest(full_text_event_id, values(full_text_event_id))"
+		);
+		stmt.setInt(1, userId);
+		stmt.setInt(2, problemId);
+		stmt.setInt(3, eventId);
+		stmt.setInt(4, fullTextEventId);
+		stmt.executeUpdate();
+	}
+
+	/**
+	 * Get the {@link Change}s for given user and problem that must be applied
+	 * to a {@link ChangeCheckpoint} to reconstruct the current text.
+	 * If there is a full-text change newer than the checkpoint,
+	 * the changes start with the most recent full-text change.
+	 * 
+	 * @param conn       the database connection
+	 * @param userId     the user id
+	 * @param problemId  the problem id
+	 * @param checkpoint the {@link ChangeCheckpoint}: null, or one with null text,
+	 *                   if no checkpoint has been written
+	 * @param dbRunnable the {@link AbstractDatabaseRunnable}
+	 * @return the {@link Change}s, ordered by event id
+	 * @throws SQLException
+	 */
+	public static List<Change> doGetChangesNewerThanCheckpoint(
+			Connection conn,
+			int userId,
+			int problemId,
+			ChangeCheckpoint checkpoint,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		int baseRev = (checkpoint != null && checkpoint.getText() != null) ? checkpoint.getEventId() : -1;
+		
+		// Start with the most recent full-text change, if it is newer than the checkpoint
+		LatestChange latestChange = doGetLatestChange(conn, userId, problemId, dbRunnable);
+		if (latestChange == null) {
+			return new ArrayList<Change>();
+		}
+		int firstEventId = Math.max(baseRev + 1, latestChange.getFullTextEventId());
+		
+		PreparedStatement stmt = dbRunnable.prepareStatement(
+				conn,
+				"select c.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+				" where c.event_id = e.id " +
+				"   and e.user_id = ? " +
+				"   and e.problem_id = ? " +
+				"   and e.id >= ? " +
+				" order by e.id asc"
+		);
+		stmt.setInt(1, userId);
+		stmt.setInt(2, problemId);
+		stmt.setInt(3, firstEventId);
+		
+		List<Change> result = new ArrayList<Change>();
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		while (resultSet.next()) {
+			Change change = new Change();
+			load(change, resultSet, 1);
+			result.add(change);
+		}
+		return result;
+	}
+
 	/**
 	 * Store the Event objects embedded in the given IContainsEvent objects.
 	 * 
@@ -546,6 +898,9 @@ public class Queries {
 		}
 		problem.setProblemId(generatedKey.getInt(1));
 		
+		// The problem's module might not have been used in the course before
+		DatabaseCache.getInstance().invalidateModules(databaseRunnable, problem.getCourseId());
+		
 		return true;
 	}
 
@@ -623,6 +978,9 @@ public class Queries {
 			throw new SQLException("Could not update problem (no such problem in database?)");
 		}
 		
+		DatabaseCache.getInstance().invalidateProblem(databaseRunnable, problem.getProblemId());
+		DatabaseCache.getInstance().invalidateModules(databaseRunnable, problem.getCourseId());
+		
 		return true;
 	}
 
@@ -636,6 +994,8 @@ public class Queries {
 		deleteStmt.setInt(1, problemId);
 		
 		deleteStmt.executeUpdate();
+		
+		DatabaseCache.getInstance().invalidateTestCases(abstractDatabaseRunnable, problemId);
 	}
 
 	public static Boolean doInsertTestCases(final Problem problem,
@@ -665,6 +1025,8 @@ public class Queries {
 			throw new SQLException("wrong number of generated keys for inserted test cases");
 		}
 		
+		DatabaseCache.getInstance().invalidateTestCases(databaseRunnable, problem.getProblemId());
+		
 		return true;
 	}
 
@@ -731,11 +1093,50 @@ public class Queries {
 			final Problem problem,
 			final int section,
 			long maxTs,
+			boolean useBestSubmissionsTable,
 			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		final List<UserAndSubmissionReceipt> result = new ArrayList<UserAndSubmissionReceipt>();
+		doVisitBestSubmissionReceipts(conn, problem, section, maxTs, useBestSubmissionsTable, new ICallback<UserAndSubmissionReceipt>() {
+			@Override
+			public void call(UserAndSubmissionReceipt value) {
+				result.add(value);
+			}
+		}, dbRunnable);
+		return result;
+	}
+
+	/**
+	 * Visit the best submission receipt of each user in the course (and section)
+	 * of given {@link Problem}.
+	 * 
+	 * @param conn                     the database connection
+	 * @param problem                  the {@link Problem}
+	 * @param section                  the section (0 for all sections)
+	 * @param maxTs                    submissions with later timestamps are ignored
+	 * @param useBestSubmissionsTable  true if the {@link BestSubmission} table should be
+	 *                                 used (it is only used if maxTs is Long.MAX_VALUE)
+	 * @param visitor                  the visitor to which the {@link UserAndSubmissionReceipt}s
+	 *                                 should be sent (the receipt is null for users
+	 *                                 who have no submissions)
+	 * @param dbRunnable               the {@link AbstractDatabaseRunnable}
+	 * @throws SQLException
+	 */
+	public static void doVisitBestSubmissionReceipts(
+			Connection conn,
+			final Problem problem,
+			final int section,
+			long maxTs,
+			boolean useBestSubmissionsTable,
+			ICallback<UserAndSubmissionReceipt> visitor,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		if (useBestSubmissionsTable && maxTs == Long.MAX_VALUE) {
+			doVisitBestSubmissionReceiptsFromTable(conn, problem, section, visitor, dbRunnable);
+			return;
+		}
 		
 		// Clearly, my SQL is either amazing or appalling.
 		// Probably the latter.
-		PreparedStatement stmt = dbRunnable.prepareStatement(
+		PreparedStatement stmt = dbRunnable.prepareStreamingStatement(
 				conn,
 				
 				"select uu.*, best.* from cc_users as uu " +
@@ -784,40 +1185,74 @@ public class Queries {
 		stmt.setInt(7, section);
 		
 		ResultSet resultSet = dbRunnable.executeQuery(stmt);
-		List<UserAndSubmissionReceipt> result = new ArrayList<UserAndSubmissionReceipt>();
 		
 		while (resultSet.next()) {
-			int index = 1;
-			User user = new User();
-			index = loadGeneric(user, resultSet, index, User.SCHEMA);
-	
-			SubmissionReceipt receipt;
-			
-			// Is there a best submission receipt?
-			if (resultSet.getObject(index) != null) {
-				// Found a best submission receipt
-	
-				index++; // skip best.the_user_id column
-				
-				Event event = new Event();
-				index = loadGeneric(event, resultSet, index, Event.SCHEMA);
-				receipt = new SubmissionReceipt();
-				loadGeneric(receipt, resultSet, index, SubmissionReceipt.SCHEMA);
-				
-				receipt.setEvent(event);
-			} else {
-				// No best submission receipt
-				receipt = null;
-			}
+			visitor.call(loadUserAndBestSubmissionReceipt(resultSet));
+		}
+	}
+
+	private static void doVisitBestSubmissionReceiptsFromTable(
+			Connection conn,
+			Problem problem,
+			int section,
+			ICallback<UserAndSubmissionReceipt> visitor,
+			AbstractDatabaseRunnable<?> dbRunnable) throws SQLException {
+		// Same columns as the query that finds the best submission receipts
+		// from scratch
+		PreparedStatement stmt = dbRunnable.prepareStreamingStatement(
+				conn,
+				"select uu.*, b.user_id as the_user_id, e.*, sr.* from cc_users as uu " +
+				"  left join " + BestSubmission.SCHEMA.getDbTableName() + " as b " +
+				"         on b.problem_id = ? and b.user_id = uu.id " +
+				"  left join " + Event.SCHEMA.getDbTableName() + " as e " +
+				"         on e.id = b.event_id " +
+				"  left join " + SubmissionReceipt.SCHEMA.getDbTableName() + " as sr " +
+				"         on sr.event_id = b.event_id " +
+				" where uu.id in (select distinct xu.id from cc_users as xu, cc_course_registrations as xcr " +
+				"                  where xu.id = xcr.user_id " +
+				"                    and xcr.course_id = ? " +
+				"                    and (? = 0 or xcr.section = ?)) "
+		);
+		stmt.setInt(1, problem.getProblemId());
+		stmt.setInt(2, problem.getCourseId());
+		stmt.setInt(3, section); // if section is 0, all sections will be included
+		stmt.setInt(4, section);
+		
+		ResultSet resultSet = dbRunnable.executeQuery(stmt);
+		
+		while (resultSet.next()) {
+			visitor.call(loadUserAndBestSubmissionReceipt(resultSet));
+		}
+	}
+
+	private static UserAndSubmissionReceipt loadUserAndBestSubmissionReceipt(ResultSet resultSet) throws SQLException {
+		int index = 1;
+		User user = new User();
+		index = loadGeneric(user, resultSet, index, User.SCHEMA);
+
+		SubmissionReceipt receipt;
+		
+		// Is there a best submission receipt?
+		if (resultSet.getObject(index) != null) {
+			// Found a best submission receipt
+
+			index++; // skip best.the_user_id column
 			
-			UserAndSubmissionReceipt pair = new UserAndSubmissionReceipt();
-			pair.setUser(user);
-			pair.setReceipt(receipt);
+			Event event = new Event();
+			index = loadGeneric(event, resultSet, index, Event.SCHEMA);
+			receipt = new SubmissionReceipt();
+			loadGeneric(receipt, resultSet, index, SubmissionReceipt.SCHEMA);
 			
-			result.add(pair);
+			receipt.setEvent(event);
+		} else {
+			// No best submission receipt
+			receipt = null;
 		}
 		
-		return result;
+		UserAndSubmissionReceipt pair = new UserAndSubmissionReceipt();
+		pair.setUser(user);
+		pair.setReceipt(receipt);
+		return pair;
 	}
 
 }
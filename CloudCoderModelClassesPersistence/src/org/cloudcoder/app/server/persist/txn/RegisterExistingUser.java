@@ -23,6 +23,7 @@ import java.sql.SQLException;
 import org.cloudcoder.app.server.persist.NoSuchUniqueIdException;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.Course;
 import org.cloudcoder.app.shared.model.CourseRegistration;
 import org.cloudcoder.app.shared.model.CourseRegistrationSpec;
@@ -62,6 +63,7 @@ public class RegisterExistingUser extends AbstractDatabaseRunnableNoAuthExceptio
 		
 		// Insert the CourseRegistration
 		DBUtil.storeModelObject(conn, reg);
+		DatabaseCache.getInstance().invalidateCourseRegistrations(this, spec.getCourseId(), user.getId());
 		
 		Course course = null;
 		try {
@@ -19,9 +19,11 @@ package org.cloudcoder.app.server.persist.txn;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.Event;
 import org.cloudcoder.app.shared.model.SubmissionReceipt;
 
 /**
@@ -51,13 +53,26 @@ public class ReplaceSubmissionReceipt extends
 		PreparedStatement stmt = prepareStatement(
 				conn,
 				"update " + SubmissionReceipt.SCHEMA.getDbTableName() + 
-				"  set status = ?, num_tests_attempted = ?, num_tests_passed = ?");
+				"  set status = ?, num_tests_attempted = ?, num_tests_passed = ?" +
+				" where event_id = ?");
 		stmt.setInt(1, receipt.getStatus().ordinal());
 		stmt.setInt(2, receipt.getNumTestsAttempted());
 		stmt.setInt(3, receipt.getNumTestsPassed());
+		stmt.setInt(4, receipt.getEventId());
 		
 		stmt.executeUpdate();
 		
+		// The updated receipt might have changed which submission
+		// is the user's best submission for the problem
+		PreparedStatement findEvent = prepareStatement(
+				conn,
+				"select user_id, problem_id from " + Event.SCHEMA.getDbTableName() + " where id = ?");
+		findEvent.setInt(1, receipt.getEventId());
+		ResultSet resultSet = executeQuery(findEvent);
+		if (resultSet.next()) {
+			Queries.doRebuildBestSubmissions(conn, resultSet.getInt(2), resultSet.getInt(1), this);
+		}
+		
 		return true;
 	}
 
@@ -53,38 +53,11 @@ public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<B
 	@Override
 	public Boolean run(Connection conn) throws SQLException {
 		// FIXME: only supports retrieving explicit submissions, not intermediate snapshots
-		StringBuilder sql = new StringBuilder();
-		sql.append(
-				"select e.*, ch.*, sr.event_id, p.course_id, sr.*" +
-				"  from cc_submission_receipts as sr, cc_events as e, cc_changes as ch, cc_problems as p" +
-				" where sr.last_edit_event_id = e.id " +
-				"   and e.id = ch.event_id " +
-				"   and e.problem_id = p.problem_id"
-		);
-		if (criteria.getCourseId() != SnapshotSelectionCriteria.ANY) {
-			sql.append(" and p.course_id = ?");
-		}
-		if (criteria.getProblemId() != SnapshotSelectionCriteria.ANY) {
-			sql.append(" and e.problem_id = ?");
-		}
-		if (criteria.getUserId() != SnapshotSelectionCriteria.ANY) {
-			sql.append(" and e.user_id = ?");
-		}
-		
-		String query = sql.toString();
+		String query = "select e.*, ch.*, sr.event_id, p.course_id, sr.*" + getFromAndWhereClauses(criteria);
 		logger.info("Retrieving snapshots: {}", query);
 		
-		PreparedStatement stmt = prepareStatement(conn, query);
-		int place = 1;
-		if (criteria.getCourseId() != SnapshotSelectionCriteria.ANY) {
-			stmt.setInt(place++, criteria.getCourseId());
-		}
-		if (criteria.getProblemId() != SnapshotSelectionCriteria.ANY) {
-			stmt.setInt(place++, criteria.getProblemId());
-		}
-		if (criteria.getUserId() != SnapshotSelectionCriteria.ANY) {
-			stmt.setInt(place++, criteria.getUserId());
-		}
+		PreparedStatement stmt = prepareStreamingStatement(conn, query);
+		setCriteriaParameters(stmt, criteria);
 		
 		ResultSet resultSet = executeQuery(stmt);
 		while (resultSet.next()) {
@@ -118,6 +91,56 @@ public class RetrieveSnapshots extends AbstractDatabaseRunnableNoAuthException<B
 		return true;
 	}
 
+	/**
+	 * Get the from and where clauses of a query to find the
+	 * snapshots matching given {@link SnapshotSelectionCriteria}.
+	 * The tables are cc_submission_receipts (sr), cc_events (e)
+	 * for the full-text change, cc_changes (ch), and cc_problems (p).
+	 * 
+	 * @param criteria the {@link SnapshotSelectionCriteria}
+	 * @return the from and where clauses
+	 */
+	static String getFromAndWhereClauses(SnapshotSelectionCriteria criteria) {
+		StringBuilder sql = new StringBuilder();
+		sql.append(
+				"  from cc_submission_receipts as sr, cc_events as e, cc_changes as ch, cc_problems as p" +
+				" where sr.last_edit_event_id = e.id " +
+				"   and e.id = ch.event_id " +
+				"   and e.problem_id = p.problem_id"
+		);
+		if (criteria.getCourseId() != SnapshotSelectionCriteria.ANY) {
+			sql.append(" and p.course_id = ?");
+		}
+		if (criteria.getProblemId() != SnapshotSelectionCriteria.ANY) {
+			sql.append(" and e.problem_id = ?");
+		}
+		if (criteria.getUserId() != SnapshotSelectionCriteria.ANY) {
+			sql.append(" and e.user_id = ?");
+		}
+		return sql.toString();
+	}
+	
+	/**
+	 * Set the parameters of a query using the where clause returned
+	 * by {@link #getFromAndWhereClauses(SnapshotSelectionCriteria)}.
+	 * 
+	 * @param stmt     the query
+	 * @param criteria the {@link SnapshotSelectionCriteria}
+	 * @throws SQLException
+	 */
+	static void setCriteriaParameters(PreparedStatement stmt, SnapshotSelectionCriteria criteria) throws SQLException {
+		int place = 1;
+		if (criteria.getCourseId() != SnapshotSelectionCriteria.ANY) {
+			stmt.setInt(place++, criteria.getCourseId());
+		}
+		if (criteria.getProblemId() != SnapshotSelectionCriteria.ANY) {
+			stmt.setInt(place++, criteria.getProblemId());
+		}
+		if (criteria.getUserId() != SnapshotSelectionCriteria.ANY) {
+			stmt.setInt(place++, criteria.getUserId());
+		}
+	}
+
 	@Override
 	public String getDescription() {
 		return " retrieving snapshots/submissions";
@@ -24,6 +24,7 @@ import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.CourseRegistrationType;
 import org.cloudcoder.app.shared.model.Module;
@@ -98,6 +99,8 @@ public class SetModuleForProblem extends AbstractDatabaseRunnable<Module> {
 		// Update the problem to use the new module
 		problem.setModuleId(module.getId());
 		DBUtil.updateModelObject(conn, problem, Problem.SCHEMA);
+		DatabaseCache.getInstance().invalidateProblem(this, problem.getProblemId());
+		DatabaseCache.getInstance().invalidateModules(this, problem.getCourseId());
 		
 		return module;
 	}
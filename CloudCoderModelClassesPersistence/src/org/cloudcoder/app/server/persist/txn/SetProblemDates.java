@@ -6,6 +6,7 @@ import java.sql.SQLException;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnable;
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DatabaseCache;
 import org.cloudcoder.app.shared.model.CloudCoderAuthenticationException;
 import org.cloudcoder.app.shared.model.CourseRegistrationList;
 import org.cloudcoder.app.shared.model.OperationResult;
@@ -53,6 +54,10 @@ public class SetProblemDates extends AbstractDatabaseRunnableNoAuthException<Ope
 				stmt.addBatch();
 			}
 			stmt.executeBatch();
+			
+			for (Problem problem : problems) {
+				DatabaseCache.getInstance().invalidateProblem(this, problem.getProblemId());
+			}
 		}
 		
 		return new OperationResult(true, "Successfully updated dates/times of exercise(s)");
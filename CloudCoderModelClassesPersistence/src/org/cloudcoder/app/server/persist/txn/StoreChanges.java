@@ -20,15 +20,36 @@ package org.cloudcoder.app.server.persist.txn;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
 import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.LatestChange;
 
 /**
  * Store a sequence of {@link Change}s representing a user's edits
- * on a problem.
+ * on a problem.  The {@link LatestChange} for the user and problem
+ * is updated in the same transaction.  After every {@link #CHECKPOINT_INTERVAL} changes,
+ * a {@link ChangeCheckpoint} with the full text is written,
+ * so that the current text can be reconstructed without applying
+ * every change since the most recent full-text change.  Errors updating
+ * the checkpoint are rolled back to a savepoint and logged, so they
+ * don't cause the changes to be lost.
  */
 public class StoreChanges extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	/**
+	 * Number of changes after which the {@link ChangeCheckpoint}
+	 * for a user and problem is rewritten.
+	 */
+	public static final int CHECKPOINT_INTERVAL = 100;
+	
 	private final Change[] changeList;
 
 	/**
@@ -56,9 +77,111 @@ public class StoreChanges extends AbstractDatabaseRunnableNoAuthException<Boolea
 		}
 		insertChange.executeBatch();
 		
+		// Count the changes for each user and problem (normally there is just one),
+		// and find the most recent full-text changes
+		Map<String, Change> lastChanges = new LinkedHashMap<String, Change>();
+		Map<String, Integer> numChanges = new HashMap<String, Integer>();
+		Map<String, Integer> fullTextEventIds = new HashMap<String, Integer>();
+		for (Change change : changeList) {
+			String key = change.getEvent().getUserId() + "," + change.getEvent().getProblemId();
+			lastChanges.put(key, change);
+			Integer count = numChanges.get(key);
+			numChanges.put(key, count != null ? count + 1 : 1);
+			if (change.getType() == ChangeType.FULL_TEXT) {
+				fullTextEventIds.put(key, change.getEventId());
+			}
+		}
+		for (Map.Entry<String, Change> entry : lastChanges.entrySet()) {
+			Change lastChange = entry.getValue();
+			Integer fullTextEventId = fullTextEventIds.get(entry.getKey());
+			Queries.doUpdateLatestChange(
+					conn,
+					lastChange.getEvent().getUserId(),
+					lastChange.getEvent().getProblemId(),
+					lastChange.getEventId(),
+					fullTextEventId != null ? fullTextEventId : -1,
+					this);
+			
+			// Roll back just the checkpoint update if it fails.  If the transaction
+			// as a whole was rolled back (e.g., because of a deadlock), the savepoint
+			// is gone, and the exception is rethrown so that the transaction is retried.
+			Savepoint savepoint = conn.setSavepoint();
+			try {
+				updateCheckpoint(conn, lastChange, numChanges.get(entry.getKey()));
+				conn.releaseSavepoint(savepoint);
+			} catch (SQLException e) {
+				try {
+					conn.rollback(savepoint);
+				} catch (SQLException ex) {
+					throw e;
+				}
+				getLogger().warn("Could not update change checkpoint for user " +
+						lastChange.getEvent().getUserId() + ", problem " + lastChange.getEvent().getProblemId(), e);
+			}
+		}
+		
 		return true;
 	}
 
+	private void updateCheckpoint(Connection conn, Change lastChange, int numChanges) throws SQLException {
+		int userId = lastChange.getEvent().getUserId();
+		int problemId = lastChange.getEvent().getProblemId();
+		
+		// Add the changes to the count of changes since the checkpoint
+		// (creating the checkpoint row if it doesn't exist yet).
+		// This also locks the row until the transaction commits.
+		PreparedStatement countChanges = prepareStatement(
+				conn,
+				"insert into " + ChangeCheckpoint.SCHEMA.getDbTableName() +
+				" (user_id, problem_id, event_id, num_changes, text) values (?, ?, -1, ?, NULL) " +
+				" on duplicate key update num_changes = num_changes + values(num_changes)"
+		);
+		countChanges.setInt(1, userId);
+		countChanges.setInt(2, problemId);
+		countChanges.setInt(3, numChanges);
+		countChanges.executeUpdate();
+		
+		ChangeCheckpoint checkpoint = Queries.doGetChangeCheckpoint(conn, userId, problemId, this);
+		if (checkpoint == null
+				|| checkpoint.getNumChanges() < CHECKPOINT_INTERVAL
+				|| lastChange.getType() == ChangeType.FULL_TEXT) {
+			// Not time for a checkpoint yet (a full-text change is as good as a checkpoint)
+			return;
+		}
+		
+		// Reconstruct the current text
+		List<Change> deltaList = Queries.doGetChangesNewerThanCheckpoint(conn, userId, problemId, checkpoint, this);
+		String text = null;
+		if (!deltaList.isEmpty()) {
+			try {
+				text = new ApplyChangeToTextDocument().apply(checkpoint.getText() != null ? checkpoint : null, deltaList).getText();
+				if (text.length() > ChangeCheckpoint.TEXT.getSize()) {
+					getLogger().warn("Text for user {}, problem {} is too long for a checkpoint", userId, problemId);
+					text = null;
+				}
+			} catch (RuntimeException e) {
+				getLogger().warn("Exception applying deltas to program text for checkpoint", e);
+			}
+		}
+		
+		// Write the checkpoint.  If the text couldn't be reconstructed,
+		// just reset the count, so that another attempt is made later.
+		PreparedStatement update = prepareStatement(
+				conn,
+				"update " + ChangeCheckpoint.SCHEMA.getDbTableName() +
+				"   set num_changes = 0" + (text != null ? ", event_id = ?, text = ?" : "") +
+				" where user_id = ? and problem_id = ?"
+		);
+		int index = 1;
+		if (text != null) {
+			update.setInt(index++, deltaList.get(deltaList.size() - 1).getEventId());
+			update.setString(index++, text);
+		}
+		update.setInt(index++, userId);
+		update.setInt(index++, problemId);
+		update.executeUpdate();
+	}
+
 	@Override
 	public String getDescription() {
 		return "storing text changes";
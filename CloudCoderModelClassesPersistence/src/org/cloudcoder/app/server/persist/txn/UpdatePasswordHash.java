@@ -0,0 +1,74 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.PasswordUtil;
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Transaction to replace a {@link User}'s password hash with a
+ * new hash of the same password (e.g., when the password is rehashed
+ * at login because the number of hashing rounds changed: see
+ * {@link PasswordUtil#needsRehash(String)}.)  The hash is only replaced
+ * if it hasn't been changed since it was read, so that a concurrent
+ * password change isn't undone.
+ */
+public class UpdatePasswordHash extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private final int userId;
+	private final String oldHash;
+	private final String newHash;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param userId  the user id
+	 * @param oldHash the password hash that was verified
+	 * @param newHash the new password hash
+	 */
+	public UpdatePasswordHash(int userId, String oldHash, String newHash) {
+		this.userId = userId;
+		this.oldHash = oldHash;
+		this.newHash = newHash;
+	}
+
+	@Override
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStatement(
+				conn,
+				"update " + User.SCHEMA.getDbTableName() +
+				"   set " + User.PASSWORD_HASH.getName() + " = ? " +
+				" where " + User.ID.getName() + " = ? " +
+				"   and " + User.PASSWORD_HASH.getName() + " = ?");
+		stmt.setString(1, newHash);
+		stmt.setInt(2, userId);
+		stmt.setString(3, oldHash);
+		
+		return stmt.executeUpdate() > 0;
+	}
+
+	@Override
+	public String getDescription() {
+		return " updating password hash";
+	}
+}
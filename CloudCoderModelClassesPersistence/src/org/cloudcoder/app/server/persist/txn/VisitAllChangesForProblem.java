@@ -1,7 +1,6 @@
 // CloudCoder - a web-based pedagogical programming environment
-// Copyright (C) 2011-2013, Jaime Spacco <jspacco@knox.edu>
-// Copyright (C) 2011-2013, David H. Hovemeyer <david.hovemeyer@gmail.com>
-// Copyright (C) 2013, York College of Pennsylvania
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
 //
 // This program is free software: you can redistribute it and/or modify
 // it under the terms of the GNU Affero General Public License as published by
@@ -16,67 +15,69 @@
 // You should have received a copy of the GNU Affero General Public License
 // along with this program.  If not, see <http://www.gnu.org/licenses/>.
 
+
 package org.cloudcoder.app.server.persist.txn;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
-import org.cloudcoder.app.server.persist.util.DBUtil;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.Problem;
 
 /**
- * Query to get all {@link Change}s (edits) for all users on a
- * specified problem.
- * 
- * @author David Hovemeyer
+ * Visit all {@link Change}s (with their {@link Event}s) for given {@link Problem},
+ * for all users, ordered by user id and then by event id.
+ * Each user's changes are visited in the same order as
+ * {@link VisitAllChangesNewerThan} would visit them.
  */
-public class LoadChangesForAllUsersOnProblem extends AbstractDatabaseRunnableNoAuthException<List<Change>> {
-	private int problemId;
+public class VisitAllChangesForProblem extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private final int problemId;
+	private final ICallback<Change> visitor;
 
 	/**
 	 * Constructor.
 	 * 
-	 * @param problemId the problem id
+	 * @param problemId the {@link Problem} id
+	 * @param visitor   the visitor (callback) to which the retrieved {@link Change}s
+	 *                  should be sent
 	 */
-	public LoadChangesForAllUsersOnProblem(int problemId) {
+	public VisitAllChangesForProblem(int problemId, ICallback<Change> visitor) {
 		this.problemId = problemId;
+		this.visitor = visitor;
 	}
 
 	@Override
-	public String getDescription() {
-		return "get all changes for all users for problem";
-	}
-
-	@Override
-	public List<Change> run(Connection conn) throws SQLException {
-		PreparedStatement stmt = prepareStatement(
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStreamingStatement(
 				conn,
-				"select e.*, c.* " +
-				"  from cc_events as e, cc_changes as c " +
-				" where e.id = c.event_id " +
+				"select c.*, e.* from " + Change.SCHEMA.getDbTableName() + " as c, " + Event.SCHEMA.getDbTableName() + " as e " +
+				" where c.event_id = e.id " +
 				"   and e.problem_id = ? " +
-				"order by e.user_id asc, e.id asc"
+				" order by e.user_id asc, e.id asc"
 		);
 		stmt.setInt(1, problemId);
 		
-		List<Change> result = new ArrayList<Change>();
-		
 		ResultSet resultSet = executeQuery(stmt);
 		while (resultSet.next()) {
-			Event event = new Event();
-			int index = DBUtil.loadModelObjectFields(event, Event.SCHEMA, resultSet);
 			Change change = new Change();
+			int index = 1;
+			index = Queries.load(change, resultSet, index);
+			Event event = new Event();
+			index = Queries.loadGeneric(event, resultSet, index, Event.SCHEMA);
 			change.setEvent(event);
-			Queries.load(change, resultSet, index);
-			result.add(change);
+			visitor.call(change);
 		}
 		
-		return result;
+		return true;
+	}
+
+	@Override
+	public String getDescription() {
+		return " retrieving text changes for problem";
 	}
 }
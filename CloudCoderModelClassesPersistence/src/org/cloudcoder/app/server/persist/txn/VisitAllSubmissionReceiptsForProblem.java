@@ -0,0 +1,86 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+
+/**
+ * Visit all {@link SubmissionReceipt}s (with their {@link Event}s) for given
+ * {@link Problem}, for all users, ordered by user id, then by timestamp,
+ * and then by event id.  Each user's receipts are visited in timestamp
+ * order, as {@link GetAllSubmissionReceiptsForUserAndProblem} returns them:
+ * receipts with the same timestamp (which that query leaves in no
+ * particular order) are visited in event id order.
+ */
+public class VisitAllSubmissionReceiptsForProblem extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private final int problemId;
+	private final ICallback<SubmissionReceipt> visitor;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param problemId the {@link Problem} id
+	 * @param visitor   the visitor (callback) to which the retrieved {@link SubmissionReceipt}s
+	 *                  should be sent
+	 */
+	public VisitAllSubmissionReceiptsForProblem(int problemId, ICallback<SubmissionReceipt> visitor) {
+		this.problemId = problemId;
+		this.visitor = visitor;
+	}
+
+	@Override
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStreamingStatement(
+				conn,
+				"select sr.*, e.* from cc_submission_receipts as sr, cc_events as e " +
+				"  where sr.event_id = e.id " +
+				"    and e.problem_id = ? " +
+				" order by e.user_id asc, e.timestamp asc, e.id asc"
+		);
+		stmt.setInt(1, problemId);
+		
+		ResultSet resultSet = executeQuery(stmt);
+		while (resultSet.next()) {
+			int index = 1;
+			SubmissionReceipt receipt = new SubmissionReceipt();
+			index = DBUtil.loadModelObjectFields(receipt, SubmissionReceipt.SCHEMA, resultSet, index);
+			Event event = new Event();
+			index = DBUtil.loadModelObjectFields(event, Event.SCHEMA, resultSet, index);
+			receipt.setEvent(event);
+			visitor.call(receipt);
+		}
+		
+		return true;
+	}
+
+	@Override
+	public String getDescription() {
+		return " retrieving submission receipts for problem";
+	}
+}
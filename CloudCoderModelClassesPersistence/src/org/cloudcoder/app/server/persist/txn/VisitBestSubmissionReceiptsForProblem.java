@@ -0,0 +1,70 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.BestSubmission;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.UserAndSubmissionReceipt;
+
+/**
+ * Transaction to visit the best submission receipts for each student
+ * for a given problem.
+ */
+public class VisitBestSubmissionReceiptsForProblem extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private final int section;
+	private final Problem problem;
+	private final long maxTs;
+	private final boolean useBestSubmissionsTable;
+	private final ICallback<UserAndSubmissionReceipt> visitor;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param section  the course section (0 for all sections)
+	 * @param problem  the {@link Problem}
+	 * @param maxTs    the submission maximum timestamp (submissions with greater timestamps
+	 *                 are ignored
+	 * @param useBestSubmissionsTable  true if the best submissions should be read from
+	 *                 the {@link BestSubmission} table (only possible if there is no maximum timestamp)
+	 * @param visitor  the visitor (callback) to which the {@link UserAndSubmissionReceipt}s
+	 *                 should be sent
+	 */
+	public VisitBestSubmissionReceiptsForProblem(int section, Problem problem, long maxTs, boolean useBestSubmissionsTable, ICallback<UserAndSubmissionReceipt> visitor) {
+		this.section = section;
+		this.problem = problem;
+		this.maxTs = maxTs;
+		this.useBestSubmissionsTable = useBestSubmissionsTable;
+		this.visitor = visitor;
+	}
+
+	@Override
+	public Boolean run(Connection conn) throws SQLException {
+		Queries.doVisitBestSubmissionReceipts(conn, problem, section, maxTs, useBestSubmissionsTable, visitor, this);
+		return true;
+	}
+
+	@Override
+	public String getDescription() {
+		return " visiting best submission receipts for problem/course";
+	}
+}
@@ -22,32 +22,31 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
 import org.cloudcoder.app.shared.model.Change;
 import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.Pair;
 
 /**
- * Transaction to get all {@link Event}s in a range of event
- * ids for a particular problem/user.  Also retrieves
+ * Transaction to visit all {@link Event}s in a range of event
+ * ids for a particular problem/user, in order by event id.  Also retrieves
  * {@link Change}s for all change events in the range.
- * 
- * @author David Hovemeyer
  */
-public class GetEventsWithChanges extends AbstractDatabaseRunnableNoAuthException<List<Pair<Event, Change>>> {
+public class VisitEventsWithChanges extends AbstractDatabaseRunnableNoAuthException<Boolean> {
 	private int userId;
 	private int problemId;
 	private int startEventId;
 	private int endEventId;
+	private ICallback<Pair<Event, Change>> visitor;
 
-	public GetEventsWithChanges(int userId, int problemId, int startEventId, int endEventId) {
+	public VisitEventsWithChanges(int userId, int problemId, int startEventId, int endEventId, ICallback<Pair<Event, Change>> visitor) {
 		this.userId = userId;
 		this.problemId = problemId;
 		this.startEventId = startEventId;
 		this.endEventId = endEventId;
+		this.visitor = visitor;
 	}
 
 	@Override
@@ -56,8 +55,8 @@ public class GetEventsWithChanges extends AbstractDatabaseRunnableNoAuthExceptio
 	}
 
 	@Override
-	public List<Pair<Event, Change>> run(Connection conn) throws SQLException {
-		PreparedStatement stmt = prepareStatement(
+	public Boolean run(Connection conn) throws SQLException {
+		PreparedStatement stmt = prepareStreamingStatement(
 				conn,
 				"select e.*, c.* " +
 				" from cc_events as e " +
@@ -66,15 +65,14 @@ public class GetEventsWithChanges extends AbstractDatabaseRunnableNoAuthExceptio
 				" where e.user_id = ? " +
 				"   and e.problem_id = ? " +
 				"   and e.id >= ? " +
-				"   and e.id <= ? "
+				"   and e.id <= ? " +
+				" order by e.id asc"
 		);
 		stmt.setInt(1, userId);
 		stmt.setInt(2, problemId);
 		stmt.setInt(3, startEventId);
 		stmt.setInt(4, endEventId);
 		
-		List<Pair<Event, Change>> result = new ArrayList<Pair<Event, Change>>();
-		
 		ResultSet resultSet = executeQuery(stmt);
 		while (resultSet.next()) {
 			Event e = new Event();
@@ -85,11 +83,10 @@ public class GetEventsWithChanges extends AbstractDatabaseRunnableNoAuthExceptio
 				Queries.load(c, resultSet, index);
 				c.setEvent(e);
 			}
-			Pair<Event, Change> pair = new Pair<Event, Change>(e, c);
-			result.add(pair);
+			visitor.call(new Pair<Event, Change>(e, c));
 		}
 		
-		return result;
+		return true;
 	}
 
 }
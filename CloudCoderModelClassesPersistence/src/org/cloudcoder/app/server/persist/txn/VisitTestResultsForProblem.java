@@ -0,0 +1,92 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist.txn;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.CourseRegistrationList;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.User;
+
+/**
+ * Visit the {@link TestResult}s of all submissions for given {@link Problem},
+ * ordered by submission receipt event id and then by test result id
+ * (i.e., in the same order as {@link GetTestResultsForSubmission} returns
+ * them for each submission).  As with {@link GetTestResultsForSubmission},
+ * the test results of other users' submissions are visited only
+ * if the authenticated user is an instructor in the course.
+ */
+public class VisitTestResultsForProblem extends AbstractDatabaseRunnableNoAuthException<Boolean> {
+	private final User authenticatedUser;
+	private final Problem problem;
+	private final ICallback<TestResult> visitor;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param authenticatedUser  the authenticated user
+	 * @param problem            the {@link Problem}
+	 * @param visitor            the visitor (callback) to which the retrieved {@link TestResult}s
+	 *                           should be sent
+	 */
+	public VisitTestResultsForProblem(User authenticatedUser, Problem problem, ICallback<TestResult> visitor) {
+		this.authenticatedUser = authenticatedUser;
+		this.problem = problem;
+		this.visitor = visitor;
+	}
+
+	@Override
+	public Boolean run(Connection conn) throws SQLException {
+		CourseRegistrationList regList = Queries.doGetCourseRegistrations(conn, problem.getCourseId(), authenticatedUser.getId(), this);
+		
+		PreparedStatement stmt = prepareStreamingStatement(
+				conn,
+				"select tr.* from cc_test_results as tr, cc_submission_receipts as sr, cc_events as e " +
+				" where tr.submission_receipt_event_id = e.id " +
+				"   and sr.event_id = e.id " +
+				"   and (e.user_id = ? or ? = 1) " +
+				"   and e.problem_id = ? " +
+				" order by tr.submission_receipt_event_id asc, tr.id asc"
+		);
+		stmt.setInt(1, authenticatedUser.getId());
+		stmt.setInt(2, regList.isInstructor() ? 1 : 0);
+		stmt.setInt(3, problem.getProblemId());
+		
+		ResultSet resultSet = executeQuery(stmt);
+		while (resultSet.next()) {
+			TestResult testResult = new TestResult();
+			DBUtil.loadModelObjectFields(testResult, TestResult.SCHEMA, resultSet);
+			visitor.call(testResult);
+		}
+		
+		return true;
+	}
+
+	@Override
+	public String getDescription() {
+		return " retrieving test results for problem";
+	}
+}
@@ -4,6 +4,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import org.slf4j.Logger;
@@ -19,8 +21,30 @@ import org.slf4j.Logger;
  * @param <E>
  */
 public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E> {
+	/**
+	 * Number of rows fetched at a time by statements created by
+	 * {@link #prepareStreamingStatement(Connection, String)}.
+	 */
+	public static final int STREAMING_FETCH_SIZE = 256;
+
+	/**
+	 * A statement that should be returned to a {@link PreparedStatementCache}
+	 * (rather than closed) on cleanup.
+	 */
+	private static class CachedStatement {
+		final PreparedStatementCache cache;
+		final String key;
+		final PreparedStatement stmt;
+
+		CachedStatement(PreparedStatementCache cache, String key, PreparedStatement stmt) {
+			this.cache = cache;
+			this.key = key;
+			this.stmt = stmt;
+		}
+	}
 
 	private Stack<Object> cleanupStack = new Stack<Object>();
+	private List<Runnable> commitActionList = new ArrayList<Runnable>();
 	private Logger logger;
 
 	/**
@@ -31,6 +55,9 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 
 	/**
 	 * Create a PreparedStatement, adding it to the cleanup stack.
+	 * If the connection has a {@link PreparedStatementCache}, a cached
+	 * statement is reused if possible, and the statement is returned
+	 * to the cache (rather than being closed) on cleanup.
 	 * 
 	 * @param conn the database connection
 	 * @param sql  the SQL to execute
@@ -38,6 +65,15 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 	 * @throws SQLException
 	 */
 	public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+		PreparedStatementCache cache = PreparedStatementCache.forConnection(conn);
+		if (cache != null) {
+			PreparedStatement stmt = cache.take(sql);
+			if (stmt == null) {
+				stmt = conn.prepareStatement(sql);
+			}
+			cleanupStack.push(new CachedStatement(cache, sql, stmt));
+			return stmt;
+		}
 		PreparedStatement stmt = conn.prepareStatement(sql);
 		cleanupStack.push(stmt);
 		return stmt;
@@ -53,11 +89,45 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 	 * @throws SQLException
 	 */
 	public PreparedStatement prepareStatement(Connection conn, String sql, int options) throws SQLException {
+		PreparedStatementCache cache = PreparedStatementCache.forConnection(conn);
+		if (cache != null) {
+			// The options are part of the cache key
+			String key = "[" + options + "]" + sql;
+			PreparedStatement stmt = cache.take(key);
+			if (stmt == null) {
+				stmt = conn.prepareStatement(sql, options);
+			}
+			cleanupStack.push(new CachedStatement(cache, key, stmt));
+			return stmt;
+		}
 		PreparedStatement stmt = conn.prepareStatement(sql, options);
 		cleanupStack.push(stmt);
 		return stmt;
 	}
 
+	/**
+	 * Create a PreparedStatement for a query whose results should be
+	 * streamed rather than read into memory all at once, adding it
+	 * to the cleanup stack.  The ResultSet is forward-only and read-only,
+	 * and rows are fetched {@link #STREAMING_FETCH_SIZE} at a time.
+	 * Transactions using a streaming statement should not execute other
+	 * statements on the same connection (including by running nested
+	 * transactions from a visitor) while iterating through the results,
+	 * because the driver will then read the remaining rows into memory.
+	 * Streaming statements are never cached.
+	 *
+	 * @param conn the database connection
+	 * @param sql  the SQL to execute
+	 * @return the PreparedStatement, which will be cleaned up automatically
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStreamingStatement(Connection conn, String sql) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		cleanupStack.push(stmt);
+		stmt.setFetchSize(STREAMING_FETCH_SIZE);
+		return stmt;
+	}
+
 	/**
 	 * Execute a PreparedStatement to produce a ResultSet.
 	 * The ResultSet will be added to the cleanup stack.
@@ -89,7 +159,10 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 	public void cleanup() {
 		while (!cleanupStack.isEmpty()) {
 			Object o = cleanupStack.pop();
-			if (o instanceof PreparedStatement) {
+			if (o instanceof CachedStatement) {
+				CachedStatement cs = (CachedStatement) o;
+				cs.cache.release(cs.key, cs.stmt);
+			} else if (o instanceof PreparedStatement) {
 				DBUtil.closeQuietly((PreparedStatement) o);
 			} else if (o instanceof ResultSet) {
 				DBUtil.closeQuietly((ResultSet) o);
@@ -97,6 +170,25 @@ public abstract class AbstractDatabaseRunnable<E> implements DatabaseRunnable<E>
 		}
 	}
 	
+	/**
+	 * Register an action to be performed after the transaction
+	 * commits successfully: for example, invalidating cached
+	 * data that the transaction changed.
+	 * 
+	 * @param action the action
+	 */
+	public void onCommit(Runnable action) {
+		commitActionList.add(action);
+	}
+
+	@Override
+	public void committed() {
+		for (Runnable action : commitActionList) {
+			action.run();
+		}
+		commitActionList.clear();
+	}
+	
 	@Override
 	public void setLogger(Logger logger) {
 		this.logger = logger;
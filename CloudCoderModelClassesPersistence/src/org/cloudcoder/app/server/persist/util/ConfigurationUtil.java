@@ -372,6 +372,8 @@ public class ConfigurationUtil
 	            }
 	            
 	            conn.commit();
+	            DatabaseCache.getInstance().getCourseRegistrationCache().invalidate(
+	            		DatabaseCache.courseRegistrationKey(courseId, userId));
 	            
 	            long register=System.currentTimeMillis()-start;
 	            logger.info(register+" millis to regsiter "+username);
@@ -34,6 +34,7 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.cloudcoder.app.server.persist.JDBCDatabase;
 import org.cloudcoder.app.server.persist.NoSuchUniqueIdException;
@@ -58,6 +59,9 @@ import org.slf4j.LoggerFactory;
 public class DBUtil {
     private static final Logger logger=LoggerFactory.getLogger(DBUtil.class);
     
+    // Class.getEnumConstants() returns a copy of the members array on every call
+    private static final ConcurrentHashMap<Class<?>, Object[]> enumConstantsCache = new ConcurrentHashMap<Class<?>, Object[]>();
+    
     static {
         try {
             Class.forName(JDBCDatabase.JDBC_DRIVER_CLASS);
@@ -834,7 +838,12 @@ public class DBUtil {
 		
 		if (type.isEnum()) {
 			// value must be an Integer
-			return type.getEnumConstants()[(Integer)value];
+			Object[] members = enumConstantsCache.get(type);
+			if (members == null) {
+				members = type.getEnumConstants();
+				enumConstantsCache.put(type, members);
+			}
+			return members[(Integer)value];
 		} else if (type == Boolean.class) {
 			// value must be some kind of integer
 			if (value instanceof Number) {
@@ -936,6 +945,8 @@ public class DBUtil {
 
 	/**
 	 * Load a model object's fields from a {@link ResultSet}.
+	 * The fields are loaded using the {@link ModelObjectRowMapper}
+	 * for the schema.
 	 * 
 	 * @param obj        the model object
 	 * @param schema     the model object's schema
@@ -947,12 +958,7 @@ public class DBUtil {
 	public static <E> int loadModelObjectFields(E obj,
 			ModelObjectSchema<E> schema, ResultSet resultSet, int index)
 			throws SQLException {
-		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
-			Object value = resultSet.getObject(index++);
-			value = convertValue(value, field.getType());
-			field.setUntyped(obj, value);
-		}
-		return index;
+		return ModelObjectRowMapper.forSchema(schema).load(obj, resultSet, index);
 	}
 
 	/**
@@ -0,0 +1,243 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CourseRegistration;
+import org.cloudcoder.app.shared.model.CourseRegistrationList;
+import org.cloudcoder.app.shared.model.Module;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.TestCase;
+
+/**
+ * Singleton with {@link ReadThroughCache}s for data that is read
+ * frequently but changes rarely: {@link Problem}s, the {@link TestCase}s
+ * for a problem, the {@link Module}s used in a course, and
+ * {@link CourseRegistrationList}s (which are checked to authorize
+ * most requests).
+ * 
+ * <p>
+ * Caching is disabled (all of the caches have size 0) until
+ * {@link #configure(int)} is called, so that tools that modify
+ * the database directly are not affected.  Transactions which change
+ * cached data must invalidate it using the invalidation methods,
+ * which invalidate the data both immediately and after the
+ * transaction commits.
+ * </p>
+ */
+public class DatabaseCache {
+	private static final DatabaseCache theInstance = new DatabaseCache();
+	
+	/**
+	 * Get the singleton instance.
+	 * 
+	 * @return the singleton instance
+	 */
+	public static DatabaseCache getInstance() {
+		return theInstance;
+	}
+	
+	private static final ReadThroughCache.Copier<Problem> PROBLEM_COPIER = new ReadThroughCache.Copier<Problem>() {
+		@Override
+		public Problem copy(Problem value) {
+			Problem copy = new Problem();
+			copy.copyFrom(value);
+			return copy;
+		}
+	};
+	
+	private static final ReadThroughCache.Copier<List<TestCase>> TEST_CASE_LIST_COPIER = new ReadThroughCache.Copier<List<TestCase>>() {
+		@Override
+		public List<TestCase> copy(List<TestCase> value) {
+			List<TestCase> copy = new ArrayList<TestCase>();
+			for (TestCase testCase : value) {
+				TestCase testCaseCopy = new TestCase();
+				testCaseCopy.copyFrom(testCase);
+				copy.add(testCaseCopy);
+			}
+			return copy;
+		}
+	};
+	
+	private static final ReadThroughCache.Copier<Module[]> MODULE_ARRAY_COPIER = new ReadThroughCache.Copier<Module[]>() {
+		@Override
+		public Module[] copy(Module[] value) {
+			Module[] copy = new Module[value.length];
+			for (int i = 0; i < value.length; i++) {
+				copy[i] = new Module();
+				copy[i].setId(value[i].getId());
+				copy[i].setName(value[i].getName());
+			}
+			return copy;
+		}
+	};
+	
+	private static final ReadThroughCache.Copier<CourseRegistrationList> COURSE_REGISTRATION_LIST_COPIER = new ReadThroughCache.Copier<CourseRegistrationList>() {
+		@Override
+		public CourseRegistrationList copy(CourseRegistrationList value) {
+			CourseRegistrationList copy = new CourseRegistrationList();
+			for (CourseRegistration reg : value.getList()) {
+				CourseRegistration regCopy = new CourseRegistration();
+				regCopy.setId(reg.getId());
+				regCopy.setCourseId(reg.getCourseId());
+				regCopy.setUserId(reg.getUserId());
+				regCopy.setRegistrationType(reg.getRegistrationType());
+				regCopy.setSection(reg.getSection());
+				copy.getList().add(regCopy);
+			}
+			return copy;
+		}
+	};
+	
+	private volatile ReadThroughCache<Integer, Problem> problemCache;
+	private volatile ReadThroughCache<Integer, List<TestCase>> testCaseCache;
+	private volatile ReadThroughCache<Integer, Module[]> moduleCache;
+	private volatile ReadThroughCache<Long, CourseRegistrationList> courseRegistrationCache;
+	
+	private DatabaseCache() {
+		configure(0);
+	}
+	
+	/**
+	 * Set the maximum number of entries in each cache.
+	 * Any cached data is discarded.
+	 * 
+	 * @param maxSize the maximum number of entries in each cache
+	 *                (0 to disable caching)
+	 */
+	public void configure(int maxSize) {
+		problemCache = new ReadThroughCache<Integer, Problem>(maxSize, PROBLEM_COPIER);
+		testCaseCache = new ReadThroughCache<Integer, List<TestCase>>(maxSize, TEST_CASE_LIST_COPIER);
+		moduleCache = new ReadThroughCache<Integer, Module[]>(maxSize, MODULE_ARRAY_COPIER);
+		courseRegistrationCache = new ReadThroughCache<Long, CourseRegistrationList>(maxSize, COURSE_REGISTRATION_LIST_COPIER);
+	}
+	
+	/**
+	 * @return cache of {@link Problem}s, keyed by problem id
+	 */
+	public ReadThroughCache<Integer, Problem> getProblemCache() {
+		return problemCache;
+	}
+	
+	/**
+	 * @return cache of lists of {@link TestCase}s, keyed by problem id
+	 */
+	public ReadThroughCache<Integer, List<TestCase>> getTestCaseCache() {
+		return testCaseCache;
+	}
+	
+	/**
+	 * @return cache of the {@link Module}s used by the problems in a course,
+	 *         keyed by course id
+	 */
+	public ReadThroughCache<Integer, Module[]> getModuleCache() {
+		return moduleCache;
+	}
+	
+	/**
+	 * @return cache of {@link CourseRegistrationList}s, keyed by
+	 *         {@link #courseRegistrationKey(int, int)}
+	 */
+	public ReadThroughCache<Long, CourseRegistrationList> getCourseRegistrationCache() {
+		return courseRegistrationCache;
+	}
+	
+	/**
+	 * Get the key for the {@link CourseRegistrationList} of a user in a course.
+	 * 
+	 * @param courseId the course id
+	 * @param userId   the user id
+	 * @return the key
+	 */
+	public static Long courseRegistrationKey(int courseId, int userId) {
+		return (((long) courseId) << 32) | (userId & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * Invalidate a cached {@link Problem}.
+	 * 
+	 * @param dbRunnable the transaction changing the problem
+	 * @param problemId  the problem id
+	 */
+	public void invalidateProblem(AbstractDatabaseRunnable<?> dbRunnable, int problemId) {
+		invalidate(dbRunnable, problemCache, problemId);
+	}
+	
+	/**
+	 * Invalidate the cached {@link TestCase}s for a problem.
+	 * 
+	 * @param dbRunnable the transaction changing the test cases
+	 * @param problemId  the problem id
+	 */
+	public void invalidateTestCases(AbstractDatabaseRunnable<?> dbRunnable, int problemId) {
+		invalidate(dbRunnable, testCaseCache, problemId);
+	}
+	
+	/**
+	 * Invalidate the cached {@link Module}s for a course.
+	 * 
+	 * @param dbRunnable the transaction changing the modules of the problems in the course
+	 * @param courseId   the course id
+	 */
+	public void invalidateModules(AbstractDatabaseRunnable<?> dbRunnable, int courseId) {
+		invalidate(dbRunnable, moduleCache, courseId);
+	}
+	
+	/**
+	 * Invalidate the cached {@link CourseRegistrationList} for a user in a course.
+	 * 
+	 * @param dbRunnable the transaction changing the user's registrations
+	 * @param courseId   the course id
+	 * @param userId     the user id
+	 */
+	public void invalidateCourseRegistrations(AbstractDatabaseRunnable<?> dbRunnable, int courseId, int userId) {
+		invalidate(dbRunnable, courseRegistrationCache, courseRegistrationKey(courseId, userId));
+	}
+	
+	/**
+	 * Invalidate all cached {@link CourseRegistrationList}s
+	 * (e.g., when many users are registered at once.)
+	 * 
+	 * @param dbRunnable the transaction changing the registrations
+	 */
+	public void invalidateAllCourseRegistrations(AbstractDatabaseRunnable<?> dbRunnable) {
+		invalidate(dbRunnable, courseRegistrationCache, null);
+	}
+	
+	/*
+	 * Invalidate now (so the transaction itself doesn't see
+	 * stale data), and after commit (in case the data was loaded
+	 * by another transaction before the changes were committed).
+	 */
+	private static<K> void invalidate(AbstractDatabaseRunnable<?> dbRunnable, final ReadThroughCache<K, ?> cache, final K key) {
+		Runnable action = new Runnable() {
+			@Override
+			public void run() {
+				if (key != null) {
+					cache.invalidate(key);
+				} else {
+					cache.invalidateAll();
+				}
+			}
+		};
+		action.run();
+		dbRunnable.onCommit(action);
+	}
+}
@@ -34,6 +34,7 @@ public interface DatabaseRunnable<E> {
 	public E run(Connection conn) throws SQLException, CloudCoderAuthenticationException;
 	public String getDescription();
 	public void cleanup();
+	public void committed();
 	public void setLogger(Logger logger);
 	public Logger getLogger();
 }
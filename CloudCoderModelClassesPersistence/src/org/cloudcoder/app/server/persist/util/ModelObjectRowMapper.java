@@ -0,0 +1,162 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package org.cloudcoder.app.server.persist.util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * Load model object fields from a {@link ResultSet}.
+ * A row mapper is built once for each {@link ModelObjectSchema}:
+ * each field is loaded using the typed {@link ResultSet} getter
+ * for the field's type, and enum fields are loaded using a cached table
+ * of the enum's members, rather than going through
+ * {@link ResultSet#getObject(int)} and {@link DBUtil#convertValue(Object, Class)}
+ * for every column of every row.
+ *
+ * @param <E> the model object type
+ */
+public class ModelObjectRowMapper<E> {
+	private static final ConcurrentHashMap<ModelObjectSchema<?>, ModelObjectRowMapper<?>> mapperCache =
+			new ConcurrentHashMap<ModelObjectSchema<?>, ModelObjectRowMapper<?>>();
+	
+	/**
+	 * Loads one field of a model object from one column of a {@link ResultSet}.
+	 */
+	private static abstract class FieldLoader<E> {
+		public abstract void load(E obj, ResultSet resultSet, int index) throws SQLException;
+	}
+	
+	private final int numFields;
+	private final List<FieldLoader<E>> loaders;
+	
+	private ModelObjectRowMapper(ModelObjectSchema<E> schema) {
+		List<ModelObjectField<? super E, ?>> fieldList = schema.getFieldList();
+		this.numFields = fieldList.size();
+		this.loaders = new ArrayList<FieldLoader<E>>(numFields);
+		for (ModelObjectField<? super E, ?> field : fieldList) {
+			loaders.add(createLoader(field));
+		}
+	}
+	
+	/**
+	 * Get the row mapper for given {@link ModelObjectSchema}.
+	 * 
+	 * @param schema the {@link ModelObjectSchema}
+	 * @return the row mapper
+	 */
+	@SuppressWarnings("unchecked")
+	public static<E> ModelObjectRowMapper<E> forSchema(ModelObjectSchema<E> schema) {
+		ModelObjectRowMapper<E> mapper = (ModelObjectRowMapper<E>) mapperCache.get(schema);
+		
+		// A schema's fields are added when it is constructed, so a mapper
+		// built before the schema was complete must be rebuilt
+		if (mapper == null || mapper.numFields != schema.getNumFields()) {
+			mapper = new ModelObjectRowMapper<E>(schema);
+			mapperCache.put(schema, mapper);
+		}
+		return mapper;
+	}
+	
+	/**
+	 * Load a model object's fields from a {@link ResultSet}.
+	 * 
+	 * @param obj        the model object
+	 * @param resultSet  the {@link ResultSet}
+	 * @param index      the index of the first model object field in the {@link ResultSet}
+	 * @return int the index of the field in the result set just past the model object fields
+	 * @throws SQLException
+	 */
+	public int load(E obj, ResultSet resultSet, int index) throws SQLException {
+		for (FieldLoader<E> loader : loaders) {
+			loader.load(obj, resultSet, index++);
+		}
+		return index;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static<E> FieldLoader<E> createLoader(final ModelObjectField<? super E, ?> field) {
+		Class<?> type = field.getType();
+		
+		if (type == Integer.class) {
+			final ModelObjectField<? super E, Integer> intField = (ModelObjectField<? super E, Integer>) field;
+			return new FieldLoader<E>() {
+				@Override
+				public void load(E obj, ResultSet resultSet, int index) throws SQLException {
+					int value = resultSet.getInt(index);
+					intField.set(obj, resultSet.wasNull() ? null : Integer.valueOf(value));
+				}
+			};
+		} else if (type == Long.class) {
+			final ModelObjectField<? super E, Long> longField = (ModelObjectField<? super E, Long>) field;
+			return new FieldLoader<E>() {
+				@Override
+				public void load(E obj, ResultSet resultSet, int index) throws SQLException {
+					long value = resultSet.getLong(index);
+					longField.set(obj, resultSet.wasNull() ? null : Long.valueOf(value));
+				}
+			};
+		} else if (type == String.class) {
+			final ModelObjectField<? super E, String> stringField = (ModelObjectField<? super E, String>) field;
+			return new FieldLoader<E>() {
+				@Override
+				public void load(E obj, ResultSet resultSet, int index) throws SQLException {
+					stringField.set(obj, resultSet.getString(index));
+				}
+			};
+		} else if (type == Boolean.class) {
+			// Boolean values are stored as tinyint(1)
+			final ModelObjectField<? super E, Boolean> boolField = (ModelObjectField<? super E, Boolean>) field;
+			return new FieldLoader<E>() {
+				@Override
+				public void load(E obj, ResultSet resultSet, int index) throws SQLException {
+					boolean value = resultSet.getBoolean(index);
+					boolField.set(obj, resultSet.wasNull() ? null : Boolean.valueOf(value));
+				}
+			};
+		} else if (type.isEnum()) {
+			// Enum values are stored as their ordinal values
+			final ModelObjectField<? super E, Object> enumField = (ModelObjectField<? super E, Object>) field;
+			final Object[] members = type.getEnumConstants();
+			return new FieldLoader<E>() {
+				@Override
+				public void load(E obj, ResultSet resultSet, int index) throws SQLException {
+					int ordinal = resultSet.getInt(index);
+					enumField.set(obj, resultSet.wasNull() ? null : members[ordinal]);
+				}
+			};
+		} else {
+			// Some other type: convert the value returned by getObject
+			final Class<?> fieldType = type;
+			return new FieldLoader<E>() {
+				@Override
+				public void load(E obj, ResultSet resultSet, int index) throws SQLException {
+					Object value = DBUtil.convertValue(resultSet.getObject(index), fieldType);
+					field.setUntyped(obj, value);
+				}
+			};
+		}
+	}
+}
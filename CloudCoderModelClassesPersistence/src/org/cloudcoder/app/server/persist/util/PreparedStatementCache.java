@@ -0,0 +1,204 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least-recently-used cache of {@link PreparedStatement}s for a single
+ * {@link Connection}, keyed by SQL string.  Connection pools that keep
+ * connections open across transactions can {@link #register(Connection, PreparedStatementCache)}
+ * a cache for each connection, and must {@link #invalidate(Connection)} it
+ * when the connection is closed.  {@link AbstractDatabaseRunnable#prepareStatement(Connection, String)}
+ * will then reuse cached statements rather than preparing (and later
+ * closing) a new statement for every transaction.
+ * 
+ * <p>
+ * A statement is removed from the cache by {@link #take(String)} while it is in use,
+ * and put back by {@link #release(String, PreparedStatement)}, so a transaction
+ * that prepares the same SQL more than once (for example, while iterating
+ * through the results of the first statement) gets distinct statements.
+ * A cache is only used by the thread to which its connection is
+ * currently checked out, but its methods are synchronized because
+ * the connection pool may invalidate it from another thread.
+ * </p>
+ */
+public class PreparedStatementCache {
+	/**
+	 * Hit/miss/eviction counters, which may be shared by
+	 * all of the caches belonging to a connection pool.
+	 */
+	public static class Stats {
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+
+		/**
+		 * @return number of times a cached statement was reused
+		 */
+		public long getHits() {
+			return hits.get();
+		}
+
+		/**
+		 * @return number of times a statement had to be prepared
+		 */
+		public long getMisses() {
+			return misses.get();
+		}
+
+		/**
+		 * @return number of cached statements closed because the cache was full
+		 *         or because their connection was closed
+		 */
+		public long getEvictions() {
+			return evictions.get();
+		}
+	}
+
+	private static final Map<Connection, PreparedStatementCache> cacheMap =
+			new ConcurrentHashMap<Connection, PreparedStatementCache>();
+
+	/**
+	 * Register a cache for given {@link Connection}.
+	 * 
+	 * @param conn  the {@link Connection}
+	 * @param cache the {@link PreparedStatementCache}
+	 */
+	public static void register(Connection conn, PreparedStatementCache cache) {
+		cacheMap.put(conn, cache);
+	}
+
+	/**
+	 * Get the cache registered for given {@link Connection}.
+	 * 
+	 * @param conn the {@link Connection}
+	 * @return the {@link PreparedStatementCache}, or null if no cache is registered
+	 */
+	public static PreparedStatementCache forConnection(Connection conn) {
+		return cacheMap.get(conn);
+	}
+
+	/**
+	 * Unregister the cache for given {@link Connection} (if there is one)
+	 * and close all of its statements.  Should be called before the
+	 * connection is closed.
+	 * 
+	 * @param conn the {@link Connection}
+	 */
+	public static void invalidate(Connection conn) {
+		PreparedStatementCache cache = cacheMap.remove(conn);
+		if (cache != null) {
+			cache.invalidate();
+		}
+	}
+
+	private final Stats stats;
+	private final LinkedHashMap<String, PreparedStatement> cache;
+	private boolean invalid;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize maximum number of statements to cache
+	 * @param stats   the {@link Stats} to update
+	 */
+	public PreparedStatementCache(final int maxSize, final Stats stats) {
+		this.stats = stats;
+		this.cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > maxSize) {
+					stats.evictions.incrementAndGet();
+					DBUtil.closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Take a cached statement.  The statement is removed from the cache
+	 * until it is released.
+	 * 
+	 * @param sql the SQL string (or other key identifying the statement)
+	 * @return the cached {@link PreparedStatement}, or null if there is no
+	 *         cached statement for the SQL string (in which case the caller
+	 *         should prepare one)
+	 */
+	public synchronized PreparedStatement take(String sql) {
+		PreparedStatement stmt = invalid ? null : cache.remove(sql);
+		if (stmt != null) {
+			stats.hits.incrementAndGet();
+		} else {
+			stats.misses.incrementAndGet();
+		}
+		return stmt;
+	}
+
+	/**
+	 * Return a statement to the cache when it is no longer in use.
+	 * Its parameters and batch are cleared.  The statement is closed
+	 * if it can't be cached.
+	 * 
+	 * @param sql  the SQL string (or other key identifying the statement)
+	 * @param stmt the {@link PreparedStatement}
+	 */
+	public synchronized void release(String sql, PreparedStatement stmt) {
+		if (invalid || cache.containsKey(sql)) {
+			DBUtil.closeQuietly(stmt);
+			return;
+		}
+		try {
+			stmt.clearParameters();
+			stmt.clearBatch();
+		} catch (Exception e) {
+			DBUtil.closeQuietly(stmt);
+			return;
+		}
+		cache.put(sql, stmt);
+	}
+
+	/**
+	 * @return number of statements currently cached
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Close all cached statements.  Statements that are released
+	 * after the cache is invalidated are closed rather than cached.
+	 */
+	public synchronized void invalidate() {
+		invalid = true;
+		for (PreparedStatement stmt : cache.values()) {
+			stats.evictions.incrementAndGet();
+			DBUtil.closeQuietly(stmt);
+		}
+		cache.clear();
+	}
+}
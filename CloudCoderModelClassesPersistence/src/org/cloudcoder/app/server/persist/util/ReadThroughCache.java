@@ -0,0 +1,195 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.persist.util;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, least-recently-used, read-through cache of data loaded
+ * from the database.  Values are loaded (on a miss) by a {@link Loader},
+ * and are copied by a {@link Copier} when they are cached and when they
+ * are returned, so callers can modify the objects they get without
+ * affecting the cache.
+ * 
+ * <p>
+ * Cached values must be explicitly invalidated when the underlying data
+ * changes.  Each invalidation increments a version number, and a value
+ * that was being loaded while an invalidation happened is returned but
+ * not cached, since it might have been loaded before the change was
+ * committed.
+ * </p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ReadThroughCache<K, V> {
+	/**
+	 * Callback to load a value that is not cached.
+	 *
+	 * @param <K> key type
+	 * @param <V> value type
+	 */
+	public interface Loader<K, V> {
+		/**
+		 * Load the value for given key.
+		 * 
+		 * @param key the key
+		 * @return the value, or null if there is no value for the key
+		 *         (null values are not cached)
+		 * @throws SQLException
+		 */
+		public V load(K key) throws SQLException;
+	}
+
+	/**
+	 * Callback to copy a value.
+	 *
+	 * @param <V> value type
+	 */
+	public interface Copier<V> {
+		/**
+		 * @param value a (non-null) value
+		 * @return a copy of the value
+		 */
+		public V copy(V value);
+	}
+
+	private final int maxSize;
+	private final Copier<V> copier;
+	private final LinkedHashMap<K, V> map;
+	private long version;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize maximum number of cached values (0 to disable caching)
+	 * @param copier  the {@link Copier} to use to copy values
+	 */
+	public ReadThroughCache(int maxSize, Copier<V> copier) {
+		this.maxSize = maxSize;
+		this.copier = copier;
+		// Access order, so the eldest entry is the least recently used
+		this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > ReadThroughCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the value for given key, loading it with given {@link Loader}
+	 * if it isn't cached.
+	 * 
+	 * @param key    the key
+	 * @param loader the {@link Loader}
+	 * @return (a copy of) the value, or null if there is no value for the key
+	 * @throws SQLException
+	 */
+	public V get(K key, Loader<K, V> loader) throws SQLException {
+		long loadVersion;
+		synchronized (this) {
+			V value = map.get(key);
+			if (value != null) {
+				hits.incrementAndGet();
+				return copier.copy(value);
+			}
+			loadVersion = version;
+		}
+		
+		misses.incrementAndGet();
+		V value = loader.load(key);
+		if (value == null || maxSize <= 0) {
+			return value;
+		}
+		
+		synchronized (this) {
+			if (version == loadVersion) {
+				map.put(key, copier.copy(value));
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Invalidate the cached value for given key (if any).
+	 * 
+	 * @param key the key
+	 */
+	public synchronized void invalidate(K key) {
+		version++;
+		map.remove(key);
+	}
+
+	/**
+	 * Invalidate all cached values.
+	 */
+	public synchronized void invalidateAll() {
+		version++;
+		map.clear();
+	}
+
+	/**
+	 * @return number of cached values
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+
+	/**
+	 * @return number of times a cached value was returned
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of times a value had to be loaded
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return number of cached values discarded because the cache was full
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return percentage of lookups that were hits (0 if there have been no lookups)
+	 */
+	public int getHitPercent() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total > 0 ? (int) ((h * 100) / total) : 0;
+	}
+}
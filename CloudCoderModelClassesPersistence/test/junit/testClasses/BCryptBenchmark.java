@@ -0,0 +1,103 @@
+package testClasses;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cloudcoder.app.server.persist.PasswordUtil;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+
+/**
+ * Measure how long the bundled BCrypt takes to check a password
+ * (as {@link PasswordUtil#matches(String, String)} does at login)
+ * for a range of log2 rounds, and how many checks per second
+ * can be done using increasing numbers of threads.  Use the results
+ * to choose the <code>cloudcoder.db.password.log2Rounds</code> and
+ * <code>cloudcoder.db.passwordVerifier.numThreads</code> properties:
+ * a login waits for roughly (queued logins / threads + 1) times the
+ * single-threaded check time.
+ * Run as a Java application: optional arguments are the minimum
+ * and maximum log2 rounds (default 4 and 12) and the maximum number
+ * of threads (default is the number of processors).
+ */
+public class BCryptBenchmark {
+	private static final String PASSWORD = "muffin-Tuesday-47";
+	private static final long MIN_MILLIS_PER_ROUND = 1000L;
+	private static final int NUM_ROUNDS = 3;
+
+	public static void main(String[] args) throws Exception {
+		int minLog2Rounds = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int maxLog2Rounds = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Single-threaded check time:");
+		for (int log2Rounds = minLog2Rounds; log2Rounds <= maxLog2Rounds; log2Rounds++) {
+			String hashed = hash(log2Rounds);
+			double millis = benchmark(hashed, 1);
+			System.out.printf("  log2Rounds=%-2d %10.2f ms per check%s%n", log2Rounds, millis,
+					log2Rounds == PasswordUtil.DEFAULT_LOG2_ROUNDS ? " (default)" : "");
+		}
+
+		System.out.printf("Throughput with log2Rounds=%d:%n", PasswordUtil.DEFAULT_LOG2_ROUNDS);
+		String hashed = hash(PasswordUtil.DEFAULT_LOG2_ROUNDS);
+		for (int numThreads = 1; numThreads <= maxThreads; numThreads++) {
+			double millis = benchmark(hashed, numThreads);
+			System.out.printf("  threads=%-3d %10.1f checks per second%s%n", numThreads, 1000.0 / millis,
+					numThreads == PasswordVerifier.getDefaultNumThreads() ? " (default)" : "");
+		}
+	}
+
+	private static String hash(int log2Rounds) {
+		PasswordUtil.setLog2Rounds(log2Rounds);
+		String hashed = PasswordUtil.hashPassword(PASSWORD);
+		if (!PasswordUtil.matches(PASSWORD, hashed)) {
+			throw new IllegalStateException("Password does not match its hash");
+		}
+		return hashed;
+	}
+
+	/**
+	 * Check the password using the given number of threads
+	 * for a few rounds (the first of which serves as warmup),
+	 * and report the best round.
+	 *
+	 * @return the average wall-clock time in milliseconds per check
+	 */
+	private static double benchmark(final String hashed, int numThreads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		try {
+			double best = Double.MAX_VALUE;
+			for (int round = 0; round < NUM_ROUNDS; round++) {
+				final long deadline = System.currentTimeMillis() + MIN_MILLIS_PER_ROUND;
+				List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+				long start = System.nanoTime();
+				for (int i = 0; i < numThreads; i++) {
+					futures.add(executor.submit(new Callable<Integer>() {
+						@Override
+						public Integer call() throws Exception {
+							int count = 0;
+							do {
+								if (!PasswordUtil.matches(PASSWORD, hashed)) {
+									throw new IllegalStateException("Password does not match its hash");
+								}
+								count++;
+							} while (System.currentTimeMillis() < deadline);
+							return count;
+						}
+					}));
+				}
+				int count = 0;
+				for (Future<Integer> future : futures) {
+					count += future.get();
+				}
+				best = Math.min(best, (System.nanoTime() - start) / 1000000.0 / count);
+			}
+			return best;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
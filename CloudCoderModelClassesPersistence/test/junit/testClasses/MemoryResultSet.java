@@ -0,0 +1,83 @@
+package testClasses;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Create in-memory {@link ResultSet}s for testing and benchmarking code
+ * that loads model objects.  Column values should be specified as the
+ * MySQL driver would return them from getObject: integer and enum columns
+ * as Integer, bigint columns as Long, and tinyint(1) columns as Boolean.
+ */
+public class MemoryResultSet {
+	/**
+	 * Create a {@link ResultSet} with given rows.
+	 * 
+	 * @param rows the rows: each row is an array of column values
+	 * @return the {@link ResultSet}
+	 * @throws SQLException
+	 */
+	public static ResultSet create(Object[][] rows) throws SQLException {
+		return create(rows, rows.length);
+	}
+
+	/**
+	 * Create a {@link ResultSet} with given number of rows,
+	 * repeating the given rows as many times as necessary.
+	 * 
+	 * @param rows     the distinct rows: each row is an array of column values
+	 * @param numRows  the number of rows in the {@link ResultSet}
+	 * @return the {@link ResultSet}
+	 * @throws SQLException
+	 */
+	public static ResultSet create(Object[][] rows, int numRows) throws SQLException {
+		int numColumns = rows[0].length;
+		RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+		metaData.setColumnCount(numColumns);
+		for (int i = 0; i < numColumns; i++) {
+			metaData.setColumnName(i + 1, "c" + (i + 1));
+			metaData.setColumnType(i + 1, getColumnType(rows, i));
+			metaData.setNullable(i + 1, ResultSetMetaData.columnNullable);
+		}
+
+		CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+		rowSet.setMetaData(metaData);
+		for (int r = 0; r < numRows; r++) {
+			Object[] row = rows[r % rows.length];
+			rowSet.moveToInsertRow();
+			for (int i = 0; i < numColumns; i++) {
+				if (row[i] == null) {
+					rowSet.updateNull(i + 1);
+				} else {
+					rowSet.updateObject(i + 1, row[i]);
+				}
+			}
+			rowSet.insertRow();
+		}
+		rowSet.moveToCurrentRow();
+		rowSet.beforeFirst();
+		return rowSet;
+	}
+
+	private static int getColumnType(Object[][] rows, int column) {
+		for (Object[] row : rows) {
+			Object value = row[column];
+			if (value instanceof Integer) {
+				return Types.INTEGER;
+			} else if (value instanceof Long) {
+				return Types.BIGINT;
+			} else if (value instanceof Boolean) {
+				return Types.BIT;
+			} else if (value != null) {
+				return Types.VARCHAR;
+			}
+		}
+		return Types.VARCHAR;
+	}
+}
@@ -0,0 +1,110 @@
+package testClasses;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Random;
+
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.ModelObjectRowMapper;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.EventType;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+
+/**
+ * Compare loading {@link Change}s and their {@link Event}s
+ * with {@link ModelObjectRowMapper} against loading them using
+ * {@link ResultSet#getObject(int)} and {@link DBUtil#convertValue(Object, Class)}
+ * for every column (which is how model objects were loaded
+ * before the row mappers were introduced.)  The rows come
+ * from an in-memory {@link ResultSet}, so only the cost of
+ * mapping the columns to model object fields (and the row set's
+ * own getters) is measured.
+ * Run as a Java application.
+ */
+public class ModelObjectRowMapperBenchmark {
+	private static final int NUM_ROWS = 1000000;
+	private static final int NUM_ROUNDS = 10;
+	
+	private interface Loader {
+		int load(Change change, Event event, ResultSet resultSet) throws SQLException;
+	}
+	
+	public static void main(String[] args) throws SQLException {
+		ResultSet resultSet = MemoryResultSet.create(createRows(), NUM_ROWS);
+		
+		Loader convertValue = new Loader() {
+			@Override
+			public int load(Change change, Event event, ResultSet resultSet) throws SQLException {
+				int index = loadWithConvertValue(change, Change.SCHEMA, resultSet, 1);
+				return loadWithConvertValue(event, Event.SCHEMA, resultSet, index);
+			}
+		};
+		Loader rowMapper = new Loader() {
+			@Override
+			public int load(Change change, Event event, ResultSet resultSet) throws SQLException {
+				int index = DBUtil.loadModelObjectFields(change, Change.SCHEMA, resultSet, 1);
+				return DBUtil.loadModelObjectFields(event, Event.SCHEMA, resultSet, index);
+			}
+		};
+		
+		// Measure reading the rows without mapping them, so that
+		// cost can be subtracted
+		Loader none = new Loader() {
+			@Override
+			public int load(Change change, Event event, ResultSet resultSet) throws SQLException {
+				return 1;
+			}
+		};
+		
+		long baseline = benchmark("(baseline)", none, resultSet, 0L);
+		benchmark("convertValue", convertValue, resultSet, baseline);
+		benchmark("rowMapper", rowMapper, resultSet, baseline);
+	}
+
+	private static Object[][] createRows() {
+		Random rng = new Random(17L);
+		Object[][] rows = new Object[1000][];
+		for (int i = 0; i < rows.length; i++) {
+			int row = rng.nextInt(200), col = rng.nextInt(80);
+			String text = (rng.nextInt(10) == 0) ? "    int count = 0;\n" : String.valueOf((char)('a' + rng.nextInt(26)));
+			rows[i] = new Object[]{
+					100000 + i, ChangeType.INSERT_TEXT.ordinal(), row, row, col, col + text.length(), text, null,
+					100000 + i, rng.nextInt(500), rng.nextInt(300), EventType.CHANGE.ordinal(), 1500000000000L + i*250L,
+			};
+		}
+		return rows;
+	}
+
+	private static long benchmark(String name, Loader loader, ResultSet resultSet, long baseline) throws SQLException {
+		long best = Long.MAX_VALUE;
+		int check = 0;
+		
+		// The first rounds serve as warmup: report the best round
+		for (int round = 0; round < NUM_ROUNDS; round++) {
+			resultSet.beforeFirst();
+			long start = System.nanoTime();
+			while (resultSet.next()) {
+				Change change = new Change();
+				Event event = new Event();
+				check += loader.load(change, event, resultSet);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		
+		System.out.printf("%-13s %8.1f ms per %d rows (%8.1f ms excluding baseline) [%d]%n",
+				name, best / 1000000.0, NUM_ROWS, (best - baseline) / 1000000.0, check);
+		return best;
+	}
+
+	private static<E> int loadWithConvertValue(E obj, ModelObjectSchema<E> schema, ResultSet resultSet, int index) throws SQLException {
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			Object value = resultSet.getObject(index++);
+			value = DBUtil.convertValue(value, field.getType());
+			field.setUntyped(obj, value);
+		}
+		return index;
+	}
+}
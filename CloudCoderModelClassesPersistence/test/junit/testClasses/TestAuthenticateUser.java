@@ -0,0 +1,185 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.cloudcoder.app.server.persist.JDBCDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig;
+import org.cloudcoder.app.server.persist.PasswordUtil;
+import org.cloudcoder.app.server.persist.txn.GetUserWithoutAuthentication;
+import org.cloudcoder.app.server.persist.txn.UpdatePasswordHash;
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that {@link JDBCDatabase#authenticateUser(String, String)} rehashes
+ * passwords hashed using a different number of rounds, and that
+ * {@link UpdatePasswordHash} doesn't overwrite a password hash
+ * that was changed after it was read.
+ */
+public class TestAuthenticateUser {
+	private static final int USER_ID = 7;
+	private static final String USERNAME = "alice";
+	private static final String PASSWORD = "muffin-Tuesday-47";
+
+	// The password hash stored in the (fake) cc_users table
+	private String storedHash;
+	// If set, the stored hash is changed to this after the user is read,
+	// as if the password were changed by a concurrent request
+	private String concurrentHash;
+	private int numUpdates;
+	private JDBCDatabase db;
+
+	@Before
+	public void setUp() throws Exception {
+		PasswordUtil.setLog2Rounds(4);
+		storedHash = PasswordUtil.hashPassword(PASSWORD);
+
+		Properties config = new Properties();
+		config.setProperty("cloudcoder.db.pool", "none");
+		config.setProperty("cloudcoder.db.password.log2Rounds", "5");
+		JDBCDatabaseConfig.createFromProperties(config);
+
+		// Run transactions on a fake connection, except for reading the user,
+		// which is done directly
+		db = new JDBCDatabase() {
+			@Override
+			public <E> E databaseRun(AbstractDatabaseRunnableNoAuthException<E> databaseRunnable) {
+				if (databaseRunnable instanceof GetUserWithoutAuthentication) {
+					User user = new User();
+					user.setId(USER_ID);
+					user.setUsername(USERNAME);
+					user.setPasswordHash(storedHash);
+					if (concurrentHash != null) {
+						storedHash = concurrentHash;
+					}
+					@SuppressWarnings("unchecked")
+					E result = (E) user;
+					return result;
+				}
+				try {
+					return databaseRunnable.run(createConnection());
+				} catch (SQLException e) {
+					throw new IllegalStateException(e);
+				} finally {
+					databaseRunnable.cleanup();
+				}
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		JDBCDatabaseConfig.destroy();
+		PasswordUtil.setLog2Rounds(PasswordUtil.DEFAULT_LOG2_ROUNDS);
+	}
+
+	@Test
+	public void testRehashOnLogin() {
+		String oldHash = storedHash;
+		User user = db.authenticateUser(USERNAME, PASSWORD);
+		assertNotNull(user);
+		assertEquals(1, numUpdates);
+		assertFalse(storedHash.equals(oldHash));
+		assertTrue(storedHash.startsWith("$2a$05$"));
+		assertTrue(PasswordUtil.matches(PASSWORD, storedHash));
+		assertEquals(storedHash, user.getPasswordHash());
+
+		// The new hash doesn't need to be rehashed
+		assertNotNull(db.authenticateUser(USERNAME, PASSWORD));
+		assertEquals(1, numUpdates);
+	}
+
+	@Test
+	public void testNoRehashOnFailedLogin() {
+		String oldHash = storedHash;
+		assertNull(db.authenticateUser(USERNAME, "muffin-Tuesday-48"));
+		assertEquals(0, numUpdates);
+		assertEquals(oldHash, storedHash);
+	}
+
+	@Test
+	public void testNoRehashWhenRoundsUnchanged() {
+		PasswordUtil.setLog2Rounds(4);
+		String oldHash = storedHash;
+		assertNotNull(db.authenticateUser(USERNAME, PASSWORD));
+		assertEquals(0, numUpdates);
+		assertEquals(oldHash, storedHash);
+	}
+
+	@Test
+	public void testConcurrentPasswordChangeNotOverwritten() {
+		concurrentHash = PasswordUtil.hashPassword("new-password");
+		assertNotNull(db.authenticateUser(USERNAME, PASSWORD));
+		assertEquals(1, numUpdates);
+		assertEquals(concurrentHash, storedHash);
+	}
+
+	@Test
+	public void testUpdatePasswordHash() throws Exception {
+		String oldHash = storedHash;
+		String newHash = PasswordUtil.hashPassword(PASSWORD);
+		assertFalse(db.databaseRun(new UpdatePasswordHash(USER_ID, "$2a$04$stale", newHash)));
+		assertEquals(oldHash, storedHash);
+		assertFalse(db.databaseRun(new UpdatePasswordHash(USER_ID + 1, oldHash, newHash)));
+		assertEquals(oldHash, storedHash);
+		assertTrue(db.databaseRun(new UpdatePasswordHash(USER_ID, oldHash, newHash)));
+		assertEquals(newHash, storedHash);
+	}
+
+	// Fake connection whose statements update the stored password hash
+	// as "update cc_users set password_hash = ? where id = ? and password_hash = ?"
+	private Connection createConnection() {
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ Connection.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("prepareStatement")) {
+					String sql = ((String) args[0]).replaceAll("\\s+", " ").trim();
+					assertEquals("update cc_users set password_hash = ? where id = ? and password_hash = ?", sql);
+					return createUpdateStatement();
+				} else if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				} else if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private PreparedStatement createUpdateStatement() {
+		final Map<Integer, Object> params = new HashMap<Integer, Object>();
+		return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ PreparedStatement.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("setString") || name.equals("setInt")) {
+					params.put((Integer) args[0], args[1]);
+					return null;
+				} else if (name.equals("executeUpdate")) {
+					numUpdates++;
+					if (params.get(2).equals(USER_ID) && params.get(3).equals(storedHash)) {
+						storedHash = (String) params.get(1);
+						return 1;
+					}
+					return 0;
+				} else if (name.equals("close")) {
+					return null;
+				}
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+}
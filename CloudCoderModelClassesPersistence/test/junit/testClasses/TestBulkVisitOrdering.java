@@ -0,0 +1,169 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.server.persist.IDatabase.RetrieveChangesMode;
+import org.cloudcoder.app.server.persist.txn.GetAllSubmissionReceiptsForUserAndProblem;
+import org.cloudcoder.app.server.persist.txn.GetTestResultsForSubmission;
+import org.cloudcoder.app.server.persist.txn.VisitAllChangesForProblem;
+import org.cloudcoder.app.server.persist.txn.VisitAllChangesNewerThan;
+import org.cloudcoder.app.server.persist.txn.VisitAllSubmissionReceiptsForProblem;
+import org.cloudcoder.app.server.persist.txn.VisitTestResultsForProblem;
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ICallback;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Check that the per-problem queries used by the bulk progsnap export
+ * order each user's rows in the same way as the per-user queries
+ * used by the original export, by running the transactions on a
+ * connection which records the SQL of each statement.
+ */
+public class TestBulkVisitOrdering {
+	private User user;
+	private Problem problem;
+	private List<String> sqlList;
+
+	@Before
+	public void setUp() {
+		user = new User();
+		user.setId(3);
+		problem = new Problem();
+		problem.setProblemId(11);
+		problem.setCourseId(5);
+		sqlList = new ArrayList<String>();
+	}
+
+	@Test
+	public void testChangeOrdering() throws Exception {
+		String bulk = orderBy(run(new VisitAllChangesForProblem(problem.getProblemId(), this.<Change>ignore())), "cc_changes");
+		String perUser = orderBy(run(new VisitAllChangesNewerThan(problem.getProblemId(), user, -1, this.<Change>ignore(),
+				RetrieveChangesMode.RETRIEVE_CHANGES_AND_EDIT_EVENTS)), "cc_changes");
+		assertEquals("e.id asc", perUser);
+		assertEquals("e.user_id asc, " + perUser, bulk);
+	}
+
+	@Test
+	public void testSubmissionReceiptOrdering() throws Exception {
+		String bulk = orderBy(run(new VisitAllSubmissionReceiptsForProblem(problem.getProblemId(), this.<SubmissionReceipt>ignore())), "cc_submission_receipts");
+		String perUser = orderBy(run(new GetAllSubmissionReceiptsForUserAndProblem(problem, user)), "cc_submission_receipts");
+		assertEquals("e.timestamp asc", perUser);
+
+		// Receipts with the same timestamp are in no particular order
+		// in the per-user query, and in event id order in the bulk query
+		assertEquals("e.user_id asc, " + perUser + ", e.id asc", bulk);
+	}
+
+	@Test
+	public void testTestResultOrdering() throws Exception {
+		String bulk = orderBy(run(new VisitTestResultsForProblem(user, problem, this.<TestResult>ignore())), "cc_test_results");
+		SubmissionReceipt receipt = new SubmissionReceipt();
+		receipt.setEventId(17);
+		String perReceipt = orderBy(run(new GetTestResultsForSubmission(receipt, user, problem)), "cc_test_results");
+		assertEquals("tr.id asc", perReceipt);
+		assertEquals("tr.submission_receipt_event_id asc, " + perReceipt, bulk);
+	}
+
+	/**
+	 * Run a transaction on a connection whose queries return no rows.
+	 *
+	 * @return the SQL of the statements prepared by the transaction
+	 */
+	private List<String> run(AbstractDatabaseRunnableNoAuthException<?> txn) throws SQLException {
+		sqlList.clear();
+		Connection conn = proxy(Connection.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				// The connection is looked up in the prepared statement cache map
+				if (method.getName().equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				} else if (method.getName().equals("equals")) {
+					return proxy == args[0];
+				} else if (!method.getName().equals("prepareStatement")) {
+					throw new UnsupportedOperationException(method.getName());
+				}
+				sqlList.add((String) args[0]);
+				return createStatement();
+			}
+		});
+		try {
+			txn.run(conn);
+		} finally {
+			txn.cleanup();
+		}
+		return new ArrayList<String>(sqlList);
+	}
+
+	private static PreparedStatement createStatement() {
+		final ResultSet resultSet = proxy(ResultSet.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("next")) {
+					return false;
+				} else if (method.getName().equals("close")) {
+					return null;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		return proxy(PreparedStatement.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("executeQuery")) {
+					return resultSet;
+				} else if (name.startsWith("set") || name.equals("close")) {
+					return null;
+				}
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+
+	/**
+	 * Find the statement which queries given table, and return its
+	 * <code>order by</code> clause with whitespace normalized.
+	 */
+	private static String orderBy(List<String> sqlList, String table) {
+		String result = null;
+		for (String sql : sqlList) {
+			if (sql.contains(table)) {
+				assertNull("More than one query on " + table, result);
+				int index = sql.indexOf(" order by ");
+				assertTrue("Query on " + table + " is not ordered", index >= 0);
+				result = sql.substring(index + " order by ".length()).trim().replaceAll("\\s+", " ");
+			}
+		}
+		assertNotNull("No query on " + table, result);
+		return result;
+	}
+
+	private <E> ICallback<E> ignore() {
+		return new ICallback<E>() {
+			@Override
+			public void call(E value) {
+				fail("No rows should be visited");
+			}
+		};
+	}
+
+	private static <E> E proxy(Class<E> iface, InvocationHandler handler) {
+		return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{ iface }, handler));
+	}
+}
@@ -0,0 +1,161 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.cloudcoder.app.server.persist.txn.Queries;
+import org.cloudcoder.app.server.persist.txn.StoreChanges;
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.shared.model.ApplyChangeToTextDocument;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.TextDocument;
+import org.junit.Test;
+
+/**
+ * Write {@link ChangeCheckpoint}s as {@link StoreChanges} does, store and
+ * reload them through their database representation, and check that applying
+ * the later changes to the reloaded checkpoint (as
+ * <code>EditCodeServiceImpl</code> does) gives the same text as applying
+ * every change.
+ */
+public class TestChangeCheckpoint {
+	private static final int USER_ID = 7;
+	private static final int PROBLEM_ID = 11;
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		List<Change> changeList = createChanges(new Random(42L), 5 * StoreChanges.CHECKPOINT_INTERVAL + 17);
+		String expected = new ApplyChangeToTextDocument().apply(null, changeList).getText();
+
+		for (int numChanges = StoreChanges.CHECKPOINT_INTERVAL; numChanges < changeList.size(); numChanges += StoreChanges.CHECKPOINT_INTERVAL) {
+			ChangeCheckpoint checkpoint = writeCheckpoint(changeList.subList(0, numChanges));
+			ChangeCheckpoint reloaded = storeAndReload(checkpoint);
+
+			assertEquals(USER_ID, reloaded.getUserId());
+			assertEquals(PROBLEM_ID, reloaded.getProblemId());
+			assertEquals(numChanges, reloaded.getEventId());
+			assertEquals(0, reloaded.getNumChanges());
+			assertEquals(checkpoint.getText(), reloaded.getText());
+
+			List<Change> laterChanges = changeList.subList(numChanges, changeList.size());
+			assertEquals(expected, new ApplyChangeToTextDocument().apply(reloaded, laterChanges).getText());
+		}
+	}
+
+	@Test
+	public void testRoundTripPreservesTrailingNewlines() throws Exception {
+		List<Change> changeList = new ArrayList<Change>();
+		changeList.add(change(ChangeType.INSERT_TEXT, 0, 0, "int x;\n\n\n", changeList.size() + 1));
+		changeList.add(change(ChangeType.INSERT_TEXT, 3, 0, "y", changeList.size() + 1));
+
+		ChangeCheckpoint reloaded = storeAndReload(writeCheckpoint(changeList.subList(0, 1)));
+		assertEquals("int x;\n\n\n", reloaded.getText());
+		assertEquals("int x;\n\n\ny",
+				new ApplyChangeToTextDocument().apply(reloaded, changeList.subList(1, 2)).getText());
+	}
+
+	@Test
+	public void testRoundTripCountOnly() throws Exception {
+		// A row that has only counted changes has no text
+		ChangeCheckpoint checkpoint = new ChangeCheckpoint();
+		checkpoint.setUserId(USER_ID);
+		checkpoint.setProblemId(PROBLEM_ID);
+		checkpoint.setEventId(-1);
+		checkpoint.setNumChanges(3);
+
+		ChangeCheckpoint reloaded = storeAndReload(checkpoint);
+		assertEquals(-1, reloaded.getEventId());
+		assertEquals(3, reloaded.getNumChanges());
+		assertNull(reloaded.getText());
+	}
+
+	/**
+	 * Create a checkpoint of the text after given changes,
+	 * in the same way as {@link StoreChanges}.
+	 */
+	private static ChangeCheckpoint writeCheckpoint(List<Change> changeList) {
+		ChangeCheckpoint checkpoint = new ChangeCheckpoint();
+		checkpoint.setUserId(USER_ID);
+		checkpoint.setProblemId(PROBLEM_ID);
+		checkpoint.setEventId(changeList.get(changeList.size() - 1).getEventId());
+		checkpoint.setNumChanges(0);
+		checkpoint.setText(new ApplyChangeToTextDocument().apply(null, changeList).getText());
+		return checkpoint;
+	}
+
+	/**
+	 * Bind the checkpoint's fields as they would be inserted into the
+	 * database, and load a new checkpoint from a row with the bound values.
+	 */
+	private static ChangeCheckpoint storeAndReload(ChangeCheckpoint checkpoint) throws Exception {
+		final Object[] row = new Object[ChangeCheckpoint.SCHEMA.getNumFields()];
+		PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(
+				PreparedStatement.class.getClassLoader(),
+				new Class<?>[]{ PreparedStatement.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (!method.getName().equals("setObject")) {
+							throw new UnsupportedOperationException(method.getName());
+						}
+						row[(Integer) args[0] - 1] = args[1];
+						return null;
+					}
+				});
+		DBUtil.bindModelObjectValuesForInsert(checkpoint, ChangeCheckpoint.SCHEMA, stmt);
+
+		ResultSet resultSet = MemoryResultSet.create(new Object[][]{ row });
+		assertTrue(resultSet.next());
+		ChangeCheckpoint reloaded = new ChangeCheckpoint();
+		Queries.loadGeneric(reloaded, resultSet, 1, ChangeCheckpoint.SCHEMA);
+		return reloaded;
+	}
+
+	/**
+	 * Create a random sequence of single-line and multi-line inserts
+	 * and single-line removes, applying each to a document so that
+	 * every change is valid for the text it is applied to.
+	 */
+	private static List<Change> createChanges(Random rng, int numChanges) {
+		TextDocument doc = new TextDocument();
+		ApplyChangeToTextDocument applyChange = new ApplyChangeToTextDocument();
+		List<Change> changeList = new ArrayList<Change>();
+		while (changeList.size() < numChanges) {
+			// Like the editor, only start a new line after a line ending in a newline
+			int numLines = doc.getNumLines();
+			boolean canAppend = numLines == 0 || doc.getLine(numLines - 1).endsWith("\n");
+			int row = rng.nextInt(canAppend ? numLines + 1 : numLines);
+			String line = row < doc.getNumLines() ? doc.getLine(row) : "";
+			int lineLength = line.endsWith("\n") ? line.length() - 1 : line.length();
+			int col = rng.nextInt(lineLength + 1);
+
+			Change change;
+			if (rng.nextInt(3) == 0 && col < lineLength) {
+				int len = 1 + rng.nextInt(lineLength - col);
+				change = change(ChangeType.REMOVE_TEXT, row, col, line.substring(col, col + len), changeList.size() + 1);
+			} else {
+				String text = rng.nextInt(4) == 0 ? "x" + rng.nextInt(100) + ";\n" : "abc".substring(rng.nextInt(3));
+				change = change(ChangeType.INSERT_TEXT, row, col, text, changeList.size() + 1);
+			}
+			applyChange.apply(change, doc);
+			changeList.add(change);
+		}
+		return changeList;
+	}
+
+	private static Change change(ChangeType type, int row, int col, String text, int eventId) {
+		Change change = new Change(type, row, col, row, col + text.length(), 1500000000000L + eventId, USER_ID, PROBLEM_ID, text);
+		change.setEventId(eventId);
+		return change;
+	}
+}
@@ -0,0 +1,295 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.cloudcoder.app.server.persist.ChangeWriteBuffer;
+import org.cloudcoder.app.server.persist.IDatabase;
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
+import org.cloudcoder.app.server.persist.PersistenceException;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestChangeWriteBuffer {
+	private static final int PROBLEM_ID = 11;
+
+	// Fake database which stores changes in a list: it can be made unavailable,
+	// and it rejects changes whose text is "bad"
+	private class FakeDatabase implements InvocationHandler {
+		List<Change> stored = new ArrayList<Change>();
+		boolean available = true;
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("storeChanges")) {
+				if (!available) {
+					throw new PersistenceException("Database is unavailable");
+				}
+				Change[] changeList = (Change[]) args[0];
+				for (Change change : changeList) {
+					if (change.getText().equals("bad")) {
+						throw new PersistenceException("Bad change");
+					}
+				}
+				for (Change change : changeList) {
+					stored.add(change);
+				}
+				return null;
+			} else if (method.getName().equals("getMostRecentChange")) {
+				if (!available) {
+					throw new PersistenceException("Database is unavailable");
+				}
+				User user = (User) args[0];
+				Change result = null;
+				for (Change change : stored) {
+					if (change.getEvent().getUserId() == user.getId() && change.getEvent().getProblemId() == (Integer) args[1]) {
+						result = change;
+					}
+				}
+				return result;
+			}
+			throw new UnsupportedOperationException(method.getName());
+		}
+
+		List<String> getStoredText(int userId) {
+			List<String> result = new ArrayList<String>();
+			for (Change change : stored) {
+				if (change.getEvent().getUserId() == userId) {
+					result.add(change.getText());
+				}
+			}
+			return result;
+		}
+	}
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File journalDir;
+	private Properties props;
+	private FakeDatabase db;
+	private IDatabase database;
+	private long timestamp;
+
+	@Before
+	public void setUp() throws Exception {
+		journalDir = new File(tmp.getRoot(), "journal");
+		props = new Properties();
+		props.setProperty("changeBuffer.journalDir", journalDir.getPath());
+		props.setProperty("changeBuffer.journalSync", "false");
+		props.setProperty("changeBuffer.maxFlushAttempts", "2");
+		db = new FakeDatabase();
+		database = (IDatabase) Proxy.newProxyInstance(IDatabase.class.getClassLoader(), new Class<?>[]{ IDatabase.class }, db);
+		timestamp = 1500000000000L;
+	}
+
+	@Test
+	public void testFlushFailureRequeuesInOrder() throws Exception {
+		ChangeWriteBuffer buffer = createBuffer();
+		db.available = false;
+		assertTrue(buffer.offer(changes(1, "a")));
+		assertTrue(buffer.offer(changes(2, "b")));
+		assertTrue(buffer.offer(changes(1, "c", "d")));
+
+		// Failures while the database is unavailable don't count
+		// towards moving changes to the dead-letter file
+		for (int i = 0; i < 3; i++) {
+			assertFalse(buffer.flush());
+		}
+		assertEquals(4, buffer.getNumPendingChanges());
+		assertTrue(db.stored.isEmpty());
+
+		assertTrue(buffer.offer(changes(1, "e")));
+		db.available = true;
+		assertTrue(buffer.flush());
+		assertEquals(0, buffer.getNumPendingChanges());
+		assertEquals(list("a", "c", "d", "e"), db.getStoredText(1));
+		assertEquals(list("b"), db.getStoredText(2));
+		assertFalse(buffer.getDeadLetterFile().exists());
+		assertNoJournalFiles();
+	}
+
+	@Test
+	public void testBadBatchMovedToDeadLetterFile() throws Exception {
+		ChangeWriteBuffer buffer = createBuffer();
+		assertTrue(buffer.offer(changes(1, "a")));
+		assertTrue(buffer.offer(changes(2, "bad")));
+		assertTrue(buffer.offer(changes(2, "c")));
+		assertTrue(buffer.offer(changes(3, "d")));
+
+		// The bad batch doesn't prevent other users' changes from being stored
+		assertFalse(buffer.flush());
+		assertEquals(list("a"), db.getStoredText(1));
+		assertEquals(list(), db.getStoredText(2));
+		assertEquals(list("d"), db.getStoredText(3));
+		assertEquals(2, buffer.getNumPendingChanges());
+
+		// After the second failure, the bad batch is moved to the dead-letter file,
+		// and the user's later changes can be stored
+		assertTrue(buffer.offer(changes(1, "e")));
+		buffer.flush();
+		assertTrue(buffer.flush());
+		assertEquals(0, buffer.getNumPendingChanges());
+		assertEquals(list("a", "e"), db.getStoredText(1));
+		assertEquals(list("c"), db.getStoredText(2));
+
+		List<Change[]> deadLetters = ChangeWriteBuffer.readJournal(buffer.getDeadLetterFile());
+		assertEquals(1, deadLetters.size());
+		assertEquals("bad", deadLetters.get(0)[0].getText());
+		assertEquals(2, deadLetters.get(0)[0].getEvent().getUserId());
+		assertNoJournalFiles();
+	}
+
+	@Test
+	public void testBufferFull() throws Exception {
+		props.setProperty("changeBuffer.maxPendingChanges", "4");
+		ChangeWriteBuffer buffer = createBuffer();
+		db.available = false;
+		assertTrue(buffer.offer(changes(1, "a", "b", "c")));
+		assertFalse(buffer.offer(changes(2, "d", "e")));
+		assertTrue(buffer.offer(changes(2, "f")));
+		assertFalse(buffer.offer(changes(3, "g")));
+		assertFalse(buffer.flush());
+		assertEquals(4, buffer.getNumPendingChanges());
+
+		db.available = true;
+		assertTrue(buffer.flush());
+		assertEquals(0, buffer.getNumPendingChanges());
+		assertTrue(buffer.offer(changes(2, "d", "e")));
+		assertTrue(buffer.flush());
+		assertEquals(list("f", "d", "e"), db.getStoredText(2));
+	}
+
+	@Test
+	public void testReplayAfterCrash() throws Exception {
+		ChangeWriteBuffer buffer = createBuffer();
+		assertTrue(buffer.offer(changes(1, "a", "b")));
+		assertTrue(buffer.offer(changes(2, "c")));
+		assertTrue(buffer.offer(changes(1, "d")));
+		File saved = tmp.newFolder("saved");
+		copyJournalFiles(journalDir, saved);
+		assertTrue(buffer.flush());
+		assertNoJournalFiles();
+		assertTrue(buffer.offer(changes(1, "e")));
+		assertTrue(buffer.offer(changes(3, "f")));
+
+		// Simulate a crash after the flush committed but before its journal file
+		// was deleted: the new buffer recovers changes which are already stored,
+		// as well as changes which aren't
+		copyJournalFiles(saved, journalDir);
+		ChangeWriteBuffer recovered = createBuffer();
+		assertEquals(6, recovered.getNumPendingChanges());
+		assertTrue(recovered.flush());
+		assertEquals(0, recovered.getNumPendingChanges());
+		assertEquals(list("a", "b", "d", "e"), db.getStoredText(1));
+		assertEquals(list("c"), db.getStoredText(2));
+		assertEquals(list("f"), db.getStoredText(3));
+		assertNoJournalFiles();
+	}
+
+	@Test
+	public void testReplayWhileDatabaseUnavailable() throws Exception {
+		ChangeWriteBuffer buffer = createBuffer();
+		assertTrue(buffer.offer(changes(1, "a")));
+		assertTrue(buffer.flush());
+		assertTrue(buffer.offer(changes(1, "b")));
+
+		db.available = false;
+		ChangeWriteBuffer recovered = createBuffer();
+		assertFalse(recovered.flush());
+		assertEquals(1, recovered.getNumPendingChanges());
+		db.available = true;
+		assertTrue(recovered.flush());
+		assertEquals(list("a", "b"), db.getStoredText(1));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testJournalDirRequired() {
+		props.remove("changeBuffer.journalDir");
+		createBuffer();
+	}
+
+	private ChangeWriteBuffer createBuffer() {
+		ChangeWriteBuffer buffer = new ChangeWriteBuffer(new ConfigProperties() {
+			@Override
+			public String getUser() { return null; }
+			@Override
+			public String getPasswd() { return null; }
+			@Override
+			public String getDatabaseName() { return null; }
+			@Override
+			public String getHost() { return null; }
+			@Override
+			public String getPortStr() { return null; }
+			@Override
+			public String getOptionalProperty(String name, String defaultValue) {
+				return props.getProperty(name, defaultValue);
+			}
+		}, database);
+		try {
+			buffer.recover();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return buffer;
+	}
+
+	private Change[] changes(int userId, String... texts) {
+		Change[] changeList = new Change[texts.length];
+		for (int i = 0; i < texts.length; i++) {
+			changeList[i] = new Change(ChangeType.INSERT_TEXT, 0, 0, 0, texts[i].length(), timestamp++, userId, PROBLEM_ID, texts[i]);
+		}
+		return changeList;
+	}
+
+	private static List<String> list(String... values) {
+		List<String> result = new ArrayList<String>();
+		for (String value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+
+	private void assertNoJournalFiles() {
+		for (File file : journalDir.listFiles()) {
+			assertEquals(ChangeWriteBuffer.DEAD_LETTER_FILE_NAME, file.getName());
+		}
+	}
+
+	private static void copyJournalFiles(File fromDir, File toDir) throws IOException {
+		for (File file : fromDir.listFiles()) {
+			InputStream in = new FileInputStream(file);
+			try {
+				OutputStream out = new FileOutputStream(new File(toDir, file.getName()));
+				try {
+					byte[] buf = new byte[4096];
+					int n;
+					while ((n = in.read(buf)) > 0) {
+						out.write(buf, 0, n);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
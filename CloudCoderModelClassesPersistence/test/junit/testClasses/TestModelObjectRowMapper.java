@@ -0,0 +1,77 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+
+import org.cloudcoder.app.server.persist.util.DBUtil;
+import org.cloudcoder.app.server.persist.util.ModelObjectRowMapper;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.cloudcoder.app.shared.model.Event;
+import org.cloudcoder.app.shared.model.EventType;
+import org.cloudcoder.app.shared.model.ModelObjectField;
+import org.cloudcoder.app.shared.model.ModelObjectSchema;
+import org.cloudcoder.app.shared.model.SubmissionReceipt;
+import org.cloudcoder.app.shared.model.SubmissionStatus;
+import org.cloudcoder.app.shared.model.User;
+import org.junit.Test;
+
+public class TestModelObjectRowMapper {
+	@Test
+	public void testLoadChangeAndEvent() throws Exception {
+		ResultSet resultSet = MemoryResultSet.create(new Object[][]{
+				{ 42, ChangeType.INSERT_TEXT.ordinal(), 3, 3, 0, 5, null, "hello",
+					42, 7, 11, EventType.CHANGE.ordinal(), 1500000000000L },
+		});
+		assertTrue(resultSet.next());
+
+		Change change = new Change();
+		Event event = new Event();
+		int index = DBUtil.loadModelObjectFields(change, Change.SCHEMA, resultSet, 1);
+		index = DBUtil.loadModelObjectFields(event, Event.SCHEMA, resultSet, index);
+		assertEquals(14, index);
+
+		assertEquals(42, change.getEventId());
+		assertEquals(ChangeType.INSERT_TEXT, change.getType());
+		assertEquals(3, change.getStartRow());
+		assertEquals(5, change.getEndColumn());
+		assertEquals("hello", change.getText());
+		assertEquals(7, event.getUserId());
+		assertEquals(11, event.getProblemId());
+		assertEquals(EventType.CHANGE, event.getType());
+		assertEquals(1500000000000L, event.getTimestamp());
+	}
+
+	@Test
+	public void testSameAsConvertValue() throws Exception {
+		Object[] receiptRow = { 17, 16, SubmissionStatus.TESTS_FAILED.ordinal(), 4, 3 };
+		checkSameAsConvertValue(SubmissionReceipt.SCHEMA, new SubmissionReceipt(), new SubmissionReceipt(), receiptRow);
+
+		Object[] userRow = new Object[User.SCHEMA.getNumFields()];
+		for (int i = 0; i < userRow.length; i++) {
+			Class<?> type = User.SCHEMA.getField(i).getType();
+			userRow[i] = (type == Integer.class) ? Integer.valueOf(i) : (type == Boolean.class) ? Boolean.TRUE : null;
+		}
+		checkSameAsConvertValue(User.SCHEMA, new User(), new User(), userRow);
+	}
+
+	@Test
+	public void testMapperIsCached() {
+		assertSame(ModelObjectRowMapper.forSchema(Change.SCHEMA), ModelObjectRowMapper.forSchema(Change.SCHEMA));
+	}
+
+	private static<E> void checkSameAsConvertValue(ModelObjectSchema<E> schema, E expected, E actual, Object[] row) throws Exception {
+		ResultSet resultSet = MemoryResultSet.create(new Object[][]{ row, row });
+		assertTrue(resultSet.next());
+		int index = 1;
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			field.setUntyped(expected, DBUtil.convertValue(resultSet.getObject(index++), field.getType()));
+		}
+		assertTrue(resultSet.next());
+		ModelObjectRowMapper.forSchema(schema).load(actual, resultSet, 1);
+		for (ModelObjectField<? super E, ?> field : schema.getFieldList()) {
+			assertEquals(field.getName(), field.get(expected), field.get(actual));
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import org.cloudcoder.app.server.persist.PasswordUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPasswordUtil {
+	private static final String SALT_AND_HASH = "abcdefghijklmnopqrstuOQ9v2nSAaSoKGoUdBcy3fh6pY3wnbyG";
+
+	@Before
+	public void setUp() {
+		PasswordUtil.setLog2Rounds(8);
+	}
+
+	@After
+	public void tearDown() {
+		PasswordUtil.setLog2Rounds(PasswordUtil.DEFAULT_LOG2_ROUNDS);
+	}
+
+	@Test
+	public void testNeedsRehash() {
+		assertFalse(PasswordUtil.needsRehash("$2a$08$" + SALT_AND_HASH));
+		assertTrue(PasswordUtil.needsRehash("$2a$10$" + SALT_AND_HASH));
+		assertTrue(PasswordUtil.needsRehash("$2a$04$" + SALT_AND_HASH));
+	}
+
+	@Test
+	public void testNeedsRehashNoMinorVersion() {
+		assertFalse(PasswordUtil.needsRehash("$2$08$" + SALT_AND_HASH));
+		assertTrue(PasswordUtil.needsRehash("$2$10$" + SALT_AND_HASH));
+	}
+
+	@Test
+	public void testNeedsRehashAfterChangingRounds() {
+		PasswordUtil.setLog2Rounds(10);
+		assertTrue(PasswordUtil.needsRehash("$2a$08$" + SALT_AND_HASH));
+		assertFalse(PasswordUtil.needsRehash("$2a$10$" + SALT_AND_HASH));
+	}
+
+	@Test
+	public void testNeedsRehashMalformed() {
+		// Hashes which aren't BCrypt hashes (or are truncated) are left alone
+		assertFalse(PasswordUtil.needsRehash(""));
+		assertFalse(PasswordUtil.needsRehash("password"));
+		assertFalse(PasswordUtil.needsRehash("$1$10$" + SALT_AND_HASH));
+		assertFalse(PasswordUtil.needsRehash("$2a$"));
+		assertFalse(PasswordUtil.needsRehash("$2a$10"));
+		assertFalse(PasswordUtil.needsRehash("$2a$1$" + SALT_AND_HASH));
+		assertFalse(PasswordUtil.needsRehash("$2a$x10$" + SALT_AND_HASH));
+		assertFalse(PasswordUtil.needsRehash("$2a$+1$" + SALT_AND_HASH));
+		assertFalse(PasswordUtil.needsRehash("$2ab$10$" + SALT_AND_HASH));
+	}
+
+	@Test
+	public void testHashUsesCurrentRounds() {
+		PasswordUtil.setLog2Rounds(5);
+		String hashed = PasswordUtil.hashPassword("secret");
+		assertTrue(hashed.startsWith("$2a$05$"));
+		assertFalse(PasswordUtil.needsRehash(hashed));
+		assertTrue(PasswordUtil.matches("secret", hashed));
+	}
+}
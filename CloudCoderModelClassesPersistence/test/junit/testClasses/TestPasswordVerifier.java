@@ -0,0 +1,183 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.cloudcoder.app.server.persist.JDBCDatabaseConfig.ConfigProperties;
+import org.cloudcoder.app.server.persist.PasswordUtil;
+import org.cloudcoder.app.server.persist.PasswordVerifier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPasswordVerifier {
+	private static final String PASSWORD = "muffin-Tuesday-47";
+
+	// Verifier whose threads wait to be released before checking a password
+	private class BlockingPasswordVerifier extends PasswordVerifier {
+		final Semaphore started = new Semaphore(0);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		BlockingPasswordVerifier() {
+			super(createConfig());
+		}
+
+		@Override
+		protected String check(String plaintext, String hashed) {
+			started.release();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				return null;
+			}
+			return super.check(plaintext, hashed);
+		}
+	}
+
+	private Properties props;
+	private String hashed;
+	private ExecutorService clients;
+	private BlockingPasswordVerifier blockingVerifier;
+
+	@Before
+	public void setUp() {
+		props = new Properties();
+		PasswordUtil.setLog2Rounds(4);
+		hashed = PasswordUtil.hashPassword(PASSWORD);
+		clients = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		PasswordVerifier.destroy();
+		if (blockingVerifier != null) {
+			blockingVerifier.release.countDown();
+			blockingVerifier.shutdown();
+		}
+		clients.shutdownNow();
+		PasswordUtil.setLog2Rounds(PasswordUtil.DEFAULT_LOG2_ROUNDS);
+	}
+
+	@Test
+	public void testVerify() {
+		PasswordVerifier.create(createConfig());
+		assertNotNull(PasswordVerifier.getInstance());
+		assertEquals(hashed, PasswordVerifier.verifyPassword(PASSWORD, hashed));
+		assertNull(PasswordVerifier.verifyPassword("muffin-Tuesday-48", hashed));
+		assertNull(PasswordVerifier.verifyPassword("", hashed));
+		assertEquals(0, PasswordVerifier.getInstance().getNumRejected());
+	}
+
+	@Test
+	public void testVerifyWithoutPool() {
+		props.setProperty("passwordVerifier.enable", "false");
+		PasswordVerifier.create(createConfig());
+		assertNull(PasswordVerifier.getInstance());
+		assertEquals(hashed, PasswordVerifier.verifyPassword(PASSWORD, hashed));
+		assertNull(PasswordVerifier.verifyPassword("muffin-Tuesday-48", hashed));
+	}
+
+	@Test
+	public void testRehash() {
+		PasswordVerifier.create(createConfig());
+		PasswordUtil.setLog2Rounds(5);
+		String rehashed = PasswordVerifier.verifyPassword(PASSWORD, hashed);
+		assertNotNull(rehashed);
+		assertFalse(rehashed.equals(hashed));
+		assertTrue(rehashed.startsWith("$2a$05$"));
+		assertTrue(PasswordUtil.matches(PASSWORD, rehashed));
+
+		// A wrong password isn't rehashed
+		assertNull(PasswordVerifier.verifyPassword("muffin-Tuesday-48", hashed));
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		props.setProperty("passwordVerifier.numThreads", "1");
+		props.setProperty("passwordVerifier.maxQueued", "1");
+		blockingVerifier = new BlockingPasswordVerifier();
+
+		// The first verification occupies the only thread,
+		// and the second one fills the queue
+		Future<String> first = verifyInBackground();
+		assertTrue(blockingVerifier.started.tryAcquire(10, TimeUnit.SECONDS));
+		Future<String> second = verifyInBackground();
+		waitForQueueSize(1);
+
+		assertNull(blockingVerifier.verify(PASSWORD, hashed));
+		assertEquals(1, blockingVerifier.getNumRejected());
+
+		blockingVerifier.release.countDown();
+		assertEquals(hashed, first.get(10, TimeUnit.SECONDS));
+		assertEquals(hashed, second.get(10, TimeUnit.SECONDS));
+		assertEquals(hashed, blockingVerifier.verify(PASSWORD, hashed));
+		assertEquals(1, blockingVerifier.getNumRejected());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		props.setProperty("passwordVerifier.numThreads", "1");
+		props.setProperty("passwordVerifier.maxQueued", "2");
+		props.setProperty("passwordVerifier.timeoutMs", "200");
+		blockingVerifier = new BlockingPasswordVerifier();
+
+		Future<String> first = verifyInBackground();
+		assertTrue(blockingVerifier.started.tryAcquire(10, TimeUnit.SECONDS));
+
+		// A verification which times out while queued is removed
+		// from the queue, so it doesn't use up a queue slot
+		for (int i = 0; i < 4; i++) {
+			assertNull(blockingVerifier.verify(PASSWORD, hashed));
+			assertEquals(0, blockingVerifier.getQueueSize());
+		}
+		assertNull(first.get(10, TimeUnit.SECONDS));
+		assertEquals(5, blockingVerifier.getNumRejected());
+
+		blockingVerifier.release.countDown();
+		assertEquals(hashed, blockingVerifier.verify(PASSWORD, hashed));
+	}
+
+	private Future<String> verifyInBackground() {
+		return clients.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return blockingVerifier.verify(PASSWORD, hashed);
+			}
+		});
+	}
+
+	private void waitForQueueSize(int size) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000L;
+		while (blockingVerifier.getQueueSize() != size) {
+			assertTrue("Timed out waiting for queue size " + size, System.currentTimeMillis() < deadline);
+			Thread.sleep(10L);
+		}
+	}
+
+	private ConfigProperties createConfig() {
+		return new ConfigProperties() {
+			@Override
+			public String getUser() { return null; }
+			@Override
+			public String getPasswd() { return null; }
+			@Override
+			public String getDatabaseName() { return null; }
+			@Override
+			public String getHost() { return null; }
+			@Override
+			public String getPortStr() { return null; }
+			@Override
+			public String getOptionalProperty(String name, String defaultValue) {
+				return props.getProperty(name, defaultValue);
+			}
+		};
+	}
+}
@@ -0,0 +1,157 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.cloudcoder.app.server.persist.util.AbstractDatabaseRunnableNoAuthException;
+import org.cloudcoder.app.server.persist.util.PreparedStatementCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPreparedStatementCache {
+	// Fake Connection whose PreparedStatements record whether they were closed
+	private List<PreparedStatement> prepared;
+	private Set<PreparedStatement> closed;
+	private Connection conn;
+	private PreparedStatementCache.Stats stats;
+	
+	private class Prepare extends AbstractDatabaseRunnableNoAuthException<PreparedStatement[]> {
+		private String[] sql;
+		
+		public Prepare(String... sql) {
+			this.sql = sql;
+		}
+		
+		@Override
+		public PreparedStatement[] run(Connection conn) throws SQLException {
+			PreparedStatement[] result = new PreparedStatement[sql.length];
+			for (int i = 0; i < sql.length; i++) {
+				result[i] = prepareStatement(conn, sql[i]);
+			}
+			return result;
+		}
+		
+		@Override
+		public String getDescription() {
+			return " preparing statements";
+		}
+	}
+
+	@Before
+	public void setUp() {
+		prepared = new ArrayList<PreparedStatement>();
+		closed = new HashSet<PreparedStatement>();
+		conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ Connection.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("prepareStatement")) {
+					PreparedStatement stmt = createStatement();
+					prepared.add(stmt);
+					return stmt;
+				}
+				return defaultInvoke(proxy, method, args);
+			}
+		});
+		stats = new PreparedStatementCache.Stats();
+		PreparedStatementCache.register(conn, new PreparedStatementCache(2, stats));
+	}
+	
+	@After
+	public void tearDown() {
+		PreparedStatementCache.invalidate(conn);
+	}
+	
+	private PreparedStatement createStatement() {
+		return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ PreparedStatement.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("close")) {
+					closed.add((PreparedStatement) proxy);
+					return null;
+				}
+				return defaultInvoke(proxy, method, args);
+			}
+		});
+	}
+	
+	private static Object defaultInvoke(Object proxy, Method method, Object[] args) {
+		if (method.getName().equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		} else if (method.getName().equals("equals")) {
+			return proxy == args[0];
+		}
+		return null;
+	}
+	
+	private PreparedStatement[] run(String... sql) throws SQLException {
+		Prepare txn = new Prepare(sql);
+		PreparedStatement[] result = txn.run(conn);
+		txn.cleanup();
+		return result;
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		PreparedStatement first = run("select 1")[0];
+		PreparedStatement second = run("select 1")[0];
+		assertSame(first, second);
+		assertEquals(1, prepared.size());
+		assertTrue(closed.isEmpty());
+		assertEquals(1, stats.getHits());
+		assertEquals(1, stats.getMisses());
+	}
+
+	@Test
+	public void testSameSqlTwiceInTransaction() throws Exception {
+		PreparedStatement[] stmts = run("select 1", "select 1");
+		assertNotSame(stmts[0], stmts[1]);
+		assertEquals(2, prepared.size());
+		
+		// Only one of the statements can be cached
+		assertEquals(1, closed.size());
+		assertEquals(1, PreparedStatementCache.forConnection(conn).size());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		PreparedStatement a = run("select 'a'")[0];
+		run("select 'b'");
+		run("select 'a'"); // 'a' is now the most recently used
+		run("select 'c'");
+		
+		assertEquals(3, prepared.size());
+		assertEquals(1, closed.size());
+		assertFalse(closed.contains(a));
+		assertEquals(1, stats.getEvictions());
+		assertSame(a, run("select 'a'")[0]);
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		PreparedStatement a = run("select 'a'")[0];
+		
+		// Statements in use when the connection is invalidated
+		// are closed when released
+		Prepare txn = new Prepare("select 'b'");
+		PreparedStatement b = txn.run(conn)[0];
+		PreparedStatementCache.invalidate(conn);
+		assertTrue(closed.contains(a));
+		assertFalse(closed.contains(b));
+		txn.cleanup();
+		assertTrue(closed.contains(b));
+		
+		assertNull(PreparedStatementCache.forConnection(conn));
+		assertNotSame(a, run("select 'a'")[0]);
+	}
+}
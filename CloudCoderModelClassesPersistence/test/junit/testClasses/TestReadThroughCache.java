@@ -0,0 +1,130 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.server.persist.util.ReadThroughCache;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestReadThroughCache {
+	// Values are lists so that copying can be checked
+	private static final ReadThroughCache.Copier<List<String>> COPIER = new ReadThroughCache.Copier<List<String>>() {
+		@Override
+		public List<String> copy(List<String> value) {
+			return new ArrayList<String>(value);
+		}
+	};
+
+	// Loader that counts how many times it was called
+	private class CountingLoader implements ReadThroughCache.Loader<Integer, List<String>> {
+		int numLoads;
+
+		@Override
+		public List<String> load(Integer key) throws SQLException {
+			numLoads++;
+			if (key < 0) {
+				return null;
+			}
+			List<String> result = new ArrayList<String>();
+			result.add("value" + key);
+			return result;
+		}
+	}
+
+	private ReadThroughCache<Integer, List<String>> cache;
+	private CountingLoader loader;
+
+	@Before
+	public void setUp() {
+		cache = new ReadThroughCache<Integer, List<String>>(2, COPIER);
+		loader = new CountingLoader();
+	}
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+		assertEquals("value1", cache.get(1, loader).get(0));
+		assertEquals("value1", cache.get(1, loader).get(0));
+		assertEquals("value1", cache.get(1, loader).get(0));
+		assertEquals(1, loader.numLoads);
+		assertEquals(2L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+		assertEquals(66, cache.getHitPercent());
+	}
+
+	@Test
+	public void testNullNotCached() throws Exception {
+		assertNull(cache.get(-1, loader));
+		assertNull(cache.get(-1, loader));
+		assertEquals(2, loader.numLoads);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() throws Exception {
+		cache.get(1, loader);
+		cache.get(2, loader);
+		cache.get(1, loader); // 2 is now least recently used
+		cache.get(3, loader);
+		assertEquals(2, cache.size());
+		assertEquals(1L, cache.getEvictions());
+
+		loader.numLoads = 0;
+		cache.get(1, loader);
+		cache.get(3, loader);
+		assertEquals(0, loader.numLoads);
+		cache.get(2, loader);
+		assertEquals(1, loader.numLoads);
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		cache.get(1, loader);
+		cache.get(2, loader);
+		cache.invalidate(1);
+		cache.get(1, loader);
+		cache.get(2, loader);
+		assertEquals(3, loader.numLoads);
+
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testInvalidateDuringLoad() throws Exception {
+		// Simulate another transaction changing the data while it is being loaded
+		ReadThroughCache.Loader<Integer, List<String>> racingLoader = new ReadThroughCache.Loader<Integer, List<String>>() {
+			@Override
+			public List<String> load(Integer key) throws SQLException {
+				List<String> result = loader.load(key);
+				cache.invalidate(key);
+				return result;
+			}
+		};
+		assertEquals("value1", cache.get(1, racingLoader).get(0));
+		assertEquals(0, cache.size());
+		cache.get(1, loader);
+		assertEquals(2, loader.numLoads);
+	}
+
+	@Test
+	public void testCopiesReturned() throws Exception {
+		cache.get(1, loader).add("modified");
+		List<String> value = cache.get(1, loader);
+		assertEquals(1, value.size());
+		value.clear();
+		assertEquals(1, cache.get(1, loader).size());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		cache = new ReadThroughCache<Integer, List<String>>(0, COPIER);
+		cache.get(1, loader);
+		cache.get(1, loader);
+		assertEquals(2, loader.numLoads);
+		assertEquals(0, cache.size());
+	}
+}
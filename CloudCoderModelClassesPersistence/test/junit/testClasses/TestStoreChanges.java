@@ -0,0 +1,187 @@
+package testClasses;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.server.persist.txn.StoreChanges;
+import org.cloudcoder.app.shared.model.Change;
+import org.cloudcoder.app.shared.model.ChangeCheckpoint;
+import org.cloudcoder.app.shared.model.ChangeType;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Run {@link StoreChanges} on a fake connection, and check that a failure
+ * updating the {@link ChangeCheckpoint} is rolled back to a savepoint
+ * rather than failing the transaction.
+ */
+public class TestStoreChanges {
+	private static final String CHECKPOINT_TABLE = ChangeCheckpoint.SCHEMA.getDbTableName();
+
+	// Operations on the connection, in order
+	private List<String> log;
+	private SQLException checkpointError;
+	private boolean savepointLost;
+
+	@Before
+	public void setUp() {
+		log = new ArrayList<String>();
+	}
+
+	@Test
+	public void testCheckpointUpdated() throws Exception {
+		assertTrue(run(changes("a", "b")));
+		assertEquals(list("insert events", "insert changes", "update latest change",
+				"set savepoint", "update checkpoint", "query checkpoint", "release savepoint"), log);
+	}
+
+	@Test
+	public void testCheckpointFailureRolledBackToSavepoint() throws Exception {
+		checkpointError = new SQLException("Lock wait timeout exceeded", "HY000");
+		assertTrue(run(changes("a", "b")));
+		assertEquals(list("insert events", "insert changes", "update latest change",
+				"set savepoint", "update checkpoint", "rollback to savepoint"), log);
+	}
+
+	@Test
+	public void testCheckpointFailureAfterTransactionRolledBack() throws Exception {
+		// A deadlock rolls back the whole transaction, including the savepoint
+		checkpointError = new SQLException("Deadlock found", "40001");
+		savepointLost = true;
+		try {
+			run(changes("a"));
+			fail("Expected SQLException");
+		} catch (SQLException e) {
+			assertSame(checkpointError, e);
+		}
+		assertEquals("rollback to savepoint", log.get(log.size() - 1));
+	}
+
+	private boolean run(Change[] changeList) throws SQLException {
+		StoreChanges txn = new StoreChanges(changeList);
+		txn.setLogger(LoggerFactory.getLogger(TestStoreChanges.class));
+		try {
+			return txn.run(createConnection(changeList.length));
+		} finally {
+			txn.cleanup();
+		}
+	}
+
+	private Connection createConnection(final int numEvents) {
+		final Savepoint savepoint = proxy(Savepoint.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		return proxy(Connection.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				} else if (name.equals("equals")) {
+					return proxy == args[0];
+				} else if (name.equals("prepareStatement")) {
+					return createStatement((String) args[0], numEvents);
+				} else if (name.equals("setSavepoint")) {
+					log.add("set savepoint");
+					return savepoint;
+				} else if (name.equals("releaseSavepoint")) {
+					assertSame(savepoint, args[0]);
+					log.add("release savepoint");
+					return null;
+				} else if (name.equals("rollback") && args != null) {
+					assertSame(savepoint, args[0]);
+					log.add("rollback to savepoint");
+					if (savepointLost) {
+						throw new SQLException("SAVEPOINT does not exist", "42000");
+					}
+					return null;
+				}
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+
+	private PreparedStatement createStatement(final String sql, final int numEvents) {
+		return proxy(PreparedStatement.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.startsWith("set") || name.equals("addBatch") || name.equals("close")) {
+					return null;
+				} else if (name.equals("executeBatch")) {
+					log.add(sql.contains("cc_events") ? "insert events" : "insert changes");
+					return new int[0];
+				} else if (name.equals("getGeneratedKeys")) {
+					Object[][] rows = new Object[numEvents][];
+					for (int i = 0; i < numEvents; i++) {
+						rows[i] = new Object[]{ i + 1 };
+					}
+					return MemoryResultSet.create(rows);
+				} else if (name.equals("executeUpdate")) {
+					if (!sql.contains(CHECKPOINT_TABLE)) {
+						log.add("update latest change");
+						return 1;
+					}
+					log.add("update checkpoint");
+					if (checkpointError != null) {
+						throw checkpointError;
+					}
+					return 1;
+				} else if (name.equals("executeQuery")) {
+					assertTrue(sql.contains(CHECKPOINT_TABLE));
+					log.add("query checkpoint");
+					return emptyResultSet();
+				}
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+
+	private static ResultSet emptyResultSet() {
+		return proxy(ResultSet.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("next")) {
+					return false;
+				} else if (method.getName().equals("close")) {
+					return null;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private static Change[] changes(String... texts) {
+		Change[] changeList = new Change[texts.length];
+		for (int i = 0; i < texts.length; i++) {
+			changeList[i] = new Change(ChangeType.INSERT_TEXT, 0, i, 0, i + 1, 1500000000000L + i, 7, 11, texts[i]);
+		}
+		return changeList;
+	}
+
+	private static List<String> list(String... values) {
+		List<String> result = new ArrayList<String>();
+		for (String value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+
+	private static <E> E proxy(Class<E> iface, InvocationHandler handler) {
+		return iface.cast(Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{ iface }, handler));
+	}
+}
@@ -0,0 +1,112 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeCoalescerTest {
+	private ChangeCoalescer coalescer;
+	private long now;
+
+	@Before
+	public void setUp() {
+		coalescer = new ChangeCoalescer();
+		now = 1000000L;
+	}
+
+	private Change insert(int row, int col, String text) {
+		now += 100;
+		return new Change(ChangeType.INSERT_TEXT, row, col, row, col + text.length(), now, 1, 1, text);
+	}
+
+	private Change remove(int row, int col, String text) {
+		now += 100;
+		return new Change(ChangeType.REMOVE_TEXT, row, col, row, col + text.length(), now, 1, 1, text);
+	}
+
+	private static String apply(String initialText, List<Change> changeList) {
+		TextDocument doc = new TextDocument();
+		doc.setText(initialText);
+		ApplyChangeToTextDocument applicator = new ApplyChangeToTextDocument();
+		for (Change change : changeList) {
+			applicator.apply(change, doc);
+		}
+		return doc.getText();
+	}
+
+	private void checkSameText(String initialText, List<Change> changeList, int expectedSize) {
+		List<Change> coalesced = coalescer.coalesce(changeList);
+		assertEquals(expectedSize, coalesced.size());
+		assertEquals(apply(initialText, changeList), apply(initialText, coalesced));
+	}
+
+	@Test
+	public void testTyping() {
+		List<Change> changeList = new ArrayList<Change>();
+		String typed = "int x = 42;";
+		for (int i = 0; i < typed.length(); i++) {
+			changeList.add(insert(1, 4 + i, typed.substring(i, i + 1)));
+		}
+		checkSameText("{\n    \n}\n", changeList, 1);
+
+		Change c = coalescer.coalesce(changeList).get(0);
+		assertEquals(typed, c.getText());
+		assertEquals(4, c.getStartColumn());
+		assertEquals(4 + typed.length(), c.getEndColumn());
+		assertEquals(now, c.getEvent().getTimestamp());
+	}
+
+	@Test
+	public void testBackspaceAndDelete() {
+		List<Change> changeList = new ArrayList<Change>();
+		// backspace over "cde" in "abcdefg"
+		changeList.add(remove(0, 4, "e"));
+		changeList.add(remove(0, 3, "d"));
+		changeList.add(remove(0, 2, "c"));
+		checkSameText("abcdefg\n", changeList, 1);
+
+		// delete "cde"
+		changeList.clear();
+		changeList.add(remove(0, 2, "c"));
+		changeList.add(remove(0, 2, "d"));
+		changeList.add(remove(0, 2, "e"));
+		checkSameText("abcdefg\n", changeList, 1);
+		assertEquals("cde", coalescer.coalesce(changeList).get(0).getText());
+	}
+
+	@Test
+	public void testNotCoalesced() {
+		List<Change> changeList = new ArrayList<Change>();
+		changeList.add(insert(0, 0, "a"));
+		changeList.add(insert(0, 5, "b")); // not contiguous
+		changeList.add(insert(1, 0, "c")); // different row
+		changeList.add(remove(1, 0, "c")); // different type
+		changeList.add(insert(0, 6, "\n")); // newline
+		now += ChangeCoalescer.DEFAULT_MAX_PAUSE_MS;
+		changeList.add(insert(0, 0, "x")); // after a pause
+		checkSameText("0123456789\nzzz\n", changeList, changeList.size());
+	}
+
+	@Test
+	public void testMaxTextLength() {
+		List<Change> changeList = new ArrayList<Change>();
+		for (int i = 0; i < Change.MAX_TEXT_LEN_IN_ROW + 1; i++) {
+			changeList.add(insert(0, i, "x"));
+		}
+		checkSameText("\n", changeList, 2);
+	}
+
+	@Test
+	public void testOriginalChangesNotModified() {
+		List<Change> changeList = new ArrayList<Change>();
+		changeList.add(insert(0, 0, "a"));
+		changeList.add(insert(0, 1, "b"));
+		coalescer.coalesce(changeList);
+		assertEquals("a", changeList.get(0).getText());
+		assertEquals(1, changeList.get(0).getEndColumn());
+	}
+}
@@ -0,0 +1,64 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashProblemAndTestCaseDataTest {
+	private ProblemAndTestCaseList exercise;
+
+	@Before
+	public void setUp() {
+		Problem problem = new Problem();
+		problem.setProblemType(ProblemType.C_PROGRAM);
+		problem.setTestname("sum");
+		problem.setBriefDescription("Add two numbers");
+		problem.setDescription("Read two integers and print their sum.");
+		problem.setSkeleton("");
+
+		exercise = new ProblemAndTestCaseList();
+		exercise.setProblem(problem);
+		exercise.setTestCaseList(new TestCase[]{ createTestCase("t1", "12", "3") });
+	}
+
+	private static TestCase createTestCase(String name, String input, String output) {
+		TestCase testCase = new TestCase();
+		testCase.setTestCaseName(name);
+		testCase.setInput(input);
+		testCase.setOutput(output);
+		return testCase;
+	}
+
+	private static String strictHash(ProblemAndTestCaseList exercise) {
+		return new HashProblemAndTestCaseData<ProblemAndTestCaseList>(exercise, true).compute();
+	}
+
+	@Test
+	public void testStrictHashIsStable() throws Exception {
+		assertEquals(strictHash(exercise), strictHash(exercise));
+		assertEquals(40, strictHash(exercise).length());
+	}
+
+	@Test
+	public void testStrictHashDistinguishesFieldBoundaries() throws Exception {
+		String orig = strictHash(exercise);
+		exercise.setTestCaseList(new TestCase[]{ createTestCase("t1", "1", "23") });
+		assertFalse(orig.equals(strictHash(exercise)));
+	}
+
+	@Test
+	public void testStrictHashDistinguishesWhitespace() throws Exception {
+		String orig = strictHash(exercise);
+		exercise.setTestCaseList(new TestCase[]{ createTestCase("t1", "12\n", "3") });
+		assertFalse(orig.equals(strictHash(exercise)));
+
+		// The non-strict hash ignores leading/trailing whitespace
+		ProblemAndTestCaseList other = new ProblemAndTestCaseList();
+		other.setProblem(exercise.getProblem());
+		other.setTestCaseList(new TestCase[]{ createTestCase("t1", "12", "3") });
+		assertEquals(
+				new HashProblemAndTestCaseData<ProblemAndTestCaseList>(other).compute(),
+				new HashProblemAndTestCaseData<ProblemAndTestCaseList>(exercise).compute());
+	}
+}
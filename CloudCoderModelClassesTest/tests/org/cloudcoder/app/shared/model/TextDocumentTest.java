@@ -0,0 +1,80 @@
+package org.cloudcoder.app.shared.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TextDocumentTest {
+	private TextDocument doc;
+
+	@Before
+	public void setUp() {
+		doc = new TextDocument();
+	}
+
+	@Test
+	public void testSetText() {
+		doc.setText("a\nb\nc");
+		assertEquals(3, doc.getNumLines());
+		assertEquals("b\n", doc.getLine(1));
+		assertEquals("a\nb\nc\n", doc.getText());
+	}
+
+	@Test
+	public void testSetTextExactly() {
+		doc.setTextExactly("a\n\n\nb");
+		assertEquals(4, doc.getNumLines());
+		assertEquals("b", doc.getLine(3));
+		assertEquals("a\n\n\nb", doc.getText());
+	}
+
+	@Test
+	public void testInsertAndRemove() {
+		doc.setText("a\nc");
+		doc.insertLine(1, "b\n");
+		doc.insertLine(3, "d\n");
+		doc.insertLine(0, "_\n");
+		assertEquals("_\na\nb\nc\nd\n", doc.getText());
+		doc.removeLine(2);
+		doc.removeLine(0);
+		assertEquals("a\nc\nd\n", doc.getText());
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testGetLineOutOfBounds() {
+		doc.setText("a\nb");
+		doc.getLine(2);
+	}
+
+	@Test
+	public void testRandomEdits() {
+		Random rng = new Random(123L);
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			String line = "line" + rng.nextInt(1000) + "\n";
+			int op = rng.nextInt(3);
+			if (op == 0 || expected.isEmpty()) {
+				int index = rng.nextInt(expected.size() + 1);
+				doc.insertLine(index, line);
+				expected.add(index, line);
+			} else if (op == 1) {
+				int index = rng.nextInt(expected.size());
+				doc.removeLine(index);
+				expected.remove(index);
+			} else {
+				int index = rng.nextInt(expected.size());
+				doc.setLine(index, line);
+				expected.set(index, line);
+			}
+		}
+		assertEquals(expected.size(), doc.getNumLines());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i), doc.getLine(i));
+		}
+	}
+}
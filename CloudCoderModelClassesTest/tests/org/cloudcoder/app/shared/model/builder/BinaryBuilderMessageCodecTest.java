@@ -0,0 +1,96 @@
+package org.cloudcoder.app.shared.model.builder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestResult;
+import org.junit.Test;
+
+public class BinaryBuilderMessageCodecTest {
+	private static BuilderMessage roundTrip(BuilderMessage msg) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryBuilderMessageCodec writer = new BinaryBuilderMessageCodec(new ByteArrayInputStream(new byte[0]), bytes);
+		writer.writeMessage(msg);
+		writer.flush();
+		
+		BinaryBuilderMessageCodec reader = new BinaryBuilderMessageCodec(new ByteArrayInputStream(bytes.toByteArray()), new ByteArrayOutputStream());
+		return reader.readMessage();
+	}
+	
+	@Test
+	public void testProblem() throws Exception {
+		BuilderMessage orig = BuilderMessageTestData.createProblemMessage();
+		BuilderMessage msg = roundTrip(orig);
+		
+		assertEquals(BuilderMessage.Type.PROBLEM, msg.getType());
+		assertEquals(orig.getProblemHash(), msg.getProblemHash());
+		for (int i = 0; i < Problem.SCHEMA.getNumFields(); i++) {
+			assertEquals(Problem.SCHEMA.getField(i).get(orig.getProblem()), Problem.SCHEMA.getField(i).get(msg.getProblem()));
+		}
+		assertEquals(orig.getTestCaseList().size(), msg.getTestCaseList().size());
+		for (int i = 0; i < orig.getTestCaseList().size(); i++) {
+			for (int j = 0; j < TestCase.SCHEMA.getNumFields(); j++) {
+				assertEquals(
+						TestCase.SCHEMA.getField(j).get(orig.getTestCaseList().get(i)),
+						TestCase.SCHEMA.getField(j).get(msg.getTestCaseList().get(i)));
+			}
+		}
+	}
+	
+	@Test
+	public void testSubmission() throws Exception {
+		BuilderMessage orig = BuilderMessageTestData.createSubmissionMessage();
+		BuilderMessage msg = roundTrip(orig);
+		
+		assertEquals(BuilderMessage.Type.SUBMISSION, msg.getType());
+		assertEquals(orig.getSubmissionId(), msg.getSubmissionId());
+		assertEquals(orig.getProblemHash(), msg.getProblemHash());
+		assertEquals(orig.getProgramText(), msg.getProgramText());
+	}
+	
+	@Test
+	public void testResult() throws Exception {
+		BuilderMessage orig = BuilderMessageTestData.createResultMessage();
+		BuilderMessage msg = roundTrip(orig);
+		
+		assertEquals(BuilderMessage.Type.RESULT, msg.getType());
+		assertEquals(orig.getSubmissionId(), msg.getSubmissionId());
+		
+		SubmissionResult expected = orig.getSubmissionResult();
+		SubmissionResult actual = msg.getSubmissionResult();
+		assertEquals(expected.getCompilationResult().getOutcome(), actual.getCompilationResult().getOutcome());
+		assertArrayEquals(expected.getCompilationResult().getCompilerDiagnosticList(), actual.getCompilationResult().getCompilerDiagnosticList());
+		assertEquals(expected.getTestResults().length, actual.getTestResults().length);
+		for (int i = 0; i < expected.getTestResults().length; i++) {
+			for (int j = 0; j < TestResult.SCHEMA.getNumFields(); j++) {
+				assertEquals(
+						TestResult.SCHEMA.getField(j).get(expected.getTestResults()[i]),
+						TestResult.SCHEMA.getField(j).get(actual.getTestResults()[i]));
+			}
+		}
+		assertEquals(1, actual.getAnnotationList().size());
+		assertEquals("coverage", actual.getAnnotationList().get(0).getKey());
+		assertEquals("5/7", actual.getAnnotationList().get(0).getValue());
+	}
+	
+	@Test
+	public void testResultWithoutTestResults() throws Exception {
+		// e.g., a compilation failure
+		SubmissionResult result = new SubmissionResult();
+		result.setCompilationResult(new CompilationResult(CompilationOutcome.FAILURE));
+		BuilderMessage msg = roundTrip(BuilderMessage.result(3, result));
+		
+		assertEquals(CompilationOutcome.FAILURE, msg.getSubmissionResult().getCompilationResult().getOutcome());
+		assertNull(msg.getSubmissionResult().getTestResults());
+	}
+}
@@ -0,0 +1,91 @@
+package org.cloudcoder.app.shared.model.builder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Compare the {@link IBuilderMessageCodec} implementations:
+ * bytes per message, and microseconds to encode and decode
+ * each message.  Each codec encodes a stream of messages,
+ * as it would on a real connection.
+ * Run as a Java application.
+ */
+public class BuilderMessageCodecBenchmark {
+	private static final int NUM_MESSAGES = 2000;
+	private static final int NUM_ROUNDS = 20;
+	
+	private interface CodecFactory {
+		IBuilderMessageCodec create(InputStream in, OutputStream out) throws IOException;
+	}
+	
+	private static byte[] peerHeader;
+	
+	public static void main(String[] args) throws IOException {
+		// The serialization codec expects to read a stream header from its peer
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		new ObjectOutputStream(header).flush();
+		peerHeader = header.toByteArray();
+		
+		CodecFactory serialization = new CodecFactory() {
+			@Override
+			public IBuilderMessageCodec create(InputStream in, OutputStream out) throws IOException {
+				return new SerializationBuilderMessageCodec(in, out);
+			}
+		};
+		CodecFactory binary = new CodecFactory() {
+			@Override
+			public IBuilderMessageCodec create(InputStream in, OutputStream out) throws IOException {
+				return new BinaryBuilderMessageCodec(in, out);
+			}
+		};
+		
+		BuilderMessage[] messages = {
+				BuilderMessageTestData.createProblemMessage(),
+				BuilderMessageTestData.createSubmissionMessage(),
+				BuilderMessageTestData.createResultMessage(),
+		};
+		
+		for (BuilderMessage msg : messages) {
+			benchmark("serialization", serialization, msg);
+			benchmark("binary", binary, msg);
+		}
+	}
+
+	private static void benchmark(String name, CodecFactory factory, BuilderMessage msg) throws IOException {
+		long bestEncodeNanos = Long.MAX_VALUE, bestDecodeNanos = Long.MAX_VALUE;
+		int bytesPerMessage = 0;
+		
+		// The first rounds serve as warmup: report the best round
+		for (int round = 0; round < NUM_ROUNDS; round++) {
+			// The serialization codec writes a stream header when it is created
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			factory.create(new ByteArrayInputStream(peerHeader), header);
+			
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			long start = System.nanoTime();
+			IBuilderMessageCodec writer = factory.create(new ByteArrayInputStream(peerHeader), bytes);
+			for (int i = 0; i < NUM_MESSAGES; i++) {
+				writer.writeMessage(msg);
+				writer.flush();
+			}
+			bestEncodeNanos = Math.min(bestEncodeNanos, System.nanoTime() - start);
+			bytesPerMessage = (bytes.size() - header.size()) / NUM_MESSAGES;
+			
+			start = System.nanoTime();
+			IBuilderMessageCodec reader = factory.create(new ByteArrayInputStream(bytes.toByteArray()), new ByteArrayOutputStream());
+			for (int i = 0; i < NUM_MESSAGES; i++) {
+				reader.readMessage();
+			}
+			bestDecodeNanos = Math.min(bestDecodeNanos, System.nanoTime() - start);
+		}
+		
+		System.out.printf("%-13s %-12s %6d bytes/msg %8.2f us encode %8.2f us decode%n",
+				name, msg.getType(), bytesPerMessage,
+				bestEncodeNanos / 1000.0 / NUM_MESSAGES,
+				bestDecodeNanos / 1000.0 / NUM_MESSAGES);
+	}
+}
@@ -0,0 +1,88 @@
+package org.cloudcoder.app.shared.model.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cloudcoder.app.shared.model.CompilationOutcome;
+import org.cloudcoder.app.shared.model.CompilationResult;
+import org.cloudcoder.app.shared.model.CompilerDiagnostic;
+import org.cloudcoder.app.shared.model.Problem;
+import org.cloudcoder.app.shared.model.ProblemAuthorship;
+import org.cloudcoder.app.shared.model.ProblemLicense;
+import org.cloudcoder.app.shared.model.ProblemType;
+import org.cloudcoder.app.shared.model.SubmissionResult;
+import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
+import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.TestOutcome;
+import org.cloudcoder.app.shared.model.TestResult;
+
+/**
+ * Representative {@link BuilderMessage}s for codec tests and benchmarks.
+ */
+class BuilderMessageTestData {
+	static Problem createProblem() {
+		Problem problem = new Problem();
+		problem.setProblemId(42);
+		problem.setCourseId(3);
+		problem.setWhenAssigned(1345230040466L);
+		problem.setWhenDue(1345830040466L);
+		problem.setVisible(true);
+		problem.setProblemAuthorship(ProblemAuthorship.ORIGINAL);
+		problem.setModuleId(7);
+		problem.setProblemType(ProblemType.C_PROGRAM);
+		problem.setTestname("sum");
+		problem.setBriefDescription("Add two numbers");
+		problem.setDescription("<p>Read two integers and print their sum.</p>");
+		problem.setSkeleton("#include <stdio.h>\n\nint main(void) {\n\treturn 0;\n}\n");
+		problem.setSchemaVersion(Problem.SCHEMA.getVersion());
+		problem.setAuthorName("A. User");
+		problem.setAuthorEmail("auser@cs.unseen.edu");
+		problem.setAuthorWebsite("http://cs.unseen.edu/~auser");
+		problem.setTimestampUtc(1345230040466L);
+		problem.setLicense(ProblemLicense.CC_ATTRIB_SHAREALIKE_3_0);
+		return problem;
+	}
+	
+	static List<TestCase> createTestCaseList() {
+		List<TestCase> testCaseList = new ArrayList<TestCase>();
+		for (int i = 0; i < 5; i++) {
+			TestCase testCase = new TestCase();
+			testCase.setTestCaseId(100 + i);
+			testCase.setProblemId(42);
+			testCase.setTestCaseName("test" + i);
+			testCase.setInput(i + " " + (i * 2) + "\n");
+			testCase.setOutput("^\\s*" + (i * 3) + "\\s*$");
+			testCase.setSecret(i % 2 == 0);
+			testCaseList.add(testCase);
+		}
+		return testCaseList;
+	}
+	
+	static BuilderMessage createProblemMessage() {
+		return BuilderMessage.problem("0123456789abcdef0123456789abcdef01234567", createProblem(), createTestCaseList());
+	}
+	
+	static BuilderMessage createSubmissionMessage() {
+		return BuilderMessage.submission(17, "0123456789abcdef0123456789abcdef01234567",
+				"#include <stdio.h>\n\nint main(void) {\n\tint a, b;\n\tscanf(\"%d %d\", &a, &b);\n\tprintf(\"%d\\n\", a + b);\n\treturn 0;\n}\n");
+	}
+	
+	static BuilderMessage createResultMessage() {
+		CompilationResult compilationResult = new CompilationResult(CompilationOutcome.SUCCESS);
+		compilationResult.setCompilerDiagnosticList(new CompilerDiagnostic[]{
+				new CompilerDiagnostic(4, 4, 2, 10, "warning: unused variable 'c'")
+		});
+		SubmissionResult result = new SubmissionResult(compilationResult);
+		TestResult[] testResults = new TestResult[5];
+		for (int i = 0; i < testResults.length; i++) {
+			testResults[i] = new TestResult(
+					i < 4 ? TestOutcome.PASSED : TestOutcome.FAILED_ASSERTION,
+					i + " " + (i * 2) + "\n", String.valueOf(i * 3), "^\\s*" + (i * 3) + "\\s*$",
+					i * 3 + "\n", "");
+			testResults[i].setMessage(i < 4 ? "Test passed for input (" + i + ")" : "Test failed");
+		}
+		result.setTestResults(testResults);
+		result.addAnnotation(new SubmissionResultAnnotation("coverage", "5/7"));
+		return BuilderMessage.result(17, result);
+	}
+}
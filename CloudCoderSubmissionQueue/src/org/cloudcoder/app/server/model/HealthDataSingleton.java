@@ -20,7 +20,9 @@ package org.cloudcoder.app.server.model;
 
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.server.submitsvc.oop.OutOfProcessSubmitService;
 import org.cloudcoder.app.shared.model.HealthData;
 
@@ -55,9 +57,23 @@ public class HealthDataSingleton {
 	private LinkedList<SubmissionQueueSizeSample> submissionQueueSizeSampleList;
 	private volatile int submissionQueueSizeCurrent;
 	private volatile int submissionQueueSizeMaxLastFiveMinutes;
+	private AtomicIntegerArray submissionQueueSizeByPriority;
+	private AtomicIntegerArray submissionMaxWaitMillisByPriority;
+	
+	// Latency of submissions completed since the last call to updateSubmissionLatencyStats()
+	private Object latencyLock = new Object();
+	private int latencyCount;
+	private long dispatchMillisSum, dispatchMillisMax;
+	private long turnaroundMillisSum, turnaroundMillisMax;
+	
+	// Latency stats published by updateSubmissionLatencyStats()
+	private volatile int submissionDispatchMillisAvg, submissionDispatchMillisMax;
+	private volatile int submissionTurnaroundMillisAvg, submissionTurnaroundMillisMax;
 	
 	private HealthDataSingleton() {
 		this.submissionQueueSizeSampleList = new LinkedList<SubmissionQueueSizeSample>();
+		this.submissionQueueSizeByPriority = new AtomicIntegerArray(SubmissionPriority.values().length);
+		this.submissionMaxWaitMillisByPriority = new AtomicIntegerArray(SubmissionPriority.values().length);
 	}
 	
 	/**
@@ -90,6 +106,62 @@ public class HealthDataSingleton {
 		this.submissionQueueSizeMaxLastFiveMinutes = max;
 	}
 	
+	/**
+	 * Update the current queue size and maximum wait time
+	 * for submissions with given priority.
+	 * 
+	 * @param priority       the {@link SubmissionPriority}
+	 * @param queueSize      number of queued submissions with the priority
+	 * @param maxWaitMillis  how long (in milliseconds) the longest-waiting queued
+	 *                       submission with the priority has been waiting
+	 */
+	public void updateSubmissionQueueStats(SubmissionPriority priority, int queueSize, long maxWaitMillis) {
+		submissionQueueSizeByPriority.set(priority.ordinal(), queueSize);
+		submissionMaxWaitMillisByPriority.set(priority.ordinal(), toInt(maxWaitMillis));
+	}
+	
+	/**
+	 * Record the latency of a completed submission.
+	 * 
+	 * @param dispatchMillis    time (in milliseconds) from submission until the
+	 *                          submission was sent to a Builder
+	 * @param turnaroundMillis  time (in milliseconds) from submission until the
+	 *                          result was received
+	 */
+	public void recordSubmissionLatency(long dispatchMillis, long turnaroundMillis) {
+		synchronized (latencyLock) {
+			latencyCount++;
+			dispatchMillisSum += dispatchMillis;
+			dispatchMillisMax = Math.max(dispatchMillisMax, dispatchMillis);
+			turnaroundMillisSum += turnaroundMillis;
+			turnaroundMillisMax = Math.max(turnaroundMillisMax, turnaroundMillis);
+		}
+	}
+	
+	/**
+	 * Publish latency statistics for the submissions completed since the
+	 * last call to this method (if any submissions were completed),
+	 * and start a new measurement interval.
+	 */
+	public void updateSubmissionLatencyStats() {
+		synchronized (latencyLock) {
+			if (latencyCount == 0) {
+				return;
+			}
+			submissionDispatchMillisAvg = toInt(dispatchMillisSum / latencyCount);
+			submissionDispatchMillisMax = toInt(dispatchMillisMax);
+			submissionTurnaroundMillisAvg = toInt(turnaroundMillisSum / latencyCount);
+			submissionTurnaroundMillisMax = toInt(turnaroundMillisMax);
+			latencyCount = 0;
+			dispatchMillisSum = dispatchMillisMax = 0L;
+			turnaroundMillisSum = turnaroundMillisMax = 0L;
+		}
+	}
+	
+	private static int toInt(long millis) {
+		return (int) Math.min(millis, Integer.MAX_VALUE);
+	}
+	
 	/**
 	 * Get the current submission queue size.
 	 * 
@@ -118,6 +190,18 @@ public class HealthDataSingleton {
 		healthData.setSubmissionQueueSizeCurrent(submissionQueueSizeCurrent);
 		healthData.setSubmissionQueueSizeMaxLastFiveMinutes(submissionQueueSizeMaxLastFiveMinutes);
 		healthData.setNumConnectedBuilderThreads(OutOfProcessSubmitService.getInstance().getNumBuilderThreads());
+		healthData.setSubmissionQueueSizeQuiz(submissionQueueSizeByPriority.get(SubmissionPriority.QUIZ.ordinal()));
+		healthData.setSubmissionQueueSizeInteractive(submissionQueueSizeByPriority.get(SubmissionPriority.INTERACTIVE.ordinal()));
+		healthData.setSubmissionQueueSizeApi(submissionQueueSizeByPriority.get(SubmissionPriority.API.ordinal()));
+		healthData.setSubmissionQueueSizeBatch(submissionQueueSizeByPriority.get(SubmissionPriority.BATCH.ordinal()));
+		healthData.setSubmissionMaxWaitMillisQuiz(submissionMaxWaitMillisByPriority.get(SubmissionPriority.QUIZ.ordinal()));
+		healthData.setSubmissionMaxWaitMillisInteractive(submissionMaxWaitMillisByPriority.get(SubmissionPriority.INTERACTIVE.ordinal()));
+		healthData.setSubmissionMaxWaitMillisApi(submissionMaxWaitMillisByPriority.get(SubmissionPriority.API.ordinal()));
+		healthData.setSubmissionMaxWaitMillisBatch(submissionMaxWaitMillisByPriority.get(SubmissionPriority.BATCH.ordinal()));
+		healthData.setSubmissionDispatchMillisAvg(submissionDispatchMillisAvg);
+		healthData.setSubmissionDispatchMillisMax(submissionDispatchMillisMax);
+		healthData.setSubmissionTurnaroundMillisAvg(submissionTurnaroundMillisAvg);
+		healthData.setSubmissionTurnaroundMillisMax(submissionTurnaroundMillisMax);
 		return healthData;
 	}
 }
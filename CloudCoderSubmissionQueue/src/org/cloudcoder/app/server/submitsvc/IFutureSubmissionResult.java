@@ -17,6 +17,7 @@
 
 package org.cloudcoder.app.server.submitsvc;
 
+import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 
@@ -46,4 +47,33 @@ public interface IFutureSubmissionResult {
 	 * @throws InterruptedException 
 	 */
 	public SubmissionResult waitFor(long timeoutMs) throws SubmissionException, InterruptedException;
+	
+	/**
+	 * Check whether compilation/testing has completed (either successfully
+	 * or with an error).  If this method returns true, {@link #waitFor(long)}
+	 * will return (or throw) immediately.
+	 * 
+	 * @return true if compilation/testing has completed, false otherwise
+	 */
+	public boolean isReady();
+	
+	/**
+	 * Register a callback to be invoked when compilation/testing completes.
+	 * The callback is invoked exactly once: immediately (on the calling thread)
+	 * if the result is already ready, otherwise on the thread that
+	 * completes the submission.  Callbacks should not block.
+	 * 
+	 * @param callback the callback to invoke when the result is ready
+	 */
+	public void addCompletionCallback(ICallback<IFutureSubmissionResult> callback);
+	
+	/**
+	 * Unregister a callback registered with {@link #addCompletionCallback(ICallback)}
+	 * that is no longer needed (for example, because the request waiting
+	 * for the result timed out).  Has no effect if the callback has
+	 * already been invoked.
+	 * 
+	 * @param callback the callback to unregister
+	 */
+	public void removeCompletionCallback(ICallback<IFutureSubmissionResult> callback);
 }
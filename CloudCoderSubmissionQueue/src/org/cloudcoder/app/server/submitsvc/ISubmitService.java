@@ -50,4 +50,25 @@ public interface ISubmitService {
 	 *         a {@link SubmissionResult}
 	 */
 	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) throws SubmissionException;
+	
+	/**
+	 * Submit a problem and program text with a specified
+	 * {@link SubmissionPriority} and owner.  Submissions with the same
+	 * priority are tested fairly (round-robin) among owners.
+	 * If the priority class replaces stale submissions (see
+	 * {@link SubmissionPriority#replacesStale()}), a queued submission
+	 * by the same owner for the same problem is discarded:
+	 * its {@link IFutureSubmissionResult} completes with an error.
+	 * 
+	 * @param problem      a Problem
+	 * @param testCaseList the Problem's test cases
+	 * @param programText  program text
+	 * @param priority     the {@link SubmissionPriority}
+	 * @param owner        key identifying the submission's owner (e.g., the user id),
+	 *                     or null if the submission has no particular owner
+	 * @return an {@link IFutureSubmissionResult}, which will eventually yield
+	 *         a {@link SubmissionResult}
+	 */
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText,
+			SubmissionPriority priority, String owner) throws SubmissionException;
 }
@@ -0,0 +1,56 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc;
+
+/**
+ * Priority class of a submission.  Submissions in a higher priority
+ * class are always tested before submissions in a lower priority class.
+ * Members are listed from highest to lowest priority.
+ */
+public enum SubmissionPriority {
+	/** Submission by a student taking a quiz. */
+	QUIZ(true),
+	
+	/** Submission (or run) by a user working interactively. */
+	INTERACTIVE(true),
+	
+	/** Submission made through the builder web service. */
+	API(false),
+	
+	/** Batch retest of previously-submitted code. */
+	BATCH(false);
+	
+	private final boolean replacesStale;
+	
+	private SubmissionPriority(boolean replacesStale) {
+		this.replacesStale = replacesStale;
+	}
+	
+	/**
+	 * Check whether a submission in this priority class replaces
+	 * a queued (not yet tested) submission by the same owner
+	 * for the same problem.  This is the case when the owner
+	 * is a user who only sees the result of the most recent submission.
+	 * 
+	 * @return true if a submission in this priority class replaces
+	 *         the owner's stale queued submission for the same problem
+	 */
+	public boolean replacesStale() {
+		return replacesStale;
+	}
+}
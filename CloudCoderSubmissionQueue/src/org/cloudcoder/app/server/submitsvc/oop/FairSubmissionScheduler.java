@@ -0,0 +1,208 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.shared.model.SubmissionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ISubmissionScheduler} which schedules submissions by
+ * priority and owner:
+ * <ul>
+ * <li>A submission is only tested if there are no queued submissions
+ *     with a higher {@link SubmissionPriority}, so (for example)
+ *     quiz submissions never wait behind a batch retest.</li>
+ * <li>Within a priority class, owners take turns (round-robin),
+ *     so one user submitting repeatedly can't delay other users'
+ *     submissions by more than one submission each.</li>
+ * <li>A new submission replaces the owner's queued submission
+ *     for the same problem (if the priority class allows it,
+ *     see {@link SubmissionPriority#replacesStale()}), since
+ *     its result would never be seen.  The replaced submission's
+ *     future completes with an error.</li>
+ * </ul>
+ */
+public class FairSubmissionScheduler implements ISubmissionScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(FairSubmissionScheduler.class);
+	
+	/**
+	 * Queued submissions with one priority.
+	 */
+	private static class PriorityClass {
+		/**
+		 * Per-owner queues, in round-robin order: the first owner
+		 * is the one whose turn is next.
+		 */
+		final LinkedHashMap<String, LinkedList<OOPBuildServiceSubmission>> ownerQueues =
+				new LinkedHashMap<String, LinkedList<OOPBuildServiceSubmission>>();
+		int size;
+	}
+	
+	private Object lock;
+	private PriorityClass[] priorityClasses;
+	private int size;
+	
+	/**
+	 * Constructor.
+	 */
+	public FairSubmissionScheduler() {
+		this.lock = new Object();
+		this.priorityClasses = new PriorityClass[SubmissionPriority.values().length];
+		for (int i = 0; i < priorityClasses.length; i++) {
+			priorityClasses[i] = new PriorityClass();
+		}
+	}
+	
+	@Override
+	public void add(OOPBuildServiceSubmission submission) {
+		submission.setEnqueueTime(System.currentTimeMillis());
+		OOPBuildServiceSubmission replaced;
+		synchronized (lock) {
+			LinkedList<OOPBuildServiceSubmission> ownerQueue = getOwnerQueue(submission);
+			replaced = removeReplaced(submission, ownerQueue);
+			ownerQueue.addLast(submission);
+			onAdded(submission);
+		}
+		discard(replaced);
+	}
+	
+	@Override
+	public void requeue(OOPBuildServiceSubmission submission) {
+		boolean stale = false;
+		synchronized (lock) {
+			LinkedList<OOPBuildServiceSubmission> ownerQueue = getOwnerQueue(submission);
+			
+			// If the owner submitted newer code for the same problem
+			// while this submission was being tested, there's no need to test it
+			for (OOPBuildServiceSubmission queued : ownerQueue) {
+				if (queued.replaces(submission)) {
+					stale = true;
+					break;
+				}
+			}
+			if (!stale) {
+				ownerQueue.addFirst(submission);
+				onAdded(submission);
+			}
+		}
+		if (stale) {
+			discard(submission);
+		}
+	}
+	
+	@Override
+	public OOPBuildServiceSubmission poll() {
+		synchronized (lock) {
+			for (PriorityClass priorityClass : priorityClasses) {
+				if (priorityClass.size == 0) {
+					continue;
+				}
+				
+				// Take the first submission of the owner whose turn it is,
+				// then move the owner to the end of the line (if it has
+				// more submissions)
+				Iterator<Map.Entry<String, LinkedList<OOPBuildServiceSubmission>>> i =
+						priorityClass.ownerQueues.entrySet().iterator();
+				Map.Entry<String, LinkedList<OOPBuildServiceSubmission>> entry = i.next();
+				i.remove();
+				OOPBuildServiceSubmission submission = entry.getValue().removeFirst();
+				if (!entry.getValue().isEmpty()) {
+					priorityClass.ownerQueues.put(entry.getKey(), entry.getValue());
+				}
+				
+				priorityClass.size--;
+				size--;
+				return submission;
+			}
+			
+			return null;
+		}
+	}
+	
+	@Override
+	public int size() {
+		synchronized (lock) {
+			return size;
+		}
+	}
+	
+	@Override
+	public int size(SubmissionPriority priority) {
+		synchronized (lock) {
+			return priorityClasses[priority.ordinal()].size;
+		}
+	}
+	
+	@Override
+	public long getMaxWaitMillis(SubmissionPriority priority, long now) {
+		synchronized (lock) {
+			// The longest-waiting submission is at the head of one
+			// of the owner queues
+			long maxWait = 0L;
+			for (LinkedList<OOPBuildServiceSubmission> ownerQueue : priorityClasses[priority.ordinal()].ownerQueues.values()) {
+				maxWait = Math.max(maxWait, now - ownerQueue.getFirst().getEnqueueTime());
+			}
+			return maxWait;
+		}
+	}
+	
+	private LinkedList<OOPBuildServiceSubmission> getOwnerQueue(OOPBuildServiceSubmission submission) {
+		PriorityClass priorityClass = priorityClasses[submission.getPriority().ordinal()];
+		LinkedList<OOPBuildServiceSubmission> ownerQueue = priorityClass.ownerQueues.get(submission.getOwner());
+		if (ownerQueue == null) {
+			ownerQueue = new LinkedList<OOPBuildServiceSubmission>();
+			priorityClass.ownerQueues.put(submission.getOwner(), ownerQueue);
+		}
+		return ownerQueue;
+	}
+	
+	private OOPBuildServiceSubmission removeReplaced(OOPBuildServiceSubmission submission, LinkedList<OOPBuildServiceSubmission> ownerQueue) {
+		for (Iterator<OOPBuildServiceSubmission> i = ownerQueue.iterator(); i.hasNext(); ) {
+			OOPBuildServiceSubmission queued = i.next();
+			if (submission.replaces(queued)) {
+				i.remove();
+				priorityClasses[queued.getPriority().ordinal()].size--;
+				size--;
+				return queued;
+			}
+		}
+		return null;
+	}
+	
+	private void onAdded(OOPBuildServiceSubmission submission) {
+		priorityClasses[submission.getPriority().ordinal()].size++;
+		size++;
+	}
+	
+	private void discard(OOPBuildServiceSubmission replaced) {
+		if (replaced != null) {
+			// Complete the replaced submission outside the lock,
+			// since completion callbacks could do arbitrary things
+			logger.info("Discarding stale queued submission by {}", replaced.getOwner());
+			replaced.setError(new SubmissionException("Submission was replaced by a newer submission"));
+			replaced.setReady();
+		}
+	}
+}
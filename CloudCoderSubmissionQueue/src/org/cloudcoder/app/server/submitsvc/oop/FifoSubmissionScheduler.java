@@ -0,0 +1,81 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+
+/**
+ * {@link ISubmissionScheduler} which tests submissions in the
+ * order in which they were submitted, ignoring priority and owner.
+ */
+public class FifoSubmissionScheduler implements ISubmissionScheduler {
+	private LinkedBlockingDeque<OOPBuildServiceSubmission> queue;
+	
+	/**
+	 * Constructor.
+	 */
+	public FifoSubmissionScheduler() {
+		this.queue = new LinkedBlockingDeque<OOPBuildServiceSubmission>();
+	}
+	
+	@Override
+	public void add(OOPBuildServiceSubmission submission) {
+		submission.setEnqueueTime(System.currentTimeMillis());
+		queue.addLast(submission);
+	}
+	
+	@Override
+	public void requeue(OOPBuildServiceSubmission submission) {
+		queue.addFirst(submission);
+	}
+	
+	@Override
+	public OOPBuildServiceSubmission poll() {
+		return queue.pollFirst();
+	}
+	
+	@Override
+	public int size() {
+		return queue.size();
+	}
+	
+	@Override
+	public int size(SubmissionPriority priority) {
+		int count = 0;
+		for (OOPBuildServiceSubmission submission : queue) {
+			if (submission.getPriority() == priority) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	@Override
+	public long getMaxWaitMillis(SubmissionPriority priority, long now) {
+		// Submissions are (mostly) in enqueue order, so the first match
+		// is the longest-waiting
+		for (OOPBuildServiceSubmission submission : queue) {
+			if (submission.getPriority() == priority) {
+				return now - submission.getEnqueueTime();
+			}
+		}
+		return 0L;
+	}
+}
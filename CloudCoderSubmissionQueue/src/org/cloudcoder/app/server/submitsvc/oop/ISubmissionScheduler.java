@@ -0,0 +1,76 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+
+/**
+ * Queue of {@link OOPBuildServiceSubmission}s waiting to be tested,
+ * which decides the order in which they are handed to the
+ * {@link WorkerTask}s.  Implementations must be thread-safe.
+ */
+public interface ISubmissionScheduler {
+	/**
+	 * Add a new submission.
+	 * 
+	 * @param submission the submission to add
+	 */
+	public void add(OOPBuildServiceSubmission submission);
+	
+	/**
+	 * Put back a submission which was taken from the scheduler
+	 * but could not be tested (e.g., because the connection to the
+	 * Builder failed).  It should be tested again as soon as possible.
+	 * 
+	 * @param submission the submission to put back
+	 */
+	public void requeue(OOPBuildServiceSubmission submission);
+	
+	/**
+	 * Take the next submission to test.  This method does not wait
+	 * for a submission to be added: the {@link SubmissionDispatcher}
+	 * calls it when a submission is added or a Builder has capacity.
+	 * 
+	 * @return the next submission, or null if there are no queued submissions
+	 */
+	public OOPBuildServiceSubmission poll();
+	
+	/**
+	 * @return total number of queued submissions
+	 */
+	public int size();
+	
+	/**
+	 * Get the number of queued submissions with given priority.
+	 * 
+	 * @param priority the {@link SubmissionPriority}
+	 * @return number of queued submissions with the priority
+	 */
+	public int size(SubmissionPriority priority);
+	
+	/**
+	 * Get the amount of time the longest-waiting queued submission
+	 * with given priority has been waiting.
+	 * 
+	 * @param priority the {@link SubmissionPriority}
+	 * @param now      the current time
+	 * @return the wait time in milliseconds, or 0 if there are no
+	 *         queued submissions with the priority
+	 */
+	public long getMaxWaitMillis(SubmissionPriority priority, long now);
+}
@@ -17,14 +17,20 @@
 
 package org.cloudcoder.app.server.submitsvc.oop;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
+import org.cloudcoder.app.shared.model.ICallback;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.cloudcoder.app.shared.model.SubmissionResult;
 import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.shared.model.builder.BuilderProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A Submission (Problem, TestCases, and program text)
@@ -33,15 +39,37 @@ import org.cloudcoder.app.shared.model.TestCase;
  * @author David Hovemeyer
  */
 public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
+	private static final Logger logger = LoggerFactory.getLogger(OOPBuildServiceSubmission.class);
+	
 	private Object lock = new Object();
 	private Submission submission;
+	private final SubmissionPriority priority;
+	private final String owner;
+	private volatile long enqueueTime;
+	private volatile long dispatchTime;
 	private boolean ready;
 	private SubmissionResult submissionResult;
 	private Exception error;
 	private int numAttempts;
+	private String problemHash;
+	private List<ICallback<IFutureSubmissionResult>> completionCallbacks;
 	
 	public OOPBuildServiceSubmission(Submission submission) {
+		this(submission, SubmissionPriority.INTERACTIVE, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param submission  the {@link Submission}
+	 * @param priority    the {@link SubmissionPriority}
+	 * @param owner       key identifying the owner, or null if there is no particular owner
+	 */
+	public OOPBuildServiceSubmission(Submission submission, SubmissionPriority priority, String owner) {
 		this.submission = submission;
+		this.priority = priority;
+		this.owner = owner;
+		this.completionCallbacks = new ArrayList<ICallback<IFutureSubmissionResult>>();
 	}
 	
 	@Override
@@ -60,6 +88,33 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	@Override
+	public boolean isReady() {
+		synchronized (lock) {
+			return ready;
+		}
+	}
+	
+	@Override
+	public void addCompletionCallback(ICallback<IFutureSubmissionResult> callback) {
+		synchronized (lock) {
+			if (!ready) {
+				completionCallbacks.add(callback);
+				return;
+			}
+		}
+		
+		// Already ready: invoke the callback immediately
+		invokeCompletionCallback(callback);
+	}
+	
+	@Override
+	public void removeCompletionCallback(ICallback<IFutureSubmissionResult> callback) {
+		synchronized (lock) {
+			completionCallbacks.remove(callback);
+		}
+	}
+	
 	public Problem getProblem() {
 		synchronized (lock) {
 			return submission.getProblem();
@@ -78,6 +133,85 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 		}
 	}
 	
+	/**
+	 * @return the {@link SubmissionPriority}
+	 */
+	public SubmissionPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * @return key identifying the owner, or null if there is no particular owner
+	 */
+	public String getOwner() {
+		return owner;
+	}
+	
+	/**
+	 * Check whether this submission replaces the given (older) queued submission,
+	 * because both have the same owner and problem, and the priority class
+	 * replaces stale submissions.
+	 * 
+	 * @param other an older queued submission
+	 * @return true if this submission replaces the other submission
+	 */
+	public boolean replaces(OOPBuildServiceSubmission other) {
+		if (!priority.replacesStale() || owner == null || other.priority != priority || !owner.equals(other.owner)) {
+			return false;
+		}
+		Integer problemId = getProblem().getProblemId();
+		return problemId != null && problemId.equals(other.getProblem().getProblemId());
+	}
+	
+	/**
+	 * Set the time when this submission was first added to the
+	 * submission queue.
+	 * 
+	 * @param enqueueTime the enqueue time
+	 */
+	public void setEnqueueTime(long enqueueTime) {
+		this.enqueueTime = enqueueTime;
+	}
+	
+	/**
+	 * @return the time when this submission was first added to the submission queue
+	 */
+	public long getEnqueueTime() {
+		return enqueueTime;
+	}
+	
+	/**
+	 * Set the time when this submission was (most recently)
+	 * sent to a Builder.
+	 * 
+	 * @param dispatchTime the dispatch time
+	 */
+	public void setDispatchTime(long dispatchTime) {
+		this.dispatchTime = dispatchTime;
+	}
+	
+	/**
+	 * @return the time when this submission was (most recently) sent to a Builder
+	 */
+	public long getDispatchTime() {
+		return dispatchTime;
+	}
+	
+	/**
+	 * Get the content hash of this submission's exercise
+	 * (Problem and TestCases), computing it if necessary.
+	 * 
+	 * @return the content hash
+	 */
+	public String getProblemHash() {
+		synchronized (lock) {
+			if (problemHash == null) {
+				problemHash = BuilderProtocol.computeProblemHash(submission.getProblem(), submission.getTestCaseList());
+			}
+			return problemHash;
+		}
+	}
+	
 	public void setSubmissionResult(SubmissionResult result) {
 		this.submissionResult = result;
 	}
@@ -94,9 +228,25 @@ public class OOPBuildServiceSubmission implements IFutureSubmissionResult {
 	 * must be called before setting ready to true.
 	 */
 	public void setReady() {
+		List<ICallback<IFutureSubmissionResult>> callbacks;
 		synchronized (lock) {
 			this.ready = true;
 			lock.notifyAll();
+			callbacks = completionCallbacks;
+			completionCallbacks = new ArrayList<ICallback<IFutureSubmissionResult>>();
+		}
+		
+		// Invoke completion callbacks outside the lock
+		for (ICallback<IFutureSubmissionResult> callback : callbacks) {
+			invokeCompletionCallback(callback);
+		}
+	}
+	
+	private void invokeCompletionCallback(ICallback<IFutureSubmissionResult> callback) {
+		try {
+			callback.call(this);
+		} catch (RuntimeException e) {
+			logger.error("Submission completion callback threw exception", e);
 		}
 	}
 	
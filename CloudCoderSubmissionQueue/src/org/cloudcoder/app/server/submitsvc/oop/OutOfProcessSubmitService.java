@@ -43,6 +43,7 @@ import javax.net.ssl.X509TrustManager;
 
 import org.cloudcoder.app.server.submitsvc.IFutureSubmissionResult;
 import org.cloudcoder.app.server.submitsvc.ISubmitService;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.Problem;
 import org.cloudcoder.app.shared.model.Submission;
 import org.cloudcoder.app.shared.model.SubmissionException;
@@ -88,6 +89,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 	private String keystoreFilename;
 	private String keystorePassword;
 	private int port;
+	private ISubmissionScheduler scheduler;
 
 	/**
 	 * Poll to see how many worker tasks, and thus how many connected builder threads,
@@ -140,11 +142,30 @@ public class OutOfProcessSubmitService implements ISubmitService {
 			logger.info("Using keystore {}. password={}", this.keystoreFilename, this.keystorePassword);
 		}
 		this.port = Integer.parseInt(getRequiredProperty(config, "cloudcoder.submitsvc.oop.port"));
+		this.scheduler = createScheduler(getOptionalProperty(config, "cloudcoder.submitsvc.oop.scheduler", "fair"));
+	}
+	
+	private ISubmissionScheduler createScheduler(String schedulerName) {
+		if (schedulerName.equals("fair")) {
+			return new FairSubmissionScheduler();
+		} else if (schedulerName.equals("fifo")) {
+			return new FifoSubmissionScheduler();
+		} else {
+			throw new IllegalArgumentException("Unknown submission scheduler: " + schedulerName);
+		}
 	}
 	
 	@Override
 	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText) 
 	throws SubmissionException 
+	{
+		return submitAsync(problem, testCaseList, programText, SubmissionPriority.INTERACTIVE, null);
+	}
+	
+	@Override
+	public IFutureSubmissionResult submitAsync(Problem problem, List<TestCase> testCaseList, String programText,
+			SubmissionPriority priority, String owner) 
+	throws SubmissionException 
 	{
 		if (serverTask == null) {
 			throw new IllegalStateException();
@@ -160,7 +181,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 
 		// Add the submission to the queue.
 		OOPBuildServiceSubmission future = new OOPBuildServiceSubmission(
-				new Submission(problem, testCaseList, programText));
+				new Submission(problem, testCaseList, programText), priority, owner);
 		serverTask.submit(future);
 		
 		return future;
@@ -259,7 +280,7 @@ public class OutOfProcessSubmitService implements ISubmitService {
 	    	serverSocket = new ServerSocket(port);
 	    }
 		
-		serverTask = new ServerTask(serverSocket, useSSL, hostName);
+		serverTask = new ServerTask(serverSocket, useSSL, hostName, scheduler);
 		serverThread = new Thread(serverTask);
 		serverThread.start();
 		logger.info("Out of process submit service server thread started");
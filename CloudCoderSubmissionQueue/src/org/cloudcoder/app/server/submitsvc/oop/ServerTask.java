@@ -22,9 +22,12 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.server.submitsvc.SubmissionPriority;
 import org.cloudcoder.app.shared.model.SubmissionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,25 +47,23 @@ public class ServerTask implements Runnable {
     private class HealthMonitorTask implements Runnable {
     	@Override
     	public void run() {
-    		while (!shutdownRequested) {
-    			try {
-    				int size = submissionQueue.size();
-    				HealthDataSingleton.getInstance().updateSubmissionQueueSize(size);
-    				
-    				Thread.sleep(UPDATE_SUBMISSION_QUEUE_SIZE_INTERVAL);
-    			} catch (InterruptedException e) {
-    				// Shutting down
-    				logger.info("Health monitor thread interrupted...");
-    			}
+    		ISubmissionScheduler scheduler = dispatcher.getScheduler();
+    		int size = scheduler.size();
+    		HealthDataSingleton.getInstance().updateSubmissionQueueSize(size);
+    		long now = System.currentTimeMillis();
+    		for (SubmissionPriority priority : SubmissionPriority.values()) {
+    			HealthDataSingleton.getInstance().updateSubmissionQueueStats(
+    					priority, scheduler.size(priority), scheduler.getMaxWaitMillis(priority, now));
     		}
+    		HealthDataSingleton.getInstance().updateSubmissionLatencyStats();
     	}
     }
 
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private SubmissionDispatcher dispatcher;
+	private ScheduledExecutorService timer;
 	private ServerSocket serverSocket;
 	private WorkerTaskSet workerTaskSet;
 	private volatile boolean shutdownRequested;
-	private Thread healthMonitorThread;
 	private boolean usingSSL;
 	private String hostName;
 	
@@ -74,9 +75,11 @@ public class ServerTask implements Runnable {
 	 *                     if false, we will reject connections originating from the
 	 *                     external network
 	 * @param hostName     the (external) hostname of this host 
+	 * @param scheduler    the {@link ISubmissionScheduler} which will queue submissions
 	 */
-	public ServerTask(ServerSocket serverSocket, boolean usingSSL, String hostName) {
-		this.submissionQueue = new LinkedBlockingQueue<OOPBuildServiceSubmission>();
+	public ServerTask(ServerSocket serverSocket, boolean usingSSL, String hostName, ISubmissionScheduler scheduler) {
+		this.dispatcher = new SubmissionDispatcher(scheduler);
+		this.timer = Executors.newSingleThreadScheduledExecutor();
 		this.serverSocket = serverSocket;
 		this.workerTaskSet = new WorkerTaskSet();
 		this.shutdownRequested = false;
@@ -90,14 +93,14 @@ public class ServerTask implements Runnable {
 	
 	public void submit(OOPBuildServiceSubmission submission) throws SubmissionException {
 		// add it to the queue so a worker can grab it	
-	    submissionQueue.add(submission);
+	    dispatcher.submit(submission);
 	}
 	
 	@Override
 	public void run() {
-		healthMonitorThread = new Thread(new HealthMonitorTask());
-		healthMonitorThread.start();
-		
+		// The health monitor and the WorkerTasks' keepalive signals
+		// run on a single shared timer thread
+		timer.scheduleWithFixedDelay(new HealthMonitorTask(), 0L, UPDATE_SUBMISSION_QUEUE_SIZE_INTERVAL, TimeUnit.MILLISECONDS);
 		
 		try {
 			InetAddress localHost = InetAddress.getByName("localhost");
@@ -117,7 +120,7 @@ public class ServerTask implements Runnable {
 					logger.info("Rejecting non-SSL connection from {}", clientAddress);
 				} else {
 					// create worker task and thread
-					workerTaskSet.createWorker(clientSocket, submissionQueue);
+					workerTaskSet.createWorker(clientSocket, dispatcher, timer);
 				}
 			}
 		
@@ -133,9 +136,6 @@ public class ServerTask implements Runnable {
 	public void shutdown() {
 		shutdownRequested = true;
 		
-		// Shut down the submission queue size monitor thread
-		healthMonitorThread.interrupt();
-		
 		// close server sockets (so no new clients can attach)
 		try {
 			serverSocket.close();  // a bit rude, but effective
@@ -146,5 +146,8 @@ public class ServerTask implements Runnable {
 		// shut down worker tasks and wait for them to exit
 		workerTaskSet.shutdownAll();
 		workerTaskSet.waitForAll();
+		
+		// Shut down the health monitor and keepalive timer
+		timer.shutdownNow();
 	}
 }
\ No newline at end of file
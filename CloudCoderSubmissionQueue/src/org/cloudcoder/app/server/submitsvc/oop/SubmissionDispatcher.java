@@ -0,0 +1,124 @@
+// CloudCoder - a web-based pedagogical programming environment
+// Copyright (C) 2011-2017, Jaime Spacco <jspacco@knox.edu>
+// Copyright (C) 2011-2017, David H. Hovemeyer <david.hovemeyer@gmail.com>
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU Affero General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU Affero General Public License for more details.
+//
+// You should have received a copy of the GNU Affero General Public License
+// along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+package org.cloudcoder.app.server.submitsvc.oop;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Hands queued submissions to {@link WorkerTask}s as soon as
+ * both a submission and Builder capacity are available.
+ * Each WorkerTask registers capacity (one "slot" for each
+ * submission its Builder is willing to have in flight), and gives
+ * a slot back whenever the Builder returns a result.  Dispatching
+ * happens in the thread that adds the submission or the capacity,
+ * so there is no polling: a submission added while a Builder is idle
+ * is sent to it immediately.
+ */
+public class SubmissionDispatcher {
+	private ISubmissionScheduler scheduler;
+	private Object lock;
+	
+	// One entry for each available slot: a WorkerTask appears
+	// as many times as it can accept submissions.  Slots are used
+	// in FIFO order, so work is spread among idle Builders.
+	private LinkedList<WorkerTask> idleSlots;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param scheduler the {@link ISubmissionScheduler} which decides
+	 *                  the order in which submissions are dispatched
+	 */
+	public SubmissionDispatcher(ISubmissionScheduler scheduler) {
+		this.scheduler = scheduler;
+		this.lock = new Object();
+		this.idleSlots = new LinkedList<WorkerTask>();
+	}
+	
+	/**
+	 * @return the {@link ISubmissionScheduler}
+	 */
+	public ISubmissionScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * Add a new submission.
+	 * 
+	 * @param submission the submission
+	 */
+	public void submit(OOPBuildServiceSubmission submission) {
+		scheduler.add(submission);
+		dispatch();
+	}
+	
+	/**
+	 * Put back a submission whose testing could not be completed.
+	 * 
+	 * @param submission the submission
+	 */
+	public void requeue(OOPBuildServiceSubmission submission) {
+		scheduler.requeue(submission);
+		dispatch();
+	}
+	
+	/**
+	 * Register capacity of a {@link WorkerTask}'s Builder.
+	 * 
+	 * @param workerTask  the {@link WorkerTask}
+	 * @param numSlots    number of additional submissions the Builder can accept
+	 */
+	public void addCapacity(WorkerTask workerTask, int numSlots) {
+		synchronized (lock) {
+			for (int i = 0; i < numSlots; i++) {
+				idleSlots.addLast(workerTask);
+			}
+		}
+		dispatch();
+	}
+	
+	/**
+	 * Remove all capacity of a {@link WorkerTask} (because its
+	 * connection has ended).  After this method returns, no more
+	 * submissions will be assigned to the WorkerTask.
+	 * 
+	 * @param workerTask the {@link WorkerTask}
+	 */
+	public void removeCapacity(WorkerTask workerTask) {
+		synchronized (lock) {
+			for (Iterator<WorkerTask> i = idleSlots.iterator(); i.hasNext(); ) {
+				if (i.next() == workerTask) {
+					i.remove();
+				}
+			}
+		}
+	}
+	
+	private void dispatch() {
+		synchronized (lock) {
+			while (!idleSlots.isEmpty()) {
+				OOPBuildServiceSubmission submission = scheduler.poll();
+				if (submission == null) {
+					break;
+				}
+				idleSlots.removeFirst().assign(submission);
+			}
+		}
+	}
+}
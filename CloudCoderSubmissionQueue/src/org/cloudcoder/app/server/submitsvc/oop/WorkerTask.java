@@ -18,196 +18,358 @@
 package org.cloudcoder.app.server.submitsvc.oop;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
-import org.cloudcoder.app.shared.model.Problem;
-import org.cloudcoder.app.shared.model.SubmissionResult;
-import org.cloudcoder.app.shared.model.SubmissionResultAnnotation;
-import org.cloudcoder.app.shared.model.TestCase;
+import org.cloudcoder.app.server.model.HealthDataSingleton;
+import org.cloudcoder.app.shared.model.builder.BuilderMessage;
+import org.cloudcoder.app.shared.model.builder.BuilderProtocol;
+import org.cloudcoder.app.shared.model.builder.IBuilderMessageCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Worker task to communicate with a remote Builder process.
+ * After the protocol handshake (see {@link BuilderProtocol}),
+ * the task registers the Builder's capacity with the
+ * {@link SubmissionDispatcher}, and sends the submissions assigned
+ * to it as {@link BuilderMessage}s.  Up to the number requested by
+ * the Builder may be in flight at once.
+ * Each exercise (Problem and TestCases) is sent at most once per
+ * connection, identified by its content hash: the Builder
+ * caches exercises, and asks for one if it no longer has it.
+ * A separate reader thread receives results from the Builder,
+ * and keepalive signals are sent by a timer task on a
+ * shared {@link ScheduledExecutorService}.
  * 
  * @author David Hovemeyer
  */
 public class WorkerTask implements Runnable {
 	/**
-	 * Number of milliseconds between attempts to poll the
-	 * submission queue.
-	 */
-	private static final long POLL_INTERVAL_MILLIS = 1000L;
-
-	/**
-	 * Maximum number of milliseconds that the task is allowed to
-	 * be idle (no submissions available) before a keepalive signal
+	 * Maximum number of milliseconds that the connection is allowed to
+	 * be idle (nothing sent to the Builder) before a keepalive signal
 	 * is sent to the builder.
 	 */
 	private static final long MAX_IDLE_TIME_MILLIS = 5000L;
+	
+	/**
+	 * How often to check whether a keepalive signal is needed.
+	 */
+	private static final long KEEPALIVE_CHECK_INTERVAL_MILLIS = MAX_IDLE_TIME_MILLIS / 2;
+	
+	/**
+	 * Upper limit on the number of submissions in flight on
+	 * one connection, regardless of what the Builder asks for.
+	 */
+	private static final int MAX_IN_FLIGHT = 8;
+	
+	/**
+	 * Maximum number of attempts to test a submission
+	 * (a submission is retried if the connection to a Builder fails).
+	 */
+	private static final int MAX_ATTEMPTS = 10;
+	
+	/**
+	 * Number of exercise hashes to remember as having been sent
+	 * on the connection.
+	 */
+	private static final int SENT_PROBLEM_HASH_CACHE_SIZE = 256;
 
 	private static Logger logger = LoggerFactory.getLogger(WorkerTask.class);
 	
+	/**
+	 * Placeholder added to the queue of assigned submissions to wake up
+	 * the sender thread when the connection is broken.
+	 */
+	private static final OOPBuildServiceSubmission CONNECTION_BROKEN = new OOPBuildServiceSubmission(null);
+	
+	/**
+	 * Runnable for the thread which reads messages from the Builder.
+	 */
+	private class ReaderTask implements Runnable {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					BuilderMessage msg = codec.readMessage();
+					switch (msg.getType()) {
+					case RESULT:
+						OOPBuildServiceSubmission submission = inFlight.remove(msg.getSubmissionId());
+						if (submission == null) {
+							throw new IOException("Builder sent result for unknown submission " + msg.getSubmissionId());
+						}
+						HealthDataSingleton.getInstance().recordSubmissionLatency(
+								submission.getDispatchTime() - submission.getEnqueueTime(),
+								System.currentTimeMillis() - submission.getEnqueueTime());
+						submission.setSubmissionResult(msg.getSubmissionResult());
+						submission.setReady();
+						dispatcher.addCapacity(WorkerTask.this, 1);
+						break;
+						
+					case NEED_PROBLEM:
+						// The Builder doesn't have the exercise (it was evicted
+						// from its cache): send it again
+						OOPBuildServiceSubmission needy = inFlight.get(msg.getSubmissionId());
+						if (needy == null) {
+							throw new IOException("Builder requested problem for unknown submission " + msg.getSubmissionId());
+						}
+						synchronized (writeLock) {
+							codec.writeMessage(BuilderMessage.problem(needy.getProblemHash(), needy.getProblem(), needy.getTestCaseList()));
+							codec.flush();
+							lastSendMillis = System.currentTimeMillis();
+						}
+						break;
+						
+					default:
+						throw new IOException("Unexpected message type " + msg.getType() + " from Builder");
+					}
+				}
+			} catch (IOException e) {
+				if (!shutdownRequested) {
+					logger.error("Error reading message from Builder", e);
+				}
+			} finally {
+				onConnectionBroken();
+			}
+		}
+	}
+	
+	/**
+	 * Timer task to send keepalive signals.
+	 */
+	private class KeepaliveTask implements Runnable {
+		@Override
+		public void run() {
+			try {
+				sendKeepaliveIfIdle();
+			} catch (IOException e) {
+				if (!shutdownRequested && !connectionBroken) {
+					logger.error("Error sending keepalive to Builder", e);
+				}
+				onConnectionBroken();
+			}
+		}
+	}
+	
 	private volatile boolean shutdownRequested;
+	private volatile boolean connectionBroken;
 	private Socket clientSocket;
-	private LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue;
+	private SubmissionDispatcher dispatcher;
+	private ScheduledExecutorService timer;
 	private WorkerTaskSet workerTaskSet;
 	
-	private ObjectOutputStream out;
-	private ObjectInputStream in;
+	private IBuilderMessageCodec codec;
+	private Object writeLock;
+	private long lastSendMillis; // protected by writeLock
+	private int nextSubmissionId;
+	private Map<String, Boolean> sentProblemHashes;
+	private ConcurrentHashMap<Integer, OOPBuildServiceSubmission> inFlight;
+	private LinkedBlockingQueue<OOPBuildServiceSubmission> assigned;
 
-	public WorkerTask(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue, WorkerTaskSet workerTaskSet) throws IOException {
+	/**
+	 * Constructor.
+	 * 
+	 * @param clientSocket   socket connected to the Builder
+	 * @param dispatcher     the {@link SubmissionDispatcher} which will assign submissions to this task
+	 * @param timer          shared {@link ScheduledExecutorService} on which to send keepalive signals
+	 * @param workerTaskSet  the {@link WorkerTaskSet}
+	 */
+	public WorkerTask(Socket clientSocket, SubmissionDispatcher dispatcher, ScheduledExecutorService timer, WorkerTaskSet workerTaskSet) {
 		this.shutdownRequested = false;
+		this.connectionBroken = false;
 		this.clientSocket = clientSocket;
-		this.submissionQueue = submissionQueue;
+		this.dispatcher = dispatcher;
+		this.timer = timer;
 		this.workerTaskSet = workerTaskSet;
 		
-		this.out = new ObjectOutputStream(clientSocket.getOutputStream());
-		this.in = new ObjectInputStream(clientSocket.getInputStream());
+		this.writeLock = new Object();
+		this.sentProblemHashes = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > SENT_PROBLEM_HASH_CACHE_SIZE;
+			}
+		};
+		this.inFlight = new ConcurrentHashMap<Integer, OOPBuildServiceSubmission>();
+		this.assigned = new LinkedBlockingQueue<OOPBuildServiceSubmission>();
 	}
 
 	public void shutdown() {
 		shutdownRequested = true;
 	}
+	
+	/**
+	 * Called by the {@link SubmissionDispatcher} to assign a submission
+	 * to this task.  Does not block.
+	 * 
+	 * @param submission the submission to send to the Builder
+	 */
+	public void assign(OOPBuildServiceSubmission submission) {
+		assigned.add(submission);
+	}
 
 	@Override
 	public void run() {
 		logger.info("oop buildsvc WorkerTask starting");
 		
-		OOPBuildServiceSubmission submission = null;
-		
-		// Keep track of how long it has been since we sent
-		// the Builder a Submission.  If it's been too long,
-		// we will send a keepalive signal to avoid the TCP
-		// connection timing out.
-		long idleTimeMillis = 0;
+		Thread readerThread = null;
+		ScheduledFuture<?> keepalive = null;
 		
 		// Testing of submissions by this worker continues until either an
 		// explicit shutdown request is made, or an exception is thrown communicating
 		// with the remote Builder process.
-	submissionTestingLoop:
-		while (!shutdownRequested) {
-
-			// Try to get a submission to test
-			try {
-				submission = submissionQueue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
-			} catch (InterruptedException e) {
-				if (!shutdownRequested) {
-					logger.error("Unexpected interruption", e);
-					break submissionTestingLoop;
-				}
-			}
+		try {
+			// Make sure the Builder speaks our protocol.  Builders which
+			// predate the versioned protocol won't send a handshake,
+			// so don't wait forever.
+			InputStream rawIn = clientSocket.getInputStream();
+			OutputStream rawOut = clientSocket.getOutputStream();
+			clientSocket.setSoTimeout(BuilderProtocol.HANDSHAKE_TIMEOUT_MS);
+			BuilderProtocol.Handshake handshake = BuilderProtocol.webappHandshake(rawIn, rawOut);
+			clientSocket.setSoTimeout(0);
+			int maxInFlight = Math.min(handshake.getMaxInFlight(), MAX_IN_FLIGHT);
+			logger.info("Builder at {} connected, maxInFlight={}, codec={}",
+					new Object[]{ clientSocket.getInetAddress(), maxInFlight, handshake.getCodec().getClass().getSimpleName() });
 			
-			if (submission == null) {
-				idleTimeMillis += POLL_INTERVAL_MILLIS;
-				
-				if (idleTimeMillis >= MAX_IDLE_TIME_MILLIS) {
-					// Send a negative problem id as a keepalive signal.
-					// The Builder will ignore this.
-					try {
-						//logger.debug("Sending keepalive signal to Builder");
-						out.writeObject(Integer.valueOf(-1));
-						idleTimeMillis = 0L;
-					} catch (IOException e) {
-						logger.error("Error sending keepalive signal to Builder", e);
-						break submissionTestingLoop;
-					}
-				}
-			} else {
-				idleTimeMillis = 0L;
+			this.codec = handshake.getCodec();
+			this.lastSendMillis = System.currentTimeMillis();
+			
+			readerThread = new Thread(new ReaderTask());
+			readerThread.start();
+			keepalive = timer.scheduleWithFixedDelay(new KeepaliveTask(),
+					KEEPALIVE_CHECK_INTERVAL_MILLIS, KEEPALIVE_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+			
+			// The Builder is ready for submissions
+			dispatcher.addCapacity(this, maxInFlight);
+			
+			sendSubmissions();
+		} catch (IOException e) {
+			if (!shutdownRequested) {
+				logger.error("Error communicating with Builder", e);
 			}
-
-			if (submission != null) {
-				// Check to make sure there isn't some kind of persistent error
-				// affecting the testing of this submission
-				if (submission.getNumAttempts() >= 10) {
-					// Too many testing failures for this submission!
-					submission.setReady();
-					continue submissionTestingLoop;
-				}
-				
-				submission.setNumAttempts(submission.getNumAttempts() + 1);
-				
-				// Attempt to test the submission
-				try {
-					sendSubmissionForTesting(submission);
-					// Submission successfully tested!
-					submission = null; // We're done with this Submission
-				} catch (IOException e) {
-					submission.setError(e);
-					logger.error("IOException attempting to send submission for testing", e);
-					break submissionTestingLoop;
-				} catch (ClassNotFoundException e) {
-					submission.setError(e);
-					logger.error("ClassNotFoundException testing submission", e);
-					break submissionTestingLoop;
-				}
+		} catch (InterruptedException e) {
+			if (!shutdownRequested) {
+				logger.error("Unexpected interruption", e);
 			}
 		}
 		
-		// If the testing of a submission was not completed,
-		// place it back in the queue so it has an opportunity to be re-tested
-		if (submission != null) {
-			try {
-				submissionQueue.put(submission);
-			} catch (InterruptedException e) {
-				logger.error("Failed to put submission back in submission queue", e);
-				submission.setError(e);
-				submission.setReady();
-			}
+		if (keepalive != null) {
+			keepalive.cancel(false);
 		}
 
 		// End the connection with the Builder
-		IOUtils.closeQuietly(in);
-		IOUtils.closeQuietly(out);
+		IOUtils.closeQuietly(codec);
 		try {
 			clientSocket.close();
 		} catch (IOException e) {
 			logger.warn("Exception closing client socket", e);
 		}
 		
+		// Wait for the reader thread to see that the connection is closed,
+		// so that in-flight submissions can't be completed concurrently
+		// with putting them back in the queue
+		if (readerThread != null) {
+			try {
+				readerThread.join();
+			} catch (InterruptedException e) {
+				logger.error("Interrupted waiting for reader thread to exit", e);
+			}
+		}
+		
+		// No more submissions will be assigned.  (Note that the reader thread
+		// could have given back capacity until it exited.)
+		dispatcher.removeCapacity(this);
+		
+		// If the testing of any submissions was not completed (or started),
+		// place them back in the queue so they have an opportunity to be re-tested
+		for (OOPBuildServiceSubmission submission : inFlight.values()) {
+			dispatcher.requeue(submission);
+		}
+		inFlight.clear();
+		OOPBuildServiceSubmission unsent;
+		while ((unsent = assigned.poll()) != null) {
+			if (unsent != CONNECTION_BROKEN) {
+				dispatcher.requeue(unsent);
+			}
+		}
+		
 		workerTaskSet.onWorkerExit(this);
 		
 		logger.info("oop buildsvc WorkerTask exiting");
 	}
 
-	private void sendSubmissionForTesting(OOPBuildServiceSubmission submission) throws IOException, ClassNotFoundException {
-		Problem problem = submission.getProblem();
-		List<TestCase> testCaseList = submission.getTestCaseList();
-		String programText = submission.getProgramText();
-		
-		// Tell client which Problem to test
-		out.writeObject((Integer) problem.getProblemId());
-		out.flush();
-		
-		// Client will send back a boolean indicating whether or not it
-		// has this problem already: if not, send it (and its test cases).
-		Boolean response = (Boolean) in.readObject();
-		if (!response) {
-			out.writeObject(problem);
-			out.writeObject(testCaseList);
-			out.flush();
+	private void sendSubmissions() throws IOException, InterruptedException {
+		while (!shutdownRequested && !connectionBroken) {
+			// Wait for the dispatcher to assign a submission.
+			// There is no timeout: a shutdown interrupts this thread,
+			// and a connection failure wakes it up.
+			OOPBuildServiceSubmission submission = assigned.take();
+			if (submission == CONNECTION_BROKEN) {
+				break;
+			}
+			
+			// Check to make sure there isn't some kind of persistent error
+			// affecting the testing of this submission
+			if (submission.getNumAttempts() >= MAX_ATTEMPTS) {
+				// Too many testing failures for this submission!
+				submission.setReady();
+				dispatcher.addCapacity(this, 1);
+				continue;
+			}
+			
+			submission.setNumAttempts(submission.getNumAttempts() + 1);
+			
+			// Attempt to send the submission for testing.
+			// If this fails, it will be put back in the queue.
+			sendSubmissionForTesting(submission);
 		}
+	}
+
+	private void sendSubmissionForTesting(OOPBuildServiceSubmission submission) throws IOException {
+		int submissionId = nextSubmissionId++;
+		String problemHash = submission.getProblemHash();
 		
-		// Send the program text
-		out.writeObject(programText);
-		out.flush();
-		
-		// Read list of TestResults
-		SubmissionResult result= (SubmissionResult) in.readObject();
-		
-//		logger.info("Received submission results");
-//		for (SubmissionResultAnnotation annotation : result.getAnnotationList()) {
-//			logger.info("key={}, value={}", annotation.getKey(), annotation.getValue());
-//		}
+		submission.setDispatchTime(System.currentTimeMillis());
+		inFlight.put(submissionId, submission);
 		
-		submission.setSubmissionResult(result);
-		submission.setReady();
+		synchronized (writeLock) {
+			// Send the exercise, unless it has already been sent on this connection
+			if (sentProblemHashes.get(problemHash) == null) {
+				codec.writeMessage(BuilderMessage.problem(problemHash, submission.getProblem(), submission.getTestCaseList()));
+				sentProblemHashes.put(problemHash, Boolean.TRUE);
+			}
+			
+			codec.writeMessage(BuilderMessage.submission(submissionId, problemHash, submission.getProgramText()));
+			codec.flush();
+			lastSendMillis = System.currentTimeMillis();
+		}
+	}
+	
+	private void sendKeepaliveIfIdle() throws IOException {
+		// If it's been too long since we sent the Builder anything,
+		// send a keepalive signal to avoid the TCP connection timing out.
+		synchronized (writeLock) {
+			if (System.currentTimeMillis() - lastSendMillis >= MAX_IDLE_TIME_MILLIS) {
+				codec.writeMessage(BuilderMessage.keepalive());
+				codec.flush();
+				lastSendMillis = System.currentTimeMillis();
+			}
+		}
+	}
+	
+	private void onConnectionBroken() {
+		// Wake up the sender thread if it's waiting for a submission
+		connectionBroken = true;
+		assigned.add(CONNECTION_BROKEN);
 	}
-}
\ No newline at end of file
+}
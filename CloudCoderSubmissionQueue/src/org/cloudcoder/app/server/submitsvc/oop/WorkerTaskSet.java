@@ -22,7 +22,7 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,11 +79,13 @@ public class WorkerTaskSet {
 	 * Builder thread.
 	 * 
 	 * @param clientSocket     Socket with which to communicate with remote Builder thread
-	 * @param submissionQueue  queue of submissions requiring compilation and testing
+	 * @param dispatcher       the {@link SubmissionDispatcher} which assigns submissions
+	 *                         requiring compilation and testing
+	 * @param timer            shared {@link ScheduledExecutorService} for sending keepalive signals
 	 * @throws IOException
 	 */
-	public void createWorker(Socket clientSocket, LinkedBlockingQueue<OOPBuildServiceSubmission> submissionQueue) throws IOException {
-		WorkerTask workerTask = new WorkerTask(clientSocket, submissionQueue, this);
+	public void createWorker(Socket clientSocket, SubmissionDispatcher dispatcher, ScheduledExecutorService timer) throws IOException {
+		WorkerTask workerTask = new WorkerTask(clientSocket, dispatcher, timer, this);
 		Thread workerThread = new Thread(workerTask);
 		WorkerThreadAndTaskPair pair = new WorkerThreadAndTaskPair(workerThread, workerTask);
 		
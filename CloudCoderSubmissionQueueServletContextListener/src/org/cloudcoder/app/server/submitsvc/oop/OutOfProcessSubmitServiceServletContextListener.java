@@ -69,6 +69,7 @@ public class OutOfProcessSubmitServiceServletContextListener implements ServletC
 				setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.ssl.keystore.password", null);
 			}
 			setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.oop.port", String.valueOf(OutOfProcessSubmitService.DEFAULT_PORT));
+			setPropertyFromContextParameter(servletContext, config, "cloudcoder.submitsvc.oop.scheduler", "fair");
 
 			// Initialize and start the OutOfProcessSubmitService
 			svc.initFromConfigProperties(config);
@@ -748,6 +748,7 @@ cloudcoder.db.passwd=$cprops{'ccMysqlCCPasswd'}
 cloudcoder.db.databaseName=cloudcoderdb
 cloudcoder.db.host=localhost
 cloudcoder.db.portStr=
+cloudcoder.db.changeBuffer.journalDir=/home/cloud/webapp/change-journal
 cloudcoder.login.service=database
 cloudcoder.submitsvc.oop.host=$cprops{'ccHostname'}
 cloudcoder.submitsvc.oop.numThreads=$cprops{'ccNumBuilderThreads'}